@@ -5,6 +5,8 @@ import java.io.*;
 import java.lang.reflect.InvocationTargetException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import jline.ArgumentCompletor;
 import jline.ConsoleReader;
@@ -25,6 +27,45 @@ import simpledb.transaction.TransactionId;
 public class Parser {
     static boolean explain = false;
 
+    /** a LIMIT clause at the end of a statement, which ZQL cannot parse */
+    private static final Pattern LIMIT = Pattern.compile("(?is)^(.*\\S)\\s+LIMIT\\s+(\\d+)\\s*(;?)\\s*$");
+
+    /** the LIMIT of the statement being processed, or -1 if it has none */
+    private int limit = -1;
+
+    /** a statement setting the number of threads used by later queries */
+    private static final Pattern SET_PARALLELISM = Pattern.compile("(?is)^\\s*SET\\s+PARALLELISM\\s*=?\\s*(\\d{1,6})\\s*;?\\s*$");
+
+    /** the number of threads that scan each table in a query */
+    private int parallelism = 1;
+
+    /**
+     * @return the number of threads that scan each table in a query, as set
+     *   by SET PARALLELISM n
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Remove a trailing LIMIT clause from the statement s, and remember its
+     * value in limit.
+     *
+     * @return s without the LIMIT clause
+     */
+    String stripLimit(String s) throws simpledb.ParsingException {
+        limit = -1;
+        Matcher m = LIMIT.matcher(s);
+        if (!m.matches())
+            return s;
+        try {
+            limit = Integer.parseInt(m.group(2));
+        } catch (NumberFormatException e) {
+            throw new simpledb.ParsingException("Invalid LIMIT " + m.group(2));
+        }
+        return m.group(1) + m.group(3);
+    }
+
     public static Predicate.Op getOp(String s) throws simpledb.ParsingException {
         if (s.equals("="))
             return Predicate.Op.EQUALS;
@@ -63,6 +104,25 @@ public class Parser {
         } else if (wx.getOperator().equals("OR")) {
             throw new simpledb.ParsingException(
                     "OR expressions currently unsupported.");
+        } else if ((wx.getOperator().equals("IN") || wx.getOperator().equals("NOT IN"))
+                && wx.nbOperands() == 2 && wx.getOperand(1) instanceof ZQuery) {
+            // a IN (SELECT b ...) keeps the tuples whose a matches some b
+            if (!(wx.getOperand(0) instanceof ZConstant)
+                    || ((ZConstant) wx.getOperand(0)).getType() != ZConstant.COLUMNNAME) {
+                throw new simpledb.ParsingException(
+                        "Only a field can be tested for membership in a subquery.");
+            }
+            LogicalPlan sublp = parseQueryLogicalPlan(tid, (ZQuery) wx.getOperand(1));
+            OpIterator pp = sublp.physicalPlan(tid, TableStats.getStatsMap(), explain);
+            lp.addSemiJoin(((ZConstant) wx.getOperand(0)).getValue(), pp,
+                    wx.getOperator().equals("NOT IN"));
+        } else if (wx.getOperator().equals("EXISTS") && wx.nbOperands() == 1) {
+            processExists(tid, wx.getOperand(0), lp, false);
+        } else if (wx.getOperator().equals("NOT") && wx.nbOperands() == 1
+                && wx.getOperand(0) instanceof ZExpression
+                && ((ZExpression) wx.getOperand(0)).getOperator().equals("EXISTS")
+                && ((ZExpression) wx.getOperand(0)).nbOperands() == 1) {
+            processExists(tid, ((ZExpression) wx.getOperand(0)).getOperand(0), lp, true);
         } else {
             // this is a binary expression comparing two constants
             @SuppressWarnings("unchecked")
@@ -137,6 +197,115 @@ public class Parser {
 
     }
 
+    /**
+     * Add an EXISTS (or, if anti, a NOT EXISTS) subquery to lp as a semi join.
+     * The subquery must be correlated with the outer query by exactly one
+     * equality between a field of the outer query and a field of its own
+     * tables, in a conjunct at the top of its WHERE clause; that conjunct
+     * becomes the join predicate and the subquery selects its inner field.
+     */
+    private void processExists(TransactionId tid, ZExp e, LogicalPlan lp, boolean anti)
+            throws simpledb.ParsingException, IOException, ParseException {
+        if (!(e instanceof ZQuery))
+            throw new simpledb.ParsingException("EXISTS needs a subquery.");
+        ZQuery sub = (ZQuery) e;
+        if (sub.getGroupBy() != null)
+            throw new simpledb.ParsingException("EXISTS subqueries with GROUP BY are not supported.");
+        @SuppressWarnings("unchecked")
+        List<ZSelectItem> select = sub.getSelect();
+        for (ZSelectItem si : select) {
+            if (si.getAggregate() != null)
+                throw new simpledb.ParsingException("EXISTS subqueries with aggregates are not supported.");
+        }
+
+        @SuppressWarnings("unchecked")
+        List<ZFromItem> from = sub.getFrom();
+        Set<String> inner = new HashSet<>();
+        for (ZFromItem fromIt : from)
+            inner.add(fromIt.getAlias() != null ? fromIt.getAlias() : fromIt.getTable());
+
+        List<ZExp> conjuncts = new ArrayList<>();
+        ZExp w = sub.getWhere();
+        if (w instanceof ZExpression && ((ZExpression) w).getOperator().equals("AND")) {
+            @SuppressWarnings("unchecked")
+            List<ZExp> ops = ((ZExpression) w).getOperands();
+            conjuncts.addAll(ops);
+        } else if (w != null) {
+            conjuncts.add(w);
+        }
+
+        String outerField = null, innerField = null;
+        List<ZExp> rest = new ArrayList<>();
+        for (ZExp c : conjuncts) {
+            if (!referencesOuter(c, inner)) {
+                rest.add(c);
+                continue;
+            }
+            ZExpression cx = (ZExpression) c;
+            if (outerField != null || !cx.getOperator().equals("=")
+                    || !(cx.getOperand(0) instanceof ZConstant) || !(cx.getOperand(1) instanceof ZConstant))
+                throw new simpledb.ParsingException(
+                        "EXISTS subqueries must be correlated by a single equality between two fields.");
+            String f1 = ((ZConstant) cx.getOperand(0)).getValue();
+            String f2 = ((ZConstant) cx.getOperand(1)).getValue();
+            boolean outer1 = isOuterField((ZConstant) cx.getOperand(0), inner);
+            boolean outer2 = isOuterField((ZConstant) cx.getOperand(1), inner);
+            if (outer1 == outer2)
+                throw new simpledb.ParsingException(
+                        "EXISTS subqueries must be correlated by a single equality between two fields.");
+            outerField = outer1 ? f1 : f2;
+            innerField = outer1 ? f2 : f1;
+        }
+        if (outerField == null)
+            throw new simpledb.ParsingException("Uncorrelated EXISTS subqueries are not supported.");
+        if (!innerField.contains(".")) {
+            if (inner.size() != 1)
+                throw new simpledb.ParsingException("Field " + innerField + " of the subquery is ambiguous.");
+            innerField = inner.iterator().next() + "." + innerField;
+        }
+
+        if (rest.isEmpty()) {
+            sub.addWhere(null);
+        } else if (rest.size() == 1) {
+            sub.addWhere(rest.get(0));
+        } else {
+            ZExpression and = new ZExpression("AND");
+            for (ZExp c : rest)
+                and.addOperand(c);
+            sub.addWhere(and);
+        }
+        Vector<ZSelectItem> innerSelect = new Vector<>();
+        innerSelect.add(new ZSelectItem(innerField));
+        sub.addSelect(innerSelect);
+
+        LogicalPlan sublp = parseQueryLogicalPlan(tid, sub);
+        OpIterator pp = sublp.physicalPlan(tid, TableStats.getStatsMap(), explain);
+        lp.addSemiJoin(outerField, pp, anti);
+    }
+
+    /**
+     * @return true if the expression e names a field of a table that is not
+     *   one of the aliases in inner
+     */
+    private static boolean referencesOuter(ZExp e, Set<String> inner) {
+        if (e instanceof ZConstant)
+            return isOuterField((ZConstant) e, inner);
+        if (e instanceof ZExpression) {
+            ZExpression x = (ZExpression) e;
+            for (int i = 0; i < x.nbOperands(); i++) {
+                if (referencesOuter(x.getOperand(i), inner))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isOuterField(ZConstant c, Set<String> inner) {
+        if (c.getType() != ZConstant.COLUMNNAME || !c.getValue().contains("."))
+            return false;
+        return !inner.contains(c.getValue().split("[.]")[0]);
+    }
+
     public LogicalPlan parseQueryLogicalPlan(TransactionId tid, ZQuery q)
             throws IOException, Zql.ParseException, simpledb.ParsingException {
         @SuppressWarnings("unchecked")
@@ -258,18 +427,15 @@ public class Parser {
         if (q.getOrderBy() != null) {
             @SuppressWarnings("unchecked")
             List<ZOrderBy> obys = q.getOrderBy();
-            if (obys.size() > 1) {
-                throw new simpledb.ParsingException(
-                        "Multi-attribute ORDER BY is not supported.");
-            }
-            ZOrderBy oby = obys.get(0);
-            if (!(oby.getExpression() instanceof ZConstant)) {
-                throw new simpledb.ParsingException(
-                        "Complex ORDER BY's are not supported");
-            }
-            ZConstant f = (ZConstant) oby.getExpression();
+            for (ZOrderBy oby : obys) {
+                if (!(oby.getExpression() instanceof ZConstant)) {
+                    throw new simpledb.ParsingException(
+                            "Complex ORDER BY's are not supported");
+                }
+                ZConstant f = (ZConstant) oby.getExpression();
 
-            lp.addOrderBy(f.getValue(), oby.getAscOrder());
+                lp.addOrderBy(f.getValue(), oby.getAscOrder());
+            }
 
         }
         return lp;
@@ -284,6 +450,8 @@ public class Parser {
         Query query = new Query(tId);
 
         LogicalPlan lp = parseQueryLogicalPlan(tId, s);
+        lp.setLimit(limit);
+        lp.setParallelism(parallelism);
         OpIterator physicalPlan = lp.physicalPlan(tId,
                 TableStats.getStatsMap(), explain);
         query.setPhysicalPlan(physicalPlan);
@@ -383,6 +551,7 @@ public class Parser {
         } else {
             ZQuery zq = s.getQuery();
             LogicalPlan lp = parseQueryLogicalPlan(tId, zq);
+            lp.setLimit(limit);
             newTups = lp.physicalPlan(tId, TableStats.getStatsMap(), explain);
         }
         Query insertQ = new Query(tId);
@@ -465,12 +634,15 @@ public class Parser {
 
     public LogicalPlan generateLogicalPlan(TransactionId tid, String s)
             throws simpledb.ParsingException, IOException {
-        ByteArrayInputStream bis = new ByteArrayInputStream(s.getBytes());
+        ByteArrayInputStream bis = new ByteArrayInputStream(stripLimit(s).getBytes());
         ZqlParser p = new ZqlParser(bis);
         try {
             ZStatement stmt = p.readStatement();
             if (stmt instanceof ZQuery) {
-                return parseQueryLogicalPlan(tid, (ZQuery) stmt);
+                LogicalPlan lp = parseQueryLogicalPlan(tid, (ZQuery) stmt);
+                lp.setLimit(limit);
+                lp.setParallelism(parallelism);
+                return lp;
             }
         } catch (Zql.ParseException e) {
             throw new simpledb.ParsingException(
@@ -495,8 +667,25 @@ public class Parser {
 
     public void processNextStatement(InputStream is) {
         try {
-            ZqlParser p = new ZqlParser(is);
+            ByteArrayOutputStream statement = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            for (int n; (n = is.read(buf)) > 0; )
+                statement.write(buf, 0, n);
+            String sql = new String(statement.toByteArray(), StandardCharsets.UTF_8);
+            Matcher set = SET_PARALLELISM.matcher(sql);
+            if (set.matches()) {
+                int n = Integer.parseInt(set.group(1));
+                if (n < 1)
+                    throw new simpledb.ParsingException("Invalid PARALLELISM " + n);
+                parallelism = n;
+                System.out.println("Queries scan tables with " + n + " thread(s).");
+                return;
+            }
+            sql = stripLimit(sql);
+            ZqlParser p = new ZqlParser(new ByteArrayInputStream(sql.getBytes(StandardCharsets.UTF_8)));
             ZStatement s = p.readStatement();
+            if (limit >= 0 && !(s instanceof ZQuery || s instanceof ZInsert))
+                throw new simpledb.ParsingException("LIMIT is only supported in queries");
 
             Query query = null;
             if (s instanceof ZTransactStmt)
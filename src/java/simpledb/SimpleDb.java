@@ -14,6 +14,7 @@ public class SimpleDb {
         // convert a file
         switch (args[0]) {
             case "convert":
+            case "convert-slotted":
                 try {
                     if (args.length < 3 || args.length > 5) {
                         System.err.println("Unexpected number of arguments to convert ");
@@ -50,8 +51,11 @@ public class SimpleDb {
                             fieldSeparator = args[4].charAt(0);
                     }
 
-                    HeapFileEncoder.convert(sourceTxtFile, targetDatFile,
-                            BufferPool.getPageSize(), numOfAttributes, ts, fieldSeparator);
+                    if (args[0].equals("convert-slotted"))
+                        SlottedFileEncoder.convert(sourceTxtFile, targetDatFile, ts, fieldSeparator);
+                    else
+                        HeapFileEncoder.convert(sourceTxtFile, targetDatFile,
+                                BufferPool.getPageSize(), numOfAttributes, ts, fieldSeparator);
 
                 } catch (IOException e) {
                     throw new RuntimeException(e);
@@ -1,8 +1,11 @@
 package simpledb.common;
 
 import simpledb.common.Type;
+import simpledb.storage.CompressedFile;
 import simpledb.storage.DbFile;
 import simpledb.storage.HeapFile;
+import simpledb.storage.PaxFile;
+import simpledb.storage.SlottedFile;
 import simpledb.storage.TupleDesc;
 
 import java.io.BufferedReader;
@@ -178,7 +181,7 @@ public class Catalog {
             BufferedReader br = new BufferedReader(new FileReader(catalogFile));
             
             while ((line = br.readLine()) != null) {
-                //assume line is of the format name (field type, field type, ...)
+                //assume line is of the format name (field type, field type, ...) [format]
                 String name = line.substring(0, line.indexOf("(")).trim();
                 //System.out.println("TABLE NAME: " + name);
                 String fields = line.substring(line.indexOf("(") + 1, line.indexOf(")")).trim();
@@ -209,7 +212,22 @@ public class Catalog {
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
                 TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File(baseFolder+"/"+name + ".dat"), t);
+                String format = line.substring(line.indexOf(")") + 1).trim();
+                File dataFile = new File(baseFolder+"/"+name + ".dat");
+                DbFile tabHf;
+                if (format.isEmpty() || format.equalsIgnoreCase("heap"))
+                    tabHf = new HeapFile(dataFile, t);
+                else if (format.equalsIgnoreCase("slotted"))
+                    tabHf = new SlottedFile(dataFile, t);
+                else if (format.equalsIgnoreCase("pax"))
+                    tabHf = new PaxFile(dataFile, t);
+                else if (format.equalsIgnoreCase("compressed"))
+                    tabHf = new CompressedFile(dataFile, t);
+                else {
+                    System.out.println("Unknown file format " + format);
+                    System.exit(0);
+                    return;
+                }
                 addTable(tabHf,name,primaryKey);
                 System.out.println("Added table : " + name + " with schema " + t);
             }
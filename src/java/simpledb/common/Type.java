@@ -1,8 +1,10 @@
 package simpledb.common;
 
+import simpledb.execution.Predicate;
 import simpledb.storage.StringField;
 import simpledb.storage.Field;
 import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
 
 import java.text.ParseException;
 import java.io.*;
@@ -28,6 +30,21 @@ public enum Type implements Serializable {
             }
         }
 
+        @Override
+        public Field parse(byte[] data, int offset) {
+            return new IntField(readInt(data, offset));
+        }
+
+        @Override
+        public boolean compare(Predicate.Op op, Tuple t1, int i1, Tuple t2, int i2) {
+            return IntField.compare(op, t1.getInt(i1), t2.getInt(i2));
+        }
+
+        @Override
+        public int compare(Tuple t1, int i1, Tuple t2, int i2) {
+            return Integer.compare(t1.getInt(i1), t2.getInt(i2));
+        }
+
     }, STRING_TYPE() {
         @Override
         public int getLen() {
@@ -46,6 +63,23 @@ public enum Type implements Serializable {
                 throw new ParseException("couldn't parse", 0);
             }
         }
+
+        @Override
+        public Field parse(byte[] data, int offset) {
+            int strLen = readInt(data, offset);
+            return new StringField(new String(data, offset + 4, strLen), STRING_LEN);
+        }
+
+        @Override
+        public boolean compare(Predicate.Op op, Tuple t1, int i1, Tuple t2, int i2) {
+            return t1.getField(i1).compare(op, t2.getField(i2));
+        }
+
+        @Override
+        public int compare(Tuple t1, int i1, Tuple t2, int i2) {
+            return ((StringField) t1.getField(i1)).getValue()
+                    .compareTo(((StringField) t2.getField(i2)).getValue());
+        }
     };
     
     public static final int STRING_LEN = 128;
@@ -64,4 +98,35 @@ public enum Type implements Serializable {
    */
     public abstract Field parse(DataInputStream dis) throws ParseException;
 
+  /**
+   * @return a Field object of the same type as this object, decoded from the
+   *   getLen() bytes of data that start at offset. The bytes are expected to
+   *   be in the format written by {@link Field#serialize}.
+   */
+    public abstract Field parse(byte[] data, int offset);
+
+  /**
+   * Compare field i1 of t1 with field i2 of t2, both of this type, with the
+   *   semantics of {@link Field#compare}. INT_TYPE compares the unboxed
+   *   values and allocates nothing.
+   */
+    public abstract boolean compare(Predicate.Op op, Tuple t1, int i1, Tuple t2, int i2);
+
+  /**
+   * Three-way comparison of field i1 of t1 with field i2 of t2, both of
+   *   this type, for sorting.
+   * @return a negative number, zero or a positive number as the first value
+   *   is less than, equal to or greater than the second
+   */
+    public abstract int compare(Tuple t1, int i1, Tuple t2, int i2);
+
+  /**
+   * Reads a big-endian int (the format written by DataOutputStream) out of
+   *   a byte array without going through a stream.
+   */
+    public static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16)
+                | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+    }
+
 }
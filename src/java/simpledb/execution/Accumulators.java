@@ -0,0 +1,138 @@
+package simpledb.execution;
+
+import java.util.Arrays;
+
+/**
+ * Accumulators keeps the running count, sum, minimum, maximum and sum of
+ * squares of the int values of many groups, in one primitive array per
+ * statistic indexed by group id. Adding a value to a group updates a few
+ * array slots and allocates nothing, so aggregating takes memory
+ * proportional to the number of groups rather than the number of tuples.
+ */
+final class Accumulators {
+
+    private int[] counts = new int[16];
+    private long[] sums = new long[16];
+    private long[] sumSquares = new long[16];
+    private int[] mins = new int[16];
+    private int[] maxs = new int[16];
+    private int size;
+
+    /**
+     * @return the number of groups
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Add v to the group with the given id. Ids must be handed out densely:
+     * a new group's id is the current number of groups.
+     */
+    void add(int id, int v) {
+        if (id == size) {
+            if (size == counts.length)
+                grow();
+            mins[id] = v;
+            maxs[id] = v;
+            size++;
+        } else {
+            if (v < mins[id])
+                mins[id] = v;
+            if (v > maxs[id])
+                maxs[id] = v;
+        }
+        counts[id]++;
+        sums[id] += v;
+        sumSquares[id] += (long) v * v;
+    }
+
+    /**
+     * Count one more tuple in the group with the given id, without a value.
+     */
+    void count(int id) {
+        if (id == size) {
+            if (size == counts.length)
+                grow();
+            size++;
+        }
+        counts[id]++;
+    }
+
+    /**
+     * Add a partial sum over count values to the group with the given id,
+     * as computed by SUM_COUNT over part of the input. Only the count, sum
+     * and SC_AVG of such a group are defined.
+     */
+    void addSumCount(int id, long sum, int count) {
+        if (id == size) {
+            if (size == counts.length)
+                grow();
+            size++;
+        }
+        counts[id] += count;
+        sums[id] += sum;
+    }
+
+    /**
+     * Remove all groups; ids are handed out from 0 again.
+     */
+    void clear() {
+        Arrays.fill(counts, 0, size, 0);
+        Arrays.fill(sums, 0, size, 0);
+        Arrays.fill(sumSquares, 0, size, 0);
+        size = 0;
+    }
+
+    private void grow() {
+        int n = counts.length * 2;
+        counts = Arrays.copyOf(counts, n);
+        sums = Arrays.copyOf(sums, n);
+        sumSquares = Arrays.copyOf(sumSquares, n);
+        mins = Arrays.copyOf(mins, n);
+        maxs = Arrays.copyOf(maxs, n);
+    }
+
+    int getCount(int id) {
+        return counts[id];
+    }
+
+    long getSum(int id) {
+        return sums[id];
+    }
+
+    long getSumOfSquares(int id) {
+        return sumSquares[id];
+    }
+
+    int getMin(int id) {
+        return mins[id];
+    }
+
+    int getMax(int id) {
+        return maxs[id];
+    }
+
+    /**
+     * @return the value of op for the group with the given id; AVG is
+     *   rounded towards zero, like integer division. SUM_COUNT has two
+     *   values, to be read with getSum and getCount.
+     */
+    int get(int id, Aggregator.Op op) {
+        switch (op) {
+            case MIN:
+                return mins[id];
+            case MAX:
+                return maxs[id];
+            case SUM:
+                return (int) sums[id];
+            case AVG:
+            case SC_AVG:
+                return (int) (sums[id] / counts[id]);
+            case COUNT:
+                return counts[id];
+            default:
+                throw new UnsupportedOperationException("unsupported aggregate " + op);
+        }
+    }
+}
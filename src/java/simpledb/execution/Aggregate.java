@@ -2,10 +2,15 @@ package simpledb.execution;
 
 import simpledb.common.DbException;
 import simpledb.common.Type;
+import simpledb.storage.Field;
+import simpledb.storage.IntField;
+import simpledb.storage.SpillFile;
 import simpledb.storage.Tuple;
+import simpledb.storage.TupleBatch;
 import simpledb.storage.TupleDesc;
 import simpledb.transaction.TransactionAbortedException;
 
+import java.io.IOException;
 import java.util.*;
 
 
@@ -13,6 +18,28 @@ import java.util.*;
  * The Aggregation operator that computes an aggregate (e.g., sum, avg, max,
  * min). Note that we only support aggregates over a single column, grouped by a
  * single column.
+ * <p>
+ * The child is read once, in {@link #open()}, and each tuple is folded into
+ * the accumulators of its group as it arrives. At most memoryBudget groups
+ * are kept: once the group table is full, tuples of groups already in it are
+ * still aggregated in memory, while tuples of new groups are hash-partitioned
+ * on the group field into NUM_PARTITIONS spill files. After the groups in
+ * memory have been returned, each partition is aggregated by a nested
+ * Aggregate with a different hash seed. Since a group is either in memory or
+ * spilled, never both, no partial results need to be merged.
+ * <p>
+ * If the child is known to return its tuples sorted on the group field, the
+ * aggregate can instead run in sorted mode: it keeps the accumulators of a
+ * single group and returns the group as soon as the next tuple has a
+ * different key, so it uses constant memory and returns the first group
+ * without reading the whole child.
+ * <p>
+ * Over a source that is read by several threads, such as a {@link Gather},
+ * an aggregate can be split in two phases: {@link #partial} aggregates run
+ * by each thread over its part of the input, and a {@link #merge} step that
+ * combines their partial states into the final result. AVG is computed from
+ * partial sums and counts (SUM_COUNT, then SC_AVG), COUNT by summing partial
+ * counts, and MIN, MAX and SUM by applying themselves again.
  */
 public class Aggregate extends Operator {
 
@@ -23,10 +50,38 @@ public class Aggregate extends Operator {
     int afield;
     int gfield;
     Aggregator.Op aop;
-    List<Tuple> children;
-    Iterator<Tuple> aggRes;
-    List<Tuple> il;
-    List<Tuple> sl;
+    /** the aggregate of each group, computed in open() */
+    transient OpIterator aggRes;
+
+    /** default number of groups kept in memory */
+    public final static int DEFAULT_MEMORY_BUDGET = 100000;
+    /** number of partitions the groups that do not fit are split into */
+    public final static int NUM_PARTITIONS = 16;
+    /** partitioning depth after which the group table is no longer bounded */
+    public final static int MAX_LEVEL = 3;
+
+    private final int memoryBudget;
+    private final int level;
+    private final boolean sortedInput;
+
+    /**
+     * for the merge step of a two-phase aggregate, the TupleDesc of the
+     * aggregate it computes; null otherwise
+     */
+    private TupleDesc mergedTd;
+
+    /** in sorted mode, the accumulators of the current group */
+    transient private Accumulators acc;
+    /** in sorted mode, the first tuple of the next group, if read */
+    transient private Tuple pending;
+    /** in sorted mode, true once a group has been returned */
+    transient private boolean produced;
+
+    /** the tuples of the groups that did not fit, null if nothing spilled */
+    transient private SpillFile[] partitions;
+    /** the next partition to aggregate, and the aggregate of the current one */
+    transient private int nextPartition;
+    transient private Aggregate partitionAgg;
 
     /**
      * Constructor.
@@ -42,24 +97,53 @@ public class Aggregate extends Operator {
      * @param aop    The aggregation operator to use
      */
     public Aggregate(OpIterator child, int afield, int gfield, Aggregator.Op aop)  {
-        // some code goes here
+        this(child, afield, gfield, aop, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Constructor with an explicit memory budget.
+     *
+     * @param memoryBudget the number of groups to keep in memory before the
+     *                     tuples of further groups are spilled to disk
+     */
+    public Aggregate(OpIterator child, int afield, int gfield, Aggregator.Op aop, int memoryBudget) {
+        this(child, afield, gfield, aop, memoryBudget, 0, false);
+    }
+
+    /**
+     * Constructor for a choice of mode.
+     *
+     * @param sortedInput if true, child must return its tuples sorted on
+     *                    gfield (in either direction), and groups are
+     *                    aggregated one at a time as they go by
+     */
+    public Aggregate(OpIterator child, int afield, int gfield, Aggregator.Op aop, boolean sortedInput) {
+        this(child, afield, gfield, aop, DEFAULT_MEMORY_BUDGET, 0, sortedInput);
+    }
+
+    private Aggregate(OpIterator child, int afield, int gfield, Aggregator.Op aop, int memoryBudget, int level,
+                      boolean sortedInput) {
+        if (memoryBudget < 1)
+            throw new IllegalArgumentException("memory budget must be positive");
+        if (sortedInput && (aop == Aggregator.Op.SUM_COUNT || aop == Aggregator.Op.SC_AVG))
+            throw new IllegalArgumentException("unsupported aggregate " + aop);
+        if (sortedInput && aop != Aggregator.Op.COUNT && child.getTupleDesc().getFieldType(afield) != Type.INT_TYPE)
+            throw new IllegalArgumentException("only COUNT is supported on strings");
         this.child = child;
         this.afield = afield;
         this.aop = aop;
         this.gfield = gfield;
-        this.il = new ArrayList<>();
-        this.sl = new ArrayList<>();
-        children = new ArrayList<>();
-
-        try {
-            child.open();
-            while (child.hasNext()){
-                children.add(child.next());
-            }
-        }catch (Exception e){
-            e.printStackTrace();
-        }
+        this.memoryBudget = memoryBudget;
+        this.level = level;
+        this.sortedInput = sortedInput;
+    }
 
+    /**
+     * @return true if this aggregate relies on its child being sorted on the
+     *   group field
+     */
+    public boolean isSortedInput() {
+        return sortedInput;
     }
 
     /**
@@ -115,34 +199,136 @@ public class Aggregate extends Operator {
         return aop.toString();
     }
 
+    /**
+     * @return the operator that computes the partial state of aop over part
+     *   of the input
+     */
+    public static Aggregator.Op partialOp(Aggregator.Op aop) {
+        return aop == Aggregator.Op.AVG ? Aggregator.Op.SUM_COUNT : aop;
+    }
+
+    /**
+     * @return the operator that combines the partial states computed by
+     *   {@link #partialOp(Aggregator.Op) partialOp(aop)} into aop
+     */
+    public static Aggregator.Op finalOp(Aggregator.Op aop) {
+        switch (aop) {
+            case AVG:
+                return Aggregator.Op.SC_AVG;
+            case COUNT:
+                return Aggregator.Op.SUM;
+            case MIN:
+            case MAX:
+            case SUM:
+                return aop;
+            default:
+                throw new IllegalArgumentException(aop + " has no partial state");
+        }
+    }
+
+    /**
+     * @param part tuples of the same TupleDesc as the child, typically the
+     *             part of the input read by one thread
+     * @return an aggregate that computes the partial state of this aggregate
+     *   over part: the group value if there is grouping, then the partial
+     *   aggregate (a sum and a count for AVG)
+     * @see #merge
+     */
+    public Aggregate partial(OpIterator part) {
+        finalOp(aop); // rejects operators that have no partial state
+        return new Aggregate(part, afield, gfield, partialOp(aop), memoryBudget);
+    }
+
+    /**
+     * @param partials the tuples of the {@link #partial} aggregates over
+     *                 every part of the input
+     * @return an aggregate that combines the partial states into the result
+     *   of this aggregate, with the same TupleDesc
+     */
+    public Aggregate merge(OpIterator partials) {
+        boolean grouped = gfield != Aggregator.NO_GROUPING;
+        Aggregate m = new Aggregate(partials, grouped ? 1 : 0, grouped ? 0 : Aggregator.NO_GROUPING,
+                finalOp(aop), memoryBudget);
+        m.mergedTd = getTupleDesc();
+        return m;
+    }
+
     public void open() throws NoSuchElementException, DbException,
             TransactionAbortedException {
-        if(child.getTupleDesc().getFieldType(afield).equals(Type.INT_TYPE)){
-            IntegerAggregator ia=new IntegerAggregator(gfield, child.getTupleDesc().getFieldType(gfield), afield, aop);
-            for (Tuple tuple : children) {
-                ia.mergeTupleIntoGroup(tuple);
-            }
-            OpIterator iterator = ia.iterator();
-            iterator.open();
-            while (iterator.hasNext()){
-                il.add(iterator.next());
-            }
-            aggRes = il.iterator();
-        }else{
-           StringAggregator sa = new StringAggregator(gfield, child.getTupleDesc().getFieldType(gfield), afield, aop);
-            for (Tuple tuple : children) {
-                sa.mergeTupleIntoGroup(tuple);
-            }
-            OpIterator iterator = sa.iterator();
-            iterator.open();
-            while (iterator.hasNext()){
-                sl.add(iterator.next());
-            }
-            aggRes = sl.iterator();
+        child.open();
+        if (sortedInput) {
+            acc = new Accumulators();
+            pending = null;
+            produced = false;
+        } else {
+            aggregate();
         }
         super.open();
     }
 
+    /**
+     * Read the child a batch at a time into a new aggregator, spilling the
+     * tuples of the groups that do not fit.
+     */
+    private void aggregate() throws DbException, TransactionAbortedException {
+        TupleDesc td = child.getTupleDesc();
+        Type gtype = gfield == Aggregator.NO_GROUPING ? null : td.getFieldType(gfield);
+        Aggregator agg;
+        if (td.getFieldType(afield).equals(Type.INT_TYPE)) {
+            agg = new IntegerAggregator(gfield, gtype, afield, aop);
+        } else {
+            agg = new StringAggregator(gfield, gtype, afield, aop);
+        }
+        int maxGroups = gfield != Aggregator.NO_GROUPING && level < MAX_LEVEL ? memoryBudget : Integer.MAX_VALUE;
+        TupleBatch b;
+        while ((b = child.nextBatch()) != null) {
+            agg.mergeBatch(b, maxGroups);
+            // what is left selected belongs to groups that did not fit
+            for (int k = 0; k < b.size(); k++)
+                spill(b.getTuple(k));
+        }
+        aggRes = agg.iterator();
+        aggRes.open();
+        nextPartition = 0;
+    }
+
+    /**
+     * @return the partition of the group of t
+     */
+    private int partition(Tuple t) {
+        int h = t.getTupleDesc().getFieldType(gfield) == Type.INT_TYPE ? t.getInt(gfield) : t.getField(gfield).hashCode();
+        h ^= level * 0x9e3779b9;
+        h *= 0x85ebca6b;
+        h ^= h >>> 16;
+        return h & (NUM_PARTITIONS - 1);
+    }
+
+    private void spill(Tuple t) throws DbException {
+        if (partitions == null)
+            partitions = new SpillFile[NUM_PARTITIONS];
+        int p = partition(t);
+        try {
+            if (partitions[p] == null)
+                partitions[p] = new SpillFile(child.getTupleDesc());
+            partitions[p].add(t);
+        } catch (IOException e) {
+            throw new DbException("cannot spill aggregate partition: " + e.getMessage());
+        }
+    }
+
+    private void clearPartitions() {
+        if (partitionAgg != null)
+            partitionAgg.close();
+        partitionAgg = null;
+        if (partitions != null) {
+            for (SpillFile f : partitions) {
+                if (f != null)
+                    f.delete();
+            }
+        }
+        partitions = null;
+    }
+
     /**
      * Returns the next tuple. If there is a group by field, then the first
      * field is the field by which we are grouping, and the second field is the
@@ -151,23 +337,95 @@ public class Aggregate extends Operator {
      * aggregate. Should return null if there are no more tuples.
      */
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
-        // some code goes here
-        if(aggRes == null){
+        if (sortedInput)
+            return nextSortedGroup();
+        if (aggRes == null)
             return null;
-        }
-        if(aggRes.hasNext()){
+        if (aggRes.hasNext())
             return aggRes.next();
-        }else{
-            return null;
+
+        // aggregate the spilled partitions one at a time
+        while (partitions != null) {
+            if (partitionAgg != null) {
+                if (partitionAgg.hasNext())
+                    return partitionAgg.next();
+                partitionAgg.close();
+                partitionAgg = null;
+                partitions[nextPartition - 1].delete();
+            }
+            while (nextPartition < NUM_PARTITIONS && partitions[nextPartition] == null)
+                nextPartition++;
+            if (nextPartition == NUM_PARTITIONS)
+                return null;
+            partitionAgg = new Aggregate(partitions[nextPartition].iterator(), afield, gfield, aop,
+                    memoryBudget, level + 1, false);
+            nextPartition++;
+            partitionAgg.open();
         }
+        return null;
+    }
+
+    /**
+     * @return the aggregate of the next run of tuples with equal group keys
+     */
+    private Tuple nextSortedGroup() throws TransactionAbortedException, DbException {
+        if (pending == null) {
+            if (!child.hasNext()) {
+                // an ungrouped count or sum of nothing is still 0
+                if (gfield != Aggregator.NO_GROUPING || produced
+                        || (aop != Aggregator.Op.COUNT && aop != Aggregator.Op.SUM))
+                    return null;
+                produced = true;
+                Tuple t = new Tuple(getTupleDesc());
+                t.setField(0, new IntField(0));
+                return t;
+            }
+            pending = child.next();
+        }
+        Field key = gfield == Aggregator.NO_GROUPING ? null : pending.getField(gfield);
+        acc.clear();
+        Tuple t = pending;
+        pending = null;
+        while (true) {
+            if (child.getTupleDesc().getFieldType(afield) == Type.INT_TYPE)
+                acc.add(0, t.getInt(afield));
+            else
+                acc.count(0);
+            if (!child.hasNext())
+                break;
+            t = child.next();
+            if (key != null && !key.equals(t.getField(gfield))) {
+                pending = t;
+                break;
+            }
+        }
+        produced = true;
+        Tuple res = new Tuple(getTupleDesc());
+        if (key == null) {
+            res.setField(0, new IntField(acc.get(0, aop)));
+        } else {
+            res.setField(0, key);
+            res.setField(1, new IntField(acc.get(0, aop)));
+        }
+        return res;
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
-        if(child.getTupleDesc().getFieldType(afield).equals(Type.INT_TYPE)){
-            aggRes = il.iterator();
-        }else{
-            aggRes = sl.iterator();
+        if (sortedInput) {
+            child.rewind();
+            pending = null;
+            produced = false;
+            return;
+        }
+        if (partitions == null) {
+            aggRes.rewind();
+            return;
         }
+        // the spilled partitions have been consumed, so aggregate again
+        clearPartitions();
+        aggRes.close();
+        child.rewind();
+        aggregate();
     }
 
     /**
@@ -183,16 +441,40 @@ public class Aggregate extends Operator {
      */
     public TupleDesc getTupleDesc() {
         // some code goes here
+        if (mergedTd != null)
+            return mergedTd;
+        if (aop == Aggregator.Op.SUM_COUNT) {
+            // a partial average: the high and low words of the sum, which
+            // may not fit in an int, then the count
+            String name = child.getTupleDesc().getFieldName(afield);
+            List<Type> types = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+            if (gfield != Aggregator.NO_GROUPING) {
+                types.add(child.getTupleDesc().getFieldType(gfield));
+                names.add(child.getTupleDesc().getFieldName(gfield));
+            }
+            types.add(Type.INT_TYPE);
+            names.add(nameOfAggregatorOp(Aggregator.Op.SUM) + " (" + name + ") high");
+            types.add(Type.INT_TYPE);
+            names.add(nameOfAggregatorOp(Aggregator.Op.SUM) + " (" + name + ") low");
+            types.add(Type.INT_TYPE);
+            names.add(nameOfAggregatorOp(Aggregator.Op.COUNT) + " (" + name + ")");
+            return new TupleDesc(types.toArray(new Type[0]), names.toArray(new String[0]));
+        }
         if(gfield == Aggregator.NO_GROUPING){
-            return new TupleDesc(new Type[]{child.getTupleDesc().getFieldType(afield)},new String[]{nameOfAggregatorOp(aop)+" ("+child.getTupleDesc().getFieldName(afield)+")"});
+            return new TupleDesc(new Type[]{Type.INT_TYPE},new String[]{nameOfAggregatorOp(aop)+" ("+child.getTupleDesc().getFieldName(afield)+")"});
         }else{
-            return new TupleDesc(new Type[]{child.getTupleDesc().getFieldType(gfield),child.getTupleDesc().getFieldType(afield)}
+            return new TupleDesc(new Type[]{child.getTupleDesc().getFieldType(gfield),Type.INT_TYPE}
             ,new String[]{child.getTupleDesc().getFieldName(gfield),nameOfAggregatorOp(aop)+" ("+child.getTupleDesc().getFieldName(afield)+")"});
         }
     }
 
     public void close() {
+        if (aggRes != null)
+            aggRes.close();
         aggRes = null;
+        clearPartitions();
+        child.close();
         super.close();
     }
 
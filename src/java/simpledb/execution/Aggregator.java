@@ -1,6 +1,7 @@
 package simpledb.execution;
 
 import simpledb.storage.Tuple;
+import simpledb.storage.TupleBatch;
 import simpledb.storage.TupleIterator;
 
 import java.io.Serializable;
@@ -79,6 +80,29 @@ public interface Aggregator extends Serializable {
      */
     void mergeTupleIntoGroup(Tuple tup);
 
+    /**
+     * @return the number of groups merged so far
+     */
+    int numGroups();
+
+    /**
+     * @return true if the group of tup has already been created, so merging
+     *   tup would not take any more memory
+     */
+    boolean hasGroup(Tuple tup);
+
+    /**
+     * Merge the selected rows of a batch, as mergeTupleIntoGroup would. No
+     * group is created once numGroups() reaches maxGroups: the rows that would
+     * need one, those for which hasGroup is false, are left selected in b,
+     * and all other rows are deselected.
+     *
+     * @param b the batch of tuples containing an aggregate field and a
+     *          group-by field
+     * @param maxGroups the maximum number of groups to keep
+     */
+    void mergeBatch(TupleBatch b, int maxGroups);
+
     /**
      * Create a OpIterator over group aggregate results.
      * @see TupleIterator for a possible helper
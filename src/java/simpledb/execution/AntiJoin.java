@@ -0,0 +1,23 @@
+package simpledb.execution;
+
+/**
+ * AntiJoin returns the tuples of its outer child that have no match in its
+ * inner child under an equality predicate, as a NOT IN or NOT EXISTS
+ * subquery asks. SimpleDB has no NULLs, so the two are the same.
+ *
+ * @see SemiJoin
+ */
+public class AntiJoin extends SemiJoin {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param p     the join predicate, which must be an equality between
+     *              field1 of outer and field2 of inner
+     * @param outer the tuples to return
+     * @param inner the tuples to look for matches in
+     */
+    public AntiJoin(JoinPredicate p, OpIterator outer, OpIterator inner) {
+        super(p, outer, inner, true);
+    }
+}
@@ -0,0 +1,93 @@
+package simpledb.execution;
+
+import simpledb.common.Type;
+
+/**
+ * BloomFilter is a set of join keys that answers membership with false
+ * positives but never false negatives. Keys are added and looked up by a
+ * 64-bit hash from one of the {@code hash} methods, which hash an INT key,
+ * a STRING key and a STRING field still serialized in a page the same way,
+ * so a row can be tested before it is decoded.
+ * <p>
+ * The filter uses about ten bits per key and three probes, which lets
+ * through about 2% of the keys that were not added.
+ */
+public class BloomFilter {
+
+    private static final int BITS_PER_KEY = 10;
+    private static final int PROBES = 3;
+
+    private final long[] bits;
+    private final int mask;
+
+    /**
+     * @param expectedKeys the number of keys that will be added
+     */
+    public BloomFilter(int expectedKeys) {
+        long want = Math.max(64L, (long) expectedKeys * BITS_PER_KEY);
+        int size = 64;
+        while (size < want && size < (1 << 30))
+            size <<= 1;
+        bits = new long[size >>> 6];
+        mask = size - 1;
+    }
+
+    /**
+     * Add the key with hash h.
+     */
+    public void add(long h) {
+        int h1 = (int) h, h2 = (int) (h >>> 32) | 1;
+        for (int i = 0; i < PROBES; i++) {
+            int bit = (h1 + i * h2) & mask;
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * @return false if no key with hash h was added
+     */
+    public boolean mightContain(long h) {
+        int h1 = (int) h, h2 = (int) (h >>> 32) | 1;
+        for (int i = 0; i < PROBES; i++) {
+            int bit = (h1 + i * h2) & mask;
+            if ((bits[bit >>> 6] & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the hash of an INT key
+     */
+    public static long hash(int key) {
+        return mix(key);
+    }
+
+    /**
+     * @return the hash of a STRING key
+     */
+    public static long hash(String key) {
+        return mix(key.hashCode());
+    }
+
+    /**
+     * @return the hash of the STRING field serialized in data at off, the
+     *   same as that of the String it decodes to; plain ASCII strings are
+     *   hashed without being decoded
+     */
+    public static long hash(byte[] data, int off) {
+        int len = Type.readInt(data, off);
+        int h = 0;
+        for (int i = off + 4; i < off + 4 + len; i++) {
+            if (data[i] < 0)
+                return hash(new String(data, off + 4, len));
+            h = 31 * h + data[i];
+        }
+        return mix(h);
+    }
+
+    private static long mix(int key) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return h ^ (h >>> 29);
+    }
+}
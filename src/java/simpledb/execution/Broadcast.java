@@ -0,0 +1,52 @@
+package simpledb.execution;
+
+import simpledb.storage.TupleBatch;
+
+/**
+ * Broadcast sends every tuple of its children to each of its outputs, for
+ * instance to give the small side of a join to every thread that joins a
+ * partition of the large side.
+ *
+ * @see Exchange
+ */
+public class Broadcast extends Exchange {
+
+    private static final long serialVersionUID = 1L;
+
+    private Broadcast(Producers producers, int output) {
+        super(producers, output);
+    }
+
+    /**
+     * @param numOutputs the number of outputs
+     * @param children   the subtrees whose tuples are sent; each is run on a
+     *                   thread of its own
+     * @return the outputs, each of which returns every tuple of the children
+     */
+    public static Broadcast[] create(int numOutputs, OpIterator... children) {
+        Producers p = new ToAll(children, numOutputs);
+        Broadcast[] outputs = new Broadcast[numOutputs];
+        for (int i = 0; i < numOutputs; i++)
+            outputs[i] = new Broadcast(p, i);
+        return outputs;
+    }
+
+    public String getName() {
+        return "broadcast";
+    }
+
+    private static class ToAll extends Producers {
+
+        private static final long serialVersionUID = 1L;
+
+        ToAll(OpIterator[] inputs, int numOutputs) {
+            super(inputs, numOutputs);
+        }
+
+        protected void route(TupleBatch b, TupleBatch[] pending) {
+            // every consumer gets a copy of its own, as it may narrow its selection
+            for (int i = 0; i < numOutputs; i++)
+                put(i, b.copy());
+        }
+    }
+}
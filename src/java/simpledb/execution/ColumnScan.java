@@ -0,0 +1,152 @@
+package simpledb.execution;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.storage.*;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+import java.util.NoSuchElementException;
+
+/**
+ * ColumnScan is a sequential scan that only returns some of the columns of
+ * a table, in the order given to the constructor. Over a PaxFile the other
+ * columns are never decoded; over any other DbFile the scan reads whole
+ * tuples and drops the unused fields, so it can always stand in for a
+ * SeqScan followed by a Project.
+ *
+ * @see PaxFile
+ */
+public class ColumnScan implements OpIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int tableId;
+    private final String tableAlias;
+    private final int[] columns;
+    private final TupleDesc td;
+    private final TupleDesc fileTd;
+    private final DbFileIterator iterator;
+
+    /**
+     * Creates a scan over the given columns of the specified table as a part
+     * of the specified transaction.
+     *
+     * @param tid        The transaction this scan is running as a part of.
+     * @param tableid    the table to scan.
+     * @param tableAlias the alias of this table, used as the prefix of the
+     *                   field names as in SeqScan
+     * @param columns    the columns of the table to return; field k of the
+     *                   output is column columns[k]
+     */
+    public ColumnScan(TransactionId tid, int tableid, String tableAlias, int[] columns) {
+        this.tableId = tableid;
+        this.tableAlias = tableAlias;
+        this.columns = columns.clone();
+
+        DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+        TupleDesc tableTd = file.getTupleDesc();
+        Type[] types = new Type[columns.length];
+        String[] names = new String[columns.length];
+        String[] fileNames = new String[columns.length];
+        for (int k = 0; k < columns.length; k++) {
+            types[k] = tableTd.getFieldType(columns[k]);
+            fileNames[k] = tableTd.getFieldName(columns[k]);
+            names[k] = tableAlias + "." + fileNames[k];
+        }
+        this.td = new TupleDesc(types, names);
+        this.fileTd = new TupleDesc(types, fileNames);
+
+        if (file instanceof PaxFile)
+            this.iterator = ((PaxFile) file).iterator(tid, this.columns);
+        else
+            this.iterator = projecting(file.iterator(tid));
+    }
+
+    /**
+     * Wrap an iterator over whole tuples into one that returns only the
+     * scanned columns.
+     */
+    private DbFileIterator projecting(final DbFileIterator child) {
+        return new AbstractDbFileIterator() {
+            public void open() throws DbException, TransactionAbortedException {
+                child.open();
+            }
+
+            @Override
+            protected Tuple readNext() throws DbException, TransactionAbortedException {
+                if (!child.hasNext())
+                    return null;
+                Tuple t = child.next();
+                Tuple out = new Tuple(fileTd);
+                for (int k = 0; k < columns.length; k++)
+                    out.setField(k, t.getField(columns[k]));
+                out.setRecordId(t.getRecordId());
+                return out;
+            }
+
+            public void rewind() throws DbException, TransactionAbortedException {
+                close();
+                open();
+            }
+
+            @Override
+            public void close() {
+                super.close();
+                child.close();
+            }
+        };
+    }
+
+    /**
+     * @return the table name of the table the operator scans
+     */
+    public String getTableName() {
+        return Database.getCatalog().getTableName(tableId);
+    }
+
+    /**
+     * @return the alias of the table this operator scans
+     */
+    public String getAlias() {
+        return tableAlias;
+    }
+
+    /**
+     * @return the columns of the table this operator returns
+     */
+    public int[] getColumns() {
+        return columns.clone();
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        iterator.open();
+    }
+
+    /**
+     * Returns the TupleDesc of the scanned columns, with field names prefixed
+     * by the table alias as in SeqScan.
+     */
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public boolean hasNext() throws TransactionAbortedException, DbException {
+        return iterator.hasNext();
+    }
+
+    public Tuple next() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        return iterator.next();
+    }
+
+    public void close() {
+        iterator.close();
+    }
+
+    public void rewind() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        iterator.rewind();
+    }
+}
@@ -0,0 +1,619 @@
+package simpledb.execution;
+
+import simpledb.common.Type;
+import simpledb.storage.HeapPage;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleBatch;
+import simpledb.storage.TupleDesc;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CompiledPredicate is a conjunction of {@link Predicate}s compiled, when a
+ * plan is built, into a tree of small final classes: one class per type and
+ * operator, with the field number, its byte offset in a row and the operand
+ * held in final fields. A row is tested without a switch on the operator or
+ * a call through {@link simpledb.storage.Field#compare}, so the JIT can
+ * inline the test into the loop of the operator that runs it. Rows may be
+ * tested as tuples, as batches, or still encoded in the bytes of a
+ * {@link HeapPage}, without decoding the fields that are not tested.
+ * <p>
+ * While compiling, the comparisons of an INT field with a constant are
+ * folded into one range per field, and the INT terms of a conjunction are
+ * tested by a single class that loops over those ranges, before any STRING
+ * term.
+ * <p>
+ * A compiled predicate may also test rows against the keys a hash join
+ * publishes to a {@link RuntimeFilter} once it has built its table.
+ */
+public abstract class CompiledPredicate implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @return true if t passes every term of the conjunction
+     */
+    public abstract boolean test(Tuple t);
+
+    /**
+     * Narrow the selection of b to the rows that pass every term.
+     *
+     * @return the number of rows still selected
+     */
+    public abstract int filter(TupleBatch b);
+
+    /**
+     * @return true if the row whose fields are serialized in data from
+     *   offset row on passes every term of the conjunction
+     */
+    public abstract boolean test(byte[] data, int row);
+
+    /**
+     * Compile the conjunction of the given predicates over rows of td.
+     */
+    public static CompiledPredicate compile(TupleDesc td, Predicate... conjuncts) {
+        if (conjuncts.length == 0)
+            throw new IllegalArgumentException("nothing to compile");
+        // every INT term but <> is a bound on its field: keep the tightest
+        // range [lo, hi] of each field, in the order the fields first appear
+        Map<Integer, long[]> bounds = new LinkedHashMap<>();
+        List<int[]> notEquals = new ArrayList<>();
+        List<CompiledPredicate> strings = new ArrayList<>();
+        for (Predicate p : conjuncts) {
+            int f = p.getField();
+            if (p.getOperand().getType() == Type.STRING_TYPE) {
+                String v = ((StringField) p.getOperand()).getValue();
+                int off = td.getFieldOffset(f);
+                strings.add(p.getOp() == Predicate.Op.EQUALS ? new StringEquals(f, off, v)
+                        : new StringCompare(f, off, p.getOp(), v));
+                continue;
+            }
+            int v = ((IntField) p.getOperand()).getValue();
+            if (p.getOp() == Predicate.Op.NOT_EQUALS) {
+                notEquals.add(new int[]{f, v});
+                continue;
+            }
+            long[] b = bounds.computeIfAbsent(f, k -> new long[]{Integer.MIN_VALUE, Integer.MAX_VALUE});
+            switch (p.getOp()) {
+                case GREATER_THAN:
+                    b[0] = Math.max(b[0], (long) v + 1);
+                    break;
+                case GREATER_THAN_OR_EQ:
+                    b[0] = Math.max(b[0], v);
+                    break;
+                case LESS_THAN:
+                    b[1] = Math.min(b[1], (long) v - 1);
+                    break;
+                case LESS_THAN_OR_EQ:
+                    b[1] = Math.min(b[1], v);
+                    break;
+                default:
+                    // EQUALS, and LIKE, which IntField treats as EQUALS
+                    b[0] = Math.max(b[0], v);
+                    b[1] = Math.min(b[1], v);
+            }
+        }
+        List<CompiledPredicate> terms = new ArrayList<>();
+        if (bounds.size() + notEquals.size() == 1)
+            terms.add(bounds.isEmpty() ? new IntNotEquals(notEquals.get(0)[0],
+                    td.getFieldOffset(notEquals.get(0)[0]), notEquals.get(0)[1])
+                    : intBound(td, bounds.entrySet().iterator().next()));
+        else if (bounds.size() + notEquals.size() > 1)
+            terms.add(new IntConjunction(td, bounds, notEquals));
+        terms.addAll(strings);
+        if (terms.size() == 1)
+            return terms.get(0);
+        if (terms.size() == 2)
+            return new And2(terms.get(0), terms.get(1));
+        return new And(terms.toArray(new CompiledPredicate[0]));
+    }
+
+    /**
+     * @return a test that the rows of td pass if the key in field might be
+     *   among the keys published to source; every row passes while nothing
+     *   is published
+     */
+    public static CompiledPredicate bloom(TupleDesc td, int field, RuntimeFilter source) {
+        int off = td.getFieldOffset(field);
+        return td.getFieldType(field) == Type.INT_TYPE ? new IntBloom(field, off, source)
+                : new StringBloom(field, off, source);
+    }
+
+    /**
+     * @return the conjunction of a and b, either of which may be null
+     */
+    public static CompiledPredicate and(CompiledPredicate a, CompiledPredicate b) {
+        if (a == null)
+            return b;
+        if (b == null)
+            return a;
+        return new And2(a, b);
+    }
+
+    /**
+     * @return the cheapest test of a single range on a field
+     */
+    private static CompiledPredicate intBound(TupleDesc td, Map.Entry<Integer, long[]> e) {
+        int f = e.getKey(), off = td.getFieldOffset(f);
+        long lo = e.getValue()[0], hi = e.getValue()[1];
+        if (lo > hi)
+            return new IntRange(f, off, 1, 0);
+        if (lo == hi)
+            return new IntEquals(f, off, (int) lo);
+        if (hi == Integer.MAX_VALUE)
+            return new IntAtLeast(f, off, (int) lo);
+        if (lo == Integer.MIN_VALUE)
+            return new IntAtMost(f, off, (int) hi);
+        return new IntRange(f, off, (int) lo, (int) hi);
+    }
+
+    private static final class IntEquals extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int field, offset, value;
+
+        IntEquals(int field, int offset, int value) {
+            this.field = field;
+            this.offset = offset;
+            this.value = value;
+        }
+
+        public boolean test(Tuple t) {
+            return t.getInt(field) == value;
+        }
+
+        public boolean test(byte[] data, int row) {
+            return Type.readInt(data, row + offset) == value;
+        }
+
+        public int filter(TupleBatch b) {
+            int[] sel = b.getSelection(), col = b.getInts(field);
+            int n = b.size(), m = 0;
+            for (int k = 0; k < n; k++) {
+                int r = sel[k];
+                if (col[r] == value)
+                    sel[m++] = r;
+            }
+            b.setSelected(m);
+            return m;
+        }
+    }
+
+    private static final class IntNotEquals extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int field, offset, value;
+
+        IntNotEquals(int field, int offset, int value) {
+            this.field = field;
+            this.offset = offset;
+            this.value = value;
+        }
+
+        public boolean test(Tuple t) {
+            return t.getInt(field) != value;
+        }
+
+        public boolean test(byte[] data, int row) {
+            return Type.readInt(data, row + offset) != value;
+        }
+
+        public int filter(TupleBatch b) {
+            int[] sel = b.getSelection(), col = b.getInts(field);
+            int n = b.size(), m = 0;
+            for (int k = 0; k < n; k++) {
+                int r = sel[k];
+                if (col[r] != value)
+                    sel[m++] = r;
+            }
+            b.setSelected(m);
+            return m;
+        }
+    }
+
+    private static final class IntAtLeast extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int field, offset, lo;
+
+        IntAtLeast(int field, int offset, int lo) {
+            this.field = field;
+            this.offset = offset;
+            this.lo = lo;
+        }
+
+        public boolean test(Tuple t) {
+            return t.getInt(field) >= lo;
+        }
+
+        public boolean test(byte[] data, int row) {
+            return Type.readInt(data, row + offset) >= lo;
+        }
+
+        public int filter(TupleBatch b) {
+            int[] sel = b.getSelection(), col = b.getInts(field);
+            int n = b.size(), m = 0;
+            for (int k = 0; k < n; k++) {
+                int r = sel[k];
+                if (col[r] >= lo)
+                    sel[m++] = r;
+            }
+            b.setSelected(m);
+            return m;
+        }
+    }
+
+    private static final class IntAtMost extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int field, offset, hi;
+
+        IntAtMost(int field, int offset, int hi) {
+            this.field = field;
+            this.offset = offset;
+            this.hi = hi;
+        }
+
+        public boolean test(Tuple t) {
+            return t.getInt(field) <= hi;
+        }
+
+        public boolean test(byte[] data, int row) {
+            return Type.readInt(data, row + offset) <= hi;
+        }
+
+        public int filter(TupleBatch b) {
+            int[] sel = b.getSelection(), col = b.getInts(field);
+            int n = b.size(), m = 0;
+            for (int k = 0; k < n; k++) {
+                int r = sel[k];
+                if (col[r] <= hi)
+                    sel[m++] = r;
+            }
+            b.setSelected(m);
+            return m;
+        }
+    }
+
+    /** lo <= field <= hi, which is never true if lo > hi */
+    private static final class IntRange extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int field, offset, lo, hi;
+
+        IntRange(int field, int offset, int lo, int hi) {
+            this.field = field;
+            this.offset = offset;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        public boolean test(Tuple t) {
+            int v = t.getInt(field);
+            return v >= lo && v <= hi;
+        }
+
+        public boolean test(byte[] data, int row) {
+            int v = Type.readInt(data, row + offset);
+            return v >= lo && v <= hi;
+        }
+
+        public int filter(TupleBatch b) {
+            int[] sel = b.getSelection(), col = b.getInts(field);
+            int n = b.size(), m = 0;
+            for (int k = 0; k < n; k++) {
+                int r = sel[k];
+                int v = col[r];
+                if (v >= lo && v <= hi)
+                    sel[m++] = r;
+            }
+            b.setSelected(m);
+            return m;
+        }
+    }
+
+    /**
+     * Several INT terms: lo[i] <= field fields[i] <= hi[i] for every i, and
+     * field neFields[i] <> neValues[i] for every i.
+     */
+    private static final class IntConjunction extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int[] fields, offsets, lo, hi;
+        private final int[] neFields, neOffsets, neValues;
+
+        IntConjunction(TupleDesc td, Map<Integer, long[]> bounds, List<int[]> notEquals) {
+            int n = bounds.size(), i = 0;
+            fields = new int[n];
+            offsets = new int[n];
+            lo = new int[n];
+            hi = new int[n];
+            for (Map.Entry<Integer, long[]> e : bounds.entrySet()) {
+                fields[i] = e.getKey();
+                offsets[i] = td.getFieldOffset(fields[i]);
+                long l = e.getValue()[0], h = e.getValue()[1];
+                // an empty range is kept empty within the int range
+                lo[i] = l > h ? 1 : (int) l;
+                hi[i++] = l > h ? 0 : (int) h;
+            }
+            neFields = new int[notEquals.size()];
+            neOffsets = new int[notEquals.size()];
+            neValues = new int[notEquals.size()];
+            for (i = 0; i < neFields.length; i++) {
+                neFields[i] = notEquals.get(i)[0];
+                neOffsets[i] = td.getFieldOffset(neFields[i]);
+                neValues[i] = notEquals.get(i)[1];
+            }
+        }
+
+        public boolean test(Tuple t) {
+            for (int i = 0; i < fields.length; i++) {
+                int v = t.getInt(fields[i]);
+                if (v < lo[i] || v > hi[i])
+                    return false;
+            }
+            for (int i = 0; i < neFields.length; i++) {
+                if (t.getInt(neFields[i]) == neValues[i])
+                    return false;
+            }
+            return true;
+        }
+
+        public boolean test(byte[] data, int row) {
+            for (int i = 0; i < offsets.length; i++) {
+                int v = Type.readInt(data, row + offsets[i]);
+                if (v < lo[i] || v > hi[i])
+                    return false;
+            }
+            for (int i = 0; i < neOffsets.length; i++) {
+                if (Type.readInt(data, row + neOffsets[i]) == neValues[i])
+                    return false;
+            }
+            return true;
+        }
+
+        public int filter(TupleBatch b) {
+            int[] sel = b.getSelection();
+            int m = b.size();
+            for (int i = 0; i < fields.length && m > 0; i++) {
+                int[] col = b.getInts(fields[i]);
+                int l = lo[i], h = hi[i], n = m;
+                m = 0;
+                for (int k = 0; k < n; k++) {
+                    int r = sel[k];
+                    int v = col[r];
+                    if (v >= l && v <= h)
+                        sel[m++] = r;
+                }
+            }
+            for (int i = 0; i < neFields.length && m > 0; i++) {
+                int[] col = b.getInts(neFields[i]);
+                int x = neValues[i], n = m;
+                m = 0;
+                for (int k = 0; k < n; k++) {
+                    int r = sel[k];
+                    if (col[r] != x)
+                        sel[m++] = r;
+                }
+            }
+            b.setSelected(m);
+            return m;
+        }
+    }
+
+    private static final class StringEquals extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int field, offset;
+        private final String value;
+        /** the encoding of value, or null if it is not plain ASCII */
+        private final byte[] bytes;
+
+        StringEquals(int field, int offset, String value) {
+            this.field = field;
+            this.offset = offset;
+            this.value = value;
+            byte[] b = value.getBytes();
+            this.bytes = b.length == value.length() && value.chars().allMatch(c -> c < 0x80) ? b : null;
+        }
+
+        public boolean test(Tuple t) {
+            return ((StringField) t.getField(field)).getValue().equals(value);
+        }
+
+        /**
+         * Compares the stored bytes with those of value without decoding
+         * them, when value is plain ASCII.
+         */
+        public boolean test(byte[] data, int row) {
+            int off = row + offset;
+            int len = Type.readInt(data, off);
+            if (bytes == null)
+                return value.equals(new String(data, off + 4, len));
+            if (len != bytes.length)
+                return false;
+            for (int i = 0; i < len; i++) {
+                if (data[off + 4 + i] != bytes[i])
+                    return false;
+            }
+            return true;
+        }
+
+        public int filter(TupleBatch b) {
+            int[] sel = b.getSelection();
+            String[] col = b.getStrings(field);
+            int n = b.size(), m = 0;
+            for (int k = 0; k < n; k++) {
+                int r = sel[k];
+                if (value.equals(col[r]))
+                    sel[m++] = r;
+            }
+            b.setSelected(m);
+            return m;
+        }
+    }
+
+    private static final class StringCompare extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int field, offset;
+        private final Predicate.Op op;
+        private final String value;
+
+        StringCompare(int field, int offset, Predicate.Op op, String value) {
+            this.field = field;
+            this.offset = offset;
+            this.op = op;
+            this.value = value;
+        }
+
+        public boolean test(Tuple t) {
+            return StringField.compare(op, ((StringField) t.getField(field)).getValue(), value);
+        }
+
+        public boolean test(byte[] data, int row) {
+            int off = row + offset;
+            return StringField.compare(op, new String(data, off + 4, Type.readInt(data, off)), value);
+        }
+
+        public int filter(TupleBatch b) {
+            int[] sel = b.getSelection();
+            String[] col = b.getStrings(field);
+            int n = b.size(), m = 0;
+            for (int k = 0; k < n; k++) {
+                int r = sel[k];
+                if (StringField.compare(op, col[r], value))
+                    sel[m++] = r;
+            }
+            b.setSelected(m);
+            return m;
+        }
+    }
+
+    private static final class IntBloom extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int field, offset;
+        private final RuntimeFilter source;
+
+        IntBloom(int field, int offset, RuntimeFilter source) {
+            this.field = field;
+            this.offset = offset;
+            this.source = source;
+        }
+
+        public boolean test(Tuple t) {
+            BloomFilter f = source.get();
+            return f == null || f.mightContain(BloomFilter.hash(t.getInt(field)));
+        }
+
+        public boolean test(byte[] data, int row) {
+            BloomFilter f = source.get();
+            return f == null || f.mightContain(BloomFilter.hash(Type.readInt(data, row + offset)));
+        }
+
+        public int filter(TupleBatch b) {
+            BloomFilter f = source.get();
+            if (f == null)
+                return b.size();
+            int[] sel = b.getSelection(), col = b.getInts(field);
+            int n = b.size(), m = 0;
+            for (int k = 0; k < n; k++) {
+                int r = sel[k];
+                if (f.mightContain(BloomFilter.hash(col[r])))
+                    sel[m++] = r;
+            }
+            b.setSelected(m);
+            return m;
+        }
+    }
+
+    private static final class StringBloom extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final int field, offset;
+        private final RuntimeFilter source;
+
+        StringBloom(int field, int offset, RuntimeFilter source) {
+            this.field = field;
+            this.offset = offset;
+            this.source = source;
+        }
+
+        public boolean test(Tuple t) {
+            BloomFilter f = source.get();
+            return f == null || f.mightContain(BloomFilter.hash(((StringField) t.getField(field)).getValue()));
+        }
+
+        public boolean test(byte[] data, int row) {
+            BloomFilter f = source.get();
+            return f == null || f.mightContain(BloomFilter.hash(data, row + offset));
+        }
+
+        public int filter(TupleBatch b) {
+            BloomFilter f = source.get();
+            if (f == null)
+                return b.size();
+            int[] sel = b.getSelection();
+            String[] col = b.getStrings(field);
+            int n = b.size(), m = 0;
+            for (int k = 0; k < n; k++) {
+                int r = sel[k];
+                if (f.mightContain(BloomFilter.hash(col[r])))
+                    sel[m++] = r;
+            }
+            b.setSelected(m);
+            return m;
+        }
+    }
+
+    private static final class And2 extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final CompiledPredicate a, b;
+
+        And2(CompiledPredicate a, CompiledPredicate b) {
+            this.a = a;
+            this.b = b;
+        }
+
+        public boolean test(Tuple t) {
+            return a.test(t) && b.test(t);
+        }
+
+        public boolean test(byte[] data, int row) {
+            return a.test(data, row) && b.test(data, row);
+        }
+
+        public int filter(TupleBatch batch) {
+            return a.filter(batch) == 0 ? 0 : b.filter(batch);
+        }
+    }
+
+    private static final class And extends CompiledPredicate {
+        private static final long serialVersionUID = 1L;
+        private final CompiledPredicate[] terms;
+
+        And(CompiledPredicate[] terms) {
+            this.terms = terms;
+        }
+
+        public boolean test(Tuple t) {
+            for (CompiledPredicate p : terms) {
+                if (!p.test(t))
+                    return false;
+            }
+            return true;
+        }
+
+        public boolean test(byte[] data, int row) {
+            for (CompiledPredicate p : terms) {
+                if (!p.test(data, row))
+                    return false;
+            }
+            return true;
+        }
+
+        public int filter(TupleBatch b) {
+            int m = b.size();
+            for (int i = 0; i < terms.length && m > 0; i++)
+                m = terms[i].filter(b);
+            return m;
+        }
+    }
+}
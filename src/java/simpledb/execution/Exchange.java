@@ -0,0 +1,291 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleBatch;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Exchange operators connect subtrees of a plan that run on separate
+ * threads. The inputs of an exchange are each run on a producer thread of
+ * their own and read a batch at a time; their rows are routed into bounded
+ * queues, one per output of the exchange, so a producer that gets ahead of
+ * its consumers waits for them.
+ * <p>
+ * The subclasses differ in how rows are routed: {@link Gather} has a single
+ * output that receives everything, {@link Repartition} sends each row to the
+ * output picked by a hash of one of its fields and {@link Broadcast} sends
+ * every row to every output. Each output is an Exchange operator of its own.
+ * The outputs of one exchange are read together, usually by the threads of
+ * another exchange: the producers start when the first output is opened and
+ * stop once every output has been closed, and only an exchange with a single
+ * output can be rewound.
+ * <p>
+ * The batches returned by {@link #nextBatch()} are not reused and may be
+ * kept by the caller. nextBatch() must not be mixed with next().
+ */
+public abstract class Exchange extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    /** number of batches per output that may wait in its queue */
+    public static final int QUEUE_BATCHES = 4;
+
+    private final Producers producers;
+    private final int output;
+
+    /** the current batch, and the next of its rows to return from next() */
+    private transient TupleBatch batch;
+    private transient int k;
+
+    /**
+     * @param producers the producers shared by all outputs of the exchange
+     * @param output    the output of the producers read by this operator
+     */
+    protected Exchange(Producers producers, int output) {
+        this.producers = producers;
+        this.output = output;
+    }
+
+    /**
+     * @return a short description of this exchange, for printing plans
+     */
+    public abstract String getName();
+
+    /**
+     * @return the number of outputs of the exchange this operator belongs to
+     */
+    public int numOutputs() {
+        return producers.numOutputs;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return producers.inputs[0].getTupleDesc();
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        producers.open(output);
+        batch = null;
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        producers.close(output);
+        batch = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        if (producers.numOutputs > 1)
+            throw new DbException("an output of " + getName() + " cannot be rewound on its own");
+        close();
+        open();
+    }
+
+    /**
+     * Returns the next batch routed to this output by any producer.
+     */
+    @Override
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        return producers.take(output);
+    }
+
+    protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+        while (batch == null || k == batch.size()) {
+            batch = nextBatch();
+            k = 0;
+            if (batch == null)
+                return null;
+        }
+        return batch.getTuple(k++);
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return producers.inputs.clone();
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        if (children.length != producers.inputs.length)
+            throw new IllegalArgumentException("expected " + producers.inputs.length + " children");
+        System.arraycopy(children, 0, producers.inputs, 0, children.length);
+    }
+
+    /**
+     * The producer threads of an exchange and the queues of its outputs.
+     * Subclasses decide which outputs each batch of an input goes to.
+     */
+    protected abstract static class Producers implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        final OpIterator[] inputs;
+        final int numOutputs;
+
+        private transient BlockingQueue<TupleBatch>[] queues;
+        /** put in every queue by each producer when it is done */
+        private transient TupleBatch end;
+        /** the outputs closed since the producers started, and their number */
+        private transient AtomicIntegerArray closed;
+        private transient int numClosed;
+        private transient Thread[] threads;
+        private transient volatile boolean cancelled;
+        private transient volatile Throwable error;
+        /** per output, the number of producers that have not put end in it yet */
+        private transient int[] running;
+
+        /**
+         * @param inputs     the subtrees to run, which all return tuples of
+         *                   the same TupleDesc
+         * @param numOutputs the number of outputs
+         */
+        protected Producers(OpIterator[] inputs, int numOutputs) {
+            if (inputs.length == 0)
+                throw new IllegalArgumentException("an exchange needs an input");
+            if (numOutputs < 1)
+                throw new IllegalArgumentException("an exchange needs an output");
+            this.inputs = inputs.clone();
+            this.numOutputs = numOutputs;
+        }
+
+        /**
+         * Route a batch of an input to the outputs by calling put. The batch
+         * is only valid during the call, so rows must be copied.
+         *
+         * @param pending one batch per output that this producer may fill
+         *                across calls; batches left in it when the input is
+         *                done are put in their outputs
+         */
+        protected abstract void route(TupleBatch b, TupleBatch[] pending);
+
+        synchronized void open(int output) throws DbException {
+            if (threads == null)
+                start();
+            else if (closed.get(output) != 0)
+                throw new DbException("an output cannot be read again until all outputs are closed");
+        }
+
+        /**
+         * Close an output. The producers stop once every output has been
+         * closed, whether or not it was opened.
+         */
+        synchronized void close(int output) {
+            if (threads == null || closed.get(output) != 0)
+                return;
+            closed.set(output, 1);
+            queues[output].clear();
+            if (++numClosed == numOutputs)
+                stop();
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private void start() {
+            queues = new BlockingQueue[numOutputs];
+            for (int i = 0; i < numOutputs; i++)
+                queues[i] = new ArrayBlockingQueue<>(QUEUE_BATCHES * inputs.length);
+            end = new TupleBatch(inputs[0].getTupleDesc(), 1);
+            closed = new AtomicIntegerArray(numOutputs);
+            numClosed = 0;
+            running = new int[numOutputs];
+            Arrays.fill(running, inputs.length);
+            cancelled = false;
+            error = null;
+            threads = new Thread[inputs.length];
+            for (int i = 0; i < inputs.length; i++) {
+                OpIterator in = inputs[i];
+                threads[i] = new Thread(() -> produce(in), "exchange-" + i);
+                threads[i].setDaemon(true);
+                threads[i].start();
+            }
+        }
+
+        /**
+         * Stop the producers and wait for them to exit.
+         */
+        private void stop() {
+            cancelled = true;
+            for (Thread t : threads) {
+                while (t.isAlive()) {
+                    for (BlockingQueue<TupleBatch> q : queues)
+                        q.clear();
+                    try {
+                        t.join(10);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+            threads = null;
+        }
+
+        /**
+         * The body of a producer: route the batches of an input until it is
+         * done or the exchange is closed.
+         */
+        private void produce(OpIterator in) {
+            try {
+                in.open();
+                TupleBatch[] pending = new TupleBatch[numOutputs];
+                TupleBatch b;
+                while (!cancelled && (b = in.nextBatch()) != null)
+                    route(b, pending);
+                for (int i = 0; i < numOutputs; i++) {
+                    if (pending[i] != null && pending[i].size() > 0)
+                        put(i, pending[i]);
+                }
+            } catch (Throwable e) {
+                error = e;
+            } finally {
+                in.close();
+                for (int i = 0; i < numOutputs; i++)
+                    put(i, end);
+            }
+        }
+
+        /**
+         * Put a batch in the queue of an output, waiting while it is full.
+         * The batch is dropped if the output has been closed.
+         */
+        protected void put(int output, TupleBatch b) {
+            try {
+                while (!cancelled && closed.get(output) == 0
+                        && !queues[output].offer(b, 10, TimeUnit.MILLISECONDS)) {
+                    // the consumer is behind
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        TupleBatch take(int output) throws DbException, TransactionAbortedException {
+            while (running[output] > 0) {
+                TupleBatch b;
+                try {
+                    b = queues[output].take();
+                } catch (InterruptedException e) {
+                    throw new DbException("interrupted while waiting for an exchange");
+                }
+                if (b != end)
+                    return b;
+                running[output]--;
+            }
+            if (error instanceof TransactionAbortedException)
+                throw (TransactionAbortedException) error;
+            if (error instanceof DbException)
+                throw (DbException) error;
+            if (error != null)
+                throw new DbException("exchange producer failed: " + error);
+            return null;
+        }
+    }
+}
@@ -3,19 +3,23 @@ package simpledb.execution;
 import simpledb.transaction.TransactionAbortedException;
 import simpledb.common.DbException;
 import simpledb.storage.Tuple;
+import simpledb.storage.TupleBatch;
 import simpledb.storage.TupleDesc;
 
 import java.util.*;
 
 /**
- * Filter is an operator that implements a relational select.
+ * Filter is an operator that implements a relational select. It may hold a
+ * conjunction of several predicates, which is compiled into one
+ * {@link CompiledPredicate} when the Filter is built.
  */
 public class Filter extends Operator {
 
     private static final long serialVersionUID = 1L;
 
 
-    private Predicate p;
+    private final Predicate[] preds;
+    private CompiledPredicate compiled;
 
     private OpIterator child;
     /**
@@ -29,14 +33,40 @@ public class Filter extends Operator {
      */
     public Filter(Predicate p, OpIterator child) {
         // some code goes here
-        this.p = p;
-        this.child = child;
+        this(new Predicate[]{p}, child);
+    }
 
+    /**
+     * Constructor for a filter that returns the tuples of child that pass
+     * every predicate of conjuncts.
+     */
+    public Filter(Predicate[] conjuncts, OpIterator child) {
+        this.preds = conjuncts.clone();
+        this.compiled = CompiledPredicate.compile(child.getTupleDesc(), conjuncts);
+        this.child = child;
     }
 
+    /**
+     * @return the first predicate of the conjunction
+     */
     public Predicate getPredicate() {
         // some code goes here
-        return p;
+        return preds[0];
+    }
+
+    /**
+     * @return all the predicates of the conjunction
+     */
+    public Predicate[] getPredicates() {
+        return preds.clone();
+    }
+
+    /**
+     * Also drop the tuples whose key in field is not among the keys
+     * published to keys.
+     */
+    public void addRuntimeFilter(int field, RuntimeFilter keys) {
+        compiled = CompiledPredicate.and(compiled, CompiledPredicate.bloom(child.getTupleDesc(), field, keys));
     }
 
     public TupleDesc getTupleDesc() {
@@ -65,24 +95,37 @@ public class Filter extends Operator {
     /**
      * AbstractDbIterator.readNext implementation. Iterates over tuples from the
      * child operator, applying the predicate to them and returning those that
-     * pass the predicate (i.e. for which the Predicate.filter() returns true.)
+     * pass every predicate.
      * 
      * @return The next tuple that passes the filter, or null if there are no
      *         more tuples
-     * @see Predicate#filter
+     * @see CompiledPredicate#test
      */
     protected Tuple fetchNext() throws NoSuchElementException,
             TransactionAbortedException, DbException {
         // some code goes here
         while (child.hasNext()){
             Tuple next = child.next();
-            if(p.filter(next)){
+            if(compiled.test(next)){
                 return next;
             }
         }
         return null;
     }
 
+    /**
+     * Filters whole batches of the child by narrowing their selection.
+     */
+    @Override
+    public TupleBatch nextBatch() throws TransactionAbortedException, DbException {
+        TupleBatch b;
+        while ((b = child.nextBatch()) != null) {
+            if (compiled.filter(b) > 0)
+                return b;
+        }
+        return null;
+    }
+
     @Override
     public OpIterator[] getChildren() {
         // some code goes here
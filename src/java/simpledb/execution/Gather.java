@@ -0,0 +1,38 @@
+package simpledb.execution;
+
+import simpledb.storage.TupleBatch;
+
+/**
+ * Gather runs each of its children on a thread of its own and returns the
+ * tuples of all of them, in no particular order. It is where a plan that
+ * runs on several threads comes back to one.
+ */
+public class Gather extends Exchange {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param children the subtrees to run in parallel; they must all return
+     *                 tuples of the same TupleDesc
+     */
+    public Gather(OpIterator... children) {
+        super(new ToOne(children), 0);
+    }
+
+    public String getName() {
+        return "gather";
+    }
+
+    private static class ToOne extends Producers {
+
+        private static final long serialVersionUID = 1L;
+
+        ToOne(OpIterator[] inputs) {
+            super(inputs, 1);
+        }
+
+        protected void route(TupleBatch b, TupleBatch[] pending) {
+            put(0, b.copy());
+        }
+    }
+}
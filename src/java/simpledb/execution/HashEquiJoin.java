@@ -2,13 +2,44 @@ package simpledb.execution;
 
 import simpledb.transaction.TransactionAbortedException;
 import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.storage.SpillFile;
+import simpledb.storage.StringField;
 import simpledb.storage.Tuple;
+import simpledb.storage.TupleBatch;
 import simpledb.storage.TupleDesc;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
  * The Join operator implements the relational join operation.
+ * <p>
+ * HashEquiJoin is a hybrid hash join for equality predicates. The left
+ * child is the build side: its tuples are hashed on the join field into
+ * NUM_PARTITIONS partitions, each with its own {@link TupleHashTable}, which
+ * keeps INT keys unboxed in open-addressing arrays. Once more than
+ * memoryBudget build tuples are in memory, the largest resident partition
+ * is written to a spill file and later build tuples of that partition go
+ * straight to the file. The right child is then streamed once: probe tuples
+ * of resident partitions are joined right away, the others are spilled to
+ * the probe file of their partition. Finally every spilled pair of
+ * partitions is joined by a nested HashEquiJoin with a different hash seed,
+ * so each input is read about twice whatever the size of the build side.
+ * <p>
+ * A partition that still does not fit after MAX_LEVEL levels (a very common
+ * key, say) is joined in chunks of memoryBudget build tuples, rescanning its
+ * probe file once per chunk.
+ * <p>
+ * When the whole build side fits in memory, {@link #nextBatch()} probes a
+ * batch of the right child at a time and writes the joined rows straight
+ * into the column arrays of the output batch.
+ * <p>
+ * A join asked to {@link #publishKeys(int)} publishes a {@link BloomFilter}
+ * of all its build keys, spilled or not, once it has read the build side, so
+ * the operators below its probe side can drop the rows that cannot match.
+ * The filter is sized up front for the expected number of keys, which are
+ * added as they are read, so its memory does not grow with the build side.
  */
 public class HashEquiJoin extends Operator {
 
@@ -19,6 +50,20 @@ public class HashEquiJoin extends Operator {
     transient private Tuple t1 = null;
     transient private Tuple t2 = null;
 
+    /** default number of build tuples kept in memory */
+    public final static int MAP_SIZE = 20000;
+    /** number of partitions the build side is split into when it does not fit */
+    public final static int NUM_PARTITIONS = 16;
+    /** partitioning depth after which partitions are joined in chunks */
+    public final static int MAX_LEVEL = 3;
+
+    private final int memoryBudget;
+    private final int level;
+    /** where the build keys are published, or null if they are not */
+    private RuntimeFilter runtimeFilter;
+    /** the number of build keys the published filter is sized for */
+    private int expectedKeys;
+
     /**
      * Constructor. Accepts to children to join and the predicate to join them
      * on
@@ -31,9 +76,28 @@ public class HashEquiJoin extends Operator {
      *            Iterator for the right(inner) relation to join
      */
     public HashEquiJoin(JoinPredicate p, OpIterator child1, OpIterator child2) {
+        this(p, child1, child2, MAP_SIZE);
+    }
+
+    /**
+     * Constructor with an explicit memory budget.
+     *
+     * @param memoryBudget
+     *            the number of build (left) tuples to keep in memory before
+     *            partitions are spilled to disk
+     */
+    public HashEquiJoin(JoinPredicate p, OpIterator child1, OpIterator child2, int memoryBudget) {
+        this(p, child1, child2, memoryBudget, 0);
+    }
+
+    private HashEquiJoin(JoinPredicate p, OpIterator child1, OpIterator child2, int memoryBudget, int level) {
+        if (memoryBudget < 1)
+            throw new IllegalArgumentException("memory budget must be positive");
         this.pred = p;
         this.child1 = child1;
         this.child2 = child2;
+        this.memoryBudget = memoryBudget;
+        this.level = level;
         comboTD = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
     }
 
@@ -41,6 +105,32 @@ public class HashEquiJoin extends Operator {
         return pred;
     }
 
+    /**
+     * Make this join publish the keys of its build side every time it has
+     * read it, until it is closed, in a filter sized for MAP_SIZE keys.
+     *
+     * @return the filter the keys are published to
+     */
+    public RuntimeFilter publishKeys() {
+        return publishKeys(MAP_SIZE);
+    }
+
+    /**
+     * Make this join publish the keys of its build side every time it has
+     * read it, until it is closed.
+     *
+     * @param expectedKeys
+     *            the number of build tuples expected; more keys only make
+     *            the filter let more rows through
+     * @return the filter the keys are published to
+     */
+    public RuntimeFilter publishKeys(int expectedKeys) {
+        if (runtimeFilter == null)
+            runtimeFilter = new RuntimeFilter();
+        this.expectedKeys = Math.max(1, expectedKeys);
+        return runtimeFilter;
+    }
+
     public TupleDesc getTupleDesc() {
         return comboTD;
     }
@@ -55,28 +145,175 @@ public class HashEquiJoin extends Operator {
 	return this.child2.getTupleDesc().getFieldName(this.pred.getField2());
     }
     
-    final Map<Object, List<Tuple>> map = new HashMap<>();
-    public final static int MAP_SIZE = 20000;
+    /** the hash table of each partition, null if the partition is spilled */
+    transient private TupleHashTable[] tables;
+    transient private SpillFile[] buildSpills;
+    transient private SpillFile[] probeSpills;
+    /** number of build tuples in the hash tables */
+    transient private int inMemory;
+    /** true while child2 is being streamed against the resident partitions */
+    transient private boolean probing;
+    /** the next spilled partition to join, and the join of the current one */
+    transient private int nextSpilled;
+    transient private OpIterator spilledJoin;
+    /** the table and row of the next match of t2, or -1 */
+    transient private TupleHashTable matchTable;
+    transient private int match = -1;
+
+    /** the batch returned by nextBatch() */
+    transient private TupleBatch out;
+    /** the current batch of child2, and the next of its rows to probe */
+    transient private TupleBatch probe;
+    transient private int probeK;
+    /** the position in probe of the row being joined, and its next match */
+    transient private int probeRow;
+    transient private TupleHashTable batchTable;
+    transient private int batchMatch = -1;
+
+    /** the build keys read so far, if they are published */
+    transient private BloomFilter buildKeys;
+
+    /**
+     * @return true if partitions are no longer split further, and the build
+     *   side is instead joined one chunk at a time
+     */
+    private boolean chunked() {
+        return level >= MAX_LEVEL;
+    }
+
+    /**
+     * @return the partition of the key in field i of t; equal keys hash the
+     *   same on both sides since Field.hashCode() of an IntField is its value
+     */
+    private int partition(Tuple t, int i) {
+        if (chunked())
+            return 0;
+        return mix(t.getTupleDesc().getFieldType(i) == Type.INT_TYPE ? t.getInt(i) : t.getField(i).hashCode());
+    }
+
+    /**
+     * @return the partition of the key in field i of the row at position r
+     *   of b, the same as for a tuple with that key
+     */
+    private int partition(TupleBatch b, int r, int i) {
+        if (chunked())
+            return 0;
+        return mix(b.getTupleDesc().getFieldType(i) == Type.INT_TYPE ? b.getInts(i)[r] : b.getStrings(i)[r].hashCode());
+    }
+
+    private int mix(int h) {
+        h ^= level * 0x9e3779b9;
+        h *= 0x85ebca6b;
+        h ^= h >>> 16;
+        return h & (NUM_PARTITIONS - 1);
+    }
 
-    private boolean loadMap() throws DbException, TransactionAbortedException {
-        int cnt = 0;
-        map.clear();
+    /**
+     * Read the build side into the hash tables, spilling partitions when it
+     * does not fit. In chunked mode, read at most memoryBudget tuples.
+     */
+    private void build() throws DbException, TransactionAbortedException {
+        int n = chunked() ? 1 : NUM_PARTITIONS;
+        tables = new TupleHashTable[n];
+        buildSpills = new SpillFile[n];
+        probeSpills = new SpillFile[n];
+        for (int i = 0; i < n; i++)
+            tables[i] = newTable();
+        inMemory = 0;
+        if (runtimeFilter != null)
+            buildKeys = new BloomFilter(expectedKeys);
+        loadBuild();
+        if (runtimeFilter != null) {
+            runtimeFilter.publish(buildKeys);
+            buildKeys = null;
+        }
+        probing = true;
+        nextSpilled = 0;
+    }
+
+    private void addBuildKey(Tuple t, int f) {
+        buildKeys.add(t.getTupleDesc().getFieldType(f) == Type.INT_TYPE
+                ? BloomFilter.hash(t.getInt(f)) : BloomFilter.hash(((StringField) t.getField(f)).getValue()));
+    }
+
+    private TupleHashTable newTable() {
+        int f = pred.getField1();
+        return new TupleHashTable(child1.getTupleDesc().getFieldType(f), f);
+    }
+
+    private void loadBuild() throws DbException, TransactionAbortedException {
         while (child1.hasNext()) {
+            if (chunked() && inMemory >= memoryBudget)
+                return;
             t1 = child1.next();
-            List<Tuple> list = map.computeIfAbsent(t1.getField(pred.getField1()), k -> new ArrayList<>());
-            list.add(t1);
-            if (cnt++ == MAP_SIZE)
-                return true;
+            if (buildKeys != null)
+                addBuildKey(t1, pred.getField1());
+            int p = partition(t1, pred.getField1());
+            if (tables[p] == null) {
+                spill(buildSpills, p, t1, child1.getTupleDesc());
+                continue;
+            }
+            tables[p].add(t1);
+            if (++inMemory > memoryBudget && !chunked())
+                spillLargestPartition();
+        }
+    }
+
+    private void spillLargestPartition() throws DbException {
+        int victim = -1;
+        for (int i = 0; i < tables.length; i++) {
+            if (tables[i] != null && (victim == -1 || tables[i].size() > tables[victim].size()))
+                victim = i;
         }
-        return cnt > 0;
+        TupleHashTable table = tables[victim];
+        for (int row = 0; row < table.size(); row++)
+            spill(buildSpills, victim, table.getRow(row), child1.getTupleDesc());
+        tables[victim] = null;
+        inMemory -= table.size();
+    }
+
+    private void spill(SpillFile[] files, int p, Tuple t, TupleDesc td) throws DbException {
+        try {
+            if (files[p] == null)
+                files[p] = new SpillFile(td);
+            files[p].add(t);
+        } catch (IOException e) {
+            throw new DbException("cannot spill join partition: " + e.getMessage());
+        }
+    }
 
+    private void clearPartitions() {
+        if (spilledJoin != null)
+            spilledJoin.close();
+        spilledJoin = null;
+        for (SpillFile[] files : new SpillFile[][]{buildSpills, probeSpills}) {
+            if (files == null)
+                continue;
+            for (SpillFile f : files) {
+                if (f != null)
+                    f.delete();
+            }
+        }
+        tables = null;
+        buildSpills = null;
+        probeSpills = null;
+        matchTable = null;
+        match = -1;
+        probe = null;
+        batchTable = null;
+        batchMatch = -1;
+        buildKeys = null;
+        // the keys of a previous build may no longer be those of the table
+        if (runtimeFilter != null)
+            runtimeFilter.publish(null);
     }
 
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
+        clearPartitions();
         child1.open();
         child2.open();
-        loadMap();
+        build();
         super.open();
     }
 
@@ -86,17 +323,16 @@ public class HashEquiJoin extends Operator {
         child1.close();
         this.t1=null;
         this.t2=null;
-        this.listIt=null;
-        this.map.clear();
+        clearPartitions();
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
+        clearPartitions();
         child1.rewind();
         child2.rewind();
+        build();
     }
 
-    transient Iterator<Tuple> listIt = null;
-
     /**
      * Returns the next tuple generated by the join, or null if there are no
      * more tuples. Logically, this is the next tuple in r1 cross r2 that
@@ -115,8 +351,9 @@ public class HashEquiJoin extends Operator {
      * @return The next matching tuple.
      * @see JoinPredicate#filter
      */
-    private Tuple processList() {
-        t1 = listIt.next();
+    private Tuple processMatch() {
+        t1 = matchTable.getRow(match);
+        match = matchTable.next(match);
 
         int td1n = t1.getTupleDesc().numFields();
         int td2n = t2.getTupleDesc().numFields();
@@ -132,32 +369,124 @@ public class HashEquiJoin extends Operator {
     }
 
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
-        if (listIt != null && listIt.hasNext()) {
-            return processList();
-        }
-
-        // loop around child2
-        while (child2.hasNext()) {
-            t2 = child2.next();
+        while (probing) {
+            if (match != -1) {
+                return processMatch();
+            }
 
-            // if match, create a combined tuple and fill it with the values
-            // from both tuples
-            List<Tuple> l = map.get(t2.getField(pred.getField2()));
-            if (l == null)
+            // loop around child2
+            while (child2.hasNext()) {
+                t2 = child2.next();
+                int p = partition(t2, pred.getField2());
+                if (tables[p] == null) {
+                    spill(probeSpills, p, t2, child2.getTupleDesc());
+                    continue;
+                }
+                // if match, create a combined tuple and fill it with the values
+                // from both tuples
+                match = tables[p].first(t2, pred.getField2());
+                if (match != -1) {
+                    matchTable = tables[p];
+                    break;
+                }
+            }
+            if (match != -1)
                 continue;
-            listIt = l.iterator();
 
-            return processList();
+            // child2 is done: in chunked mode, join the next chunk of child1
+            if (chunked() && child1.hasNext()) {
+                tables[0] = newTable();
+                inMemory = 0;
+                loadBuild();
+                child2.rewind();
+                continue;
+            }
+            probing = false;
+        }
 
+        // join the spilled partitions pairwise
+        while (spilledJoin == null || !spilledJoin.hasNext()) {
+            if (spilledJoin != null) {
+                spilledJoin.close();
+                spilledJoin = null;
+                buildSpills[nextSpilled - 1].delete();
+                probeSpills[nextSpilled - 1].delete();
+            }
+            while (nextSpilled < tables.length
+                    && (buildSpills[nextSpilled] == null || probeSpills[nextSpilled] == null))
+                nextSpilled++;
+            if (nextSpilled == tables.length)
+                return null;
+            spilledJoin = new HashEquiJoin(pred, buildSpills[nextSpilled].iterator(),
+                    probeSpills[nextSpilled].iterator(), memoryBudget, level + 1);
+            nextSpilled++;
+            spilledJoin.open();
         }
+        return spilledJoin.next();
+    }
 
-        // child2 is done: advance child1
-        child2.rewind();
-        if (loadMap()) {
-            return fetchNext();
+    /**
+     * @return true if every partition of the build side is in memory, so
+     *   the whole join is done while streaming child2
+     */
+    private boolean resident() {
+        if (chunked())
+            return false;
+        for (SpillFile f : buildSpills) {
+            if (f != null)
+                return false;
         }
+        return true;
+    }
 
-        return null;
+    /**
+     * Probes a batch of child2 at a time when the build side is resident;
+     * otherwise joins tuple by tuple. Must not be mixed with next().
+     */
+    @Override
+    public TupleBatch nextBatch() throws TransactionAbortedException, DbException {
+        if (!probing || !resident())
+            return super.nextBatch();
+        if (out == null)
+            out = new TupleBatch(comboTD);
+        out.clear();
+        TupleDesc td1 = child1.getTupleDesc();
+        int n1 = td1.numFields();
+        int n2 = child2.getTupleDesc().numFields();
+        int f2 = pred.getField2();
+        while (!out.isFull()) {
+            if (batchMatch == -1) {
+                if (probe == null || probeK == probe.size()) {
+                    probe = child2.nextBatch();
+                    probeK = 0;
+                    if (probe == null) {
+                        probing = false;
+                        break;
+                    }
+                }
+                probeRow = probe.row(probeK++);
+                batchTable = tables[partition(probe, probeRow, f2)];
+                batchMatch = batchTable.first(probe, probeRow, f2);
+                continue;
+            }
+            int o = out.addRow();
+            Tuple left = batchTable.getRow(batchMatch);
+            for (int i = 0; i < n1; i++) {
+                if (td1.getFieldType(i) == Type.INT_TYPE)
+                    out.getInts(i)[o] = left.getInt(i);
+                else
+                    out.getStrings(i)[o] = ((StringField) left.getField(i)).getValue();
+            }
+            for (int i = 0; i < n2; i++) {
+                int[] ints = probe.getInts(i);
+                if (ints != null)
+                    out.getInts(n1 + i)[o] = ints[probeRow];
+                else
+                    out.getStrings(n1 + i)[o] = probe.getStrings(i)[probeRow];
+            }
+            batchMatch = batchTable.next(batchMatch);
+        }
+        return out.size() > 0 ? out : null;
     }
 
     @Override
@@ -0,0 +1,26 @@
+package simpledb.execution;
+
+import simpledb.transaction.TransactionId;
+
+import java.util.List;
+
+/**
+ * IndexAntiJoin returns the tuples of its child that have no match in a
+ * table stored in a B+ tree keyed on the join field, stopping the search of
+ * each outer tuple at its first match.
+ *
+ * @see IndexSemiJoin
+ * @see AntiJoin
+ */
+public class IndexAntiJoin extends IndexSemiJoin {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @see IndexSemiJoin#IndexSemiJoin(JoinPredicate, OpIterator, TransactionId, int, List)
+     */
+    public IndexAntiJoin(JoinPredicate p, OpIterator child, TransactionId tid, int tableid,
+                         List<Predicate> innerFilters) {
+        super(p, child, tid, tableid, innerFilters, true);
+    }
+}
@@ -0,0 +1,227 @@
+package simpledb.execution;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.index.BTreeFile;
+import simpledb.storage.DbFile;
+import simpledb.storage.DbFileIterator;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+import java.util.*;
+
+/**
+ * IndexNestedLoopJoin joins its child with a table stored in a B+ tree that
+ * is keyed on the join field of the table. For every outer tuple the tree
+ * is searched with {@link BTreeFile#indexIterator} for the inner tuples
+ * that satisfy the join predicate, so only the leaves holding matches (and
+ * the internal pages leading to them) are read, instead of the whole table.
+ * <p>
+ * Inner tuples may additionally be filtered by predicates on the table,
+ * which are applied to each tuple returned by the index.
+ */
+public class IndexNestedLoopJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final JoinPredicate p;
+    private OpIterator child1;
+    private final TransactionId tid;
+    private final BTreeFile file;
+    private final String tableAlias;
+    private final List<Predicate> innerFilters;
+    private final TupleDesc innerTd;
+    private TupleDesc td;
+
+    /** the current outer tuple and the index search for its matches */
+    private transient Tuple t1;
+    private transient DbFileIterator probe;
+
+    /**
+     * Constructor.
+     *
+     * @param p
+     *            The predicate to join on; field2 indexes the fields of the
+     *            table and must be its key field
+     * @param child1
+     *            Iterator for the left(outer) relation to join
+     * @param tid
+     *            The transaction the index is searched in
+     * @param tableid
+     *            The inner table, which must be a BTreeFile
+     * @param tableAlias
+     *            The alias of the inner table, used to name its fields as
+     *            SeqScan does
+     * @throws IllegalArgumentException if the table is not a B+ tree keyed
+     *   on field2 of p, or the operator of p cannot be answered by the index
+     */
+    public IndexNestedLoopJoin(JoinPredicate p, OpIterator child1, TransactionId tid, int tableid,
+                               String tableAlias) {
+        this(p, child1, tid, tableid, tableAlias, Collections.emptyList());
+    }
+
+    /**
+     * Constructor with additional predicates on the inner table.
+     *
+     * @param innerFilters
+     *            predicates on the fields of the inner table that its tuples
+     *            must satisfy as well
+     */
+    public IndexNestedLoopJoin(JoinPredicate p, OpIterator child1, TransactionId tid, int tableid,
+                               String tableAlias, List<Predicate> innerFilters) {
+        DbFile f = Database.getCatalog().getDatabaseFile(tableid);
+        if (!canProbe(f, p.getField2(), p.getOperator()))
+            throw new IllegalArgumentException("table " + tableid + " has no usable index on field "
+                    + p.getField2() + " for " + p.getOperator());
+        this.p = p;
+        this.child1 = child1;
+        this.tid = tid;
+        this.file = (BTreeFile) f;
+        this.tableAlias = tableAlias;
+        this.innerFilters = new ArrayList<>(innerFilters);
+        Type[] types = new Type[f.getTupleDesc().numFields()];
+        String[] names = new String[types.length];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = f.getTupleDesc().getFieldType(i);
+            names[i] = tableAlias + "." + f.getTupleDesc().getFieldName(i);
+        }
+        this.innerTd = new TupleDesc(types, names);
+        this.td = TupleDesc.merge(child1.getTupleDesc(), innerTd);
+    }
+
+    /**
+     * @return true if f is a B+ tree keyed on the given field, and the index
+     *   can find the tuples joining with an outer tuple under op
+     */
+    public static boolean canProbe(DbFile f, int field, Predicate.Op op) {
+        return f instanceof BTreeFile && ((BTreeFile) f).keyField() == field
+                && op != Predicate.Op.NOT_EQUALS && op != Predicate.Op.LIKE;
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return p;
+    }
+
+    public String getJoinField1Name() {
+        return child1.getTupleDesc().getFieldName(p.getField1());
+    }
+
+    public String getJoinField2Name() {
+        return innerTd.getFieldName(p.getField2());
+    }
+
+    /**
+     * @return the name of the inner table in the catalog
+     */
+    public String getTableName() {
+        return Database.getCatalog().getTableName(file.getId());
+    }
+
+    /**
+     * @return the alias of the inner table
+     */
+    public String getAlias() {
+        return tableAlias;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * @return the operator the key of an inner tuple must satisfy against
+     *   the join field of the outer tuple: the join predicate reads
+     *   "outer op inner", the index predicate "inner op' outer"
+     */
+    static Predicate.Op flip(Predicate.Op op) {
+        switch (op) {
+            case LESS_THAN:
+                return Predicate.Op.GREATER_THAN;
+            case LESS_THAN_OR_EQ:
+                return Predicate.Op.GREATER_THAN_OR_EQ;
+            case GREATER_THAN:
+                return Predicate.Op.LESS_THAN;
+            case GREATER_THAN_OR_EQ:
+                return Predicate.Op.LESS_THAN_OR_EQ;
+            default:
+                return op;
+        }
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child1.open();
+        t1 = null;
+        super.open();
+    }
+
+    private void closeProbe() {
+        if (probe != null)
+            probe.close();
+        probe = null;
+    }
+
+    public void close() {
+        super.close();
+        child1.close();
+        closeProbe();
+        t1 = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        closeProbe();
+        child1.rewind();
+        t1 = null;
+    }
+
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        while (true) {
+            if (probe != null) {
+                while (probe.hasNext()) {
+                    Tuple t2 = probe.next();
+                    if (passes(t2))
+                        return merge(t1, t2);
+                }
+                closeProbe();
+            }
+            if (!child1.hasNext())
+                return null;
+            t1 = child1.next();
+            IndexPredicate ipred = new IndexPredicate(flip(p.getOperator()), t1.getField(p.getField1()));
+            probe = file.indexIterator(tid, ipred);
+            probe.open();
+        }
+    }
+
+    private boolean passes(Tuple t) {
+        for (Predicate f : innerFilters) {
+            if (!f.filter(t))
+                return false;
+        }
+        return true;
+    }
+
+    private Tuple merge(Tuple outer, Tuple inner) {
+        Tuple t = new Tuple(td);
+        int n1 = outer.getTupleDesc().numFields();
+        for (int i = 0; i < n1; i++)
+            t.setField(i, outer.getField(i));
+        for (int i = 0; i < inner.getTupleDesc().numFields(); i++)
+            t.setField(n1 + i, inner.getField(i));
+        return t;
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[]{child1};
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child1 = children[0];
+        this.td = TupleDesc.merge(child1.getTupleDesc(), innerTd);
+    }
+}
@@ -0,0 +1,154 @@
+package simpledb.execution;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.index.BTreeFile;
+import simpledb.storage.DbFile;
+import simpledb.storage.DbFileIterator;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+import java.util.*;
+
+/**
+ * IndexSemiJoin returns the tuples of its child that have at least one
+ * match in a table stored in a B+ tree keyed on the join field, like
+ * {@link SemiJoin}. For every outer tuple the tree is searched as
+ * {@link IndexNestedLoopJoin} does, but the search stops at the first inner
+ * tuple that passes the filters on the table, and the outer tuple is
+ * returned alone.
+ *
+ * @see IndexAntiJoin
+ */
+public class IndexSemiJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final JoinPredicate p;
+    private OpIterator child;
+    private final TransactionId tid;
+    private final BTreeFile file;
+    private final List<Predicate> innerFilters;
+    /** true to return the outer tuples without a match instead */
+    private final boolean anti;
+
+    /**
+     * @param p
+     *            The predicate to join on; field2 indexes the fields of the
+     *            table and must be its key field
+     * @param child
+     *            the tuples to return
+     * @param tid
+     *            The transaction the index is searched in
+     * @param tableid
+     *            The inner table, which must be a BTreeFile
+     * @param innerFilters
+     *            predicates on the fields of the inner table that a match
+     *            must satisfy as well
+     * @throws IllegalArgumentException if the table is not a B+ tree keyed
+     *   on field2 of p, or the operator of p cannot be answered by the index
+     */
+    public IndexSemiJoin(JoinPredicate p, OpIterator child, TransactionId tid, int tableid,
+                         List<Predicate> innerFilters) {
+        this(p, child, tid, tableid, innerFilters, false);
+    }
+
+    IndexSemiJoin(JoinPredicate p, OpIterator child, TransactionId tid, int tableid,
+                  List<Predicate> innerFilters, boolean anti) {
+        DbFile f = Database.getCatalog().getDatabaseFile(tableid);
+        if (!IndexNestedLoopJoin.canProbe(f, p.getField2(), p.getOperator()))
+            throw new IllegalArgumentException("table " + tableid + " has no usable index on field "
+                    + p.getField2() + " for " + p.getOperator());
+        this.p = p;
+        this.child = child;
+        this.tid = tid;
+        this.file = (BTreeFile) f;
+        this.innerFilters = new ArrayList<>(innerFilters);
+        this.anti = anti;
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return p;
+    }
+
+    /**
+     * @return true if this returns the outer tuples without a match
+     */
+    public boolean isAnti() {
+        return anti;
+    }
+
+    /**
+     * @return the name of the inner table in the catalog
+     */
+    public String getTableName() {
+        return Database.getCatalog().getTableName(file.getId());
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void open() throws DbException, NoSuchElementException, TransactionAbortedException {
+        child.open();
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        child.close();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+    }
+
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        while (child.hasNext()) {
+            Tuple t = child.next();
+            if (hasMatch(t) != anti)
+                return t;
+        }
+        return null;
+    }
+
+    /**
+     * @return true if the index holds an inner tuple joining with t that
+     *   passes the filters; the search stops at the first one
+     */
+    private boolean hasMatch(Tuple t) throws TransactionAbortedException, DbException {
+        IndexPredicate ipred = new IndexPredicate(IndexNestedLoopJoin.flip(p.getOperator()),
+                t.getField(p.getField1()));
+        DbFileIterator probe = file.indexIterator(tid, ipred);
+        probe.open();
+        try {
+            while (probe.hasNext()) {
+                if (passes(probe.next()))
+                    return true;
+            }
+            return false;
+        } finally {
+            probe.close();
+        }
+    }
+
+    private boolean passes(Tuple t) {
+        for (Predicate f : innerFilters) {
+            if (!f.filter(t))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[]{child};
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child = children[0];
+    }
+}
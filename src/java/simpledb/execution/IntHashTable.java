@@ -0,0 +1,130 @@
+package simpledb.execution;
+
+import simpledb.storage.Field;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleBatch;
+
+import java.util.Arrays;
+
+/**
+ * IntHashTable maps int keys to dense ids without boxing. It is an
+ * open-addressing table with linear probing: the keys and their ids are
+ * kept in two parallel int arrays, and the key of each id in a third, so a
+ * lookup is a few array reads and no pointer chasing.
+ */
+public class IntHashTable implements KeyIndex {
+
+    private static final int EMPTY = -1;
+
+    /** key in each slot; only meaningful where ids[slot] != EMPTY */
+    private int[] slotKeys;
+    /** id of the key in each slot, or EMPTY */
+    private int[] slotIds;
+    /** key of each id */
+    private int[] keys;
+    private int size;
+    private int mask;
+
+    public IntHashTable() {
+        this(16);
+    }
+
+    /**
+     * @param expected the number of distinct keys expected; the table grows
+     *                 past it if needed
+     */
+    public IntHashTable(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) << 1;
+        slotKeys = new int[capacity];
+        slotIds = new int[capacity];
+        Arrays.fill(slotIds, EMPTY);
+        keys = new int[Math.max(expected, 8)];
+        mask = capacity - 1;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return the id of key, assigning the next id if it is not in the table
+     */
+    public int put(int key) {
+        int slot = hash(key) & mask;
+        while (slotIds[slot] != EMPTY) {
+            if (slotKeys[slot] == key)
+                return slotIds[slot];
+            slot = (slot + 1) & mask;
+        }
+        int id = size++;
+        slotKeys[slot] = key;
+        slotIds[slot] = id;
+        if (id == keys.length)
+            keys = Arrays.copyOf(keys, keys.length * 2);
+        keys[id] = key;
+        if (size * 2 > slotIds.length)
+            grow();
+        return id;
+    }
+
+    /**
+     * @return the id of key, or -1 if it is not in the table
+     */
+    public int get(int key) {
+        int slot = hash(key) & mask;
+        while (slotIds[slot] != EMPTY) {
+            if (slotKeys[slot] == key)
+                return slotIds[slot];
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the key that was given the id
+     */
+    public int getKey(int id) {
+        return keys[id];
+    }
+
+    private void grow() {
+        int capacity = slotIds.length * 2;
+        slotKeys = new int[capacity];
+        slotIds = new int[capacity];
+        Arrays.fill(slotIds, EMPTY);
+        mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hash(keys[id]) & mask;
+            while (slotIds[slot] != EMPTY)
+                slot = (slot + 1) & mask;
+            slotKeys[slot] = keys[id];
+            slotIds[slot] = id;
+        }
+    }
+
+    public int put(Tuple t, int i) {
+        return put(t.getInt(i));
+    }
+
+    public int get(Tuple t, int i) {
+        return get(t.getInt(i));
+    }
+
+    public int put(TupleBatch b, int r, int i) {
+        return put(b.getInts(i)[r]);
+    }
+
+    public int get(TupleBatch b, int r, int i) {
+        return get(b.getInts(i)[r]);
+    }
+
+    public Field getField(int id) {
+        return new IntField(keys[id]);
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -1,30 +1,33 @@
 package simpledb.execution;
 
-import simpledb.common.DbException;
 import simpledb.common.Type;
-import simpledb.storage.Field;
 import simpledb.storage.IntField;
 import simpledb.storage.Tuple;
+import simpledb.storage.TupleBatch;
 import simpledb.storage.TupleDesc;
-import simpledb.transaction.TransactionAbortedException;
+import simpledb.storage.TupleIterator;
 
 import java.util.*;
 
-import static simpledb.execution.Aggregator.Op.MAX;
-import static simpledb.execution.Aggregator.Op.MIN;
-
 /**
  * Knows how to compute some aggregate over a set of IntFields.
+ * <p>
+ * Tuples are not kept: each one is folded into the primitive accumulators
+ * of its group as it is merged, and {@link #iterator()} finalizes the
+ * aggregate of every group. Memory is proportional to the number of groups.
  */
 public class IntegerAggregator implements Aggregator {
 
     private static final long serialVersionUID = 1L;
 
-    List<Tuple> tuples;
     int gbfield;
     Type gbfieldtype;
     int afield;
     Op what;
+    /** the group ids, or null if there is no grouping */
+    private final KeyIndex groups;
+    private final Accumulators acc = new Accumulators();
+
     /**
      * Aggregate constructor
      * 
@@ -38,15 +41,18 @@ public class IntegerAggregator implements Aggregator {
      *            the 0-based index of the aggregate field in the tuple
      * @param what
      *            the aggregation operator
+     *            the aggregation operator. For SC_AVG, afield and the field
+     *            after it hold the high and low words of partial sums, and
+     *            the field after those the matching counts, as returned by
+     *            SUM_COUNT.
      */
 
     public IntegerAggregator(int gbfield, Type gbfieldtype, int afield, Op what) {
-        // some code goes here
         this.afield = afield;
         this.gbfield = gbfield;
         this.gbfieldtype = gbfieldtype;
         this.what = what;
-        tuples = new ArrayList<>();
+        this.groups = gbfield == NO_GROUPING ? null : KeyIndex.forType(gbfieldtype);
     }
 
     /**
@@ -57,213 +63,114 @@ public class IntegerAggregator implements Aggregator {
      *            the Tuple containing an aggregate field and a group-by field
      */
     public void mergeTupleIntoGroup(Tuple tup) {
-        // some code goes here
-        tuples.add(tup);
-
+        int id = groups == null ? 0 : groups.put(tup, gbfield);
+        if (what == Op.SC_AVG)
+            acc.addSumCount(id, sum(tup.getInt(afield), tup.getInt(afield + 1)), tup.getInt(afield + 2));
+        else
+            acc.add(id, tup.getInt(afield));
     }
 
-    /**
-     * Create a OpIterator over group aggregate results.
-     * 
-     * @return a OpIterator whose tuples are the pair (groupVal, aggregateVal)
-     *         if using group, or a single (aggregateVal) if no grouping. The
-     *         aggregateVal is determined by the type of aggregate specified in
-     *         the constructor.
-     */
-    public OpIterator iterator() {
-        if(gbfield == Aggregator.NO_GROUPING){
-
-            if(what==MIN) {
-                int min = Integer.parseInt(tuples.get(0).getField(afield).toString());
-                for (Tuple tuple : tuples) {
-                    min = Math.min(min, Integer.parseInt(tuple.getField(afield).toString()));
-                }
-                TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE});
-                Tuple tuple = new Tuple(td);
-                tuple.setField(0, new IntField(min));
-                return new IAIterator(tuple);
-            }else if(what == MAX) {
-                int max = Integer.parseInt(tuples.get(0).getField(afield).toString());
-                for (Tuple tuple : tuples) {
-                    max = Math.max(max, Integer.parseInt(tuple.getField(afield).toString()));
-                }
-                TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE});
-                Tuple tuple = new Tuple(td);
-                tuple.setField(0, new IntField(max));
-                return new IAIterator(tuple);
-            }else if(what == Op.AVG){
-                int sum = 0;
-                int count = 0;
-                for (Tuple tuple : tuples) {
-                    count++;
-                    sum += Integer.parseInt(tuple.getField(afield).toString());
-                }
-                TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE});
-                Tuple tuple = new Tuple(td);
-                tuple.setField(0, new IntField(sum/count));
-                return new IAIterator(tuple);
-            }else if(what == Op.COUNT){
-
-                int count = 0;
-                for (Tuple tuple : tuples) {
-                    count++;
-                }
-                TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE});
-                Tuple tuple = new Tuple(td);
-                tuple.setField(0, new IntField(count));
-                return new IAIterator(tuple);
-            }else if(what == Op.SUM){
-                int sum = 0;
-
-                for (Tuple tuple : tuples) {
-
-                    sum += Integer.parseInt(tuple.getField(afield).toString());
-                }
-                TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE});
-                Tuple tuple = new Tuple(td);
-                tuple.setField(0, new IntField(sum));
-                return new IAIterator(tuple);
-            }else{
-                System.out.println("不支持的运算符");
-                return null;
-            }
-        }else{
-
-            Map<String,List<Tuple>> map = new HashMap<>();
+    public int numGroups() {
+        return acc.size();
+    }
 
-            for (Tuple tuple : tuples) {
-                Field field = tuple.getField(gbfield);
-                if(map.get(field.toString())==null){
-                    List<Tuple> ls = new ArrayList<>();
-                    ls.add(tuple);
-                    map.put(field.toString(),ls);
-                }else{
-                    List<Tuple> tuples = map.get(field.toString());
-                    tuples.add(tuple);
-                    map.put(field.toString(),tuples);
-                }
-            }
-            List<Tuple> tuples = new ArrayList<>();
-            for (List<Tuple> value : map.values()) {
-                Tuple aggregate = aggregate(value);
-                tuples.add(aggregate);
-            }
-            return new IAIterator(tuples);
-        }
+    public boolean hasGroup(Tuple tup) {
+        if (groups == null)
+            return acc.size() > 0;
+        return groups.get(tup, gbfield) != -1;
     }
-    public Tuple aggregate(List<Tuple> tuples){
-        Field groupField = tuples.get(0).getField(gbfield);
-        if(what==MIN) {
-            int min = Integer.parseInt(tuples.get(0).getField(afield).toString());
-            for (Tuple tuple : tuples) {
-                min = Math.min(min, Integer.parseInt(tuple.getField(afield).toString()));
-            }
-            TupleDesc td = new TupleDesc(new Type[]{gbfieldtype,Type.INT_TYPE});
-            Tuple tuple = new Tuple(td);
-            tuple.setField(1, new IntField(min));
-            tuple.setField(0,groupField);
-            return tuple;
-        }else if(what == MAX) {
-            int max = Integer.parseInt(tuples.get(0).getField(afield).toString());
-            for (Tuple tuple : tuples) {
-                max = Math.max(max, Integer.parseInt(tuple.getField(afield).toString()));
-            }
-            TupleDesc td = new TupleDesc(new Type[]{gbfieldtype,Type.INT_TYPE});
-            Tuple tuple = new Tuple(td);
-            tuple.setField(1, new IntField(max));
-            tuple.setField(0,groupField);
-            return tuple;
-        }else if(what == Op.AVG){
-            int sum = 0;
-            int count = 0;
-            for (Tuple tuple : tuples) {
-                count++;
-                sum += Integer.parseInt(tuple.getField(afield).toString());
-            }
-            TupleDesc td = new TupleDesc(new Type[]{gbfieldtype,Type.INT_TYPE});
-            Tuple tuple = new Tuple(td);
-            tuple.setField(1, new IntField(sum/count));
-            tuple.setField(0,groupField);
-            return tuple;
-        }else if(what == Op.COUNT){
 
-            int count = 0;
-            for (Tuple tuple : tuples) {
-                count++;
+    public void mergeBatch(TupleBatch b, int maxGroups) {
+        int[] sel = b.getSelection();
+        int n = b.size();
+        int[] vals = b.getInts(afield);
+        int[] lows = what == Op.SC_AVG ? b.getInts(afield + 1) : null;
+        int[] counts = what == Op.SC_AVG ? b.getInts(afield + 2) : null;
+        int m = 0;
+        if (groups == null) {
+            for (int k = 0; k < n; k++) {
+                int r = sel[k];
+                if (counts != null)
+                    acc.addSumCount(0, sum(vals[r], lows[r]), counts[r]);
+                else
+                    acc.add(0, vals[r]);
             }
-            TupleDesc td = new TupleDesc(new Type[]{gbfieldtype,Type.INT_TYPE});
-            Tuple tuple = new Tuple(td);
-            tuple.setField(1, new IntField(count));
-            tuple.setField(0,groupField);
-            return tuple;
-        }else if(what == Op.SUM){
-            int sum = 0;
-
-            for (Tuple tuple : tuples) {
-
-                sum += Integer.parseInt(tuple.getField(afield).toString());
+        } else {
+            for (int k = 0; k < n; k++) {
+                int r = sel[k];
+                int id = groups.size() < maxGroups ? groups.put(b, r, gbfield) : groups.get(b, r, gbfield);
+                if (id < 0)
+                    sel[m++] = r;
+                else if (counts != null)
+                    acc.addSumCount(id, sum(vals[r], lows[r]), counts[r]);
+                else
+                    acc.add(id, vals[r]);
             }
-            TupleDesc td = new TupleDesc(new Type[]{gbfieldtype,Type.INT_TYPE});
-            Tuple tuple = new Tuple(td);
-            tuple.setField(1, new IntField(sum));
-            tuple.setField(0,groupField);
-            return tuple;
-        }else{
-            System.out.println("不支持的运算符");
-            return null;
         }
+        b.setSelected(m);
     }
 
-    class IAIterator implements OpIterator{
-        List<Tuple> tuples;
-        Iterator<Tuple> it;
-        IAIterator(Tuple t){
-            tuples = new ArrayList<>();
-            tuples.add(t);
-        }
-
-        IAIterator(List<Tuple> ts){
-            tuples = ts;
-        }
-
-
-        @Override
-        public void open() throws DbException, TransactionAbortedException {
-            it = tuples.iterator();
-        }
+    /**
+     * @return the partial sum whose high and low words SUM_COUNT returned
+     */
+    private static long sum(int high, int low) {
+        return ((long) high << 32) | (low & 0xffffffffL);
+    }
 
-        @Override
-        public boolean hasNext() throws DbException, TransactionAbortedException {
-            if(it == null){
-                return false;
-            }
-            return it.hasNext();
+    /**
+     * @return the TupleDesc of the tuples returned by {@link #iterator()}:
+     *   the group value if there is grouping, then the aggregate value, or
+     *   for SUM_COUNT the high and low words of the sum and the count, so
+     *   that the sum is not truncated to an int
+     */
+    public TupleDesc getTupleDesc() {
+        List<Type> types = new ArrayList<>();
+        if (gbfield != NO_GROUPING)
+            types.add(gbfieldtype);
+        types.add(Type.INT_TYPE);
+        if (what == Op.SUM_COUNT) {
+            types.add(Type.INT_TYPE);
+            types.add(Type.INT_TYPE);
         }
+        return new TupleDesc(types.toArray(new Type[0]));
+    }
 
-        @Override
-        public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
-            if(it == null){
-                return null;
+    /**
+     * Create a OpIterator over group aggregate results.
+     * 
+     * @return a OpIterator whose tuples are the pair (groupVal, aggregateVal)
+     *         if using group, or a single (aggregateVal) if no grouping. The
+     *         aggregateVal is determined by the type of aggregate specified in
+     *         the constructor.
+     */
+    public OpIterator iterator() {
+        TupleDesc td = getTupleDesc();
+        List<Tuple> res = new ArrayList<>(acc.size());
+        int a = groups == null ? 0 : 1;
+        for (int id = 0; id < acc.size(); id++) {
+            // only partial states of empty ungrouped input were merged
+            if (what == Op.SC_AVG && acc.getCount(id) == 0)
+                continue;
+            Tuple t = new Tuple(td);
+            if (groups != null)
+                t.setField(0, groups.getField(id));
+            if (what == Op.SUM_COUNT) {
+                long sum = acc.getSum(id);
+                t.setField(a, new IntField((int) (sum >>> 32)));
+                t.setField(a + 1, new IntField((int) sum));
+                t.setField(a + 2, new IntField(acc.getCount(id)));
+            } else {
+                t.setField(a, new IntField(acc.get(id, what)));
             }
-            return it.next();
-        }
-
-        @Override
-        public void rewind() throws DbException, TransactionAbortedException {
-            it = tuples.iterator();
-        }
-
-        @Override
-        public TupleDesc getTupleDesc() {
-            return tuples.get(0).getTupleDesc();
+            res.add(t);
         }
-
-        @Override
-        public void close() {
-            it = null;
+        if (groups == null && res.isEmpty() && (what == Op.COUNT || what == Op.SUM || what == Op.SUM_COUNT)) {
+            // an ungrouped count or sum of nothing is still 0
+            Tuple t = new Tuple(td);
+            for (int i = 0; i < td.numFields(); i++)
+                t.setField(i, new IntField(0));
+            res.add(t);
         }
+        return new TupleIterator(td, res);
     }
-
-
-
 }
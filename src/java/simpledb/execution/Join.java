@@ -1,7 +1,6 @@
 package simpledb.execution;
 
 import simpledb.common.Type;
-import simpledb.storage.Field;
 import simpledb.transaction.TransactionAbortedException;
 import simpledb.common.DbException;
 import simpledb.storage.Tuple;
@@ -11,22 +10,33 @@ import java.util.*;
 
 /**
  * The Join operator implements the relational join operation.
+ * <p>
+ * It is a block nested-loop join: a block of up to blockSize tuples of the
+ * outer (left) child is buffered, the inner (right) child is streamed past
+ * it, and the inner child is rewound for the next block. Only one block is
+ * held in memory and results are produced as they are found, so the first
+ * tuple comes out after reading one block rather than the whole join.
  */
 public class Join extends Operator {
 
     private static final long serialVersionUID = 1L;
 
+    /** default number of outer tuples buffered per block */
+    public static final int DEFAULT_BLOCK_SIZE = 4096;
+
     private JoinPredicate p;
     private OpIterator child1;
     private OpIterator child2;
+    private final int blockSize;
 
-    private final List<Tuple> child1Tups = new ArrayList<>();
-    private final List<Tuple> child2Tups = new ArrayList<>();
-    private final List<Tuple> tups = new ArrayList<>();
+    /** the current block of outer tuples */
+    private final List<Tuple> block = new ArrayList<>();
+    /** the current inner tuple, or null if the next one has to be read */
+    private Tuple inner;
+    /** the next position in block to compare inner against */
+    private int blockPos;
+    private TupleDesc td;
 
-    Iterator<Tuple> child1It;
-    Iterator<Tuple> child2It;
-    Iterator<Tuple> it;
     /**
      * Constructor. Accepts two children to join and the predicate to join them
      * on
@@ -39,11 +49,30 @@ public class Join extends Operator {
      *            Iterator for the right(inner) relation to join
      */
     public Join(JoinPredicate p, OpIterator child1, OpIterator child2) {
-        // some code goes here
+        this(p, child1, child2, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Constructor with an explicit block size.
+     *
+     * @param blockSize
+     *            the number of outer tuples to buffer per pass over the
+     *            inner relation
+     */
+    public Join(JoinPredicate p, OpIterator child1, OpIterator child2, int blockSize) {
+        if (blockSize < 1)
+            throw new IllegalArgumentException("block size must be positive");
         this.p = p;
         this.child1 = child1;
         this.child2 = child2;
+        this.blockSize = blockSize;
+    }
 
+    /**
+     * @return the number of outer tuples buffered per block
+     */
+    public int getBlockSize() {
+        return blockSize;
     }
 
     public JoinPredicate getJoinPredicate() {
@@ -97,53 +126,42 @@ public class Join extends Operator {
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         // some code goes here
-
         child1.open();
         child2.open();
-        while (child1.hasNext()){
-            child1Tups.add(child1.next());
-        }
-        while (child2.hasNext()){
-            child2Tups.add(child2.next());
-        }
-        child1It = child1Tups.iterator();
-        child2It = child2Tups.iterator();
-        while (child1It.hasNext()){
-            Tuple next1 = child1It.next();
-            while (child2It.hasNext()){
-                Tuple next2 = child2It.next();
-                if(p.filter(next1,next2)){
-                    Tuple t = new Tuple(getTupleDesc());
-                    int i = 0;
-                    Iterator<Field> fields1 = next1.fields();
-                    while (fields1.hasNext()){
-                        t.setField(i,fields1.next());
-                        i++;
-                    }
+        td = getTupleDesc();
+        fillBlock();
+        super.open();
+    }
 
-                    Iterator<Field> fields2 = next2.fields();
-                    while (fields2.hasNext()){
-                        t.setField(i,fields2.next());
-                        i++;
-                    }
-                    tups.add(t);
-                }
-            }
-            child2It = child2Tups.iterator();
+    /**
+     * Read the next block of outer tuples.
+     *
+     * @return false if the outer child is exhausted
+     */
+    private boolean fillBlock() throws DbException, TransactionAbortedException {
+        block.clear();
+        while (block.size() < blockSize && child1.hasNext()) {
+            block.add(child1.next().materialize());
         }
-        it = tups.iterator();
-        super.open();
+        inner = null;
+        blockPos = 0;
+        return !block.isEmpty();
     }
 
     public void close() {
         // some code goes here
         super.close();
-        it = null;
+        child1.close();
+        child2.close();
+        block.clear();
+        inner = null;
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
         // some code goes here
-        it = tups.iterator();
+        child1.rewind();
+        child2.rewind();
+        fillBlock();
     }
 
     /**
@@ -166,12 +184,37 @@ public class Join extends Operator {
      */
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
         // some code goes here
-        if (it.hasNext()){
-            return it.next();
+        while (!block.isEmpty()) {
+            if (inner != null) {
+                while (blockPos < block.size()) {
+                    Tuple outer = block.get(blockPos++);
+                    if (p.filter(outer, inner)) {
+                        return merge(outer, inner);
+                    }
+                }
+            }
+            if (child2.hasNext()) {
+                inner = child2.next();
+                blockPos = 0;
+            } else if (fillBlock()) {
+                child2.rewind();
+            }
         }
         return null;
     }
 
+    private Tuple merge(Tuple t1, Tuple t2) {
+        Tuple t = new Tuple(td);
+        int n1 = t1.getTupleDesc().numFields();
+        for (int i = 0; i < n1; i++) {
+            t.setField(i, t1.getField(i));
+        }
+        for (int i = 0; i < t2.getTupleDesc().numFields(); i++) {
+            t.setField(n1 + i, t2.getField(i));
+        }
+        return t;
+    }
+
     @Override
     public OpIterator[] getChildren() {
         // some code goes here
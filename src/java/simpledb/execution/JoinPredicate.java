@@ -1,6 +1,5 @@
 package simpledb.execution;
 
-import simpledb.storage.Field;
 import simpledb.storage.Tuple;
 
 import java.io.Serializable;
@@ -48,9 +47,7 @@ public class JoinPredicate implements Serializable {
      */
     public boolean filter(Tuple t1, Tuple t2) {
         // some code goes here
-        Field f1 = t1.getField(field1);
-        Field f2 = t2.getField(field2);
-        return f1.compare(op,f2);
+        return t1.getTupleDesc().getFieldType(field1).compare(op, t1, field1, t2, field2);
     }
     
     public int getField1()
@@ -0,0 +1,58 @@
+package simpledb.execution;
+
+import simpledb.common.Type;
+import simpledb.storage.Field;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleBatch;
+
+/**
+ * KeyIndex assigns dense ids 0, 1, 2, ... to the distinct values of one
+ * field, in the order they are first seen. Operators that hash on a field
+ * (joins, aggregates) use the id to index their own parallel arrays instead
+ * of keeping a collection per key.
+ *
+ * @see IntHashTable
+ * @see StringHashTable
+ */
+public interface KeyIndex {
+
+    /**
+     * @return the id of field i of t, assigning the next id if the value
+     *   has not been seen before
+     */
+    int put(Tuple t, int i);
+
+    /**
+     * @return the id of field i of t, or -1 if the value has not been seen
+     */
+    int get(Tuple t, int i);
+
+    /**
+     * @return the id of field i of the row at position r of b, assigning
+     *   the next id if the value has not been seen before
+     */
+    int put(TupleBatch b, int r, int i);
+
+    /**
+     * @return the id of field i of the row at position r of b, or -1 if the
+     *   value has not been seen
+     */
+    int get(TupleBatch b, int r, int i);
+
+    /**
+     * @return the value that was given the id
+     */
+    Field getField(int id);
+
+    /**
+     * @return the number of distinct values
+     */
+    int size();
+
+    /**
+     * @return an empty index for values of the given type
+     */
+    static KeyIndex forType(Type type) {
+        return type == Type.INT_TYPE ? new IntHashTable() : new StringHashTable();
+    }
+}
@@ -2,6 +2,7 @@ package simpledb.execution;
 import simpledb.transaction.TransactionAbortedException;
 import simpledb.common.DbException;
 import simpledb.storage.Tuple;
+import simpledb.storage.TupleBatch;
 import simpledb.storage.TupleDesc;
 
 import java.io.Serializable;
@@ -15,6 +16,7 @@ import java.util.*;
  * child iterator open methods, and in a close method, an iterator
  * should call its children's close methods.
  */
+@SuppressWarnings("serial") // operators declare serialVersionUID themselves
 public interface OpIterator extends Serializable{
   /**
    * Opens the iterator. This must be called before any of the other methods.
@@ -39,6 +41,26 @@ public interface OpIterator extends Serializable{
    */
   Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException;
 
+  /**
+   * Returns the next tuples from the operator as a batch of column vectors.
+   * An iterator must be consumed either with {@link #next()} or with this
+   * method, not both. The default implementation collects up to
+   * {@link TupleBatch#DEFAULT_SIZE} tuples from next(); operators that can
+   * work on whole batches override it.
+   *
+   * @return a batch with at least one selected row, or null if there are no
+   *   more tuples. The batch is only valid until the next call.
+   * @throws IllegalStateException If the iterator has not been opened
+   */
+  default TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+    if (!hasNext())
+      return null;
+    TupleBatch b = new TupleBatch(getTupleDesc());
+    while (!b.isFull() && hasNext())
+      b.add(next());
+    return b;
+  }
+
   /**
    * Resets the iterator to the start.
    * @throws DbException when rewind is unsupported.
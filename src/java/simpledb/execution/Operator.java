@@ -3,6 +3,7 @@ package simpledb.execution;
 import simpledb.transaction.TransactionAbortedException;
 import simpledb.common.DbException;
 import simpledb.storage.Tuple;
+import simpledb.storage.TupleBatch;
 import simpledb.storage.TupleDesc;
 
 import java.util.NoSuchElementException;
@@ -49,6 +50,28 @@ public abstract class Operator implements OpIterator {
     protected abstract Tuple fetchNext() throws DbException,
             TransactionAbortedException;
 
+    /**
+     * Collects tuples from {@link #fetchNext()} into a batch, starting with
+     * the tuple a call to hasNext() may have fetched already. Operators that
+     * override this to work on whole batches call it for the cases they do
+     * not handle.
+     *
+     * @see OpIterator#nextBatch()
+     */
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        if (!this.open)
+            throw new IllegalStateException("Operator not yet open");
+        Tuple t = next != null ? next : fetchNext();
+        next = null;
+        if (t == null)
+            return null;
+        TupleBatch b = new TupleBatch(getTupleDesc());
+        b.add(t);
+        while (!b.isFull() && (t = fetchNext()) != null)
+            b.add(t);
+        return b;
+    }
+
     /**
      * Closes this iterator. If overridden by a subclass, they should call
      * super.close() in order for Operator's internal state to be consistent.
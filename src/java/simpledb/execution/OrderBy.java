@@ -2,25 +2,47 @@ package simpledb.execution;
 
 import simpledb.transaction.TransactionAbortedException;
 import simpledb.common.DbException;
-import simpledb.storage.Field;
+import simpledb.storage.SpillFile;
 import simpledb.storage.Tuple;
 import simpledb.storage.TupleDesc;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
  * OrderBy is an operator that implements a relational ORDER BY.
+ * <p>
+ * Tuples are sorted on one or more fields, each ascending or descending.
+ * Inputs of up to memoryBudget tuples are sorted in memory. Larger inputs
+ * are sorted externally: the child is cut into sorted runs of memoryBudget
+ * tuples, each written to a {@link SpillFile}, and the runs are merged with
+ * a priority queue holding the head of every run. If there are more than
+ * MERGE_FAN_IN runs, groups of runs are first merged into longer runs, so
+ * that the number of files open at once stays bounded.
  */
 public class OrderBy extends Operator {
 
     private static final long serialVersionUID = 1L;
+
+    /** default number of tuples sorted in memory */
+    public static final int DEFAULT_MEMORY_BUDGET = 20000;
+    /** maximum number of runs merged at once */
+    public static final int MERGE_FAN_IN = 64;
+
     private OpIterator child;
     private final TupleDesc td;
     private final List<Tuple> childTups = new ArrayList<>();
-    private final int orderByField;
-    private final String orderByFieldName;
+    private final int[] orderByFields;
+    private final boolean[] asc;
+    private final int memoryBudget;
+    private final TupleComparator comparator;
     private Iterator<Tuple> it;
-    private final boolean asc;
+
+    /** the sorted runs on disk, empty if the input was sorted in memory */
+    private transient List<SpillFile> runs = new ArrayList<>();
+    /** the merge of the runs: the open run iterators and the head of each */
+    private transient List<OpIterator> runIts;
+    private transient PriorityQueue<RunHead> merge;
 
     /**
      * Creates a new OrderBy node over the tuples from the iterator.
@@ -33,26 +55,71 @@ public class OrderBy extends Operator {
      *            the tuples to sort.
      */
     public OrderBy(int orderbyField, boolean asc, OpIterator child) {
+        this(new int[]{orderbyField}, new boolean[]{asc}, child);
+    }
+
+    /**
+     * Creates a new OrderBy node sorting on several fields: by the first
+     * field, tuples equal on it by the second, and so on.
+     *
+     * @param orderbyFields
+     *            the fields to which the sort is applied, most significant first.
+     * @param asc
+     *            for each field, true if the sort order is ascending.
+     * @param child
+     *            the tuples to sort.
+     */
+    public OrderBy(int[] orderbyFields, boolean[] asc, OpIterator child) {
+        this(orderbyFields, asc, child, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Constructor with an explicit memory budget.
+     *
+     * @param memoryBudget
+     *            the number of tuples to sort in memory; larger inputs are
+     *            sorted in runs of this many tuples on disk
+     */
+    public OrderBy(int[] orderbyFields, boolean[] asc, OpIterator child, int memoryBudget) {
+        if (orderbyFields.length == 0 || orderbyFields.length != asc.length)
+            throw new IllegalArgumentException("need one sort order per sort field");
+        if (memoryBudget < 1)
+            throw new IllegalArgumentException("memory budget must be positive");
         this.child = child;
         td = child.getTupleDesc();
-        this.orderByField = orderbyField;
-        this.orderByFieldName = td.getFieldName(orderbyField);
-        this.asc = asc;
+        this.orderByFields = orderbyFields.clone();
+        this.asc = asc.clone();
+        this.memoryBudget = memoryBudget;
+        this.comparator = new TupleComparator(this.orderByFields, this.asc);
     }
     
     public boolean isASC()
     {
-	return this.asc;
+	return this.asc[0];
     }
     
     public int getOrderByField()
     {
-        return this.orderByField;
+        return this.orderByFields[0];
     }
     
     public String getOrderFieldName()
     {
-	return this.orderByFieldName;
+	return td.getFieldName(orderByFields[0]);
+    }
+
+    /**
+     * @return the sort fields, most significant first
+     */
+    public int[] getOrderByFields() {
+        return orderByFields.clone();
+    }
+
+    /**
+     * @return for each sort field, true if it is sorted in ascending order
+     */
+    public boolean[] getAscending() {
+        return asc.clone();
     }
     
     public TupleDesc getTupleDesc() {
@@ -62,21 +129,135 @@ public class OrderBy extends Operator {
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child.open();
-        // load all the tuples in a collection, and sort it
-        while (child.hasNext())
-            childTups.add(child.next());
-        childTups.sort(new TupleComparator(orderByField, asc));
-        it = childTups.iterator();
+        clearRuns();
+        // load the tuples in a collection, and sort it once it is full. The
+        // comparator reads the sort fields many times, so decode each tuple
+        // once here.
+        while (child.hasNext()) {
+            childTups.add(child.next().materialize());
+            if (childTups.size() >= memoryBudget)
+                spillRun();
+        }
+        if (runs.isEmpty()) {
+            childTups.sort(comparator);
+        } else {
+            if (!childTups.isEmpty())
+                spillRun();
+            while (runs.size() > MERGE_FAN_IN)
+                mergeRuns();
+        }
+        startMerge();
         super.open();
     }
 
+    /**
+     * Sort the tuples in memory and write them out as a new run.
+     */
+    private void spillRun() throws DbException {
+        childTups.sort(comparator);
+        try {
+            SpillFile run = new SpillFile(td);
+            for (Tuple t : childTups)
+                run.add(t);
+            runs.add(run);
+        } catch (IOException e) {
+            throw new DbException("cannot write sort run: " + e.getMessage());
+        }
+        childTups.clear();
+    }
+
+    /**
+     * Merge the first MERGE_FAN_IN runs into a single run at the end of the
+     * list.
+     */
+    private void mergeRuns() throws DbException, TransactionAbortedException {
+        List<SpillFile> group = new ArrayList<>(runs.subList(0, MERGE_FAN_IN));
+        runs.subList(0, MERGE_FAN_IN).clear();
+        List<OpIterator> its = new ArrayList<>();
+        PriorityQueue<RunHead> heads = openRuns(group, its);
+        try {
+            SpillFile merged = new SpillFile(td);
+            while (!heads.isEmpty())
+                merged.add(nextMerged(heads, its));
+            runs.add(merged);
+        } catch (IOException e) {
+            throw new DbException("cannot write sort run: " + e.getMessage());
+        }
+        for (OpIterator runIt : its)
+            runIt.close();
+        for (SpillFile run : group)
+            run.delete();
+    }
+
+    /**
+     * Open an iterator over each of the runs and queue its first tuple.
+     */
+    private PriorityQueue<RunHead> openRuns(List<SpillFile> files, List<OpIterator> its)
+            throws DbException, TransactionAbortedException {
+        PriorityQueue<RunHead> heads = new PriorityQueue<>(Math.max(files.size(), 1),
+                (a, b) -> comparator.compare(a.tuple, b.tuple));
+        for (SpillFile run : files) {
+            OpIterator runIt = run.iterator();
+            runIt.open();
+            if (runIt.hasNext())
+                heads.add(new RunHead(runIt.next(), its.size()));
+            its.add(runIt);
+        }
+        return heads;
+    }
+
+    /**
+     * @return the smallest queued tuple, replacing it in the queue by the
+     *   next tuple of its run
+     */
+    private static Tuple nextMerged(PriorityQueue<RunHead> heads, List<OpIterator> its)
+            throws DbException, TransactionAbortedException {
+        RunHead head = heads.poll();
+        OpIterator runIt = its.get(head.run);
+        if (runIt.hasNext())
+            heads.add(new RunHead(runIt.next(), head.run));
+        return head.tuple;
+    }
+
+    /**
+     * Start returning tuples from the beginning of the sorted input.
+     */
+    private void startMerge() throws DbException, TransactionAbortedException {
+        closeMerge();
+        if (runs.isEmpty()) {
+            it = childTups.iterator();
+        } else {
+            runIts = new ArrayList<>();
+            merge = openRuns(runs, runIts);
+        }
+    }
+
+    private void closeMerge() {
+        if (runIts != null) {
+            for (OpIterator runIt : runIts)
+                runIt.close();
+        }
+        runIts = null;
+        merge = null;
+        it = null;
+    }
+
+    private void clearRuns() {
+        closeMerge();
+        for (SpillFile run : runs)
+            run.delete();
+        runs.clear();
+        childTups.clear();
+    }
+
     public void close() {
         super.close();
-        it = null;
+        child.close();
+        clearRuns();
     }
 
-    public void rewind() {
-        it = childTups.iterator();
+    public void rewind() throws DbException, TransactionAbortedException {
+        startMerge();
     }
 
     /**
@@ -86,7 +267,9 @@ public class OrderBy extends Operator {
      * @return The next tuple in the ordering, or null if there are no more
      *         tuples
      */
-    protected Tuple fetchNext() throws NoSuchElementException {
+    protected Tuple fetchNext() throws NoSuchElementException, DbException, TransactionAbortedException {
+        if (merge != null)
+            return merge.isEmpty() ? null : nextMerged(merge, runIts);
         if (it != null && it.hasNext()) {
             return it.next();
         } else
@@ -103,26 +286,16 @@ public class OrderBy extends Operator {
         this.child = children[0];
     }
 
-}
-
-class TupleComparator implements Comparator<Tuple> {
-    final int field;
-    final boolean asc;
-
-    public TupleComparator(int field, boolean asc) {
-        this.field = field;
-        this.asc = asc;
-    }
+    /**
+     * The next tuple of a run during the merge.
+     */
+    private static class RunHead {
+        final Tuple tuple;
+        final int run;
 
-    public int compare(Tuple o1, Tuple o2) {
-        Field t1 = (o1).getField(field);
-        Field t2 = (o2).getField(field);
-        if (t1.compare(Predicate.Op.EQUALS, t2))
-            return 0;
-        if (t1.compare(Predicate.Op.GREATER_THAN, t2))
-            return asc ? 1 : -1;
-        else
-            return asc ? -1 : 1;
+        RunHead(Tuple tuple, int run) {
+            this.tuple = tuple;
+            this.run = run;
+        }
     }
-    
 }
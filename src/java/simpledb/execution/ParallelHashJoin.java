@@ -0,0 +1,320 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleBatch;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+/**
+ * ParallelHashJoin is an equality join whose build and probe are both run
+ * by several threads, for a build side that fits in memory.
+ * <p>
+ * The build side (child1) is first hash partitioned on its join field by a
+ * {@link Repartition}, one partition per thread; each thread then builds the
+ * hash table of the partition it owns, so no table is shared while it is
+ * being built. The probe side (child2) is handed out a batch at a time to
+ * the same number of threads. A probing thread finds the table of each probe
+ * row from the same partitioning of its key, writes the joined rows into an
+ * output buffer of its own and hands full buffers to a {@link Gather}.
+ * <p>
+ * Tuples are returned in no particular order. Unlike {@link HashEquiJoin},
+ * the build side is never spilled.
+ */
+public class ParallelHashJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final JoinPredicate pred;
+    private OpIterator child1, child2;
+    private final int parallelism;
+    private final TupleDesc comboTD;
+
+    /** the hash table of the build rows of each partition */
+    private transient TupleHashTable[] tables;
+    /** the output of the probing threads */
+    private transient Gather probe;
+
+    /**
+     * @param p           the join predicate, which must be an equality
+     * @param child1      the build side
+     * @param child2      the probe side
+     * @param parallelism the number of threads that build and probe
+     */
+    public ParallelHashJoin(JoinPredicate p, OpIterator child1, OpIterator child2, int parallelism) {
+        if (p.getOperator() != Predicate.Op.EQUALS)
+            throw new IllegalArgumentException("hash joins need an equality predicate");
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be positive");
+        this.pred = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.parallelism = parallelism;
+        this.comboTD = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return pred;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return comboTD;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        build();
+        OpIterator[] probes = new OpIterator[parallelism];
+        Split[] parts = Split.create(parallelism, child2);
+        for (int i = 0; i < parallelism; i++)
+            probes[i] = new Probe(parts[i]);
+        probe = new Gather(probes);
+        probe.open();
+        super.open();
+    }
+
+    /**
+     * Partition child1 and build the table of each partition on a thread of
+     * its own.
+     */
+    private void build() throws DbException, TransactionAbortedException {
+        int f = pred.getField1();
+        Type type = child1.getTupleDesc().getFieldType(f);
+        Repartition[] parts = Repartition.create(f, parallelism, child1);
+        tables = new TupleHashTable[parallelism];
+        Throwable[] errors = new Throwable[parallelism];
+        Thread[] builders = new Thread[parallelism];
+        for (int i = 0; i < parallelism; i++) {
+            int w = i;
+            tables[w] = new TupleHashTable(type, f);
+            builders[w] = new Thread(() -> {
+                try {
+                    parts[w].open();
+                    TupleBatch b;
+                    while ((b = parts[w].nextBatch()) != null) {
+                        for (int k = 0; k < b.size(); k++)
+                            tables[w].add(b.getTuple(k));
+                    }
+                } catch (Throwable e) {
+                    errors[w] = e;
+                } finally {
+                    parts[w].close();
+                }
+            }, "build-" + w);
+            builders[w].setDaemon(true);
+            builders[w].start();
+        }
+        for (Thread t : builders) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                throw new DbException("interrupted while building a join");
+            }
+        }
+        for (Throwable e : errors) {
+            if (e instanceof TransactionAbortedException)
+                throw (TransactionAbortedException) e;
+            if (e instanceof DbException)
+                throw (DbException) e;
+            if (e != null)
+                throw new DbException("join build failed: " + e);
+        }
+    }
+
+    public void close() {
+        super.close();
+        if (probe != null)
+            probe.close();
+        probe = null;
+        tables = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        close();
+        open();
+    }
+
+    /**
+     * Returns the next batch joined by any of the probing threads. The batch
+     * is not reused and may be kept by the caller. Must not be mixed with
+     * next().
+     */
+    @Override
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        return probe.nextBatch();
+    }
+
+    protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+        return probe.hasNext() ? probe.next() : null;
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[]{child1, child2};
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child1 = children[0];
+        this.child2 = children[1];
+    }
+
+    /**
+     * The join of the probe batches handed to one thread against the tables
+     * of all partitions, which are only read once built.
+     */
+    private class Probe extends Operator {
+
+        private static final long serialVersionUID = 1L;
+
+        private final OpIterator input;
+        /** the output buffer of this thread */
+        private transient TupleBatch out;
+        /** the current probe batch, and the next of its rows to probe */
+        private transient TupleBatch batch;
+        private transient int k;
+        /** the position of the row being joined, its table and next match */
+        private transient int row;
+        private transient TupleHashTable table;
+        private transient int match = -1;
+        /** the joined batch fetchNext() returns rows of, and its next row */
+        private transient TupleBatch joined;
+        private transient int j;
+
+        Probe(OpIterator input) {
+            this.input = input;
+        }
+
+        public TupleDesc getTupleDesc() {
+            return comboTD;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            input.open();
+            out = new TupleBatch(comboTD);
+            batch = null;
+            match = -1;
+            joined = null;
+            super.open();
+        }
+
+        public void close() {
+            super.close();
+            input.close();
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            close();
+            open();
+        }
+
+        @Override
+        public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+            out.clear();
+            TupleDesc td1 = child1.getTupleDesc();
+            int n1 = td1.numFields();
+            int n2 = child2.getTupleDesc().numFields();
+            int f2 = pred.getField2();
+            while (!out.isFull()) {
+                if (match == -1) {
+                    if (batch == null || k == batch.size()) {
+                        batch = input.nextBatch();
+                        k = 0;
+                        if (batch == null)
+                            break;
+                    }
+                    row = batch.row(k++);
+                    table = tables[Repartition.partition(batch, row, f2, parallelism)];
+                    match = table.first(batch, row, f2);
+                    continue;
+                }
+                int o = out.addRow();
+                Tuple left = table.getRow(match);
+                for (int i = 0; i < n1; i++) {
+                    if (td1.getFieldType(i) == Type.INT_TYPE)
+                        out.getInts(i)[o] = left.getInt(i);
+                    else
+                        out.getStrings(i)[o] = ((StringField) left.getField(i)).getValue();
+                }
+                for (int i = 0; i < n2; i++) {
+                    int[] ints = batch.getInts(i);
+                    if (ints != null)
+                        out.getInts(n1 + i)[o] = ints[row];
+                    else
+                        out.getStrings(n1 + i)[o] = batch.getStrings(i)[row];
+                }
+                match = table.next(match);
+            }
+            return out.size() > 0 ? out : null;
+        }
+
+        /**
+         * Returns the rows of the batches joined by nextBatch() one at a
+         * time, as {@link Unbatch} does.
+         */
+        protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+            while (joined == null || j == joined.size()) {
+                joined = nextBatch();
+                j = 0;
+                if (joined == null)
+                    return null;
+            }
+            return joined.getTuple(j++);
+        }
+
+        @Override
+        public OpIterator[] getChildren() {
+            return new OpIterator[]{input};
+        }
+
+        @Override
+        public void setChildren(OpIterator[] children) {
+        }
+    }
+
+    /**
+     * An exchange that hands each batch of its input to one of its outputs,
+     * in turn.
+     */
+    private static class Split extends Exchange {
+
+        private static final long serialVersionUID = 1L;
+
+        private Split(Producers producers, int output) {
+            super(producers, output);
+        }
+
+        static Split[] create(int numOutputs, OpIterator child) {
+            Producers p = new RoundRobin(new OpIterator[]{child}, numOutputs);
+            Split[] outputs = new Split[numOutputs];
+            for (int i = 0; i < numOutputs; i++)
+                outputs[i] = new Split(p, i);
+            return outputs;
+        }
+
+        public String getName() {
+            return "split";
+        }
+
+        private static class RoundRobin extends Producers {
+
+            private static final long serialVersionUID = 1L;
+
+            private transient int next;
+
+            RoundRobin(OpIterator[] inputs, int numOutputs) {
+                super(inputs, numOutputs);
+            }
+
+            protected void route(TupleBatch b, TupleBatch[] pending) {
+                put(next, b.copy());
+                next = (next + 1) % numOutputs;
+            }
+        }
+    }
+}
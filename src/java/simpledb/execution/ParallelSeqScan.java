@@ -0,0 +1,294 @@
+package simpledb.execution;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Permissions;
+import simpledb.common.Type;
+import simpledb.storage.*;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+import java.io.Serializable;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ParallelSeqScan scans a HeapFile with several worker threads. The pages of
+ * the file are handed out in morsels of MORSEL_PAGES consecutive pages: each
+ * worker claims the next morsel from a shared counter when it is done with
+ * its current one, so fast workers simply take more morsels and no worker
+ * waits for a slow one.
+ * <p>
+ * Each worker runs its own copy of a pipeline of operators over the morsels
+ * it claims (filters, projections, partial aggregates, ...), built by a
+ * {@link Pipeline}. The output of the workers is gathered as by
+ * {@link Gather}, in no particular order.
+ * <p>
+ * Like a {@link SeqScan}, the scan may be given predicates that are tested
+ * on the bytes of each page before any tuple is made, and the fields to
+ * return.
+ */
+public class ParallelSeqScan extends Gather {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Builds the operators a worker runs over its part of the table.
+     */
+    public interface Pipeline extends Serializable {
+        /**
+         * @param scan the tuples of the morsels claimed by one worker
+         * @return the root of the operators to run over scan
+         */
+        OpIterator build(OpIterator scan);
+    }
+
+    /** number of consecutive pages claimed by a worker at a time */
+    public static final int MORSEL_PAGES = 16;
+    /** number of workers if none is given: one per core */
+    public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    private final Morsels morsels;
+    private final String tableAlias;
+    private final int parallelism;
+    private final Pipeline pipeline;
+
+    /**
+     * Creates a parallel scan that returns the tuples of the table.
+     *
+     * @param parallelism the number of worker threads
+     */
+    public ParallelSeqScan(TransactionId tid, int tableid, String tableAlias, int parallelism) {
+        this(tid, tableid, tableAlias, parallelism, scan -> scan);
+    }
+
+    /**
+     * Creates a parallel scan that returns the output of a pipeline run over
+     * the table by each worker.
+     *
+     * @param tid         the transaction this scan is running as a part of
+     * @param tableid     the table to scan, which must be a HeapFile
+     * @param tableAlias  the alias of the table, used as in {@link SeqScan}
+     * @param parallelism the number of worker threads
+     * @param pipeline    builds the operators each worker runs over its
+     *                    morsels
+     */
+    public ParallelSeqScan(TransactionId tid, int tableid, String tableAlias, int parallelism, Pipeline pipeline) {
+        this(tid, tableid, tableAlias, parallelism, new Predicate[0], null, pipeline);
+    }
+
+    /**
+     * Creates a parallel scan that runs a pipeline over the given fields of
+     * the tuples of the table that pass every predicate of preds.
+     *
+     * @param preds   predicates on the fields of the table
+     * @param columns the fields of the table to return, in order, or null
+     *                for all of them
+     */
+    public ParallelSeqScan(TransactionId tid, int tableid, String tableAlias, int parallelism, Predicate[] preds,
+                           int[] columns, Pipeline pipeline) {
+        this(new Morsels(tid, tableid, tableAlias, preds, columns), tableAlias, parallelism, pipeline);
+    }
+
+    private ParallelSeqScan(Morsels morsels, String tableAlias, int parallelism, Pipeline pipeline) {
+        super(workers(morsels, parallelism, pipeline));
+        this.morsels = morsels;
+        this.tableAlias = tableAlias;
+        this.parallelism = parallelism;
+        this.pipeline = pipeline;
+    }
+
+    private static OpIterator[] workers(Morsels morsels, int parallelism, Pipeline pipeline) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be positive");
+        OpIterator[] workers = new OpIterator[parallelism];
+        for (int i = 0; i < parallelism; i++)
+            workers[i] = pipeline.build(new MorselScan(morsels));
+        return workers;
+    }
+
+    public String getTableName() {
+        return Database.getCatalog().getTableName(morsels.file.getId());
+    }
+
+    public String getAlias() {
+        return tableAlias;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return the predicates pushed into this scan
+     */
+    public Predicate[] getPredicates() {
+        return morsels.preds.clone();
+    }
+
+    /**
+     * @param next builds operators to run over the output of this scan's
+     *             pipeline, e.g. a partial aggregate
+     * @return a scan of the same table whose workers also run next
+     */
+    public ParallelSeqScan andThen(Pipeline next) {
+        Pipeline first = pipeline;
+        return new ParallelSeqScan(morsels.tid, morsels.file.getId(), tableAlias, parallelism, morsels.preds,
+                morsels.columns, scan -> next.build(first.build(scan)));
+    }
+
+    public String getName() {
+        return "parallel scan(" + tableAlias + ")";
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        morsels.next.set(0);
+        super.open();
+    }
+
+    /**
+     * A parallel scan is a leaf of the plan: its workers are not children.
+     */
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[0];
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+    }
+
+    /**
+     * The table being scanned and the morsels that are left, shared by the
+     * workers of a scan.
+     */
+    private static class Morsels implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        final TransactionId tid;
+        final HeapFile file;
+        final TupleDesc td;
+        /** the predicates the tuples must pass, and the same compiled; null if none */
+        final Predicate[] preds;
+        final CompiledPredicate filter;
+        /** the fields to read, or null for all of them */
+        final int[] columns;
+        /** the first page of the next morsel */
+        final AtomicInteger next = new AtomicInteger();
+
+        Morsels(TransactionId tid, int tableid, String tableAlias, Predicate[] preds, int[] columns) {
+            DbFile f = Database.getCatalog().getDatabaseFile(tableid);
+            if (!(f instanceof HeapFile))
+                throw new IllegalArgumentException("parallel scans need a HeapFile");
+            this.tid = tid;
+            this.file = (HeapFile) f;
+            TupleDesc ftd = file.getTupleDesc();
+            this.columns = columns == null ? null : columns.clone();
+            int n = columns == null ? ftd.numFields() : columns.length;
+            Type[] types = new Type[n];
+            String[] names = new String[n];
+            for (int i = 0; i < n; i++) {
+                int field = columns == null ? i : columns[i];
+                types[i] = ftd.getFieldType(field);
+                names[i] = tableAlias + "." + ftd.getFieldName(field);
+            }
+            this.td = new TupleDesc(types, names);
+            this.preds = preds.clone();
+            this.filter = preds.length == 0 ? null : CompiledPredicate.compile(ftd, preds);
+        }
+    }
+
+    /**
+     * The scan at the bottom of a worker's pipeline: it reads the pages of
+     * the morsels it claims a batch at a time, and cannot be rewound.
+     */
+    private static class MorselScan implements OpIterator {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Morsels morsels;
+
+        private transient TupleBatch b;
+        /** the current page, the morsel's last page and the next slot to read */
+        private transient HeapPage page;
+        private transient int pageNo;
+        private transient int lastPage;
+        private transient int slot;
+        private transient boolean open;
+        /** the batch read by hasNext(), and its next row */
+        private transient TupleBatch cur;
+        private transient int row;
+
+        MorselScan(Morsels morsels) {
+            this.morsels = morsels;
+        }
+
+        public void open() {
+            b = new TupleBatch(morsels.td);
+            page = null;
+            pageNo = 0;
+            lastPage = -1;
+            cur = null;
+            open = true;
+        }
+
+        @Override
+        public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+            if (!open)
+                throw new IllegalStateException("scan not open");
+            b.clear();
+            while (!b.isFull()) {
+                if (page == null) {
+                    if (pageNo < lastPage) {
+                        pageNo++;
+                    } else {
+                        // the morsel is done, claim the next one
+                        pageNo = morsels.next.getAndAdd(MORSEL_PAGES);
+                        if (pageNo >= morsels.file.numPages())
+                            break;
+                        lastPage = Math.min(pageNo + MORSEL_PAGES, morsels.file.numPages()) - 1;
+                    }
+                    page = (HeapPage) Database.getBufferPool().getPage(morsels.tid,
+                            new HeapPageId(morsels.file.getId(), pageNo), Permissions.READ_ONLY);
+                    slot = 0;
+                }
+                slot = page.readBatch(slot, b, morsels.filter, morsels.columns);
+                // readBatch only stops before the end of the page when b is full
+                if (!b.isFull())
+                    page = null;
+            }
+            return b.size() > 0 ? b : null;
+        }
+
+        public boolean hasNext() throws DbException, TransactionAbortedException {
+            while (cur == null || row == cur.size()) {
+                cur = nextBatch();
+                row = 0;
+                if (cur == null)
+                    return false;
+            }
+            return true;
+        }
+
+        public Tuple next() throws DbException, TransactionAbortedException {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return cur.getTuple(row++);
+        }
+
+        public void rewind() throws DbException {
+            throw new DbException("morsels cannot be rescanned");
+        }
+
+        public TupleDesc getTupleDesc() {
+            return morsels.td;
+        }
+
+        public void close() {
+            open = false;
+            page = null;
+            cur = null;
+        }
+    }
+}
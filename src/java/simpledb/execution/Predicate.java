@@ -1,7 +1,11 @@
 package simpledb.execution;
 
+import simpledb.common.Type;
 import simpledb.storage.Field;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
 import simpledb.storage.Tuple;
+import simpledb.storage.TupleBatch;
 
 import java.io.Serializable;
 
@@ -51,6 +55,10 @@ public class Predicate implements Serializable {
     Op op;
 
     Field operand;
+
+    /** operand unboxed once, used when the operand is an INT_TYPE field */
+    private final boolean intOperand;
+    private final int intValue;
     /**
      * Constructor.
      * 
@@ -66,6 +74,8 @@ public class Predicate implements Serializable {
         this.fieldNum = field;
         this.op = op;
         this.operand = operand;
+        this.intOperand = operand != null && operand.getType() == Type.INT_TYPE;
+        this.intValue = intOperand ? ((IntField) operand).getValue() : 0;
     }
 
     /**
@@ -107,10 +117,84 @@ public class Predicate implements Serializable {
      */
     public boolean filter(Tuple t) {
         // some code goes here
+        if (intOperand) {
+            return IntField.compare(op, t.getInt(fieldNum), intValue);
+        }
         Field field = t.getField(fieldNum);
         return field.compare(op,operand);
     }
 
+    /**
+     * Narrow the selection of b to the rows that pass this predicate. INT
+     * columns are compared in one loop per operator over the column array.
+     *
+     * @return the number of rows still selected
+     */
+    public int filter(TupleBatch b) {
+        int[] sel = b.getSelection();
+        int n = b.size();
+        int m = 0;
+        if (intOperand) {
+            int[] col = b.getInts(fieldNum);
+            int v = intValue;
+            switch (op) {
+                case EQUALS:
+                case LIKE:
+                    for (int k = 0; k < n; k++) {
+                        int r = sel[k];
+                        if (col[r] == v)
+                            sel[m++] = r;
+                    }
+                    break;
+                case NOT_EQUALS:
+                    for (int k = 0; k < n; k++) {
+                        int r = sel[k];
+                        if (col[r] != v)
+                            sel[m++] = r;
+                    }
+                    break;
+                case GREATER_THAN:
+                    for (int k = 0; k < n; k++) {
+                        int r = sel[k];
+                        if (col[r] > v)
+                            sel[m++] = r;
+                    }
+                    break;
+                case GREATER_THAN_OR_EQ:
+                    for (int k = 0; k < n; k++) {
+                        int r = sel[k];
+                        if (col[r] >= v)
+                            sel[m++] = r;
+                    }
+                    break;
+                case LESS_THAN:
+                    for (int k = 0; k < n; k++) {
+                        int r = sel[k];
+                        if (col[r] < v)
+                            sel[m++] = r;
+                    }
+                    break;
+                case LESS_THAN_OR_EQ:
+                    for (int k = 0; k < n; k++) {
+                        int r = sel[k];
+                        if (col[r] <= v)
+                            sel[m++] = r;
+                    }
+                    break;
+            }
+        } else {
+            String[] col = b.getStrings(fieldNum);
+            String v = ((StringField) operand).getValue();
+            for (int k = 0; k < n; k++) {
+                int r = sel[k];
+                if (StringField.compare(op, col[r], v))
+                    sel[m++] = r;
+            }
+        }
+        b.setSelected(m);
+        return m;
+    }
+
     /**
      * Returns something useful, like "f = field_id op = op_string operand =
      * operand_string"
@@ -4,6 +4,7 @@ import simpledb.transaction.TransactionAbortedException;
 import simpledb.common.Type;
 import simpledb.common.DbException;
 import simpledb.storage.Tuple;
+import simpledb.storage.TupleBatch;
 import simpledb.storage.TupleDesc;
 
 import java.util.*;
@@ -17,6 +18,10 @@ public class Project extends Operator {
     private OpIterator child;
     private final TupleDesc td;
     private final List<Integer> outFieldIds;
+    /** outFieldIds, unboxed when the Project is built */
+    private final int[] fields;
+    /** true if the child's tuples are returned as they are */
+    private final boolean identity;
 
     /**
      * Constructor accepts a child operator to read tuples to apply projection
@@ -38,10 +43,15 @@ public class Project extends Operator {
         String[] fieldAr = new String[fieldList.size()];
         TupleDesc childtd = child.getTupleDesc();
 
+        fields = new int[fieldAr.length];
+        boolean same = fieldAr.length == childtd.numFields();
         for (int i = 0; i < fieldAr.length; i++) {
-            fieldAr[i] = childtd.getFieldName(fieldList.get(i));
+            fields[i] = fieldList.get(i);
+            fieldAr[i] = childtd.getFieldName(fields[i]);
+            same &= fields[i] == i;
         }
         td = new TupleDesc(types, fieldAr);
+        identity = same && td.equals(childtd);
     }
 
     public TupleDesc getTupleDesc() {
@@ -65,7 +75,8 @@ public class Project extends Operator {
 
     /**
      * Operator.fetchNext implementation. Iterates over tuples from the child
-     * operator, projecting out the fields from the tuple
+     * operator, projecting out the fields from the tuple. A projection of
+     * every field in order returns the tuples of the child as they are.
      *
      * @return The next tuple, or null if there are no more tuples
      */
@@ -73,14 +84,27 @@ public class Project extends Operator {
             TransactionAbortedException, DbException {
         if (!child.hasNext()) return null;
         Tuple t = child.next();
+        if (identity)
+            return t;
         Tuple newTuple = new Tuple(td);
         newTuple.setRecordId(t.getRecordId());
-        for (int i = 0; i < td.numFields(); i++) {
-            newTuple.setField(i, t.getField(outFieldIds.get(i)));
+        for (int i = 0; i < fields.length; i++) {
+            newTuple.setField(i, t.getField(fields[i]));
         }
         return newTuple;
     }
 
+    /**
+     * Projects whole batches of the child; the columns are not copied.
+     */
+    @Override
+    public TupleBatch nextBatch() throws TransactionAbortedException, DbException {
+        TupleBatch b = child.nextBatch();
+        if (b == null || identity)
+            return b;
+        return b.project(fields, td);
+    }
+
     @Override
     public OpIterator[] getChildren() {
         return new OpIterator[]{this.child};
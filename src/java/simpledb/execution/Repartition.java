@@ -0,0 +1,94 @@
+package simpledb.execution;
+
+import simpledb.common.Type;
+import simpledb.storage.TupleBatch;
+
+/**
+ * Repartition splits the tuples of its children among its outputs by a hash
+ * of one field, so that equal values of the field always go to the same
+ * output. Joins and aggregates on that field can then be run on each output
+ * by a separate thread.
+ *
+ * @see Exchange
+ */
+public class Repartition extends Exchange {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ByHash producers;
+
+    private Repartition(ByHash producers, int output) {
+        super(producers, output);
+        this.producers = producers;
+    }
+
+    /**
+     * @param field         the field to hash on
+     * @param numPartitions the number of outputs
+     * @param children      the subtrees whose tuples are split; each is run on
+     *                      a thread of its own
+     * @return the outputs, one per partition
+     */
+    public static Repartition[] create(int field, int numPartitions, OpIterator... children) {
+        if (field < 0 || field >= children[0].getTupleDesc().numFields())
+            throw new IllegalArgumentException("no field " + field + " to partition on");
+        ByHash p = new ByHash(children, numPartitions, field);
+        Repartition[] outputs = new Repartition[numPartitions];
+        for (int i = 0; i < numPartitions; i++)
+            outputs[i] = new Repartition(p, i);
+        return outputs;
+    }
+
+    /**
+     * @return the field the tuples are partitioned on
+     */
+    public int getField() {
+        return producers.field;
+    }
+
+    public String getName() {
+        return "repartition(" + getTupleDesc().getFieldName(producers.field) + ")";
+    }
+
+    /**
+     * @return the partition, out of numPartitions, of the value in field of
+     *   the row at position r of b; the hash differs from the one joins and
+     *   aggregates use for their own partitions, which would otherwise get
+     *   one output each
+     */
+    static int partition(TupleBatch b, int r, int field, int numPartitions) {
+        int h = b.getTupleDesc().getFieldType(field) == Type.INT_TYPE
+                ? b.getInts(field)[r] : b.getStrings(field)[r].hashCode();
+        h *= 0xcc9e2d51;
+        h ^= h >>> 15;
+        h *= 0x1b873593;
+        h ^= h >>> 13;
+        return (h & Integer.MAX_VALUE) % numPartitions;
+    }
+
+    private static class ByHash extends Producers {
+
+        private static final long serialVersionUID = 1L;
+
+        final int field;
+
+        ByHash(OpIterator[] inputs, int numOutputs, int field) {
+            super(inputs, numOutputs);
+            this.field = field;
+        }
+
+        protected void route(TupleBatch b, TupleBatch[] pending) {
+            for (int k = 0; k < b.size(); k++) {
+                int r = b.row(k);
+                int p = partition(b, r, field, numOutputs);
+                if (pending[p] == null)
+                    pending[p] = new TupleBatch(b.getTupleDesc());
+                pending[p].add(b, r);
+                if (pending[p].isFull()) {
+                    put(p, pending[p]);
+                    pending[p] = null;
+                }
+            }
+        }
+    }
+}
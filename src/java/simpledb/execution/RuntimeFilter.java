@@ -0,0 +1,35 @@
+package simpledb.execution;
+
+import java.io.Serializable;
+
+/**
+ * RuntimeFilter is where a hash join publishes the {@link BloomFilter} of
+ * its build keys once it has read its build side. The operators below its
+ * probe side are given a test over the filter with
+ * {@link CompiledPredicate#bloom}, so probe rows whose key is not among the
+ * build keys are dropped before they reach the join; a heap scan drops
+ * them before it decodes them.
+ * <p>
+ * Until the join has published, and while it rebuilds, every row passes.
+ */
+public class RuntimeFilter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private transient volatile BloomFilter filter;
+
+    /**
+     * @return the keys published, or null if every row should pass
+     */
+    public BloomFilter get() {
+        return filter;
+    }
+
+    /**
+     * Make the operators that test this filter drop the rows whose key is
+     * not in filter; null lets every row through.
+     */
+    public void publish(BloomFilter filter) {
+        this.filter = filter;
+    }
+}
@@ -0,0 +1,143 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleBatch;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.util.NoSuchElementException;
+
+/**
+ * SemiJoin returns the tuples of its outer child that have at least one
+ * match in its inner child under an equality predicate, as an IN or EXISTS
+ * subquery asks. Each outer tuple is returned at most once and with its own
+ * fields only, however many inner tuples it matches.
+ * <p>
+ * The distinct join keys of the inner child are read into a
+ * {@link KeyIndex} when the operator is opened; an outer tuple is then
+ * answered by a single lookup, which is its first match. Batches of the
+ * outer child are filtered by narrowing their selection.
+ *
+ * @see AntiJoin
+ * @see IndexSemiJoin
+ */
+public class SemiJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final JoinPredicate pred;
+    private OpIterator outer, inner;
+    /** true to return the outer tuples without a match instead */
+    private final boolean anti;
+
+    /** the distinct keys of the inner child */
+    private transient KeyIndex keys;
+
+    /**
+     * @param p     the join predicate, which must be an equality between
+     *              field1 of outer and field2 of inner
+     * @param outer the tuples to return
+     * @param inner the tuples to look for matches in
+     */
+    public SemiJoin(JoinPredicate p, OpIterator outer, OpIterator inner) {
+        this(p, outer, inner, false);
+    }
+
+    SemiJoin(JoinPredicate p, OpIterator outer, OpIterator inner, boolean anti) {
+        if (p.getOperator() != Predicate.Op.EQUALS)
+            throw new IllegalArgumentException("hash semi joins need an equality predicate");
+        this.pred = p;
+        this.outer = outer;
+        this.inner = inner;
+        this.anti = anti;
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return pred;
+    }
+
+    /**
+     * @return true if this returns the outer tuples without a match
+     */
+    public boolean isAnti() {
+        return anti;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return outer.getTupleDesc();
+    }
+
+    public void open() throws DbException, NoSuchElementException, TransactionAbortedException {
+        outer.open();
+        inner.open();
+        build();
+        super.open();
+    }
+
+    private void build() throws DbException, TransactionAbortedException {
+        int f = pred.getField2();
+        keys = KeyIndex.forType(inner.getTupleDesc().getFieldType(f));
+        TupleBatch b;
+        while ((b = inner.nextBatch()) != null) {
+            for (int k = 0; k < b.size(); k++)
+                keys.put(b, b.row(k), f);
+        }
+    }
+
+    public void close() {
+        super.close();
+        inner.close();
+        outer.close();
+        keys = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        outer.rewind();
+        inner.rewind();
+        build();
+    }
+
+    protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+        int f = pred.getField1();
+        while (outer.hasNext()) {
+            Tuple t = outer.next();
+            if ((keys.get(t, f) >= 0) != anti)
+                return t;
+        }
+        return null;
+    }
+
+    /**
+     * Filters whole batches of the outer child by narrowing their selection.
+     */
+    @Override
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        int f = pred.getField1();
+        TupleBatch b;
+        while ((b = outer.nextBatch()) != null) {
+            int[] sel = b.getSelection();
+            int n = b.size(), m = 0;
+            for (int k = 0; k < n; k++) {
+                int r = sel[k];
+                if ((keys.get(b, r, f) >= 0) != anti)
+                    sel[m++] = r;
+            }
+            b.setSelected(m);
+            if (m > 0)
+                return b;
+        }
+        return null;
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[]{outer, inner};
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.outer = children[0];
+        this.inner = children[1];
+    }
+}
@@ -7,8 +7,14 @@ import simpledb.transaction.TransactionAbortedException;
 import simpledb.transaction.TransactionId;
 import simpledb.common.Type;
 import simpledb.common.DbException;
+import simpledb.storage.AbstractDbFileIterator;
+import simpledb.storage.CompressedFile;
 import simpledb.storage.DbFileIterator;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapFileIterator;
+import simpledb.storage.PaxFile;
 import simpledb.storage.Tuple;
+import simpledb.storage.TupleBatch;
 import simpledb.storage.TupleDesc;
 
 import java.util.*;
@@ -17,6 +23,14 @@ import java.util.*;
  * SeqScan is an implementation of a sequential scan access method that reads
  * each tuple of a table in no particular order (e.g., as they are laid out on
  * disk).
+ * <p>
+ * A scan may be given predicates of the form field op constant, which are
+ * pushed down into the file: a heap file tests them on the bytes of its
+ * pages and only makes tuples for the rows that pass, and a compressed file
+ * tests them on its compressed columns. It may also be given
+ * the fields to return, in which case a heap file does not decode the
+ * others at all, and a PAX file only decodes them and the fields the
+ * predicates test.
  */
 public class SeqScan implements OpIterator {
 
@@ -37,6 +51,18 @@ public class SeqScan implements OpIterator {
 
     DbFileIterator iterator;
 
+    /** the predicates pushed into this scan, on fields of the file */
+    private final Predicate[] preds;
+    /** the fields of the file tested by the runtime filters added to this scan */
+    private final List<Integer> runtimeFields = new ArrayList<>();
+    /** the keys published to each runtime filter, in the same order */
+    private final List<RuntimeFilter> runtimeKeys = new ArrayList<>();
+    /** the fields of the file this scan returns, or null for all of them */
+    private final int[] columns;
+
+    /** the batch returned by nextBatch(), refilled by every call */
+    private transient TupleBatch batch;
+
     /**
      * Creates a sequential scan over the specified table as a part of the
      * specified transaction.
@@ -55,15 +81,183 @@ public class SeqScan implements OpIterator {
      */
     public SeqScan(TransactionId tid, int tableid, String tableAlias) {
         // some code goes here
+        this(tid, tableid, tableAlias, new Predicate[0]);
+    }
+
+    /**
+     * Creates a sequential scan that only returns the tuples that pass every
+     * predicate of preds.
+     *
+     * @param preds
+     *            predicates on the fields of the table, which the file tests
+     *            before it makes tuples where it can
+     */
+    public SeqScan(TransactionId tid, int tableid, String tableAlias, Predicate[] preds) {
+        this(tid, tableid, tableAlias, preds, null);
+    }
+
+    /**
+     * Creates a sequential scan that only returns the given fields of the
+     * tuples that pass every predicate of preds.
+     *
+     * @param preds
+     *            predicates on the fields of the table, which need not be
+     *            among the returned fields
+     * @param columns
+     *            the fields of the table to return, in order, or null for
+     *            all of them
+     */
+    public SeqScan(TransactionId tid, int tableid, String tableAlias, Predicate[] preds, int[] columns) {
         this.tableAlias = tableAlias;
         this.tableId = tableid;
         this.file = Database.getCatalog().getDatabaseFile(tableid);
         this.tid = tid;
+        this.preds = preds.clone();
+        this.columns = columns == null ? null : columns.clone();
 
-        iterator = file.iterator(tid);
+        iterator = makeIterator();
 
     }
 
+    private DbFileIterator makeIterator() {
+        if (preds.length == 0 && runtimeFields.isEmpty() && columns == null)
+            return file.iterator(tid);
+        if (file instanceof HeapFile)
+            return ((HeapFile) file).iterator(tid, filters(null, true), columns);
+        DbFileIterator all;
+        CompiledPredicate rest;
+        // the fields of the rows of all that are returned, or null for all of them
+        int[] out = columns;
+        if (file instanceof CompressedFile) {
+            // a compressed file tests preds itself, leaving the runtime filters
+            all = ((CompressedFile) file).iterator(tid, preds);
+            rest = filters(null, false);
+        } else if (file instanceof PaxFile && columns != null) {
+            // read the returned fields followed by the others preds test
+            List<Integer> read = new ArrayList<>();
+            for (int f : columns)
+                read.add(f);
+            for (Predicate p : preds) {
+                if (!read.contains(p.getField()))
+                    read.add(p.getField());
+            }
+            int[] fields = read.stream().mapToInt(Integer::intValue).toArray();
+            all = ((PaxFile) file).iterator(tid, fields);
+            rest = filters(fields, true);
+            out = null;
+            if (fields.length > columns.length) {
+                out = new int[columns.length];
+                for (int k = 0; k < out.length; k++)
+                    out[k] = k;
+            }
+        } else {
+            all = file.iterator(tid);
+            rest = filters(null, true);
+        }
+        final int[] proj = out;
+        TupleDesc td = proj == null ? null : file.getTupleDesc().project(columns);
+        return new AbstractDbFileIterator() {
+            protected Tuple readNext() throws DbException, TransactionAbortedException {
+                while (all.hasNext()) {
+                    Tuple t = all.next();
+                    if (rest != null && !rest.test(t))
+                        continue;
+                    if (proj == null)
+                        return t;
+                    Tuple p = new Tuple(td);
+                    for (int k = 0; k < proj.length; k++)
+                        p.setField(k, t.getField(proj[k]));
+                    p.setRecordId(t.getRecordId());
+                    return p;
+                }
+                return null;
+            }
+
+            public void open() throws DbException, TransactionAbortedException {
+                all.open();
+            }
+
+            public void rewind() throws DbException, TransactionAbortedException {
+                super.close();
+                all.rewind();
+            }
+
+            public void close() {
+                super.close();
+                all.close();
+            }
+        };
+    }
+
+    /**
+     * Compiles the filters of this scan over rows that hold the given fields
+     * of the file.
+     *
+     * @param fields the fields of the file in the rows, in order, or null
+     *   for rows of the file; must include every field tested
+     * @param withPreds true to include preds, false for only the runtime
+     *   filters
+     * @return the compiled filters, or null if there are none
+     */
+    private CompiledPredicate filters(int[] fields, boolean withPreds) {
+        TupleDesc td = fields == null ? file.getTupleDesc() : file.getTupleDesc().project(fields);
+        CompiledPredicate res = null;
+        if (withPreds && preds.length > 0) {
+            Predicate[] ps = new Predicate[preds.length];
+            for (int i = 0; i < ps.length; i++)
+                ps[i] = new Predicate(position(fields, preds[i].getField()), preds[i].getOp(), preds[i].getOperand());
+            res = CompiledPredicate.compile(td, ps);
+        }
+        for (int i = 0; i < runtimeFields.size(); i++)
+            res = CompiledPredicate.and(res,
+                    CompiledPredicate.bloom(td, position(fields, runtimeFields.get(i)), runtimeKeys.get(i)));
+        return res;
+    }
+
+    /**
+     * @return the index of field f of the file among fields, or f if fields
+     *   is null
+     */
+    private static int position(int[] fields, int f) {
+        if (fields == null)
+            return f;
+        for (int k = 0; k < fields.length; k++) {
+            if (fields[k] == f)
+                return k;
+        }
+        throw new IllegalArgumentException("field " + f + " is not read");
+    }
+
+    /**
+     * @return the predicates pushed into this scan
+     */
+    public Predicate[] getPredicates() {
+        return preds.clone();
+    }
+
+    /**
+     * Also drop the tuples whose key in field, of those this scan returns,
+     * is not among the keys published to keys; a heap file tests them on
+     * the page bytes. Must be called before the scan is opened.
+     */
+    public void addRuntimeFilter(int field, RuntimeFilter keys) {
+        runtimeFields.add(columns == null ? field : columns[field]);
+        runtimeKeys.add(keys);
+        iterator = makeIterator();
+    }
+
+    /**
+     * @return the fields of the table this scan returns, in order
+     */
+    public int[] getColumns() {
+        if (columns != null)
+            return columns.clone();
+        int[] all = new int[file.getTupleDesc().numFields()];
+        for (int i = 0; i < all.length; i++)
+            all[i] = i;
+        return all;
+    }
+
     /**
      * @return
      *       return the table name of the table the operator scans. This should
@@ -101,7 +295,15 @@ public class SeqScan implements OpIterator {
         this.tableId = tableid;
         this.tableAlias = tableAlias;
         this.file = Database.getCatalog().getDatabaseFile(tableid);
-        iterator = file.iterator(tid);
+        iterator = makeIterator();
+        batch = null;
+    }
+
+    /**
+     * @return the transaction this scan is running as a part of
+     */
+    public TransactionId getTransactionId() {
+        return tid;
     }
 
     public SeqScan(TransactionId tid, int tableId) {
@@ -116,7 +318,8 @@ public class SeqScan implements OpIterator {
 
     /**
      * Returns the TupleDesc with field names from the underlying HeapFile,
-     * prefixed with the tableAlias string from the constructor. This prefix
+     * prefixed with the tableAlias string from the constructor, for the
+     * fields this scan returns. This prefix
      * becomes useful when joining tables containing a field(s) with the same
      * name.  The alias and name should be separated with a "." character
      * (e.g., "alias.fieldName").
@@ -129,12 +332,13 @@ public class SeqScan implements OpIterator {
 
         // some code goes here
         TupleDesc tupleDesc = file.getTupleDesc();
-        int num = tupleDesc.numFields();
+        int num = columns == null ? tupleDesc.numFields() : columns.length;
         Type[] ts = new Type[num];
         String[] ss = new String[num];
         for (int i = 0; i < num; i++) {
-            ts[i] = tupleDesc.getFieldType(i);
-            ss[i] = tableAlias+"."+tupleDesc.getFieldName(i);
+            int f = columns == null ? i : columns[i];
+            ts[i] = tupleDesc.getFieldType(f);
+            ss[i] = tableAlias+"."+tupleDesc.getFieldName(f);
         }
         return new TupleDesc(ts,ss);
     }
@@ -151,6 +355,19 @@ public class SeqScan implements OpIterator {
         return iterator.next();
     }
 
+    /**
+     * Heap files are decoded a page at a time straight into the column
+     * arrays of the batch; other files go through their tuples.
+     */
+    @Override
+    public TupleBatch nextBatch() throws TransactionAbortedException, DbException {
+        if (!(iterator instanceof HeapFileIterator))
+            return OpIterator.super.nextBatch();
+        if (batch == null)
+            batch = new TupleBatch(getTupleDesc());
+        return ((HeapFileIterator) iterator).readBatch(batch) ? batch : null;
+    }
+
     public void close() {
         iterator.close();
     }
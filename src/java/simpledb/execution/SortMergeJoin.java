@@ -0,0 +1,242 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.util.*;
+
+/**
+ * SortMergeJoin joins two children that are both sorted in ascending order
+ * on their join fields, such as scans of B+ trees keyed on the join fields
+ * or ascending OrderBys.
+ * <p>
+ * For EQUALS the two inputs are merged in a single pass. The only tuples
+ * held in memory are the inner (right) tuples sharing the current key, so
+ * that each of them can be paired with every outer tuple of that key; for
+ * inputs with unique keys this is a single tuple.
+ * <p>
+ * For the range operators the matches of a tuple of one input are a
+ * prefix of the other: for GREATER_THAN and GREATER_THAN_OR_EQ, the inner
+ * tuples of an outer tuple; for LESS_THAN and LESS_THAN_OR_EQ, the outer
+ * tuples of an inner tuple. That input drives the join, and the other is
+ * read from its start for each driving tuple up to the first tuple that
+ * does not match, so every tuple read but one per driving tuple is part of
+ * the result. As the driving keys ascend the prefix only grows, and a
+ * driving tuple that does not match the first tuple of the other input has
+ * no matches and is skipped without reading it again. Only that first tuple
+ * is buffered in this case.
+ * <p>
+ * Results come out in the order of the outer child, or of the inner child
+ * for LESS_THAN and LESS_THAN_OR_EQ. NOT_EQUALS and LIKE are not
+ * supported.
+ */
+public class SortMergeJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private final JoinPredicate p;
+    private OpIterator child1;
+    private OpIterator child2;
+    private TupleDesc td;
+
+    /** the current outer tuple */
+    private transient Tuple t1;
+    /** EQUALS: the inner tuples whose key equals that of t1, and the next one to return */
+    private final List<Tuple> group = new ArrayList<>();
+    private transient int groupPos;
+    /** EQUALS: the first inner tuple after group, or null if there is none */
+    private transient Tuple lookahead;
+    /** range ops: the current tuple of the driving child */
+    private transient Tuple drive;
+    /** range ops: the first tuple of the other child, or null if it is empty */
+    private transient Tuple firstOther;
+
+    /**
+     * Constructor. Accepts two children sorted in ascending order on their
+     * join fields, and the predicate to join them on.
+     *
+     * @param p
+     *            The predicate to use to join the children
+     * @param child1
+     *            Iterator for the left(outer) relation to join
+     * @param child2
+     *            Iterator for the right(inner) relation to join
+     * @throws IllegalArgumentException if the operator of p is not supported
+     */
+    public SortMergeJoin(JoinPredicate p, OpIterator child1, OpIterator child2) {
+        if (!supports(p.getOperator()))
+            throw new IllegalArgumentException("sort-merge join does not support " + p.getOperator());
+        this.p = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.td = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+    }
+
+    /**
+     * @return true if joins with the range operator op are driven by the
+     *   inner child, whose order their results come out in
+     */
+    public static boolean drivenByInner(Predicate.Op op) {
+        return op == Predicate.Op.LESS_THAN || op == Predicate.Op.LESS_THAN_OR_EQ;
+    }
+
+    /**
+     * @return true if SortMergeJoin can evaluate joins with operator op
+     */
+    public static boolean supports(Predicate.Op op) {
+        return op != Predicate.Op.NOT_EQUALS && op != Predicate.Op.LIKE;
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return p;
+    }
+
+    public String getJoinField1Name() {
+        return child1.getTupleDesc().getFieldName(p.getField1());
+    }
+
+    public String getJoinField2Name() {
+        return child2.getTupleDesc().getFieldName(p.getField2());
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child1.open();
+        child2.open();
+        reset();
+        super.open();
+    }
+
+    private void reset() throws DbException, TransactionAbortedException {
+        t1 = null;
+        group.clear();
+        groupPos = 0;
+        drive = null;
+        if (p.getOperator() == Predicate.Op.EQUALS) {
+            lookahead = nextInner();
+        } else {
+            OpIterator other = drivenByInner(p.getOperator()) ? child1 : child2;
+            firstOther = other.hasNext() ? other.next().materialize() : null;
+        }
+    }
+
+    public void close() {
+        super.close();
+        child1.close();
+        child2.close();
+        t1 = null;
+        lookahead = null;
+        drive = null;
+        firstOther = null;
+        group.clear();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child1.rewind();
+        child2.rewind();
+        reset();
+    }
+
+    private Tuple nextInner() throws DbException, TransactionAbortedException {
+        return child2.hasNext() ? child2.next() : null;
+    }
+
+    /**
+     * @return a negative number, zero or a positive number as the join field
+     *   of outer is less than, equal to or greater than that of inner
+     */
+    private int compare(Tuple outer, Tuple inner) {
+        Type type = outer.getTupleDesc().getFieldType(p.getField1());
+        return type.compare(outer, p.getField1(), inner, p.getField2());
+    }
+
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        return p.getOperator() == Predicate.Op.EQUALS ? fetchEquals() : fetchRange();
+    }
+
+    private Tuple fetchEquals() throws TransactionAbortedException, DbException {
+        while (true) {
+            if (t1 != null && groupPos < group.size())
+                return merge(t1, group.get(groupPos++));
+            if (!child1.hasNext())
+                return null;
+            t1 = child1.next();
+            groupPos = 0;
+            // an outer tuple with the same key as the last one reuses the group
+            if (!group.isEmpty() && compare(t1, group.get(0)) == 0)
+                continue;
+            group.clear();
+            while (lookahead != null && compare(t1, lookahead) > 0)
+                lookahead = nextInner();
+            if (lookahead == null)
+                return null;
+            while (lookahead != null && compare(t1, lookahead) == 0) {
+                group.add(lookahead.materialize());
+                lookahead = nextInner();
+            }
+        }
+    }
+
+    private Tuple fetchRange() throws TransactionAbortedException, DbException {
+        boolean byInner = drivenByInner(p.getOperator());
+        OpIterator driving = byInner ? child2 : child1;
+        OpIterator other = byInner ? child1 : child2;
+        while (true) {
+            if (drive == null) {
+                if (firstOther == null || !driving.hasNext())
+                    return null;
+                drive = driving.next();
+                if (!rangeMatch(byInner, drive, firstOther)) {
+                    drive = null;
+                    continue;
+                }
+                // the matches are a prefix of the other child
+                other.rewind();
+            }
+            if (other.hasNext()) {
+                Tuple t = other.next();
+                if (rangeMatch(byInner, drive, t))
+                    return byInner ? merge(t, drive) : merge(drive, t);
+            }
+            // the first tuple that does not match ends the prefix
+            drive = null;
+        }
+    }
+
+    /**
+     * @return true if the tuple d of the driving child joins with the tuple
+     *   o of the other child
+     */
+    private boolean rangeMatch(boolean byInner, Tuple d, Tuple o) {
+        return byInner ? p.filter(o, d) : p.filter(d, o);
+    }
+
+    private Tuple merge(Tuple outer, Tuple inner) {
+        Tuple t = new Tuple(td);
+        int n1 = outer.getTupleDesc().numFields();
+        for (int i = 0; i < n1; i++)
+            t.setField(i, outer.getField(i));
+        for (int i = 0; i < inner.getTupleDesc().numFields(); i++)
+            t.setField(n1 + i, inner.getField(i));
+        return t;
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[]{child1, child2};
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child1 = children[0];
+        this.child2 = children[1];
+        this.td = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+    }
+}
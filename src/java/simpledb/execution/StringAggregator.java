@@ -1,27 +1,31 @@
 package simpledb.execution;
 
-import simpledb.common.DbException;
 import simpledb.common.Type;
-import simpledb.storage.Field;
 import simpledb.storage.IntField;
 import simpledb.storage.Tuple;
+import simpledb.storage.TupleBatch;
 import simpledb.storage.TupleDesc;
-import simpledb.transaction.TransactionAbortedException;
+import simpledb.storage.TupleIterator;
 
 import java.util.*;
 
 /**
  * Knows how to compute some aggregate over a set of StringFields.
+ * <p>
+ * Only a count per group is kept, not the tuples themselves.
  */
 public class StringAggregator implements Aggregator {
 
     private static final long serialVersionUID = 1L;
 
-    List<Tuple> tuples;
     int gbfield;
     Type gbfieldtype;
     int afield;
     Op what;
+    /** the group ids, or null if there is no grouping */
+    private final KeyIndex groups;
+    private final Accumulators acc = new Accumulators();
+
     /**
      * Aggregate constructor
      * @param gbfield the 0-based index of the group-by field in the tuple, or NO_GROUPING if there is no grouping
@@ -32,15 +36,14 @@ public class StringAggregator implements Aggregator {
      */
 
     public StringAggregator(int gbfield, Type gbfieldtype, int afield, Op what) {
-        // some code goes here
+        if(what!=Op.COUNT){
+            throw new IllegalArgumentException("what != COUNT");
+        }
         this.afield = afield;
         this.gbfield = gbfield;
         this.gbfieldtype = gbfieldtype;
         this.what = what;
-        tuples = new ArrayList<>();
-        if(what!=Op.COUNT){
-            throw new IllegalArgumentException("what != COUNT");
-        }
+        this.groups = gbfield == NO_GROUPING ? null : KeyIndex.forType(gbfieldtype);
     }
 
     /**
@@ -48,7 +51,42 @@ public class StringAggregator implements Aggregator {
      * @param tup the Tuple containing an aggregate field and a group-by field
      */
     public void mergeTupleIntoGroup(Tuple tup) {
-        tuples.add(tup);
+        acc.count(groups == null ? 0 : groups.put(tup, gbfield));
+    }
+
+    public int numGroups() {
+        return acc.size();
+    }
+
+    public boolean hasGroup(Tuple tup) {
+        if (groups == null)
+            return acc.size() > 0;
+        return groups.get(tup, gbfield) != -1;
+    }
+
+    public void mergeBatch(TupleBatch b, int maxGroups) {
+        int[] sel = b.getSelection();
+        int n = b.size();
+        int m = 0;
+        for (int k = 0; k < n; k++) {
+            int r = sel[k];
+            int id = groups == null ? 0
+                    : groups.size() < maxGroups ? groups.put(b, r, gbfield) : groups.get(b, r, gbfield);
+            if (id < 0)
+                sel[m++] = r;
+            else
+                acc.count(id);
+        }
+        b.setSelected(m);
+    }
+
+    /**
+     * @return the TupleDesc of the tuples returned by {@link #iterator()}
+     */
+    public TupleDesc getTupleDesc() {
+        if (gbfield == NO_GROUPING)
+            return new TupleDesc(new Type[]{Type.INT_TYPE});
+        return new TupleDesc(new Type[]{gbfieldtype, Type.INT_TYPE});
     }
 
     /**
@@ -60,99 +98,20 @@ public class StringAggregator implements Aggregator {
      *   aggregate specified in the constructor.
      */
     public OpIterator iterator() {
-        // some code goes here
-        if(gbfield == Aggregator.NO_GROUPING) {
-            TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE});
-            Tuple tuple = new Tuple(td);
-            tuple.setField(0, new IntField(tuples.size()));
-            return new SAIterator(tuple);
-        }else{
-            Map<String,List<Tuple>> map = new HashMap<>();
-
-            for (Tuple tuple : tuples) {
-                Field field = tuple.getField(gbfield);
-                if(map.get(field.toString())==null){
-                    List<Tuple> ls = new ArrayList<>();
-                    ls.add(tuple);
-                    map.put(field.toString(),ls);
-                }else{
-                    List<Tuple> tuples = map.get(field.toString());
-                    tuples.add(tuple);
-                    map.put(field.toString(),tuples);
-                }
-            }
-            List<Tuple> tuples = new ArrayList<>();
-            for (List<Tuple> value : map.values()) {
-                Tuple aggregate = aggregate(value);
-                tuples.add(aggregate);
-            }
-            return new SAIterator(tuples);
-        }
-
-
-    }
-
-    private Tuple aggregate(List<Tuple> tuples) {
-        Field groupField = tuples.get(0).getField(gbfield);
-        int count = 0;
-        for (Tuple tuple : tuples) {
-            count++;
-        }
-        TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE,gbfieldtype});
-        Tuple tuple = new Tuple(td);
-        tuple.setField(1, new IntField(count));
-        tuple.setField(0,groupField);
-        return tuple;
-    }
-
-    class SAIterator implements OpIterator{
-        List<Tuple> tuples;
-        Iterator<Tuple> it;
-        SAIterator(Tuple t){
-            tuples = new ArrayList<>();
-            tuples.add(t);
-        }
-
-        SAIterator(List<Tuple> ts){
-            tuples = ts;
-        }
-
-
-        @Override
-        public void open() throws DbException, TransactionAbortedException {
-            it = tuples.iterator();
-        }
-
-        @Override
-        public boolean hasNext() throws DbException, TransactionAbortedException {
-            if(it == null){
-                return false;
-            }
-            return it.hasNext();
-        }
-
-        @Override
-        public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
-            if(it == null){
-                return null;
+        TupleDesc td = getTupleDesc();
+        List<Tuple> res = new ArrayList<>();
+        if (groups == null) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(acc.size() == 0 ? 0 : acc.getCount(0)));
+            res.add(t);
+        } else {
+            for (int id = 0; id < acc.size(); id++) {
+                Tuple t = new Tuple(td);
+                t.setField(0, groups.getField(id));
+                t.setField(1, new IntField(acc.getCount(id)));
+                res.add(t);
             }
-            return it.next();
-        }
-
-        @Override
-        public void rewind() throws DbException, TransactionAbortedException {
-            it = tuples.iterator();
-        }
-
-        @Override
-        public TupleDesc getTupleDesc() {
-            return tuples.get(0).getTupleDesc();
-        }
-
-        @Override
-        public void close() {
-            it = null;
         }
+        return new TupleIterator(td, res);
     }
-
 }
@@ -0,0 +1,150 @@
+package simpledb.execution;
+
+import simpledb.common.Type;
+import simpledb.storage.Field;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleBatch;
+
+import java.util.Arrays;
+
+/**
+ * StringHashTable maps strings to dense ids. Like IntHashTable it uses open
+ * addressing over parallel arrays; the hash of every key is stored next to
+ * its id, so probing compares ints and only calls String.equals when the
+ * hashes already match. Callers that have the hash of a string at hand can
+ * pass it in with {@link #put(String, int)} and {@link #get(String, int)}.
+ */
+public class StringHashTable implements KeyIndex {
+
+    private static final int EMPTY = -1;
+
+    /** hash of the key in each slot; only meaningful where ids[slot] != EMPTY */
+    private int[] slotHashes;
+    /** id of the key in each slot, or EMPTY */
+    private int[] slotIds;
+    /** key and hash of each id */
+    private String[] keys;
+    private int[] hashes;
+    private int size;
+    private int mask;
+
+    public StringHashTable() {
+        this(16);
+    }
+
+    /**
+     * @param expected the number of distinct keys expected; the table grows
+     *                 past it if needed
+     */
+    public StringHashTable(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) << 1;
+        slotHashes = new int[capacity];
+        slotIds = new int[capacity];
+        Arrays.fill(slotIds, EMPTY);
+        keys = new String[Math.max(expected, 8)];
+        hashes = new int[keys.length];
+        mask = capacity - 1;
+    }
+
+    /**
+     * @return the hash used for s; any other hash passed in with s must be equal
+     */
+    public static int hash(String s) {
+        int h = s.hashCode() * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    public int put(String key) {
+        return put(key, hash(key));
+    }
+
+    /**
+     * @param hash {@link #hash}(key)
+     * @return the id of key, assigning the next id if it is not in the table
+     */
+    public int put(String key, int hash) {
+        int slot = hash & mask;
+        while (slotIds[slot] != EMPTY) {
+            if (slotHashes[slot] == hash && keys[slotIds[slot]].equals(key))
+                return slotIds[slot];
+            slot = (slot + 1) & mask;
+        }
+        int id = size++;
+        slotHashes[slot] = hash;
+        slotIds[slot] = id;
+        if (id == keys.length) {
+            keys = Arrays.copyOf(keys, keys.length * 2);
+            hashes = Arrays.copyOf(hashes, keys.length);
+        }
+        keys[id] = key;
+        hashes[id] = hash;
+        if (size * 2 > slotIds.length)
+            grow();
+        return id;
+    }
+
+    public int get(String key) {
+        return get(key, hash(key));
+    }
+
+    /**
+     * @param hash {@link #hash}(key)
+     * @return the id of key, or -1 if it is not in the table
+     */
+    public int get(String key, int hash) {
+        int slot = hash & mask;
+        while (slotIds[slot] != EMPTY) {
+            if (slotHashes[slot] == hash && keys[slotIds[slot]].equals(key))
+                return slotIds[slot];
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the key that was given the id
+     */
+    public String getKey(int id) {
+        return keys[id];
+    }
+
+    private void grow() {
+        int capacity = slotIds.length * 2;
+        slotHashes = new int[capacity];
+        slotIds = new int[capacity];
+        Arrays.fill(slotIds, EMPTY);
+        mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (slotIds[slot] != EMPTY)
+                slot = (slot + 1) & mask;
+            slotHashes[slot] = hashes[id];
+            slotIds[slot] = id;
+        }
+    }
+
+    public int put(Tuple t, int i) {
+        return put(((StringField) t.getField(i)).getValue());
+    }
+
+    public int get(Tuple t, int i) {
+        return get(((StringField) t.getField(i)).getValue());
+    }
+
+    public int put(TupleBatch b, int r, int i) {
+        return put(b.getStrings(i)[r]);
+    }
+
+    public int get(TupleBatch b, int r, int i) {
+        return get(b.getStrings(i)[r]);
+    }
+
+    public Field getField(int id) {
+        return new StringField(keys[id], Type.STRING_LEN);
+    }
+
+    public int size() {
+        return size;
+    }
+}
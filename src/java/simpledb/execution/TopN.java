@@ -0,0 +1,120 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleBatch;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.util.*;
+
+/**
+ * TopN returns the first n tuples of its child in the order an OrderBy on
+ * the same fields would produce, i.e. ORDER BY ... LIMIT n. Instead of
+ * sorting the whole input it keeps the best n tuples seen so far in a heap
+ * whose root is the worst of them; a new tuple only enters the heap if it
+ * sorts before the root. This takes O(n) memory and O(N log n) time for an
+ * input of N tuples, and only the tuples that enter the heap are
+ * materialized.
+ */
+public class TopN extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private OpIterator child;
+    private final int[] orderByFields;
+    private final boolean[] asc;
+    private final int n;
+    private final TupleComparator comparator;
+
+    /** the result, in sort order */
+    private final List<Tuple> top = new ArrayList<>();
+    private Iterator<Tuple> it;
+
+    /**
+     * Constructor.
+     *
+     * @param orderbyFields
+     *            the fields to sort on, most significant first.
+     * @param asc
+     *            for each field, true if the sort order is ascending.
+     * @param n
+     *            the number of tuples to return
+     * @param child
+     *            the tuples to sort.
+     */
+    public TopN(int[] orderbyFields, boolean[] asc, int n, OpIterator child) {
+        if (orderbyFields.length == 0 || orderbyFields.length != asc.length)
+            throw new IllegalArgumentException("need one sort order per sort field");
+        if (n < 0)
+            throw new IllegalArgumentException("n must not be negative");
+        this.child = child;
+        this.orderByFields = orderbyFields.clone();
+        this.asc = asc.clone();
+        this.n = n;
+        this.comparator = new TupleComparator(this.orderByFields, this.asc);
+    }
+
+    public int[] getOrderByFields() {
+        return orderByFields.clone();
+    }
+
+    public boolean[] getAscending() {
+        return asc.clone();
+    }
+
+    public int getLimit() {
+        return n;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child.open();
+        top.clear();
+        if (n > 0) {
+            PriorityQueue<Tuple> heap = new PriorityQueue<>(Math.min(n, TupleBatch.DEFAULT_SIZE), comparator.reversed());
+            while (child.hasNext()) {
+                Tuple t = child.next();
+                if (heap.size() < n) {
+                    heap.add(t.materialize());
+                } else if (comparator.compare(t, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(t.materialize());
+                }
+            }
+            top.addAll(heap);
+            top.sort(comparator);
+        }
+        it = top.iterator();
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        child.close();
+        top.clear();
+        it = null;
+    }
+
+    public void rewind() {
+        it = top.iterator();
+    }
+
+    protected Tuple fetchNext() {
+        return it != null && it.hasNext() ? it.next() : null;
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[]{child};
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child = children[0];
+    }
+}
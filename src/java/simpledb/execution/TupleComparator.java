@@ -0,0 +1,33 @@
+package simpledb.execution;
+
+import simpledb.storage.Tuple;
+
+import java.util.Comparator;
+
+/**
+ * Orders tuples on some of their fields, most significant first, as OrderBy
+ * and TopN sort them.
+ */
+class TupleComparator implements Comparator<Tuple> {
+    final int[] fields;
+    final boolean[] asc;
+
+    public TupleComparator(int field, boolean asc) {
+        this(new int[]{field}, new boolean[]{asc});
+    }
+
+    public TupleComparator(int[] fields, boolean[] asc) {
+        this.fields = fields;
+        this.asc = asc;
+    }
+
+    public int compare(Tuple o1, Tuple o2) {
+        for (int i = 0; i < fields.length; i++) {
+            int c = o1.getTupleDesc().getFieldType(fields[i]).compare(o1, fields[i], o2, fields[i]);
+            if (c != 0)
+                return asc[i] ? c : -c;
+        }
+        return 0;
+    }
+    
+}
@@ -0,0 +1,95 @@
+package simpledb.execution;
+
+import simpledb.common.Type;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleBatch;
+
+import java.util.Arrays;
+
+/**
+ * TupleHashTable holds the build side of a hash join. Keys are mapped to
+ * dense ids by a {@link KeyIndex}; the rows themselves live in one array,
+ * and the rows with the same key are chained through a parallel int array,
+ * so adding a row allocates nothing beyond occasionally growing the arrays.
+ * <p>
+ * To find the matches of a probe tuple, call {@link #first} and follow
+ * {@link #next} until it returns -1, reading each row with {@link #getRow}.
+ */
+public class TupleHashTable {
+
+    private final int field;
+    private final KeyIndex keys;
+    /** first row of each key id, or -1 */
+    private int[] head;
+    private Tuple[] rows;
+    /** next row with the same key, or -1 */
+    private int[] next;
+    private int size;
+    private int numKeys;
+
+    /**
+     * @param type  the type of the key field
+     * @param field the index of the key field in the rows added
+     */
+    public TupleHashTable(Type type, int field) {
+        this.field = field;
+        this.keys = KeyIndex.forType(type);
+        this.head = new int[16];
+        this.rows = new Tuple[16];
+        this.next = new int[16];
+    }
+
+    public void add(Tuple t) {
+        int id = keys.put(t, field);
+        if (id == numKeys) {
+            if (id == head.length)
+                head = Arrays.copyOf(head, head.length * 2);
+            head[id] = -1;
+            numKeys++;
+        }
+        if (size == rows.length) {
+            rows = Arrays.copyOf(rows, size * 2);
+            next = Arrays.copyOf(next, size * 2);
+        }
+        rows[size] = t;
+        next[size] = head[id];
+        head[id] = size++;
+    }
+
+    /**
+     * @param probeField the index of the key field in probe
+     * @return the first row whose key equals that of probe, or -1
+     */
+    public int first(Tuple probe, int probeField) {
+        int id = keys.get(probe, probeField);
+        return id < 0 ? -1 : head[id];
+    }
+
+    /**
+     * @param probeField the index of the key field in probe
+     * @return the first row whose key equals that of the row at position r
+     *   of probe, or -1
+     */
+    public int first(TupleBatch probe, int r, int probeField) {
+        int id = keys.get(probe, r, probeField);
+        return id < 0 ? -1 : head[id];
+    }
+
+    /**
+     * @return the row after row with the same key, or -1
+     */
+    public int next(int row) {
+        return next[row];
+    }
+
+    public Tuple getRow(int row) {
+        return rows[row];
+    }
+
+    /**
+     * @return the number of rows added
+     */
+    public int size() {
+        return size;
+    }
+}
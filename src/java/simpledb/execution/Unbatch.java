@@ -0,0 +1,77 @@
+package simpledb.execution;
+
+import simpledb.common.DbException;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleBatch;
+import simpledb.storage.TupleDesc;
+import simpledb.transaction.TransactionAbortedException;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Unbatch reads its child a batch at a time and returns the selected rows
+ * one tuple at a time. It connects a pipeline of operators that work on
+ * batches (scans, filters, projections, hash join probes) to an operator
+ * that only knows tuples; {@link #nextBatch()} hands the child's batches
+ * through unchanged.
+ */
+public class Unbatch extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    private OpIterator child;
+    /** the current batch of the child, and the next of its rows to return */
+    private transient TupleBatch batch;
+    private transient int k;
+
+    public Unbatch(OpIterator child) {
+        this.child = child;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child.open();
+        batch = null;
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        child.close();
+        batch = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        child.rewind();
+        batch = null;
+    }
+
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        while (batch == null || k == batch.size()) {
+            batch = child.nextBatch();
+            k = 0;
+            if (batch == null)
+                return null;
+        }
+        return batch.getTuple(k++);
+    }
+
+    @Override
+    public TupleBatch nextBatch() throws DbException, TransactionAbortedException {
+        return child.nextBatch();
+    }
+
+    @Override
+    public OpIterator[] getChildren() {
+        return new OpIterator[]{child};
+    }
+
+    @Override
+    public void setChildren(OpIterator[] children) {
+        this.child = children[0];
+    }
+}
@@ -3,6 +3,9 @@ package simpledb.optimizer;
 import simpledb.common.Database;
 import simpledb.ParsingException;
 import simpledb.execution.*;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreeScan;
+import simpledb.storage.DbFile;
 import simpledb.storage.DbFileIterator;
 import simpledb.storage.TupleDesc;
 import simpledb.transaction.TransactionId;
@@ -75,13 +78,28 @@ public class JoinOptimizer {
 
         JoinPredicate p = new JoinPredicate(t1id, lj.p, t2id);
 
-        if (lj.p == Predicate.Op.EQUALS) {
+        if (lj instanceof LogicalSubplanJoinNode && ((LogicalSubplanJoinNode) lj).kind != LogicalSubplanJoinNode.Kind.JOIN)
+            return instantiateSemiJoin(p, plan1, plan2, ((LogicalSubplanJoinNode) lj).kind == LogicalSubplanJoinNode.Kind.ANTI);
+
+        if (SortMergeJoin.supports(lj.p) && !(lj instanceof LogicalSubplanJoinNode)
+                && isSortedOn(plan1, lj.f1QuantifiedName) && isSortedOn(plan2, lj.f2QuantifiedName)) {
+            // both inputs already come out in key order, so merge them
+            j = new SortMergeJoin(p, plan1, plan2);
+        } else if (!(lj instanceof LogicalSubplanJoinNode) && !isPruned(plan2)
+                && indexJoinIsCheaper(p, plan1, plan2)) {
+            // search the index of the inner table for each outer tuple; it
+            // returns whole tuples of the table, so the scan must too
+            SeqScan scan = scanOf(plan2);
+            j = new IndexNestedLoopJoin(p, plan1, scan.getTransactionId(), scan.file.getId(),
+                    scan.getAlias(), fileFilters(plan2));
+        } else if (lj.p == Predicate.Op.EQUALS) {
 
             try {
                 // dynamically load HashEquiJoin -- if it doesn't exist, just
                 // fall back on regular join
                 Class<?> c = Class.forName("simpledb.execution.HashEquiJoin");
-                java.lang.reflect.Constructor<?> ct = c.getConstructors()[0];
+                java.lang.reflect.Constructor<?> ct = c.getConstructor(JoinPredicate.class,
+                        OpIterator.class, OpIterator.class);
                 j = (OpIterator) ct
                         .newInstance(new Object[] { p, plan1, plan2 });
             } catch (Exception e) {
@@ -95,6 +113,232 @@ public class JoinOptimizer {
 
     }
 
+    /**
+     * Create the semi or anti join of plan1 with the first field of the
+     * subquery plan2. When the subquery selects the key of a table stored in
+     * a B+ tree, possibly through filters, and searching the tree once per
+     * outer tuple is estimated to be cheaper than reading the subquery, the
+     * tree is searched instead.
+     */
+    private static OpIterator instantiateSemiJoin(JoinPredicate p, OpIterator plan1, OpIterator plan2,
+                                                  boolean anti) {
+        if (plan2 instanceof Project) {
+            OpIterator inner = ((Project) plan2).getChildren()[0];
+            SeqScan s = scanOf(inner);
+            if (s != null) {
+                int key = inner.getTupleDesc().fieldNameToIndex(plan2.getTupleDesc().getFieldName(0));
+                if (indexJoinIsCheaper(new JoinPredicate(p.getField1(), p.getOperator(), key), plan1, inner)) {
+                    // the index operators read whole tuples of the table
+                    JoinPredicate ip = new JoinPredicate(p.getField1(), p.getOperator(), s.getColumns()[key]);
+                    List<Predicate> filters = fileFilters(inner);
+                    return anti ? new IndexAntiJoin(ip, plan1, s.getTransactionId(), s.file.getId(), filters)
+                            : new IndexSemiJoin(ip, plan1, s.getTransactionId(), s.file.getId(), filters);
+                }
+            }
+        }
+        return anti ? new AntiJoin(p, plan1, plan2) : new SemiJoin(p, plan1, plan2);
+    }
+
+    /**
+     * Return true if the tuples of plan come out in ascending order of the
+     * named field. This is the case for scans of a B+ tree keyed on the field,
+     * for ascending OrderBys on it, for SortMergeJoins on it, for sorted
+     * mode Aggregates grouped on it, and for filters and projections of such
+     * plans.
+     *
+     * @param plan
+     *            the plan to check
+     * @param fieldName
+     *            the name of the field in the TupleDesc of plan
+     */
+    public static boolean isSortedOn(OpIterator plan, String fieldName) {
+        if (plan instanceof SeqScan || plan instanceof BTreeScan) {
+            DbFile f = plan instanceof SeqScan ? ((SeqScan) plan).file
+                    : Database.getCatalog().getDatabaseFile(
+                            Database.getCatalog().getTableId(((BTreeScan) plan).getTableName()));
+            return f instanceof BTreeFile
+                    && fieldName.equals(plan.getTupleDesc().getFieldName(((BTreeFile) f).keyField()));
+        } else if (plan instanceof OrderBy) {
+            OrderBy o = (OrderBy) plan;
+            return o.isASC() && fieldName.equals(o.getOrderFieldName());
+        } else if (plan instanceof SortMergeJoin) {
+            SortMergeJoin j = (SortMergeJoin) plan;
+            Predicate.Op op = j.getJoinPredicate().getOperator();
+            if (op == Predicate.Op.EQUALS)
+                return fieldName.equals(j.getJoinField1Name()) || fieldName.equals(j.getJoinField2Name());
+            return fieldName.equals(SortMergeJoin.drivenByInner(op) ? j.getJoinField2Name() : j.getJoinField1Name());
+        } else if (plan instanceof Aggregate) {
+            Aggregate a = (Aggregate) plan;
+            return a.isSortedInput() && a.groupField() != Aggregator.NO_GROUPING
+                    && fieldName.equals(a.groupFieldName())
+                    && isSortedOn(a.getChildren()[0], fieldName);
+        } else if (plan instanceof Filter || plan instanceof Project) {
+            OpIterator child = ((Operator) plan).getChildren()[0];
+            try {
+                child.getTupleDesc().fieldNameToIndex(fieldName);
+            } catch (NoSuchElementException e) {
+                return false;
+            }
+            return isSortedOn(child, fieldName);
+        }
+        return false;
+    }
+
+    /** the number of children of an internal B+ tree page, roughly */
+    private static final int BTREE_FANOUT = 500;
+
+    /**
+     * Estimate the cost of searching a B+ tree once for the tuples that join
+     * with one outer tuple: the internal pages on the way down, plus the
+     * leaves holding the matches. An equality search is taken to match one
+     * leaf's worth of tuples, a range search half of the table.
+     *
+     * @param f
+     *            the B+ tree
+     * @param card
+     *            the number of tuples in the tree
+     * @param scanCost
+     *            the cost of scanning the whole tree
+     */
+    public static double estimateIndexProbeCost(BTreeFile f, int card, double scanCost, Predicate.Op op) {
+        int pages = Math.max(f.numPages(), 1);
+        double pageCost = scanCost / (pages + 1);
+        int height = 1 + (int) Math.ceil(Math.log(pages) / Math.log(BTREE_FANOUT));
+        if (op == Predicate.Op.EQUALS)
+            return pageCost * height + (double) card / pages;
+        return pageCost * height + scanCost / 2 + card / 2.0;
+    }
+
+    /**
+     * Estimate the number of tuples produced by plan from the statistics of
+     * the tables it scans, for plans made of filters over a scan, counting
+     * the predicates pushed into the scan.
+     *
+     * @return the estimate, or -1 if there is none
+     */
+    private static int estimatePlanCardinality(OpIterator plan) {
+        double selectivity = 1.0;
+        SeqScan scan = scanOf(plan);
+        if (scan == null)
+            return -1;
+        TableStats stats = TableStats.getTableStats(scan.getTableName());
+        if (stats == null)
+            return -1;
+        for (Predicate f : fileFilters(plan))
+            selectivity *= stats.estimateSelectivity(f.getField(), f.getOp(), f.getOperand());
+        return stats.estimateTableCardinality(selectivity);
+    }
+
+    /**
+     * @return the scan under the filters of plan, or null if plan is not
+     *   made of filters over a scan
+     */
+    private static SeqScan scanOf(OpIterator plan) {
+        while (plan instanceof Filter)
+            plan = ((Filter) plan).getChildren()[0];
+        return plan instanceof SeqScan ? (SeqScan) plan : null;
+    }
+
+    /**
+     * @return true if plan is made of filters over a scan that returns only
+     *   some of the fields of its table, or returns them out of order
+     */
+    private static boolean isPruned(OpIterator plan) {
+        SeqScan scan = scanOf(plan);
+        if (scan == null)
+            return false;
+        int[] columns = scan.getColumns();
+        if (columns.length != scan.file.getTupleDesc().numFields())
+            return true;
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i] != i)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Collect the predicates of a plan made of filters over a scan: those of
+     * the filters, which index the fields the scan returns, mapped to the
+     * fields of the table, and those pushed into the scan.
+     *
+     * @return the predicates, on fields of the scanned table
+     */
+    private static List<Predicate> fileFilters(OpIterator plan) {
+        SeqScan scan = scanOf(plan);
+        int[] columns = scan.getColumns();
+        List<Predicate> filters = new ArrayList<>();
+        for (; plan instanceof Filter; plan = ((Filter) plan).getChildren()[0]) {
+            for (Predicate f : ((Filter) plan).getPredicates())
+                filters.add(new Predicate(columns[f.getField()], f.getOp(), f.getOperand()));
+        }
+        filters.addAll(Arrays.asList(scan.getPredicates()));
+        return filters;
+    }
+
+    /**
+     * Return true if plan2 is a (filtered) scan of a B+ tree that can answer
+     * p, and probing it once per tuple of plan1 is estimated to be cheaper
+     * than the join instantiateJoin would use otherwise. Without statistics
+     * for both sides the index is not used. Field2 of p indexes the fields
+     * plan2 returns.
+     */
+    private static boolean indexJoinIsCheaper(JoinPredicate p, OpIterator plan1, OpIterator plan2) {
+        SeqScan inner = scanOf(plan2);
+        if (inner == null
+                || !IndexNestedLoopJoin.canProbe(inner.file, inner.getColumns()[p.getField2()], p.getOperator()))
+            return false;
+        BTreeFile f = (BTreeFile) inner.file;
+        TableStats stats2 = TableStats.getTableStats(inner.getTableName());
+        int card1 = estimatePlanCardinality(plan1);
+        if (stats2 == null || card1 < 0)
+            return false;
+        int card2 = stats2.totalTuples();
+        double scanCost = stats2.estimateScanCost();
+        double indexCost = card1 * estimateIndexProbeCost(f, card2, scanCost, p.getOperator());
+        double otherCost;
+        if (p.getOperator() == Predicate.Op.EQUALS)
+            otherCost = scanCost + card1 + card2;
+        else
+            otherCost = (card1 / Join.DEFAULT_BLOCK_SIZE + 1) * scanCost + (double) card1 * card2;
+        return indexCost < otherCost;
+    }
+
+    /**
+     * Return true if the table with the given alias is stored in a B+ tree
+     * keyed on the named field, so that scans of it are sorted on the field.
+     */
+    private boolean isSortedTable(String tableAlias, String field) {
+        if (tableAlias == null || p.getTableId(tableAlias) == null)
+            return false;
+        DbFile f = Database.getCatalog().getDatabaseFile(p.getTableId(tableAlias));
+        return f instanceof BTreeFile
+                && field.equals(f.getTupleDesc().getFieldName(((BTreeFile) f).keyField()));
+    }
+
+    /**
+     * @return the file of the inner table of j, or null if it is a subquery
+     */
+    private DbFile innerFile(LogicalJoinNode j) {
+        if (j.t2Alias == null || p.getTableId(j.t2Alias) == null)
+            return null;
+        return Database.getCatalog().getDatabaseFile(p.getTableId(j.t2Alias));
+    }
+
+    /**
+     * @return the index of the named field in the table with the given
+     *   alias, or -1 if there is no such field
+     */
+    private int fieldIndex(String tableAlias, String field) {
+        if (tableAlias == null || p.getTableId(tableAlias) == null)
+            return -1;
+        try {
+            return Database.getCatalog().getTupleDesc(p.getTableId(tableAlias)).fieldNameToIndex(field);
+        } catch (NoSuchElementException e) {
+            return -1;
+        }
+    }
+
     /**
      * Estimate the cost of a join.
      * 
@@ -128,11 +372,21 @@ public class JoinOptimizer {
             // You do not need to implement proper support for these for Lab 3.
             return card1 + cost1 + cost2;
         } else {
-            // Insert your code here.
-            // HINT: You may need to use the variable "j" if you implemented
-            // a join algorithm that's more complicated than a basic
-            // nested-loops join.
-            return cost1+card1*cost2+card1*card2;
+            if (SortMergeJoin.supports(j.p) && isSortedTable(j.t1Alias, j.f1PureName)
+                    && isSortedTable(j.t2Alias, j.f2PureName)) {
+                // sort-merge join: an equi-join reads each input once, a
+                // range join rescans about half of the inner per outer tuple
+                if (j.p == Predicate.Op.EQUALS)
+                    return cost1 + cost2 + card1 + card2;
+                return cost1 + card1 * cost2 / 2 + card1 * card2 / 2.0;
+            }
+            double cost = cost1+card1*cost2+card1*card2;
+            if (IndexNestedLoopJoin.canProbe(innerFile(j), fieldIndex(j.t2Alias, j.f2PureName), j.p)) {
+                // index nested-loop join: one index search per outer tuple
+                double probe = estimateIndexProbeCost((BTreeFile) innerFile(j), card2, cost2, j.p);
+                cost = Math.min(cost, cost1 + card1 * probe);
+            }
+            return cost;
         }
     }
 
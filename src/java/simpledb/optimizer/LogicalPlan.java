@@ -36,8 +36,10 @@ public class LogicalPlan {
     private boolean hasAgg = false;
     private String aggOp;
     private String aggField;
-    private boolean oByAsc, hasOrderBy = false;
-    private String oByField;
+    private final List<String> oByFields = new ArrayList<>();
+    private final List<Boolean> oByAsc = new ArrayList<>();
+    private int limit = -1;
+    private int parallelism = 1;
     private String query;
 //    private Query owner;
 
@@ -159,6 +161,27 @@ public class LogicalPlan {
         joins.add(lj);
     }
 
+    /** Keep only the rows whose field is (or, for an anti join, is not)
+     *  among the values of the first field of a subquery, as IN and NOT IN
+     *  do.  Each row is kept at most once, and the fields of the subquery
+     *  are not added to it.
+     *  @param joinField1 the name of the field; see {@link #addJoin(String, OpIterator, Predicate.Op)}
+     *  @param subplan the subquery
+     *  @param anti true to keep the rows without a match
+     *  @throws ParsingException if the field is ambiguous or unknown
+     */
+    public void addSemiJoin(String joinField1, OpIterator subplan, boolean anti) throws ParsingException {
+        joinField1 = disambiguateName(joinField1);
+
+        String table1 = joinField1.split("[.]")[0];
+        String pureField = joinField1.split("[.]")[1];
+
+        LogicalSubplanJoinNode lj = new LogicalSubplanJoinNode(table1, pureField, subplan, Predicate.Op.EQUALS,
+                anti ? LogicalSubplanJoinNode.Kind.ANTI : LogicalSubplanJoinNode.Kind.SEMI);
+        System.out.println("Added " + (anti ? "anti" : "semi") + " join on " + joinField1);
+        joins.add(lj);
+    }
+
     /** Add a scan to the plan. One scan node needs to be added for each alias of a table
         accessed by the plan.
         @param table the id of the table accessed by the plan (can be resolved to a DbFile using {@link Catalog#getDatabaseFile}
@@ -206,17 +229,140 @@ public class LogicalPlan {
         hasAgg = true;
     }
 
-    /** Add an ORDER BY expression in the specified order on the specified field.  SimpleDb only supports
-        a single ORDER BY field.
+    /** Add an ORDER BY expression in the specified order on the specified field.  If called
+        several times, the output is ordered by the first field, then by the second, and so on.
         @param field the field to order by
         @param asc true if should be ordered in ascending order, false for descending order
      * @throws ParsingException 
     */
     public void addOrderBy(String field, boolean asc) throws ParsingException {
         field=disambiguateName(field);
-        oByField = field;
-        oByAsc = asc;
-        hasOrderBy = true;
+        oByFields.add(field);
+        oByAsc.add(asc);
+    }
+
+    /** Limit the output to the first limit tuples.
+        @param limit the maximum number of tuples to return, or -1 for no limit
+    */
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    /** @return the maximum number of tuples to return, or -1 if there is no limit */
+    public int getLimit() {
+        return limit;
+    }
+
+    /** Set the number of threads that scan each heap table, and that
+        equality joins and grouped aggregates are split among.
+        @param parallelism the number of threads; 1 runs the whole query on one thread
+    */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be positive");
+        this.parallelism = parallelism;
+    }
+
+    /** @return the number of threads that scan each heap table */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @return the quantified names of the fields that the joins, aggregate,
+     *   ordering and select list of this plan read, which are all the
+     *   fields its scans need to return once their filters are pushed into
+     *   them; null if the select list takes every field of a table
+     */
+    private Set<String> neededFields() {
+        Set<String> needed = new HashSet<>();
+        for (LogicalSelectListNode si : selectList) {
+            if (si.fname.endsWith("*"))
+                return null;
+            needed.add(si.fname);
+        }
+        for (LogicalJoinNode lj : joins) {
+            needed.add(lj.f1QuantifiedName);
+            needed.add(lj.f2QuantifiedName);
+        }
+        if (aggField != null)
+            needed.add(aggField);
+        if (groupByField != null)
+            needed.add(groupByField);
+        needed.addAll(oByFields);
+        return needed;
+    }
+
+    /**
+     * @return the estimated number of tuples of plan if it scans the table
+     *   with the given alias, possibly through filters; -1 otherwise
+     */
+    private int scanCardinality(OpIterator plan, String alias, Map<String, TableStats> statsMap,
+                                Map<String, Double> filterSelectivities) {
+        while (plan instanceof Filter)
+            plan = ((Filter) plan).getChildren()[0];
+        if (!(plan instanceof SeqScan || plan instanceof ParallelSeqScan))
+            return -1;
+        TableStats s = statsMap.get(Database.getCatalog().getTableName(getTableId(alias)));
+        return s == null ? -1 : s.estimateTableCardinality(filterSelectivities.get(alias));
+    }
+
+    /**
+     * @return a plan that repartitions both inputs of a hash join on their
+     *   join fields and joins each pair of partitions on a thread of its own
+     */
+    private OpIterator partitionedJoin(HashEquiJoin j) {
+        JoinPredicate p = j.getJoinPredicate();
+        OpIterator[] children = j.getChildren();
+        Repartition[] left = Repartition.create(p.getField1(), parallelism, children[0]);
+        Repartition[] right = Repartition.create(p.getField2(), parallelism, children[1]);
+        OpIterator[] joins = new OpIterator[parallelism];
+        for (int i = 0; i < parallelism; i++)
+            joins[i] = new HashEquiJoin(p, left[i], right[i]);
+        return new Gather(joins);
+    }
+
+    /**
+     * Make the operators below plan drop the tuples whose key in field is
+     * not among the keys published to keys: the scan the field comes from,
+     * reached through filters and the lazily read sides of joins, or else
+     * the filter closest to it.
+     *
+     * @return true if a test was added
+     */
+    private static boolean pushRuntimeFilter(OpIterator plan, int field, RuntimeFilter keys) {
+        if (plan instanceof SeqScan) {
+            ((SeqScan) plan).addRuntimeFilter(field, keys);
+            return true;
+        }
+        if (plan instanceof Filter) {
+            if (!pushRuntimeFilter(((Filter) plan).getChildren()[0], field, keys))
+                ((Filter) plan).addRuntimeFilter(field, keys);
+            return true;
+        }
+        if (plan instanceof Join || plan instanceof HashEquiJoin) {
+            // a hash join reads its build side when it is opened, before the
+            // keys are published
+            OpIterator[] children = ((Operator) plan).getChildren();
+            int n1 = children[0].getTupleDesc().numFields();
+            if (field >= n1)
+                return pushRuntimeFilter(children[1], field - n1, keys);
+            return plan instanceof Join && pushRuntimeFilter(children[0], field, keys);
+        }
+        return false;
+    }
+
+    /**
+     * @return the gather of partial aggregates of whole run by each of the
+     *   threads of g over what it reads
+     */
+    private static Gather partialAggregates(Gather g, Aggregate whole) {
+        if (g instanceof ParallelSeqScan)
+            return ((ParallelSeqScan) g).andThen(whole::partial);
+        OpIterator[] inputs = g.getChildren();
+        for (int i = 0; i < inputs.length; i++)
+            inputs[i] = whole.partial(inputs[i]);
+        return new Gather(inputs);
     }
 
     /** Given a name of a field, try to figure out what table it belongs to by looking
@@ -335,7 +481,15 @@ public class LogicalPlan {
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown field " + lf.fieldQuantifiedName);
             }
-            subplanMap.put(lf.tableAlias, new Filter(p, subplan));
+            // the filters of a table make up one conjunction, compiled once
+            if (subplan instanceof Filter) {
+                List<Predicate> preds = new ArrayList<>(Arrays.asList(((Filter) subplan).getPredicates()));
+                preds.add(p);
+                subplanMap.put(lf.tableAlias, new Filter(preds.toArray(new Predicate[0]),
+                        ((Filter) subplan).getChildren()[0]));
+            } else {
+                subplanMap.put(lf.tableAlias, new Filter(p, subplan));
+            }
 
             TableStats s = statsMap.get(Database.getCatalog().getTableName(this.getTableId(lf.tableAlias)));
 
@@ -344,12 +498,76 @@ public class LogicalPlan {
 
             //s.addSelectivityFactor(estimateFilterSelectivity(lf,statsMap));
         }
-        
-        JoinOptimizer jo = new JoinOptimizer(this,joins);
 
-        joins = jo.orderJoins(statsMap,filterSelectivities,explain);
+        // push the filters of heap, compressed and PAX tables into their
+        // scans, which test them on the bytes or the compressed columns of
+        // each page, or on the columns a PAX page decodes
+        for (LogicalScanNode table : tables) {
+            OpIterator plan = subplanMap.get(table.alias);
+            if (plan instanceof Filter) {
+                OpIterator scan = ((Filter) plan).getChildren()[0];
+                if (scan instanceof SeqScan && ((SeqScan) scan).getPredicates().length == 0
+                        && (((SeqScan) scan).file instanceof HeapFile || ((SeqScan) scan).file instanceof CompressedFile
+                            || ((SeqScan) scan).file instanceof PaxFile))
+                    subplanMap.put(table.alias, new SeqScan(t, table.t, table.alias,
+                            ((Filter) plan).getPredicates()));
+            }
+        }
+
+        // heap and PAX tables only decode the fields the rest of the plan reads
+        Set<String> needed = neededFields();
+        for (LogicalScanNode table : tables) {
+            OpIterator plan = subplanMap.get(table.alias);
+            if (needed == null || !(plan instanceof SeqScan)
+                    || !(((SeqScan) plan).file instanceof HeapFile || ((SeqScan) plan).file instanceof PaxFile))
+                continue;
+            TupleDesc td = ((SeqScan) plan).file.getTupleDesc();
+            List<Integer> columns = new ArrayList<>();
+            for (int i = 0; i < td.numFields(); i++) {
+                if (needed.contains(table.alias + "." + td.getFieldName(i)))
+                    columns.add(i);
+            }
+            if (columns.size() < td.numFields()) {
+                if (columns.isEmpty())
+                    columns.add(0);
+                subplanMap.put(table.alias, new SeqScan(t, table.t, table.alias, ((SeqScan) plan).getPredicates(),
+                        columns.stream().mapToInt(Integer::intValue).toArray()));
+            }
+        }
 
+        if (parallelism > 1) {
+            // scan heap tables with several threads, each of which tests
+            // the filters of the table on the morsels it reads
+            for (LogicalScanNode table : tables) {
+                OpIterator plan = subplanMap.get(table.alias);
+                if (plan instanceof SeqScan && ((SeqScan) plan).file instanceof HeapFile)
+                    subplanMap.put(table.alias, new ParallelSeqScan(t, table.t, table.alias, parallelism,
+                            ((SeqScan) plan).getPredicates(), ((SeqScan) plan).getColumns(), scan -> scan));
+            }
+        }
+
+        // a subquery only matches rows of one table, so it is joined with
+        // the table before the tables are joined with each other
+        List<LogicalJoinNode> tableJoins = new ArrayList<>();
         for (LogicalJoinNode lj : joins) {
+            if (!(lj instanceof LogicalSubplanJoinNode)) {
+                tableJoins.add(lj);
+                continue;
+            }
+            OpIterator plan = subplanMap.get(lj.t1Alias);
+            if (plan == null)
+                throw new ParsingException("Unknown table in WHERE clause " + lj.t1Alias);
+            OpIterator sub = ((LogicalSubplanJoinNode) lj).subPlan;
+            if (sub == null)
+                throw new ParsingException("Invalid subquery.");
+            subplanMap.put(lj.t1Alias, JoinOptimizer.instantiateJoin(lj, plan, sub));
+        }
+
+        JoinOptimizer jo = new JoinOptimizer(this,tableJoins);
+
+        tableJoins = jo.orderJoins(statsMap,filterSelectivities,explain);
+
+        for (LogicalJoinNode lj : tableJoins) {
             OpIterator plan1;
             OpIterator plan2;
             boolean isSubqueryJoin = lj instanceof LogicalSubplanJoinNode;
@@ -382,6 +600,36 @@ public class LogicalPlan {
 
             OpIterator j;
             j = JoinOptimizer.instantiateJoin(lj, plan1, plan2);
+            if (j instanceof HashEquiJoin && !isSubqueryJoin) {
+                // build on the smaller of two scans
+                int card1 = scanCardinality(plan1, t1name, statsMap, filterSelectivities);
+                int card2 = scanCardinality(plan2, t2name, statsMap, filterSelectivities);
+                if (card2 >= 0 && card1 > card2) {
+                    JoinPredicate p = ((HashEquiJoin) j).getJoinPredicate();
+                    j = new HashEquiJoin(new JoinPredicate(p.getField2(), p.getOperator(), p.getField1()),
+                            plan2, plan1);
+                }
+            }
+            if (parallelism > 1 && j instanceof HashEquiJoin) {
+                // a build side known to fit in memory is shared by all
+                // threads, so the probe side need not be repartitioned
+                HashEquiJoin hj = (HashEquiJoin) j;
+                OpIterator build = hj.getChildren()[0];
+                int card = scanCardinality(build, build == plan1 ? t1name : t2name, statsMap, filterSelectivities);
+                if (card >= 0 && card <= HashEquiJoin.MAP_SIZE)
+                    j = new ParallelHashJoin(hj.getJoinPredicate(), hj.getChildren()[0], hj.getChildren()[1],
+                            parallelism);
+                else
+                    j = partitionedJoin((HashEquiJoin) j);
+            } else if (j instanceof HashEquiJoin) {
+                // drop the probe rows whose key is not among the build keys
+                // where they are read
+                HashEquiJoin hj = (HashEquiJoin) j;
+                OpIterator build = hj.getChildren()[0];
+                int card = scanCardinality(build, build == plan1 ? t1name : t2name, statsMap, filterSelectivities);
+                pushRuntimeFilter(hj.getChildren()[1], hj.getJoinPredicate().getField2(),
+                        card >= 0 ? hj.publishKeys(card) : hj.publishKeys());
+            }
             subplanMap.put(t1name, j);
 
             if (!isSubqueryJoin) {
@@ -459,23 +707,52 @@ public class LogicalPlan {
 
         if (hasAgg) {
             TupleDesc td = node.getTupleDesc();
-            Aggregate aggNode;
+            OpIterator aggNode;
             try {
-                aggNode = new Aggregate(node,
-                                        td.fieldNameToIndex(aggField),
-                                        groupByField == null?Aggregator.NO_GROUPING:td.fieldNameToIndex(groupByField),
-                                getAggOp(aggOp));
+                // groups of input sorted on the group field come one after
+                // another, so they need not be hashed
+                boolean sorted = groupByField != null && JoinOptimizer.isSortedOn(node, groupByField);
+                int afield = td.fieldNameToIndex(aggField);
+                int gfield = groupByField == null ? Aggregator.NO_GROUPING : td.fieldNameToIndex(groupByField);
+                Aggregate whole = new Aggregate(node, afield, gfield, getAggOp(aggOp), sorted);
+                if (parallelism > 1 && !sorted && node instanceof Gather) {
+                    // each thread aggregates what it reads, and the partial
+                    // states are merged after they are gathered
+                    aggNode = whole.merge(partialAggregates((Gather) node, whole));
+                } else if (parallelism > 1 && gfield != Aggregator.NO_GROUPING && !sorted) {
+                    // every group falls in one partition, and the partitions
+                    // are aggregated by threads of their own
+                    Repartition[] parts = Repartition.create(gfield, parallelism, node);
+                    OpIterator[] aggs = new OpIterator[parallelism];
+                    for (int i = 0; i < parallelism; i++)
+                        aggs[i] = new Aggregate(parts[i], afield, gfield, getAggOp(aggOp));
+                    aggNode = new Gather(aggs);
+                } else {
+                    aggNode = whole;
+                }
             } catch (NoSuchElementException | IllegalArgumentException e) {
                 throw new simpledb.ParsingException(e);
             }
             node = aggNode;
         }
 
-        if (hasOrderBy) {
-            node = new OrderBy(node.getTupleDesc().fieldNameToIndex(oByField), oByAsc, node);
+        if (!oByFields.isEmpty()) {
+            int[] fields = new int[oByFields.size()];
+            boolean[] asc = new boolean[oByFields.size()];
+            for (int i = 0; i < fields.length; i++) {
+                try {
+                    fields[i] = node.getTupleDesc().fieldNameToIndex(oByFields.get(i));
+                } catch (NoSuchElementException e) {
+                    throw new ParsingException("Unknown field " + oByFields.get(i) + " in ORDER BY");
+                }
+                asc[i] = oByAsc.get(i);
+            }
+            // with a LIMIT only the first tuples in order are needed
+            node = limit >= 0 ? new TopN(fields, asc, limit, node) : new OrderBy(fields, asc, node);
         }
 
-        return new Project(outFields, outTypes, node);
+        OpIterator project = new Project(outFields, outTypes, node);
+        return limit >= 0 && oByFields.isEmpty() ? new Limit(limit, project) : project;
     }
 
     public static void main(String[] argv) {
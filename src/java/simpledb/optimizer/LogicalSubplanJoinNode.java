@@ -9,10 +9,26 @@ import simpledb.execution.Predicate;
  */
 public class LogicalSubplanJoinNode extends LogicalJoinNode {
     
+    /** How the rows of the table are matched with those of the subplan */
+    public enum Kind {
+        /** an ordinary join, as for a comparison with a subquery */
+        JOIN,
+        /** the rows with a match, each once, as for IN and EXISTS */
+        SEMI,
+        /** the rows without a match, as for NOT IN and NOT EXISTS */
+        ANTI
+    }
+
     /** The subplan (used on the inner) of the join */
     final OpIterator subPlan;
     
+    final Kind kind;
+
     public LogicalSubplanJoinNode(String table1, String joinField1, OpIterator sp, Predicate.Op pred) {
+        this(table1, joinField1, sp, pred, Kind.JOIN);
+    }
+
+    public LogicalSubplanJoinNode(String table1, String joinField1, OpIterator sp, Predicate.Op pred, Kind kind) {
         t1Alias = table1;
         String[] tmps = joinField1.split("[.]");
         if (tmps.length>1)
@@ -22,6 +38,7 @@ public class LogicalSubplanJoinNode extends LogicalJoinNode {
         f1QuantifiedName=t1Alias+"."+f1PureName;
         subPlan = sp;
         p = pred;
+        this.kind = kind;
     }
     
     @Override public int hashCode() {
@@ -37,7 +54,7 @@ public class LogicalSubplanJoinNode extends LogicalJoinNode {
     }
     
     public LogicalSubplanJoinNode swapInnerOuter() {
-        return new LogicalSubplanJoinNode(t1Alias,f1PureName,subPlan, p);
+        return new LogicalSubplanJoinNode(t1Alias,f1PureName,subPlan, p, kind);
     }
 
 }
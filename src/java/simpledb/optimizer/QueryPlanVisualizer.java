@@ -36,7 +36,7 @@ public class QueryPlanVisualizer {
         }
         else
         {
-            if (children!=null && children[0]!=null)
+            if (children!=null && children.length>0 && children[0]!=null)
                 return this.calculateQueryPlanTreeDepth(children[0])+2;
         }
         return 2;
@@ -58,6 +58,29 @@ public class QueryPlanVisualizer {
 
     }
 
+    /**
+     * @return the predicates on fields of td, joined by AND
+     */
+    private static String conjunction(TupleDesc td, Predicate[] preds) {
+        return conjunction(null, td, preds);
+    }
+
+    /**
+     * @return the predicates on fields of td, each field name prefixed with
+     *   alias unless it is null, joined by AND
+     */
+    private static String conjunction(String alias, TupleDesc td, Predicate[] preds) {
+        StringBuilder cond = new StringBuilder();
+        for (Predicate p : preds) {
+            if (cond.length() > 0)
+                cond.append(" AND ");
+            if (alias != null)
+                cond.append(alias).append('.');
+            cond.append(td.getFieldName(p.getField())).append(p.getOp()).append(p.getOperand());
+        }
+        return cond.toString();
+    }
+
     private SubTreeDescriptor buildTree(int queryPlanDepth, int currentDepth,
                                         OpIterator queryPlan, int currentStartPosition,
                                         int parentUpperBarStartShift) {
@@ -76,6 +99,10 @@ public class QueryPlanVisualizer {
                 alias = " " + alias;
             else
                 alias = "";
+            if (s.getPredicates().length > 0)
+                // pushed predicates are on fields of the file, which a
+                // pruned scan need not return
+                alias += ", " + conjunction(s.getAlias(), s.file.getTupleDesc(), s.getPredicates());
             thisNode.text = String
                     .format("%1$s(%2$s)", SCAN, tableName + alias);
             if (SCAN.length() / 2 < parentUpperBarStartShift) {
@@ -200,11 +227,9 @@ public class QueryPlanVisualizer {
                 thisNode.height = currentDepth;
             } else if (plan instanceof Filter) {
                 Filter f = (Filter) plan;
-                Predicate p = f.getPredicate();
-                thisNode.text = String.format("%1$s(%2$s),card:%3$d", SELECT, children[0]
-                        .getTupleDesc().getFieldName(p.getField())
-                        + p.getOp()
-                        + p.getOperand(),f.getEstimatedCardinality());
+                thisNode.text = String.format("%1$s(%2$s),card:%3$d", SELECT,
+                        conjunction(children[0].getTupleDesc(), f.getPredicates()),
+                        f.getEstimatedCardinality());
                 int upBarShift = parentUpperBarStartShift;
                 if (SELECT.length() / 2 > parentUpperBarStartShift)
                     upBarShift = SELECT.length() / 2;
@@ -221,11 +246,16 @@ public class QueryPlanVisualizer {
                 thisNode.height = currentDepth;
             } else if (plan instanceof OrderBy) {
                 OrderBy o = (OrderBy) plan;
+                StringBuilder fields = new StringBuilder();
+                for (int f : o.getOrderByFields()) {
+                    if (fields.length() > 0)
+                        fields.append(",");
+                    fields.append(children[0].getTupleDesc().getFieldName(f));
+                }
                 thisNode.text = String.format(
                         "%1$s(%2$s),card:%3$d",
                         ORDERBY,
-                        children[0].getTupleDesc().getFieldName(
-                                o.getOrderByField()),o.getEstimatedCardinality());
+                        fields,o.getEstimatedCardinality());
                 int upBarShift = parentUpperBarStartShift;
                 if (ORDERBY.length() / 2 > parentUpperBarStartShift)
                     upBarShift = ORDERBY.length() / 2;
@@ -263,22 +293,16 @@ public class QueryPlanVisualizer {
                 thisNode.leftChild = child;
                 thisNode.height = currentDepth;
             }
-            else if (plan.getClass().getSuperclass().getSuperclass().getSimpleName().equals("Exchange")) {
-                String name="Exchange";
-                int card=0;
-                try {
-                    name = (String) plan.getClass().getMethod("getName").invoke(plan);
-                    card = (Integer) plan.getClass().getMethod("getEstimatedCardinality").invoke(plan);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                } 
+            else if (plan instanceof Exchange) {
+                String name = ((Exchange) plan).getName();
+                int card = plan.getEstimatedCardinality();
 
                 thisNode.text = String.format("%1$s,card:%2$d", name,card);
                 int upBarShift = parentUpperBarStartShift;
                 if (name.length() / 2 > parentUpperBarStartShift)
                     upBarShift = name.length() / 2;
                 SubTreeDescriptor child = this.buildTree(queryPlanDepth,
-                        currentDepth + 2 + adjustDepth, children[0],
+                        currentDepth + 2 + adjustDepth, children.length > 0 ? children[0] : null,
                         currentStartPosition, upBarShift);
                 if (child == null) {
                     thisNode.upBarPosition = upBarShift;
@@ -126,10 +126,9 @@ public class TableStats {
                 Tuple next = iterator.next();
                 this.pageNum = next.getRecordId().getPageId().getPageNumber();
                 for (int i = 0; i < intIndexes.size(); i++) {
-                    int index = intIndexes.get(i);
-                    Field field = next.getField(index);
-                    minValues[i] = Math.min(minValues[i],Integer.parseInt(field.toString()));
-                    maxValues[i] = Math.max(maxValues[i],Integer.parseInt(field.toString()));
+                    int v = next.getInt(intIndexes.get(i));
+                    minValues[i] = Math.min(minValues[i],v);
+                    maxValues[i] = Math.max(maxValues[i],v);
                 }
             }
             for (int i = 0; i < intIndexes.size(); i++) {
@@ -143,16 +142,13 @@ public class TableStats {
             while (iterator.hasNext()){
                 Tuple next = iterator.next();
                 for (int i = 0; i < intIndexes.size(); i++) {
-                    int index = intIndexes.get(i);
-                    Field field = next.getField(index);
-                    int v = Integer.parseInt(field.toString());
-                    intHistograms[i].addValue(v);
+                    intHistograms[i].addValue(next.getInt(intIndexes.get(i)));
                 }
 
                 for (int i = 0; i < stringIndexes.size(); i++) {
                     int index = stringIndexes.get(i);
                     Field field = next.getField(index);
-                    String v = field.toString();
+                    String v = ((StringField) field).getValue();
                     stringHistograms[i].addValue(v);
                 }
             }
@@ -233,7 +229,7 @@ public class TableStats {
                 }
             }
             StringHistogram histogram = stringHistograms[i];
-            return histogram.estimateSelectivity(op,constant.toString());
+            return histogram.estimateSelectivity(op,((StringField) constant).getValue());
         }else{
             int i = -1;
             for (int j = 0; j < intIndexes.size(); j++) {
@@ -243,7 +239,7 @@ public class TableStats {
                 }
             }
             IntHistogram histogram = intHistograms[i];
-            return histogram.estimateSelectivity(op,Integer.parseInt(constant.toString()));
+            return histogram.estimateSelectivity(op,((IntField) constant).getValue());
         }
     }
 
@@ -162,32 +162,48 @@ public class BufferPool {
                 }
             }
         }
-        //先在缓冲区找,找到了先将其移动到头部，然后直接返回
-        for (int i = 0; i < pages.length; i++) {
-                if (pages[i] != null && pages[i].getId().equals(pid)) {
-                    synchronized (pages) {
-                        if (pages[i] != null && pages[i].getId().equals(pid)) {
-                            Node node = map.get(pages[i].getId());
-                            deleteNode(node);
-                            addToHead(node);
-
-                            return pages[i];
-                        }
-                    }
-
-                }
-
-        }
+        // the page table and the LRU list are shared by every thread that
+        // reads pages, including the workers of a ParallelSeqScan; pages are
+        // read from disk outside the lock so that misses do not queue up
+        Page page = cachedPage(pid);
+        if (page != null)
+            return page;
 
         //找不到就读取页,然后加入缓冲区头部并返回
         DbFile file = Database.getCatalog().getDatabaseFile(pid.getTableId());
-        Page page = file.readPage(pid);
-        if (pageCount >= numPages) {
-            //缓冲区已满，使用策略从缓冲区丢弃一个page
-            evictPage();
+        Page read = file.readPage(pid);
+        synchronized (this) {
+            // another thread may have read the same page in the meantime
+            page = cachedPage(pid);
+            if (page != null)
+                return page;
+            if (pageCount >= numPages) {
+                //缓冲区已满，使用策略从缓冲区丢弃一个page
+                evictPage();
+            }
+            addToHead(new Node(read));
+            return read;
+        }
+    }
+
+    /**
+     * @return the page with id pid if it is in the buffer pool, after moving
+     *   it to the head of the LRU list, or null if it is not
+     */
+    private synchronized Page cachedPage(PageId pid) {
+        //先在缓冲区找,找到了先将其移动到头部，然后直接返回
+        for (int i = 0; i < pages.length; i++) {
+            if (pages[i] != null && pages[i].getId().equals(pid)) {
+                // moving the page to the head may also move it to another slot
+                Page page = pages[i];
+                Node node = map.get(page.getId());
+                deleteNode(node);
+                addToHead(node);
+
+                return page;
+            }
         }
-        addToHead(new Node(page));
-        return page;
+        return null;
     }
 
     /**
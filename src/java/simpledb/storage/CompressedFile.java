@@ -0,0 +1,71 @@
+package simpledb.storage;
+
+import simpledb.common.DbException;
+import simpledb.execution.Predicate;
+import simpledb.transaction.TransactionId;
+
+import java.io.*;
+import java.util.List;
+
+/**
+ * CompressedFile is a read-only DbFile made of CompressedPages. Files are
+ * written with CompressedFileEncoder; insertTuple and deleteTuple always
+ * throw DbException. Pages are decompressed when they are read into the
+ * buffer pool, and {@link #iterator(TransactionId, Predicate...)} evaluates
+ * predicates on the compressed columns before any tuple is built. SeqScan
+ * pushes the predicates of a query into this iterator.
+ *
+ * @see CompressedPage
+ * @see CompressedFileEncoder
+ */
+public class CompressedFile extends PageFile<CompressedPage> {
+
+    /**
+     * Constructs a compressed file backed by the specified file.
+     *
+     * @param f  the file that stores the on-disk backing store for this file.
+     * @param td the schema of the tuples in the file
+     */
+    public CompressedFile(File f, TupleDesc td) {
+        super(f, td);
+    }
+
+    protected CompressedPage createPage(HeapPageId pid, byte[] data) throws IOException {
+        return new CompressedPage(pid, data);
+    }
+
+    protected byte[] createEmptyPageData() {
+        return CompressedPage.createEmptyPageData();
+    }
+
+    /**
+     * Always throws: compressed files are read-only.
+     */
+    public List<Page> insertTuple(TransactionId tid, Tuple t) throws DbException {
+        throw new DbException("compressed files are read-only");
+    }
+
+    /**
+     * Always throws: compressed files are read-only.
+     */
+    public List<Page> deleteTuple(TransactionId tid, Tuple t) throws DbException {
+        throw new DbException("compressed files are read-only");
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return iterator(tid, new Predicate[0]);
+    }
+
+    /**
+     * Returns an iterator over the tuples of this file that satisfy every
+     * predicate of preds. The predicates are evaluated on the compressed
+     * columns of each page, once per dictionary entry or run where possible.
+     *
+     * @param tid the transaction reading the file
+     * @param preds the predicates to apply; none returns every tuple
+     */
+    public DbFileIterator iterator(TransactionId tid, Predicate... preds) {
+        return iterator(tid, page -> page.iterator(preds));
+    }
+}
@@ -0,0 +1,52 @@
+package simpledb.storage;
+
+import java.io.*;
+import java.util.Iterator;
+
+/**
+ * CompressedFileEncoder writes files in the format of CompressedFile. Text
+ * input can be converted with HeapFileEncoder first and then migrated here.
+ * Tables that are sorted on some column compress best when the tuples are
+ * passed in that order, since that column is then stored with RLE.
+ *
+ * @see CompressedPage
+ * @see HeapFileEncoder
+ */
+public class CompressedFileEncoder {
+
+    /**
+     * Migrate the contents of a HeapFile into a CompressedFile. The pages of the
+     * heap file are read directly, not through the buffer pool, so no
+     * transaction should be modifying it at the same time.
+     *
+     * @param hf the heap file to read; it must be in the catalog
+     * @param outFile the output file to write data to
+     */
+    public static void convert(HeapFile hf, File outFile) throws IOException {
+        write(HeapFileEncoder.tuples(hf), hf.getTupleDesc(), outFile);
+    }
+
+    /**
+     * Compress the given tuples into CompressedPages and write them to
+     * outFile. Each page takes as many tuples as fit once compressed. An
+     * empty input still produces one empty page.
+     */
+    public static void write(Iterator<Tuple> tuples, TupleDesc td, File outFile) throws IOException {
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(outFile))) {
+            CompressedPage.Builder page = new CompressedPage.Builder(td);
+            int npages = 0;
+            while (tuples.hasNext()) {
+                Tuple t = tuples.next();
+                if (!page.add(t)) {
+                    os.write(page.build());
+                    npages++;
+                    page = new CompressedPage.Builder(td);
+                    if (!page.add(t))
+                        throw new IOException("tuple does not fit on an empty page: " + t);
+                }
+            }
+            if (page.size() > 0 || npages == 0)
+                os.write(page.build());
+        }
+    }
+}
@@ -0,0 +1,498 @@
+package simpledb.storage;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.execution.Predicate;
+import simpledb.transaction.TransactionId;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * CompressedPage is a read-only page that stores its tuples column by
+ * column, each column compressed with a lightweight encoding:
+ * <ul>
+ * <li>INT columns use frame-of-reference with bit-packing (every value is
+ * stored as value - min in just enough bits for max - min), or run-length
+ * encoding when that is smaller, as it is for sorted or low-cardinality
+ * columns.</li>
+ * <li>STRING columns use a dictionary of the distinct strings on the page;
+ * the codes into the dictionary are then stored like an INT column.</li>
+ * </ul>
+ * The layout of a page is:
+ * <pre>
+ *   short   number of tuples n
+ *   per column, in order:
+ *     INT:     encoded int column
+ *     STRING:  short dictionary size d, d x (byte length, bytes),
+ *              then the codes as an encoded int column
+ *   encoded int column:
+ *     byte FOR:  int min, byte bits, ceiling(n * bits / 8) bytes of packed values
+ *     byte RLE:  short number of runs r, r x (int value, short run length)
+ * </pre>
+ * The page is decompressed when it is read, so it costs no more than a
+ * HeapPage to scan once it is in the buffer pool. Predicates can also be
+ * evaluated without building tuples, once per run or dictionary entry
+ * rather than once per row (see {@link #iterator(Predicate...)}).
+ * <p>
+ * Pages are built with {@link Builder}, which tracks the compressed size as
+ * tuples are added so that each page is filled as far as it can be.
+ * insertTuple and deleteTuple always throw DbException.
+ *
+ * @see CompressedFile
+ * @see CompressedFileEncoder
+ */
+public class CompressedPage implements TuplePage {
+
+    static final int FOR = 0;
+    static final int RLE = 1;
+
+    final HeapPageId pid;
+    final TupleDesc td;
+    final byte[] data;
+    final int numTuples;
+    /** the decoded columns; for STRING columns the codes into dicts[j] */
+    final int[][] columns;
+    /** runs of each column stored with RLE, null for other columns */
+    final int[][] runValues;
+    final int[][] runEnds;
+    /** dictionary of each STRING column, null for INT columns */
+    final StringField[][] dicts;
+    TransactionId dirtyTid;
+
+    /**
+     * Create a CompressedPage from a set of bytes of data read from disk.
+     * The format is described in the class comment; an all-zero array is a
+     * valid empty page.
+     */
+    public CompressedPage(HeapPageId id, byte[] data) throws IOException {
+        this.pid = id;
+        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.data = data;
+
+        int n = td.numFields();
+        columns = new int[n][];
+        runValues = new int[n][];
+        runEnds = new int[n][];
+        dicts = new StringField[n][];
+
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        numTuples = dis.readUnsignedShort();
+        if (numTuples == 0)
+            return;
+        for (int j = 0; j < n; j++) {
+            if (td.getFieldType(j) == Type.STRING_TYPE) {
+                StringField[] dict = new StringField[dis.readUnsignedShort()];
+                for (int k = 0; k < dict.length; k++) {
+                    byte[] bs = new byte[dis.readUnsignedByte()];
+                    dis.readFully(bs);
+                    dict[k] = new StringField(new String(bs), Type.STRING_LEN);
+                }
+                dicts[j] = dict;
+            }
+            readIntColumn(dis, j);
+        }
+    }
+
+    private void readIntColumn(DataInputStream dis, int j) throws IOException {
+        int[] values = new int[numTuples];
+        int encoding = dis.readByte();
+        if (encoding == FOR) {
+            int min = dis.readInt();
+            int bits = dis.readUnsignedByte();
+            long buffer = 0;
+            int buffered = 0;
+            for (int i = 0; i < numTuples; i++) {
+                while (buffered < bits) {
+                    buffer = buffer << 8 | dis.readUnsignedByte();
+                    buffered += 8;
+                }
+                long delta = bits == 0 ? 0 : (buffer >>> (buffered - bits)) & ((1L << bits) - 1);
+                buffered -= bits;
+                values[i] = (int) (min + delta);
+            }
+        } else {
+            int runs = dis.readUnsignedShort();
+            int[] vs = new int[runs];
+            int[] ends = new int[runs];
+            int i = 0;
+            for (int r = 0; r < runs; r++) {
+                vs[r] = dis.readInt();
+                ends[r] = i + dis.readUnsignedShort();
+                Arrays.fill(values, i, ends[r], vs[r]);
+                i = ends[r];
+            }
+            runValues[j] = vs;
+            runEnds[j] = ends;
+        }
+        columns[j] = values;
+    }
+
+    /**
+     * Builds the data of a CompressedPage one tuple at a time, keeping track
+     * of the size the page would have so that callers can stop adding tuples
+     * as soon as the next one would not fit.
+     */
+    public static class Builder {
+        private final TupleDesc td;
+        private final List<Tuple> tuples = new ArrayList<>();
+        private final IntColumnSize[] sizes;
+        private final List<Map<String, Integer>> dicts = new ArrayList<>();
+        private final int[] dictBytes;
+
+        public Builder(TupleDesc td) {
+            this.td = td;
+            this.sizes = new IntColumnSize[td.numFields()];
+            this.dictBytes = new int[td.numFields()];
+            for (int j = 0; j < sizes.length; j++) {
+                sizes[j] = new IntColumnSize();
+                dicts.add(td.getFieldType(j) == Type.STRING_TYPE ? new HashMap<>() : null);
+            }
+        }
+
+        /**
+         * @return the number of tuples added so far
+         */
+        public int size() {
+            return tuples.size();
+        }
+
+        /**
+         * @return the number of bytes of the page built from the tuples
+         *   added so far
+         */
+        public int getPageBytes() {
+            int bytes = 2;
+            for (int j = 0; j < sizes.length; j++) {
+                if (dicts.get(j) != null)
+                    bytes += 2 + dictBytes[j];
+                bytes += sizes[j].bytes(tuples.size());
+            }
+            return bytes;
+        }
+
+        /**
+         * Add t to the page if the page still fits in BufferPool.getPageSize()
+         * bytes with it.
+         *
+         * @return true if t was added, false if the page is full
+         */
+        public boolean add(Tuple t) {
+            if (tuples.size() == 0xffff)
+                return false;
+            int[] codes = new int[td.numFields()];
+            int newDictBytes = 0;
+            for (int j = 0; j < codes.length; j++) {
+                if (dicts.get(j) == null) {
+                    codes[j] = t.getInt(j);
+                    continue;
+                }
+                String s = ((StringField) t.getField(j)).getValue();
+                Integer code = dicts.get(j).get(s);
+                if (code == null) {
+                    codes[j] = dicts.get(j).size();
+                    newDictBytes += 1 + s.length();
+                } else {
+                    codes[j] = code;
+                }
+            }
+
+            // try the tuple, and undo if the page overflows
+            IntColumnSize[] saved = new IntColumnSize[sizes.length];
+            for (int j = 0; j < sizes.length; j++) {
+                saved[j] = sizes[j].copy();
+                sizes[j].add(codes[j]);
+            }
+            tuples.add(t);
+            if (getPageBytes() + newDictBytes > BufferPool.getPageSize()) {
+                tuples.remove(tuples.size() - 1);
+                System.arraycopy(saved, 0, sizes, 0, sizes.length);
+                return false;
+            }
+            for (int j = 0; j < codes.length; j++) {
+                if (dicts.get(j) != null && codes[j] == dicts.get(j).size()) {
+                    String s = ((StringField) t.getField(j)).getValue();
+                    dicts.get(j).put(s, codes[j]);
+                    dictBytes[j] += 1 + s.length();
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return the page data for the tuples added so far
+         */
+        public byte[] build() {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(BufferPool.getPageSize());
+            DataOutputStream dos = new DataOutputStream(baos);
+            try {
+                dos.writeShort(tuples.size());
+                if (!tuples.isEmpty()) {
+                    for (int j = 0; j < sizes.length; j++) {
+                        int[] values = new int[tuples.size()];
+                        Map<String, Integer> dict = dicts.get(j);
+                        if (dict == null) {
+                            for (int i = 0; i < values.length; i++)
+                                values[i] = tuples.get(i).getInt(j);
+                        } else {
+                            String[] entries = new String[dict.size()];
+                            for (Map.Entry<String, Integer> e : dict.entrySet())
+                                entries[e.getValue()] = e.getKey();
+                            dos.writeShort(entries.length);
+                            for (String s : entries) {
+                                dos.writeByte(s.length());
+                                dos.writeBytes(s);
+                            }
+                            for (int i = 0; i < values.length; i++)
+                                values[i] = dict.get(((StringField) tuples.get(i).getField(j)).getValue());
+                        }
+                        writeIntColumn(dos, values, sizes[j]);
+                    }
+                }
+                dos.flush();
+            } catch (IOException e) {
+                // this really shouldn't happen
+                e.printStackTrace();
+            }
+            byte[] res = new byte[BufferPool.getPageSize()];
+            System.arraycopy(baos.toByteArray(), 0, res, 0, baos.size());
+            return res;
+        }
+
+        private static void writeIntColumn(DataOutputStream dos, int[] values, IntColumnSize size) throws IOException {
+            if (size.useRle(values.length)) {
+                dos.writeByte(RLE);
+                dos.writeShort(size.runs);
+                int start = 0;
+                for (int i = 1; i <= values.length; i++) {
+                    if (i == values.length || values[i] != values[start]) {
+                        dos.writeInt(values[start]);
+                        dos.writeShort(i - start);
+                        start = i;
+                    }
+                }
+            } else {
+                dos.writeByte(FOR);
+                dos.writeInt(size.min);
+                int bits = size.bits();
+                dos.writeByte(bits);
+                long buffer = 0;
+                int buffered = 0;
+                for (int v : values) {
+                    buffer = buffer << bits | ((long) v - size.min);
+                    buffered += bits;
+                    while (buffered >= 8) {
+                        dos.writeByte((int) (buffer >>> (buffered - 8)));
+                        buffered -= 8;
+                    }
+                }
+                if (buffered > 0)
+                    dos.writeByte((int) (buffer << (8 - buffered)));
+            }
+        }
+    }
+
+    /**
+     * Running statistics of an int column, enough to know the size of both
+     * of its encodings.
+     */
+    private static class IntColumnSize {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        int runs;
+        int last;
+
+        void add(int v) {
+            if (runs == 0 || v != last)
+                runs++;
+            last = v;
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+        }
+
+        int bits() {
+            long range = (long) max - min;
+            return 64 - Long.numberOfLeadingZeros(range);
+        }
+
+        int forBytes(int n) {
+            return 1 + 4 + 1 + (int) (((long) n * bits() + 7) / 8);
+        }
+
+        int rleBytes() {
+            return 1 + 2 + runs * 6;
+        }
+
+        boolean useRle(int n) {
+            return rleBytes() < forBytes(n);
+        }
+
+        int bytes(int n) {
+            return n == 0 ? 0 : Math.min(rleBytes(), forBytes(n));
+        }
+
+        IntColumnSize copy() {
+            IntColumnSize c = new IntColumnSize();
+            c.min = min;
+            c.max = max;
+            c.runs = runs;
+            c.last = last;
+            return c;
+        }
+    }
+
+    /**
+     * Static method to generate a byte array corresponding to an empty
+     * CompressedPage.
+     */
+    public static byte[] createEmptyPageData() {
+        return new byte[BufferPool.getPageSize()];
+    }
+
+    /** Compressed pages are never modified, so the before image is the page itself */
+    public CompressedPage getBeforeImage() {
+        return this;
+    }
+
+    public void setBeforeImage() {
+    }
+
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    public byte[] getPageData() {
+        return data.clone();
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        this.dirtyTid = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtyTid;
+    }
+
+    /**
+     * @return the number of tuples on this page
+     */
+    public int getNumTuples() {
+        return numTuples;
+    }
+
+    /**
+     * @return the value of column j in row i
+     */
+    public Field getField(int i, int j) {
+        if (dicts[j] != null)
+            return dicts[j][columns[j][i]];
+        return new IntField(columns[j][i]);
+    }
+
+    /**
+     * Evaluate p against every row of the page. For a STRING column the
+     * predicate is evaluated once per dictionary entry, and for a column
+     * stored with RLE once per run.
+     *
+     * @return for each row, whether it satisfies p
+     */
+    public boolean[] evaluate(Predicate p) {
+        int j = p.getField();
+        boolean[] res = new boolean[numTuples];
+        if (numTuples == 0)
+            return res; // an empty page has no columns to test
+        if (dicts[j] != null) {
+            boolean[] matches = new boolean[dicts[j].length];
+            for (int k = 0; k < matches.length; k++)
+                matches[k] = dicts[j][k].compare(p.getOp(), p.getOperand());
+            int[] codes = columns[j];
+            for (int i = 0; i < numTuples; i++)
+                res[i] = matches[codes[i]];
+        } else {
+            int operand = ((IntField) p.getOperand()).getValue();
+            if (runValues[j] != null) {
+                int start = 0;
+                for (int r = 0; r < runValues[j].length; r++) {
+                    if (IntField.compare(p.getOp(), runValues[j][r], operand))
+                        Arrays.fill(res, start, runEnds[j][r], true);
+                    start = runEnds[j][r];
+                }
+            } else {
+                int[] values = columns[j];
+                for (int i = 0; i < numTuples; i++)
+                    res[i] = IntField.compare(p.getOp(), values[i], operand);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @return false: compressed pages are read-only
+     */
+    public boolean hasRoomFor(Tuple t) {
+        return false;
+    }
+
+    /**
+     * Always throws: compressed pages are read-only.
+     */
+    public void insertTuple(Tuple t) throws DbException {
+        throw new DbException("compressed pages are read-only");
+    }
+
+    /**
+     * Always throws: compressed pages are read-only.
+     */
+    public void deleteTuple(Tuple t) throws DbException {
+        throw new DbException("compressed pages are read-only");
+    }
+
+    /**
+     * @return an iterator over all tuples on this page
+     */
+    public Iterator<Tuple> iterator() {
+        return iterator(new Predicate[0]);
+    }
+
+    /**
+     * @return an iterator over the tuples on this page that satisfy every
+     *   predicate of preds
+     */
+    public Iterator<Tuple> iterator(Predicate... preds) {
+        boolean[] sel = null;
+        for (Predicate p : preds) {
+            boolean[] res = evaluate(p);
+            if (sel != null) {
+                for (int i = 0; i < numTuples; i++)
+                    res[i] &= sel[i];
+            }
+            sel = res;
+        }
+        final boolean[] selected = sel;
+        return new Iterator<Tuple>() {
+            int i = nextSelected(0);
+
+            private int nextSelected(int from) {
+                while (selected != null && from < numTuples && !selected[from])
+                    from++;
+                return from;
+            }
+
+            public boolean hasNext() {
+                return i < numTuples;
+            }
+
+            public Tuple next() {
+                if (i >= numTuples)
+                    throw new NoSuchElementException();
+                Tuple t = new Tuple(td);
+                for (int j = 0; j < td.numFields(); j++)
+                    t.setField(j, getField(i, j));
+                t.setRecordId(new RecordId(pid, i));
+                i = nextSelected(i + 1);
+                return t;
+            }
+        };
+    }
+}
@@ -2,6 +2,7 @@ package simpledb.storage;
 
 import jdk.nashorn.internal.ir.CallNode;
 import simpledb.common.*;
+import simpledb.execution.CompiledPredicate;
 import simpledb.index.BTreePageId;
 import simpledb.index.BTreeRootPtrPage;
 import simpledb.transaction.TransactionAbortedException;
@@ -202,5 +203,23 @@ public class HeapFile implements DbFile {
         return new HeapFileIterator(this,tid);
     }
 
+    /**
+     * @return an iterator over the tuples of this file that pass filter,
+     *   which is tested on the bytes of each page before tuples are made
+     */
+    public DbFileIterator iterator(TransactionId tid, CompiledPredicate filter) {
+        return iterator(tid, filter, null);
+    }
+
+    /**
+     * @return an iterator over the fields columns of the tuples of this file
+     *   that pass filter; the other fields are never decoded
+     * @param filter  the predicate to test, or null for none
+     * @param columns the fields to return, or null for all of them
+     */
+    public DbFileIterator iterator(TransactionId tid, CompiledPredicate filter, int[] columns) {
+        return new HeapFileIterator(this, tid, filter, columns);
+    }
+
 }
 
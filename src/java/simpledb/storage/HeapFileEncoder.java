@@ -5,7 +5,10 @@ import simpledb.common.Utility;
 
 import java.io.*;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * HeapFileEncoder reads a comma delimited text file or accepts
@@ -224,4 +227,35 @@ public class HeapFileEncoder {
     br.close();
     os.close();
   }
+
+  /**
+   * Returns the tuples of a HeapFile, for the encoders of other formats to
+   * migrate it. The pages of the heap file are read directly, not through
+   * the buffer pool, one at a time as the tuples are consumed, so no
+   * transaction should be modifying it at the same time.
+   *
+   * @param hf the heap file to read; it must be in the catalog
+   */
+  static Iterator<Tuple> tuples(HeapFile hf) {
+      return new Iterator<Tuple>() {
+          /** the next page to read */
+          int pgNo = 0;
+          Iterator<Tuple> it = Collections.emptyIterator();
+
+          public boolean hasNext() {
+              while (!it.hasNext() && pgNo < hf.numPages()) {
+                  HeapPage page = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), pgNo++));
+                  if (page != null)
+                      it = page.iterator();
+              }
+              return it.hasNext();
+          }
+
+          public Tuple next() {
+              if (!hasNext())
+                  throw new NoSuchElementException();
+              return it.next();
+          }
+      };
+  }
 }
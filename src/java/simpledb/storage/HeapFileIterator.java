@@ -3,6 +3,7 @@ package simpledb.storage;
 import simpledb.common.Database;
 import simpledb.common.DbException;
 import simpledb.common.Permissions;
+import simpledb.execution.CompiledPredicate;
 import simpledb.transaction.Transaction;
 import simpledb.transaction.TransactionAbortedException;
 import simpledb.transaction.TransactionId;
@@ -16,16 +17,37 @@ public class HeapFileIterator extends AbstractDbFileIterator{
     int curPageNum;
     Iterator<Tuple> it;
     HeapPage curPage;
+    /** the next slot of curPage to read into a batch */
+    int batchSlot;
     HeapFile file;
     TransactionId tid;
     int pageNum;
     BufferPool bufferPool;
+    /** the predicate the tuples must pass, tested on the page bytes; null for none */
+    final CompiledPredicate filter;
+    /** the fields to return, null for all of them, and the TupleDesc they make up */
+    final int[] columns;
+    final TupleDesc td;
     public HeapFileIterator(HeapFile file, TransactionId tid) {
+        this(file, tid, null, null);
+    }
+
+    /**
+     * An iterator over the fields columns of the tuples of file that pass
+     * filter, which is tested before the tuples are made.
+     *
+     * @param filter  the predicate to test, or null for none
+     * @param columns the fields of the file to return, or null for all
+     */
+    public HeapFileIterator(HeapFile file, TransactionId tid, CompiledPredicate filter, int[] columns) {
         this.file = file;
         this.tid = tid;
         this.pageNum = file.numPages();
         this.bufferPool = Database.getBufferPool();
         this.curPageNum = 0;
+        this.filter = filter;
+        this.columns = columns;
+        this.td = columns == null ? file.getTupleDesc() : file.getTupleDesc().project(columns);
     }
 
     @Override
@@ -36,7 +58,7 @@ public class HeapFileIterator extends AbstractDbFileIterator{
             }else{
                 curPageNum+=1;
                 curPage = (HeapPage)bufferPool.getPage(tid, new HeapPageId(file.getId(), curPageNum), Permissions.READ_ONLY);
-                it = curPage.iterator();
+                it = curPage.iterator(filter, columns, td);
             }
         }
         if(it == null){
@@ -45,10 +67,36 @@ public class HeapFileIterator extends AbstractDbFileIterator{
         return it.next();
     }
 
+    /**
+     * Fill b with the next tuples of the file that pass the filter, decoded
+     * page by page by {@link HeapPage#readBatch}. The columns of b are the
+     * fields this iterator returns. Must not be mixed with next() on the same
+     * iterator.
+     *
+     * @return false if there were no more tuples
+     */
+    public boolean readBatch(TupleBatch b) throws DbException, TransactionAbortedException {
+        b.clear();
+        while (curPage != null && !b.isFull()) {
+            batchSlot = curPage.readBatch(batchSlot, b, filter, columns);
+            if (b.isFull())
+                break;
+            if (curPageNum == pageNum - 1) {
+                curPage = null;
+            } else {
+                curPageNum += 1;
+                curPage = (HeapPage) bufferPool.getPage(tid, new HeapPageId(file.getId(), curPageNum), Permissions.READ_ONLY);
+                batchSlot = 0;
+            }
+        }
+        return b.size() > 0;
+    }
+
     @Override
     public void open() throws DbException, TransactionAbortedException {
         curPage = (HeapPage)bufferPool.getPage(tid, new HeapPageId(file.getId(), 0), Permissions.READ_ONLY);
-        it = curPage.iterator();
+        it = curPage.iterator(filter, columns, td);
+        batchSlot = 0;
     }
 
     @Override
@@ -4,6 +4,8 @@ import simpledb.common.Database;
 import simpledb.common.DbException;
 import simpledb.common.Debug;
 import simpledb.common.Catalog;
+import simpledb.common.Type;
+import simpledb.execution.CompiledPredicate;
 import simpledb.transaction.TransactionId;
 import sun.misc.IOUtils;
 
@@ -25,7 +27,10 @@ public class HeapPage implements Page {
     final HeapPageId pid;
     final TupleDesc td;
     final byte[] header;
+    /** tuples that were inserted since the page was read; null for slots still backed by data */
     final Tuple[] tuples;
+    /** the bytes this page was read from; never written to, so views over it stay valid */
+    final byte[] data;
     final int numSlots;
     TransactionId dirtyTid;
     boolean isDirty;
@@ -55,31 +60,16 @@ public class HeapPage implements Page {
         this.pid = id;
         this.td = Database.getCatalog().getTupleDesc(id.getTableId());
         this.numSlots = getNumTuples();
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
 
         // allocate and read the header slots of this page
         header = new byte[getHeaderSize()];
-        for (int i=0; i<header.length; i++)
-            header[i] = dis.readByte();
+        System.arraycopy(data, 0, header, 0, header.length);
         translationHeader();
-        tuples = new Tuple[numSlots];
-
-        try{
-            // allocate and read the actual records of this page
-            for (int i=0; i<tuples.length; i++) {
-                tuples[i] = readNextTuple(dis, i);
-
-//                while (tuples[i].fields().hasNext()){
-//                    Field next = tuples[i].fields().next();
-//                    System.out.print(next.toString()+" ");
-//                }
-//                System.out.println();
-            }
 
-        }catch(NoSuchElementException e){
-            e.printStackTrace();
-        }
-        dis.close();
+        // the records themselves are not decoded here: unmodified slots are
+        // read straight out of data through TupleViews (see getTuple)
+        this.data = data;
+        tuples = new Tuple[numSlots];
         setBeforeImage();
     }
     public HeapPage(HeapPageId id) {
@@ -87,6 +77,7 @@ public class HeapPage implements Page {
         this.td = Database.getCatalog().getTupleDesc(id.getTableId());
         this.numSlots = getNumTuples();
         this.slotFlag = new boolean[numSlots];
+        this.data = null;
         tuples = new Tuple[numSlots];
         header = new byte[getHeaderSize()];
         setBeforeImage();
@@ -142,12 +133,37 @@ public class HeapPage implements Page {
             System.out.println(bytes[0]);
     }
     public  int getTupleSlotNum(RecordId recordId){
-        for (int i = 0; i < numSlots; i++) {
-            if(tuples[i].getRecordId().equals(recordId)){
-                return i;
-            }
+        if(recordId == null || !pid.equals(recordId.getPageId())){
+            return -1;
         }
-        return -1;
+        int i = recordId.getTupleNumber();
+        if(i < 0 || i >= numSlots || !slotFlag[i]){
+            return -1;
+        }
+        return i;
+    }
+
+    /**
+     * @return the byte offset of slot i in the page data
+     */
+    private int slotOffset(int i) {
+        return header.length + i * td.getSize();
+    }
+
+    /**
+     * Returns the tuple in slot i, or null if the slot is empty. Slots that
+     * have not been modified since the page was read are returned as a
+     * {@link TupleView} over the page data, so no fields are decoded until
+     * somebody reads them.
+     */
+    public Tuple getTuple(int i) {
+        if (!slotFlag[i]) {
+            return null;
+        }
+        if (tuples[i] != null) {
+            return tuples[i];
+        }
+        return new TupleView(td, data, slotOffset(i), new RecordId(pid, i));
     }
 
 
@@ -210,40 +226,6 @@ public class HeapPage implements Page {
         return pid;
     }
 
-    /**
-     * Suck up tuples from the source file.
-     */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        if (!isSlotUsed(slotId)) {
-            for (int i=0; i<td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
-            return null;
-        }
-
-        // read fields in the tuple
-        Tuple t = new Tuple(td);
-        RecordId rid = new RecordId(pid, slotId);
-        t.setRecordId(rid);
-        try {
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
-            }
-        } catch (java.text.ParseException e) {
-            e.printStackTrace();
-            throw new NoSuchElementException("parsing error!");
-        }
-
-        return t;
-    }
-
     /**
      * Generates a byte array representing the contents of this page.
      * Used to serialize this page to disk.
@@ -289,6 +271,16 @@ public class HeapPage implements Page {
                 continue;
             }
 
+            // non-empty slot that was never modified: copy the original bytes
+            if (tuples[i] == null) {
+                try {
+                    dos.write(data, slotOffset(i), td.getSize());
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                continue;
+            }
+
             // non-empty slot
             for (int j=0; j<td.numFields(); j++) {
                 Field f = tuples[i].getField(j);
@@ -431,6 +423,73 @@ public class HeapPage implements Page {
         // not necessary for lab1
     }
 
+    /**
+     * Append the used slots from slot from on to b, until b is full. Slots
+     * backed by the page data are decoded straight into the column arrays
+     * of b, without creating tuples.
+     *
+     * @return the slot to continue from, numSlots once the page is done
+     */
+    public int readBatch(int from, TupleBatch b) {
+        return readBatch(from, b, null);
+    }
+
+    /**
+     * Like {@link #readBatch(int, TupleBatch)}, but only appends the slots
+     * that pass filter. Slots backed by the page data are tested on their
+     * bytes and only decoded if they pass.
+     *
+     * @param filter the predicate to test the slots with, or null for none
+     */
+    public int readBatch(int from, TupleBatch b, CompiledPredicate filter) {
+        return readBatch(from, b, filter, null);
+    }
+
+    /**
+     * Like {@link #readBatch(int, TupleBatch, CompiledPredicate)}, but only
+     * reads some fields of each slot: column k of b is field columns[k] of
+     * the page's TupleDesc. The other fields are never decoded.
+     *
+     * @param columns the fields to read, or null for all of them
+     */
+    public int readBatch(int from, TupleBatch b, CompiledPredicate filter, int[] columns) {
+        int n = columns == null ? td.numFields() : columns.length;
+        int i = from;
+        for (; i < numSlots && !b.isFull(); i++) {
+            if (!slotFlag[i])
+                continue;
+            if (tuples[i] != null) {
+                if (filter != null && !filter.test(tuples[i]))
+                    continue;
+                if (columns == null) {
+                    b.add(tuples[i]);
+                    continue;
+                }
+                int r = b.addRow();
+                for (int k = 0; k < n; k++) {
+                    if (b.getInts(k) != null)
+                        b.getInts(k)[r] = tuples[i].getInt(columns[k]);
+                    else
+                        b.getStrings(k)[r] = ((StringField) tuples[i].getField(columns[k])).getValue();
+                }
+                continue;
+            }
+            int base = slotOffset(i);
+            if (filter != null && !filter.test(data, base))
+                continue;
+            int r = b.addRow();
+            for (int k = 0; k < n; k++) {
+                int f = columns == null ? k : columns[k];
+                int off = base + td.getFieldOffset(f);
+                if (td.getFieldType(f) == Type.INT_TYPE)
+                    b.getInts(k)[r] = Type.readInt(data, off);
+                else
+                    b.getStrings(k)[r] = new String(data, off + 4, Type.readInt(data, off));
+            }
+        }
+        return i;
+    }
+
     /**
      * @return an iterator over all tuples on this page (calling remove on this iterator throws an UnsupportedOperationException)
      * (note that this iterator shouldn't return tuples in empty slots!)
@@ -438,13 +497,76 @@ public class HeapPage implements Page {
     public Iterator<Tuple> iterator() {
 
         // some code goes here
-        ArrayList<Tuple> t = new ArrayList<>();
-        for (int i = 0; i < numSlots; i++) {
-            if(slotFlag[i]){
-                t.add(tuples[i]);
-            }
+        return iterator(null);
+    }
+
+    /**
+     * @return an iterator over the tuples on this page that pass filter.
+     *   Slots backed by the page data are tested on their bytes, and no
+     *   tuple is made for the slots that fail.
+     * @param filter the predicate to test the slots with, or null for none
+     */
+    public Iterator<Tuple> iterator(CompiledPredicate filter) {
+        return iterator(filter, null, td);
+    }
+
+    /**
+     * @return an iterator over the tuples on this page that pass filter,
+     *   with only some of their fields. The slots backed by the page data
+     *   are returned as views of those fields.
+     * @param columns the fields of the page's TupleDesc to return, or null
+     *   for all of them
+     * @param out the TupleDesc of the returned tuples
+     */
+    public Iterator<Tuple> iterator(CompiledPredicate filter, int[] columns, TupleDesc out) {
+        final boolean[] used = slotFlag.clone();
+        final int[] offsets;
+        if (columns != null) {
+            offsets = new int[columns.length];
+            for (int k = 0; k < columns.length; k++)
+                offsets[k] = td.getFieldOffset(columns[k]);
+        } else {
+            offsets = null;
         }
-        return t.iterator();
+        return new Iterator<Tuple>() {
+            int i = nextUsed(0);
+
+            private int nextUsed(int from) {
+                while (from < numSlots && !(used[from] && passes(from))) {
+                    from++;
+                }
+                return from;
+            }
+
+            private boolean passes(int slot) {
+                if (filter == null)
+                    return true;
+                return tuples[slot] != null ? filter.test(tuples[slot]) : filter.test(data, slotOffset(slot));
+            }
+
+            public boolean hasNext() {
+                return i < numSlots;
+            }
+
+            public Tuple next() {
+                if (i >= numSlots) {
+                    throw new NoSuchElementException();
+                }
+                Tuple t;
+                if (tuples[i] == null) {
+                    t = new TupleView(out, data, slotOffset(i), offsets, new RecordId(pid, i));
+                } else if (columns == null) {
+                    t = tuples[i];
+                } else {
+                    t = new Tuple(out);
+                    for (int k = 0; k < columns.length; k++)
+                        t.setField(k, tuples[i].getField(columns[k]));
+                    t.setRecordId(tuples[i].getRecordId());
+                }
+                i = nextUsed(i + 1);
+                return t;
+            }
+        };
     }
 
 }
@@ -55,20 +55,30 @@ public class IntField implements Field {
 
         IntField iVal = (IntField) val;
 
+        return compare(op, value, iVal.value);
+    }
+
+    /**
+     * Compare two unboxed int values with the semantics of Field.compare.
+     * This is what predicates over INT_TYPE fields use on the hot path.
+     *
+     * @see Field#compare
+     */
+    public static boolean compare(Predicate.Op op, int value, int other) {
         switch (op) {
             case EQUALS:
             case LIKE:
-                return value == iVal.value;
+                return value == other;
             case NOT_EQUALS:
-                return value != iVal.value;
+                return value != other;
             case GREATER_THAN:
-                return value > iVal.value;
+                return value > other;
             case GREATER_THAN_OR_EQ:
-                return value >= iVal.value;
+                return value >= other;
             case LESS_THAN:
-                return value < iVal.value;
+                return value < other;
             case LESS_THAN_OR_EQ:
-                return value <= iVal.value;
+                return value <= other;
         }
 
         return false;
@@ -0,0 +1,202 @@
+package simpledb.storage;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Permissions;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * PageFile is the part of a DbFile that does not depend on how a page lays
+ * out its tuples. The file is a sequence of pages of
+ * BufferPool.getPageSize() bytes, read and written in place, and tuples go
+ * on the first page with room for them, in no particular order. Subclasses
+ * only decode pages and create empty ones.
+ * <p>
+ * Pages are addressed with HeapPageIds. Unlike HeapFile, the file does not
+ * add itself to the catalog; callers must do so before reading pages, since
+ * the pages look up the TupleDesc of the table there.
+ *
+ * @param <P> the type of the pages of the file
+ */
+public abstract class PageFile<P extends TuplePage> implements DbFile {
+
+    private final File f;
+    private final TupleDesc td;
+
+    /**
+     * Constructs a file backed by the specified file.
+     *
+     * @param f  the file that stores the on-disk backing store for this file.
+     * @param td the schema of the tuples in the file
+     */
+    protected PageFile(File f, TupleDesc td) {
+        this.f = f;
+        this.td = td;
+    }
+
+    /**
+     * @return the page with the given id, decoded from data
+     */
+    protected abstract P createPage(HeapPageId pid, byte[] data) throws IOException;
+
+    /**
+     * @return the bytes of a page without tuples, appended when every page
+     *   of the file is full
+     */
+    protected abstract byte[] createEmptyPageData();
+
+    /**
+     * Returns the File backing this file on disk.
+     */
+    public File getFile() {
+        return f;
+    }
+
+    public int getId() {
+        return f.getAbsoluteFile().hashCode();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        if (pid.getTableId() != getId() || pid.getPageNumber() < 0 || pid.getPageNumber() >= numPages()) {
+            throw new IllegalArgumentException("page " + pid.getPageNumber() + " does not exist in this file");
+        }
+        try (RandomAccessFile rf = new RandomAccessFile(f, "r")) {
+            byte[] data = new byte[BufferPool.getPageSize()];
+            rf.seek((long) BufferPool.getPageSize() * pid.getPageNumber());
+            rf.readFully(data);
+            return createPage(new HeapPageId(pid.getTableId(), pid.getPageNumber()), data);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        try (RandomAccessFile rf = new RandomAccessFile(f, "rw")) {
+            rf.seek((long) BufferPool.getPageSize() * page.getId().getPageNumber());
+            rf.write(page.getPageData());
+        }
+    }
+
+    /**
+     * Returns the number of pages in this file.
+     */
+    public int numPages() {
+        // we only ever write full pages
+        return (int) (f.length() / BufferPool.getPageSize());
+    }
+
+    @SuppressWarnings("unchecked")
+    private P getPage(TransactionId tid, PageId pid, Permissions perm)
+            throws DbException, TransactionAbortedException {
+        return (P) Database.getBufferPool().getPage(tid, pid, perm);
+    }
+
+    // see DbFile.java for javadocs
+    public List<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        List<Page> res = new ArrayList<>();
+        for (int i = 0; i < numPages(); i++) {
+            HeapPageId pid = new HeapPageId(getId(), i);
+            P page = getPage(tid, pid, Permissions.READ_ONLY);
+            if (page.hasRoomFor(t)) {
+                page = getPage(tid, pid, Permissions.READ_WRITE);
+                page.insertTuple(t);
+                res.add(page);
+                return res;
+            }
+            Database.getBufferPool().unsafeReleasePage(tid, pid);
+        }
+
+        // every page is full: append an empty page and insert through the buffer pool
+        HeapPageId pid;
+        synchronized (this) {
+            pid = new HeapPageId(getId(), numPages());
+            try (BufferedOutputStream bw = new BufferedOutputStream(new FileOutputStream(f, true))) {
+                bw.write(createEmptyPageData());
+            }
+        }
+        P page = getPage(tid, pid, Permissions.READ_WRITE);
+        page.insertTuple(t);
+        res.add(page);
+        return res;
+    }
+
+    // see DbFile.java for javadocs
+    public List<Page> deleteTuple(TransactionId tid, Tuple t)
+            throws DbException, TransactionAbortedException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || rid.getPageId().getTableId() != getId()) {
+            throw new DbException("the tuple is not a member of this file");
+        }
+        P page = getPage(tid, rid.getPageId(), Permissions.READ_WRITE);
+        page.deleteTuple(t);
+        List<Page> res = new ArrayList<>();
+        res.add(page);
+        return res;
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return iterator(tid, TuplePage::iterator);
+    }
+
+    /**
+     * Returns an iterator over the tuples that tuples returns for each page
+     * of this file, in page order.
+     *
+     * @param tid the transaction reading the file
+     * @param tuples the tuples to return from a page
+     */
+    protected DbFileIterator iterator(TransactionId tid, Function<? super P, Iterator<Tuple>> tuples) {
+        return new AbstractDbFileIterator() {
+            /** the next page to read, or -1 if the iterator is not open */
+            int pgNo = -1;
+            Iterator<Tuple> it;
+
+            public void open() {
+                pgNo = 0;
+                it = null;
+            }
+
+            @Override
+            protected Tuple readNext() throws DbException, TransactionAbortedException {
+                if (pgNo < 0) {
+                    return null;
+                }
+                while (it == null || !it.hasNext()) {
+                    if (pgNo >= numPages()) {
+                        return null;
+                    }
+                    HeapPageId pid = new HeapPageId(getId(), pgNo++);
+                    it = tuples.apply(getPage(tid, pid, Permissions.READ_ONLY));
+                }
+                return it.next();
+            }
+
+            public void rewind() {
+                close();
+                open();
+            }
+
+            @Override
+            public void close() {
+                super.close();
+                it = null;
+                pgNo = -1;
+            }
+        };
+    }
+}
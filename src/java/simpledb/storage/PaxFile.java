@@ -0,0 +1,59 @@
+package simpledb.storage;
+
+import simpledb.common.Type;
+import simpledb.transaction.TransactionId;
+
+import java.io.*;
+
+/**
+ * PaxFile is a DbFile made of PaxPages: it holds tuples in no particular
+ * order like HeapFile, but each page stores its tuples column by column.
+ * Besides the usual iterator, {@link #iterator(TransactionId, int[])} reads
+ * only some of the columns, which is what ColumnScan uses, and SeqScan when
+ * the planner narrows a scan to the fields a query reads.
+ *
+ * @see PaxPage
+ * @see simpledb.execution.ColumnScan
+ */
+public class PaxFile extends PageFile<PaxPage> {
+
+    /**
+     * Constructs a PAX file backed by the specified file.
+     *
+     * @param f  the file that stores the on-disk backing store for this file.
+     * @param td the schema of the tuples in the file
+     */
+    public PaxFile(File f, TupleDesc td) {
+        super(f, td);
+    }
+
+    protected PaxPage createPage(HeapPageId pid, byte[] data) {
+        return new PaxPage(pid, data);
+    }
+
+    protected byte[] createEmptyPageData() {
+        return PaxPage.createEmptyPageData();
+    }
+
+    /**
+     * Returns an iterator over some of the columns of the tuples in this
+     * file. Field k of each returned tuple is column columns[k] of the table;
+     * the other columns are never decoded.
+     *
+     * @param tid the transaction reading the file
+     * @param columns the columns to read
+     */
+    public DbFileIterator iterator(TransactionId tid, int[] columns) {
+        TupleDesc td = getTupleDesc();
+        Type[] types = new Type[columns.length];
+        String[] names = new String[columns.length];
+        boolean all = columns.length == td.numFields();
+        for (int k = 0; k < columns.length; k++) {
+            types[k] = td.getFieldType(columns[k]);
+            names[k] = td.getFieldName(columns[k]);
+            all &= columns[k] == k;
+        }
+        final TupleDesc outTd = all ? td : new TupleDesc(types, names);
+        return iterator(tid, page -> page.iterator(columns, outTd));
+    }
+}
@@ -0,0 +1,50 @@
+package simpledb.storage;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * PaxFileEncoder writes files in the format of PaxFile. Text input can be
+ * converted with HeapFileEncoder first and then migrated here.
+ *
+ * @see PaxPage
+ * @see HeapFileEncoder
+ */
+public class PaxFileEncoder {
+
+    /**
+     * Migrate the contents of a HeapFile into a PaxFile. The pages of the
+     * heap file are read directly, not through the buffer pool, so no
+     * transaction should be modifying it at the same time.
+     *
+     * @param hf the heap file to read; it must be in the catalog
+     * @param outFile the output file to write data to
+     */
+    public static void convert(HeapFile hf, File outFile) throws IOException {
+        write(HeapFileEncoder.tuples(hf), hf.getTupleDesc(), outFile);
+    }
+
+    /**
+     * Pack the given tuples into PaxPages and write them to outFile. An empty
+     * input still produces one empty page.
+     */
+    public static void write(Iterator<Tuple> tuples, TupleDesc td, File outFile) throws IOException {
+        int numSlots = PaxPage.getNumSlots(td);
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(outFile))) {
+            List<Tuple> page = new ArrayList<>(numSlots);
+            int npages = 0;
+            while (tuples.hasNext()) {
+                page.add(tuples.next());
+                if (page.size() == numSlots) {
+                    os.write(PaxPage.createPageData(td, page));
+                    npages++;
+                    page.clear();
+                }
+            }
+            if (!page.isEmpty() || npages == 0)
+                os.write(PaxPage.createPageData(td, page));
+        }
+    }
+}
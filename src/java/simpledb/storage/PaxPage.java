@@ -0,0 +1,302 @@
+package simpledb.storage;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.transaction.TransactionId;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * PaxPage stores the same tuples a HeapPage would, but column by column
+ * (the PAX layout): after the slot bitmap, the page is split into one
+ * minipage per column, and the minipage of column j holds the values of
+ * that column for every slot, one after the other. A scan that only needs a
+ * few columns of a wide table then touches only those minipages.
+ * <p>
+ * The number of slots and the bitmap are the same as for HeapPage, so a
+ * page holds exactly as many tuples as a HeapPage of the same table:
+ * <pre>
+ *   bitmap      ceiling(numSlots / 8) bytes, bit i%8 of byte i/8 for slot i
+ *   column 0    numSlots * type(0).getLen() bytes
+ *   column 1    numSlots * type(1).getLen() bytes
+ *   ...
+ * </pre>
+ *
+ * @see PaxFile
+ */
+public class PaxPage implements TuplePage {
+
+    final HeapPageId pid;
+    final TupleDesc td;
+    final int numSlots;
+    final boolean[] used;
+    /** the bytes this page was read from; never written to */
+    final byte[] data;
+    /** tuples that were inserted since the page was read; null for slots still backed by data */
+    final Tuple[] tuples;
+    TransactionId dirtyTid;
+    byte[] oldData;
+    private final Byte oldDataLock = (byte) 0;
+
+    /**
+     * Create a PaxPage from a set of bytes of data read from disk. The format
+     * is described in the class comment; an all-zero array is a valid empty
+     * page.
+     */
+    public PaxPage(HeapPageId id, byte[] data) {
+        this.pid = id;
+        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.numSlots = getNumSlots(td);
+        this.data = data;
+        this.tuples = new Tuple[numSlots];
+        this.used = new boolean[numSlots];
+        for (int i = 0; i < numSlots; i++) {
+            used[i] = (data[i / 8] & (1 << (i % 8))) != 0;
+        }
+        setBeforeImage();
+    }
+
+    /**
+     * @return the number of tuples a PaxPage (or HeapPage) of this schema holds
+     */
+    public static int getNumSlots(TupleDesc td) {
+        return (BufferPool.getPageSize() * 8) / (td.getSize() * 8 + 1);
+    }
+
+    private static int getHeaderSize(int numSlots) {
+        return (numSlots + 7) / 8;
+    }
+
+    /**
+     * @return the offset of the value of column j in slot i
+     */
+    private static int valueOffset(TupleDesc td, int numSlots, int i, int j) {
+        return getHeaderSize(numSlots) + numSlots * td.getFieldOffset(j) + i * td.getFieldType(j).getLen();
+    }
+
+    /**
+     * Lay out the given tuples in the first slots of a page.
+     *
+     * @throws IllegalArgumentException if there are more tuples than slots
+     */
+    static byte[] createPageData(TupleDesc td, List<Tuple> tuples) {
+        int numSlots = getNumSlots(td);
+        if (tuples.size() > numSlots)
+            throw new IllegalArgumentException("records do not fit on one page");
+        byte[] data = new byte[BufferPool.getPageSize()];
+        for (int i = 0; i < tuples.size(); i++) {
+            data[i / 8] |= 1 << (i % 8);
+            for (int j = 0; j < td.numFields(); j++) {
+                writeField(tuples.get(i).getField(j), data, valueOffset(td, numSlots, i, j));
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Serialize f into data at the given offset.
+     */
+    static void writeField(Field f, byte[] data, int offset) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(f.getType().getLen());
+        try {
+            f.serialize(new DataOutputStream(baos));
+        } catch (IOException e) {
+            // this really shouldn't happen
+            e.printStackTrace();
+        }
+        System.arraycopy(baos.toByteArray(), 0, data, offset, baos.size());
+    }
+
+    /**
+     * Static method to generate a byte array corresponding to an empty
+     * PaxPage.
+     */
+    public static byte[] createEmptyPageData() {
+        return new byte[BufferPool.getPageSize()];
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public PaxPage getBeforeImage() {
+        byte[] oldDataRef;
+        synchronized (oldDataLock) {
+            oldDataRef = oldData;
+        }
+        return new PaxPage(pid, oldDataRef);
+    }
+
+    public void setBeforeImage() {
+        synchronized (oldDataLock) {
+            oldData = getPageData().clone();
+        }
+    }
+
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    /**
+     * Generates a byte array representing the contents of this page.
+     *
+     * @see #PaxPage
+     */
+    public byte[] getPageData() {
+        byte[] res = new byte[BufferPool.getPageSize()];
+        for (int i = 0; i < numSlots; i++) {
+            if (used[i])
+                res[i / 8] |= 1 << (i % 8);
+        }
+        for (int j = 0; j < td.numFields(); j++) {
+            int len = td.getFieldType(j).getLen();
+            for (int i = 0; i < numSlots; i++) {
+                if (!used[i])
+                    continue;
+                int off = valueOffset(td, numSlots, i, j);
+                if (tuples[i] != null)
+                    writeField(tuples[i].getField(j), res, off);
+                else
+                    System.arraycopy(data, off, res, off, len);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @return the value of column j in slot i
+     */
+    public Field getField(int i, int j) {
+        if (tuples[i] != null)
+            return tuples[i].getField(j);
+        return td.getFieldType(j).parse(data, valueOffset(td, numSlots, i, j));
+    }
+
+    /**
+     * Adds the specified tuple to the page;  the tuple should be updated to reflect
+     *  that it is now stored on this page.
+     * @throws DbException if the page is full (no empty slots) or tupledesc
+     *         is mismatch.
+     * @param t The tuple to add.
+     */
+    public void insertTuple(Tuple t) throws DbException {
+        if (!td.equals(t.getTupleDesc())) {
+            throw new DbException("tupledesc is mismatch");
+        }
+        for (int i = 0; i < numSlots; i++) {
+            if (!used[i]) {
+                tuples[i] = t;
+                t.setRecordId(new RecordId(pid, i));
+                used[i] = true;
+                return;
+            }
+        }
+        throw new DbException("the page is full");
+    }
+
+    /**
+     * Delete the specified tuple from the page.
+     * @throws DbException if this tuple is not on this page, or tuple slot is
+     *         already empty.
+     * @param t The tuple to delete
+     */
+    public void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId())) {
+            throw new DbException("the tuple is not on this page");
+        }
+        int i = rid.getTupleNumber();
+        if (i < 0 || i >= numSlots || !used[i]) {
+            throw new DbException("tuple slot is already empty");
+        }
+        used[i] = false;
+        tuples[i] = null;
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        this.dirtyTid = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtyTid;
+    }
+
+    /**
+     * Returns the number of empty slots on this page.
+     */
+    public int getNumEmptySlots() {
+        int n = 0;
+        for (boolean b : used) {
+            if (!b)
+                n++;
+        }
+        return n;
+    }
+
+    /**
+     * @return true if the page has an empty slot for t
+     */
+    public boolean hasRoomFor(Tuple t) {
+        return getNumEmptySlots() > 0;
+    }
+
+    /**
+     * Returns true if associated slot on this page is filled.
+     */
+    public boolean isSlotUsed(int i) {
+        return used[i];
+    }
+
+    /**
+     * @return an iterator over all tuples on this page
+     */
+    public Iterator<Tuple> iterator() {
+        int[] columns = new int[td.numFields()];
+        for (int j = 0; j < columns.length; j++)
+            columns[j] = j;
+        return iterator(columns, td);
+    }
+
+    /**
+     * Returns an iterator over the given columns of the tuples on this page.
+     * Only those columns are decoded; the tuples returned have schema outTd,
+     * whose field k is column columns[k] of the page, and carry the RecordId
+     * of the row they were read from.
+     *
+     * @param columns the columns to read
+     * @param outTd the schema of the returned tuples
+     */
+    public Iterator<Tuple> iterator(final int[] columns, final TupleDesc outTd) {
+        final boolean[] snapshot = used.clone();
+        return new Iterator<Tuple>() {
+            int i = nextUsed(0);
+
+            private int nextUsed(int from) {
+                while (from < numSlots && !snapshot[from]) {
+                    from++;
+                }
+                return from;
+            }
+
+            public boolean hasNext() {
+                return i < numSlots;
+            }
+
+            public Tuple next() {
+                if (i >= numSlots) {
+                    throw new NoSuchElementException();
+                }
+                Tuple t = new Tuple(outTd);
+                for (int k = 0; k < columns.length; k++) {
+                    t.setField(k, getField(i, columns[k]));
+                }
+                t.setRecordId(new RecordId(pid, i));
+                i = nextUsed(i + 1);
+                return t;
+            }
+        };
+    }
+}
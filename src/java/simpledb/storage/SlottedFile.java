@@ -0,0 +1,32 @@
+package simpledb.storage;
+
+import java.io.*;
+
+/**
+ * SlottedFile is a DbFile made of SlottedPages. Like HeapFile it stores
+ * tuples in no particular order, but since strings are stored with their
+ * actual length, tables with short strings fit many more rows per page.
+ *
+ * @see SlottedPage
+ * @see SlottedFileEncoder
+ */
+public class SlottedFile extends PageFile<SlottedPage> {
+
+    /**
+     * Constructs a slotted file backed by the specified file.
+     *
+     * @param f  the file that stores the on-disk backing store for this file.
+     * @param td the schema of the tuples in the file
+     */
+    public SlottedFile(File f, TupleDesc td) {
+        super(f, td);
+    }
+
+    protected SlottedPage createPage(HeapPageId pid, byte[] data) throws IOException {
+        return new SlottedPage(pid, data);
+    }
+
+    protected byte[] createEmptyPageData() {
+        return SlottedPage.createEmptyPageData();
+    }
+}
@@ -0,0 +1,115 @@
+package simpledb.storage;
+
+import simpledb.common.Type;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * SlottedFileEncoder writes files in the format of SlottedFile, either from
+ * a delimited text file (the same input HeapFileEncoder takes) or by
+ * migrating the contents of an existing HeapFile. Pages are filled until the
+ * next record no longer fits and are BufferPool.getPageSize() bytes long.
+ *
+ * @see SlottedPage
+ * @see HeapFileEncoder
+ */
+public class SlottedFileEncoder {
+
+    /**
+     * Convert the specified input text file into a SlottedFile. The input
+     * has one tuple per line with fields separated by fieldSeparator, as for
+     * {@link HeapFileEncoder#convert(File, File, int, int, Type[], char)}.
+     *
+     * @param inFile the input file to read data from
+     * @param outFile the output file to write data to
+     * @param typeAr the types of the fields of each line
+     * @param fieldSeparator the character between two fields
+     * @throws IOException if the input/output file can't be opened or a
+     *   malformed input line is encountered
+     */
+    public static void convert(File inFile, File outFile, Type[] typeAr, char fieldSeparator)
+            throws IOException {
+        final TupleDesc td = new TupleDesc(typeAr);
+        try (BufferedReader br = new BufferedReader(new FileReader(inFile))) {
+            write(new Iterator<Tuple>() {
+                String line = nextLine();
+
+                private String nextLine() {
+                    try {
+                        String l;
+                        while ((l = br.readLine()) != null && l.trim().isEmpty())
+                            ;
+                        return l;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+
+                public boolean hasNext() {
+                    return line != null;
+                }
+
+                public Tuple next() {
+                    String[] els = line.split(Pattern.quote(String.valueOf(fieldSeparator)), -1);
+                    if (els.length != typeAr.length)
+                        throw new UncheckedIOException(new IOException("BAD LINE : " + line));
+                    Tuple t = new Tuple(td);
+                    for (int i = 0; i < typeAr.length; i++) {
+                        String s = els[i].trim();
+                        if (typeAr[i] == Type.INT_TYPE)
+                            t.setField(i, new IntField(Integer.parseInt(s)));
+                        else
+                            t.setField(i, new StringField(s, Type.STRING_LEN));
+                    }
+                    line = nextLine();
+                    return t;
+                }
+            }, outFile);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Migrate the contents of a HeapFile into a SlottedFile. The pages of
+     * the heap file are read directly, not through the buffer pool, so no
+     * transaction should be modifying it at the same time.
+     *
+     * @param hf the heap file to read; it must be in the catalog
+     * @param outFile the output file to write data to
+     */
+    public static void convert(HeapFile hf, File outFile) throws IOException {
+        write(HeapFileEncoder.tuples(hf), outFile);
+    }
+
+    /**
+     * Pack the given tuples into SlottedPages and write them to outFile. An
+     * empty input still produces one empty page.
+     */
+    static void write(Iterator<Tuple> tuples, File outFile) throws IOException {
+        int pageSize = BufferPool.getPageSize();
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(outFile))) {
+            List<Tuple> page = new ArrayList<>();
+            int used = SlottedPage.HEADER_SIZE;
+            int npages = 0;
+            while (tuples.hasNext()) {
+                Tuple t = tuples.next();
+                int size = SlottedPage.recordSize(t) + SlottedPage.SLOT_SIZE;
+                if (used + size > pageSize && !page.isEmpty()) {
+                    os.write(SlottedPage.createPageData(page));
+                    npages++;
+                    page.clear();
+                    used = SlottedPage.HEADER_SIZE;
+                }
+                page.add(t);
+                used += size;
+            }
+            if (!page.isEmpty() || npages == 0)
+                os.write(SlottedPage.createPageData(page));
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package simpledb.storage;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.transaction.TransactionId;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * SlottedPage is an alternative to HeapPage for tables whose rows are much
+ * smaller than their declared width. Instead of a bitmap over fixed-size
+ * slots, the page keeps a slot directory at the front and packs the records
+ * at the back, so a record only takes as many bytes as its fields need.
+ * INT fields are stored as 4 bytes, STRING fields as a one byte length
+ * followed by the characters of the string (no padding up to STRING_LEN).
+ * <p>
+ * The layout of a page is:
+ * <pre>
+ *   short  number of slots in the directory
+ *   short  offset of the first record byte (records grow down from the end)
+ *   (short offset, short length) per slot, offset 0 meaning an empty slot
+ *   ... free space ...
+ *   records
+ * </pre>
+ * All shorts are read unsigned, so pages of up to 64KB are supported. A
+ * deleted slot stays in the directory (so the RecordIds of the other tuples
+ * do not change) and is reused by the next insert. The free space left by
+ * deleted records is reclaimed every time the page is written out, since
+ * getPageData always writes the records back to back.
+ *
+ * @see SlottedFile
+ * @see SlottedFileEncoder
+ */
+public class SlottedPage implements TuplePage {
+
+    /** bytes used by the number of slots and the free space pointer */
+    static final int HEADER_SIZE = 4;
+
+    /** bytes used by one entry of the slot directory */
+    static final int SLOT_SIZE = 4;
+
+    final HeapPageId pid;
+    final TupleDesc td;
+    /** the tuple in each slot of the directory, null if the slot is empty */
+    final List<Tuple> tuples;
+    /** bytes used by the header, the directory and the records */
+    int usedBytes;
+    TransactionId dirtyTid;
+    byte[] oldData;
+    private final Byte oldDataLock = (byte) 0;
+
+    /**
+     * Create a SlottedPage from a set of bytes of data read from disk. The
+     * format is described in the class comment; an all-zero array is a
+     * valid empty page.
+     *
+     * @see #createEmptyPageData()
+     */
+    public SlottedPage(HeapPageId id, byte[] data) throws IOException {
+        this.pid = id;
+        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        int numSlots = dis.readUnsignedShort();
+        dis.readUnsignedShort(); // free space pointer, implied by the records
+        this.tuples = new ArrayList<>(numSlots);
+        this.usedBytes = HEADER_SIZE + numSlots * SLOT_SIZE;
+        for (int i = 0; i < numSlots; i++) {
+            int offset = dis.readUnsignedShort();
+            int length = dis.readUnsignedShort();
+            if (offset == 0) {
+                tuples.add(null);
+                continue;
+            }
+            Tuple t = readRecord(td, data, offset);
+            t.setRecordId(new RecordId(pid, i));
+            tuples.add(t);
+            usedBytes += length;
+        }
+        setBeforeImage();
+    }
+
+    /**
+     * Decode the record starting at offset in data.
+     */
+    static Tuple readRecord(TupleDesc td, byte[] data, int offset) {
+        Tuple t = new Tuple(td);
+        for (int j = 0; j < td.numFields(); j++) {
+            if (td.getFieldType(j) == Type.INT_TYPE) {
+                t.setField(j, new IntField(Type.readInt(data, offset)));
+                offset += 4;
+            } else {
+                int len = data[offset] & 0xff;
+                t.setField(j, new StringField(new String(data, offset + 1, len), Type.STRING_LEN));
+                offset += len + 1;
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Write the record for t to dos.
+     */
+    static void writeRecord(Tuple t, DataOutputStream dos) throws IOException {
+        TupleDesc td = t.getTupleDesc();
+        for (int j = 0; j < td.numFields(); j++) {
+            if (td.getFieldType(j) == Type.INT_TYPE) {
+                dos.writeInt(t.getInt(j));
+            } else {
+                String s = ((StringField) t.getField(j)).getValue();
+                if (s.length() > Type.STRING_LEN)
+                    s = s.substring(0, Type.STRING_LEN);
+                dos.writeByte(s.length());
+                dos.writeBytes(s);
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes the record for t takes on a SlottedPage,
+     *   not counting its slot directory entry
+     */
+    public static int recordSize(Tuple t) {
+        TupleDesc td = t.getTupleDesc();
+        int size = 0;
+        for (int j = 0; j < td.numFields(); j++) {
+            if (td.getFieldType(j) == Type.INT_TYPE) {
+                size += 4;
+            } else {
+                size += 1 + Math.min(((StringField) t.getField(j)).getValue().length(), Type.STRING_LEN);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Lay out the given records as a page of size BufferPool.getPageSize().
+     * Null entries become empty slots.
+     *
+     * @throws IllegalArgumentException if the records do not fit on a page
+     */
+    static byte[] createPageData(List<Tuple> tuples) {
+        int pageSize = BufferPool.getPageSize();
+        byte[] data = new byte[pageSize];
+        int end = pageSize;
+        int dirPos = HEADER_SIZE;
+        for (Tuple t : tuples) {
+            int offset = 0, length = 0;
+            if (t != null) {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                try {
+                    writeRecord(t, new DataOutputStream(baos));
+                } catch (IOException e) {
+                    // this really shouldn't happen
+                    e.printStackTrace();
+                }
+                length = baos.size();
+                end -= length;
+                if (end < dirPos + SLOT_SIZE)
+                    throw new IllegalArgumentException("records do not fit on one page");
+                System.arraycopy(baos.toByteArray(), 0, data, end, length);
+                offset = end;
+            }
+            writeShort(data, dirPos, offset);
+            writeShort(data, dirPos + 2, length);
+            dirPos += SLOT_SIZE;
+        }
+        writeShort(data, 0, tuples.size());
+        writeShort(data, 2, end);
+        return data;
+    }
+
+    private static void writeShort(byte[] data, int pos, int v) {
+        data[pos] = (byte) (v >>> 8);
+        data[pos + 1] = (byte) v;
+    }
+
+    /**
+     * Static method to generate a byte array corresponding to an empty
+     * SlottedPage.
+     */
+    public static byte[] createEmptyPageData() {
+        return new byte[BufferPool.getPageSize()];
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public SlottedPage getBeforeImage() {
+        try {
+            byte[] oldDataRef;
+            synchronized (oldDataLock) {
+                oldDataRef = oldData;
+            }
+            return new SlottedPage(pid, oldDataRef);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public void setBeforeImage() {
+        synchronized (oldDataLock) {
+            oldData = getPageData().clone();
+        }
+    }
+
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    /**
+     * Generates a byte array representing the contents of this page. The
+     * records are written back to back, so any space freed by deletes is
+     * compacted away.
+     *
+     * @see #SlottedPage
+     */
+    public byte[] getPageData() {
+        return createPageData(tuples);
+    }
+
+    /**
+     * @return the number of bytes still free on this page
+     */
+    public int getFreeSpace() {
+        return BufferPool.getPageSize() - usedBytes;
+    }
+
+    private int firstEmptySlot() {
+        for (int i = 0; i < tuples.size(); i++) {
+            if (tuples.get(i) == null)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if t can be inserted into this page
+     */
+    public boolean hasRoomFor(Tuple t) {
+        int needed = recordSize(t) + (firstEmptySlot() == -1 ? SLOT_SIZE : 0);
+        return needed <= getFreeSpace();
+    }
+
+    /**
+     * Adds the specified tuple to the page;  the tuple should be updated to reflect
+     *  that it is now stored on this page.
+     * @throws DbException if the page does not have room for the tuple or
+     *         the tupledesc is mismatch.
+     * @param t The tuple to add.
+     */
+    public void insertTuple(Tuple t) throws DbException {
+        if (!td.equals(t.getTupleDesc())) {
+            throw new DbException("tupledesc is mismatch");
+        }
+        if (!hasRoomFor(t)) {
+            throw new DbException("the page is full");
+        }
+        int slot = firstEmptySlot();
+        if (slot == -1) {
+            slot = tuples.size();
+            tuples.add(null);
+            usedBytes += SLOT_SIZE;
+        }
+        t.setRecordId(new RecordId(pid, slot));
+        tuples.set(slot, t);
+        usedBytes += recordSize(t);
+    }
+
+    /**
+     * Delete the specified tuple from the page; its slot stays in the
+     * directory and is marked empty.
+     * @throws DbException if this tuple is not on this page, or tuple slot is
+     *         already empty.
+     * @param t The tuple to delete
+     */
+    public void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId())) {
+            throw new DbException("the tuple is not on this page");
+        }
+        int i = rid.getTupleNumber();
+        if (i < 0 || i >= tuples.size() || tuples.get(i) == null) {
+            throw new DbException("tuple slot is already empty");
+        }
+        usedBytes -= recordSize(tuples.get(i));
+        tuples.set(i, null);
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        this.dirtyTid = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtyTid;
+    }
+
+    /**
+     * @return the number of slots in the directory, used or not
+     */
+    public int getNumSlots() {
+        return tuples.size();
+    }
+
+    /**
+     * @return the number of tuples stored on this page
+     */
+    public int getNumTuples() {
+        int n = 0;
+        for (Tuple t : tuples) {
+            if (t != null)
+                n++;
+        }
+        return n;
+    }
+
+    /**
+     * @return an iterator over all tuples on this page (calling remove on this iterator throws an UnsupportedOperationException)
+     */
+    public Iterator<Tuple> iterator() {
+        final Tuple[] snapshot = tuples.toArray(new Tuple[0]);
+        return new Iterator<Tuple>() {
+            int i = nextUsed(0);
+
+            private int nextUsed(int from) {
+                while (from < snapshot.length && snapshot[from] == null) {
+                    from++;
+                }
+                return from;
+            }
+
+            public boolean hasNext() {
+                return i < snapshot.length;
+            }
+
+            public Tuple next() {
+                if (i >= snapshot.length) {
+                    throw new NoSuchElementException();
+                }
+                Tuple t = snapshot[i];
+                i = nextUsed(i + 1);
+                return t;
+            }
+        };
+    }
+}
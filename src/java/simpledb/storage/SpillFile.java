@@ -0,0 +1,170 @@
+package simpledb.storage;
+
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.execution.OpIterator;
+
+import java.io.*;
+import java.util.NoSuchElementException;
+
+/**
+ * SpillFile is a temporary file of tuples used by operators that run out of
+ * memory (hash join partitions, sort runs, aggregation partitions). Tuples
+ * are appended with {@link #add} and read back in the same order with
+ * {@link #iterator()}, which may be opened and rewound any number of times.
+ * <p>
+ * The format is compact and only meant to be read by this class: INT
+ * fields are 4 bytes and STRING fields a short length followed by the
+ * characters, without any padding. The file is deleted by {@link #delete()}
+ * or, failing that, when the JVM exits.
+ */
+public class SpillFile {
+
+    private final TupleDesc td;
+    private final File file;
+    private DataOutputStream out;
+    private int size;
+
+    /**
+     * Create an empty spill file for tuples with the given schema.
+     *
+     * @throws IOException if the temporary file cannot be created
+     */
+    public SpillFile(TupleDesc td) throws IOException {
+        this.td = td;
+        this.file = File.createTempFile("spill", ".tmp");
+        this.file.deleteOnExit();
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+    }
+
+    /**
+     * @return the schema of the tuples in this file
+     */
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * @return the number of tuples added to this file
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Append t to the file. Tuples cannot be added once the file has been
+     * read.
+     */
+    public void add(Tuple t) throws IOException {
+        if (out == null)
+            throw new IllegalStateException("spill file is already being read");
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.INT_TYPE) {
+                out.writeInt(t.getInt(i));
+            } else {
+                String s = ((StringField) t.getField(i)).getValue();
+                out.writeShort(s.length());
+                out.writeBytes(s);
+            }
+        }
+        size++;
+    }
+
+    /**
+     * Read one tuple from in.
+     */
+    private Tuple read(DataInputStream in) throws IOException {
+        Tuple t = new Tuple(td);
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.INT_TYPE) {
+                t.setField(i, new IntField(in.readInt()));
+            } else {
+                byte[] bs = new byte[in.readUnsignedShort()];
+                in.readFully(bs);
+                t.setField(i, new StringField(new String(bs), Type.STRING_LEN));
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Flush the tuples added so far; after this no more tuples can be added.
+     */
+    private void finish() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * Delete the file. Iterators over it must not be used afterwards.
+     */
+    public void delete() {
+        try {
+            if (out != null)
+                out.close();
+        } catch (IOException e) {
+            // the file is going away anyway
+        }
+        out = null;
+        file.delete();
+    }
+
+    /**
+     * @return an iterator over the tuples of this file, in the order they
+     *   were added. Creating the iterator ends the writing of the file.
+     */
+    public OpIterator iterator() {
+        return new OpIterator() {
+            private static final long serialVersionUID = 1L;
+            private transient DataInputStream in;
+            private int read;
+
+            public void open() throws DbException {
+                try {
+                    finish();
+                    in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                    read = 0;
+                } catch (IOException e) {
+                    throw new DbException("cannot read spill file " + file + ": " + e.getMessage());
+                }
+            }
+
+            public boolean hasNext() {
+                return in != null && read < size;
+            }
+
+            public Tuple next() throws DbException {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                try {
+                    read++;
+                    return read(in);
+                } catch (IOException e) {
+                    throw new DbException("cannot read spill file " + file + ": " + e.getMessage());
+                }
+            }
+
+            public void rewind() throws DbException {
+                close();
+                open();
+            }
+
+            public TupleDesc getTupleDesc() {
+                return td;
+            }
+
+            public void close() {
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        // nothing was written, nothing is lost
+                    }
+                    in = null;
+                }
+            }
+        };
+    }
+}
@@ -78,9 +78,17 @@ public class StringField implements Field {
 	 * @see Field#compare
 	 */
 	public boolean compare(Predicate.Op op, Field val) {
+		return compare(op, value, ((StringField) val).value);
+	}
 
-		StringField iVal = (StringField) val;
-		int cmpVal = value.compareTo(iVal.value);
+	/**
+	 * Compare two String values with the semantics of Field.compare. This is
+	 * what predicates over batches of STRING_TYPE values use.
+	 *
+	 * @see Field#compare
+	 */
+	public static boolean compare(Predicate.Op op, String value, String other) {
+		int cmpVal = value.compareTo(other);
 
 		switch (op) {
 		case EQUALS:
@@ -102,7 +110,7 @@ public class StringField implements Field {
 			return cmpVal <= 0;
 
 		case LIKE:
-			return value.contains(iVal.value);
+			return value.contains(other);
 		}
 
 		return false;
@@ -14,7 +14,7 @@ public class Tuple implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
-    private Field[] fields;
+    Field[] fields;
 
     private TupleDesc td;
 
@@ -35,6 +35,15 @@ public class Tuple implements Serializable {
         this.fields = new Field[td.numFields()];
     }
 
+    /**
+     * Constructor used by subclasses that do not keep their own Field array
+     * (see {@link TupleView}).
+     */
+    Tuple(TupleDesc td, Field[] fields) {
+        this.td = td;
+        this.fields = fields;
+    }
+
     /**
      * @return The TupleDesc representing the schema of this tuple.
      */
@@ -87,6 +96,17 @@ public class Tuple implements Serializable {
         return fields[i];
     }
 
+    /**
+     * @return the value of the ith field, which must be an INT_TYPE field,
+     *         without boxing it into a new object.
+     *
+     * @param i
+     *            field index to return. Must be a valid index.
+     */
+    public int getInt(int i) {
+        return ((IntField) fields[i]).getValue();
+    }
+
     /**
      * Returns the contents of this Tuple as a string. Note that to pass the
      * system tests, the format needs to be as follows:
@@ -122,4 +142,14 @@ public class Tuple implements Serializable {
     {
         this.td = td;
     }
+
+    /**
+     * @return a tuple with the same contents that holds its own Field objects
+     *         and does not reference any page buffer. Operators that keep
+     *         tuples around after the page they came from (join buffers,
+     *         sort buffers, ...) should store the materialized tuple.
+     */
+    public Tuple materialize() {
+        return this;
+    }
 }
@@ -0,0 +1,240 @@
+package simpledb.storage;
+
+import simpledb.common.Type;
+
+/**
+ * TupleBatch holds up to a fixed number of rows column by column: an int[]
+ * per INT column and a String[] per STRING column, so operators that work a
+ * batch at a time read and write primitive arrays instead of allocating a
+ * Tuple and a Field per value.
+ * <p>
+ * Rows are written at physical positions 0, 1, 2, ... and a selection vector
+ * lists the positions that are still part of the batch, in order. Filtering
+ * a batch only rewrites the selection vector; the k-th row of the batch is
+ * at position {@link #row(int) row(k)} of the column arrays.
+ * <p>
+ * A batch returned by {@link simpledb.execution.OpIterator#nextBatch()}
+ * belongs to the operator that returned it and is only valid until the next
+ * call. The caller may narrow its selection but must not write into it
+ * otherwise. Batches made by {@link #project} share the column arrays and the
+ * selection vector of the batch they were made from.
+ */
+public class TupleBatch {
+
+    /** default number of rows in a batch */
+    public static final int DEFAULT_SIZE = 1024;
+
+    private final TupleDesc td;
+    private final int[][] ints;
+    private final String[][] strings;
+    private final int capacity;
+    private final int[] sel;
+    /** number of physical rows written */
+    private int numRows;
+    /** number of selected rows */
+    private int size;
+
+    /**
+     * Create an empty batch of DEFAULT_SIZE rows.
+     */
+    public TupleBatch(TupleDesc td) {
+        this(td, DEFAULT_SIZE);
+    }
+
+    /**
+     * Create an empty batch.
+     *
+     * @param capacity the maximum number of rows
+     */
+    public TupleBatch(TupleDesc td, int capacity) {
+        this.td = td;
+        this.capacity = capacity;
+        this.ints = new int[td.numFields()][];
+        this.strings = new String[td.numFields()][];
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.INT_TYPE)
+                ints[i] = new int[capacity];
+            else
+                strings[i] = new String[capacity];
+        }
+        this.sel = new int[capacity];
+    }
+
+    private TupleBatch(TupleDesc td, int[][] ints, String[][] strings, TupleBatch from) {
+        this.td = td;
+        this.ints = ints;
+        this.strings = strings;
+        this.capacity = from.capacity;
+        this.sel = from.sel;
+        this.numRows = from.numRows;
+        this.size = from.size;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * @return the number of selected rows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the maximum number of rows
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return true if no more rows can be written
+     */
+    public boolean isFull() {
+        return numRows == capacity;
+    }
+
+    /**
+     * @return the position in the column arrays of the k-th selected row
+     */
+    public int row(int k) {
+        return sel[k];
+    }
+
+    /**
+     * @return the values of INT column i, indexed by position
+     */
+    public int[] getInts(int i) {
+        return ints[i];
+    }
+
+    /**
+     * @return the values of STRING column i, indexed by position
+     */
+    public String[] getStrings(int i) {
+        return strings[i];
+    }
+
+    /**
+     * @return the selection vector; its first {@link #size()} entries are
+     *   the positions of the selected rows
+     */
+    public int[] getSelection() {
+        return sel;
+    }
+
+    /**
+     * Keep only the first n entries of the selection vector, after the
+     * caller has rewritten them.
+     */
+    public void setSelected(int n) {
+        if (n < 0 || n > size)
+            throw new IllegalArgumentException("cannot select " + n + " of " + size + " rows");
+        size = n;
+    }
+
+    /**
+     * Remove all rows.
+     */
+    public void clear() {
+        numRows = 0;
+        size = 0;
+    }
+
+    /**
+     * Start a new row and select it. The caller writes its values into the
+     * column arrays at the returned position.
+     *
+     * @return the position of the new row
+     */
+    public int addRow() {
+        if (numRows == capacity)
+            throw new IllegalStateException("batch is full");
+        sel[size++] = numRows;
+        return numRows++;
+    }
+
+    /**
+     * Append the fields of t as a new row.
+     */
+    public void add(Tuple t) {
+        int r = addRow();
+        for (int i = 0; i < ints.length; i++) {
+            if (ints[i] != null)
+                ints[i][r] = t.getInt(i);
+            else
+                strings[i][r] = ((StringField) t.getField(i)).getValue();
+        }
+    }
+
+    /**
+     * Append a copy of the row at position r of b, which must have the same
+     * column types, as a new row.
+     */
+    public void add(TupleBatch b, int r) {
+        int to = addRow();
+        for (int i = 0; i < ints.length; i++) {
+            if (ints[i] != null)
+                ints[i][to] = b.ints[i][r];
+            else
+                strings[i][to] = b.strings[i][r];
+        }
+    }
+
+    /**
+     * @return field i of the row at position r
+     */
+    public Field getField(int r, int i) {
+        if (ints[i] != null)
+            return new IntField(ints[i][r]);
+        return new StringField(strings[i][r], Type.STRING_LEN);
+    }
+
+    /**
+     * @return the k-th selected row as a Tuple
+     */
+    public Tuple getTuple(int k) {
+        int r = sel[k];
+        Tuple t = new Tuple(td);
+        for (int i = 0; i < ints.length; i++)
+            t.setField(i, getField(r, i));
+        return t;
+    }
+
+    /**
+     * @return a new batch holding a copy of the selected rows only, which
+     *   stays valid when this batch is refilled
+     */
+    public TupleBatch copy() {
+        TupleBatch b = new TupleBatch(td, Math.max(size, 1));
+        for (int k = 0; k < size; k++)
+            b.addRow();
+        for (int i = 0; i < ints.length; i++) {
+            if (ints[i] != null) {
+                int[] from = ints[i], to = b.ints[i];
+                for (int k = 0; k < size; k++)
+                    to[k] = from[sel[k]];
+            } else {
+                String[] from = strings[i], to = b.strings[i];
+                for (int k = 0; k < size; k++)
+                    to[k] = from[sel[k]];
+            }
+        }
+        return b;
+    }
+
+    /**
+     * @return a batch whose i-th column is column fields[i] of this batch,
+     *   with the given schema. Nothing is copied.
+     */
+    public TupleBatch project(int[] fields, TupleDesc td) {
+        int[][] is = new int[fields.length][];
+        String[][] ss = new String[fields.length][];
+        for (int i = 0; i < fields.length; i++) {
+            is[i] = ints[fields[i]];
+            ss[i] = strings[fields[i]];
+        }
+        return new TupleBatch(td, is, ss, this);
+    }
+}
@@ -12,6 +12,7 @@ public class TupleDesc implements Serializable {
 
      private ArrayList<TDItem> itemList;
 
+     private transient int[] offsets;
 
 
     /**
@@ -172,6 +173,42 @@ public class TupleDesc implements Serializable {
         return size;
     }
 
+    /**
+     * Gets the byte offset of the ith field inside a serialized tuple of this
+     * TupleDesc. The offset table is computed once and cached.
+     *
+     * @param i
+     *            index of the field. It must be a valid index.
+     * @return the offset of field i from the start of the tuple
+     */
+    public int getFieldOffset(int i) {
+        int[] offs = offsets;
+        if (offs == null) {
+            offs = new int[itemList.size()];
+            int off = 0;
+            for (int j = 0; j < offs.length; j++) {
+                offs[j] = off;
+                off += itemList.get(j).fieldType.getLen();
+            }
+            offsets = offs;
+        }
+        return offs[i];
+    }
+
+    /**
+     * @return a TupleDesc with the fields of this one listed in fields, in
+     *   that order
+     */
+    public TupleDesc project(int[] fields) {
+        Type[] types = new Type[fields.length];
+        String[] names = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            types[i] = getFieldType(fields[i]);
+            names[i] = getFieldName(fields[i]);
+        }
+        return new TupleDesc(types, names);
+    }
+
     /**
      * Merge two TupleDescs into one, with td1.numFields + td2.numFields fields,
      * with the first td1.numFields coming from td1 and the remaining from td2.
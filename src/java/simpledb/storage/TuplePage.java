@@ -0,0 +1,37 @@
+package simpledb.storage;
+
+import simpledb.common.DbException;
+
+import java.util.Iterator;
+
+/**
+ * TuplePage is a Page that holds tuples of a table in no particular order,
+ * which is what {@link PageFile} needs to insert, delete and scan them.
+ */
+public interface TuplePage extends Page {
+
+    /**
+     * @return true if t can be inserted into this page
+     */
+    boolean hasRoomFor(Tuple t);
+
+    /**
+     * Adds the specified tuple to the page and sets its RecordId.
+     *
+     * @throws DbException if the page has no room for t or cannot be modified
+     */
+    void insertTuple(Tuple t) throws DbException;
+
+    /**
+     * Delete the specified tuple from the page.
+     *
+     * @throws DbException if this tuple is not on this page or the page
+     *   cannot be modified
+     */
+    void deleteTuple(Tuple t) throws DbException;
+
+    /**
+     * @return an iterator over all tuples on this page
+     */
+    Iterator<Tuple> iterator();
+}
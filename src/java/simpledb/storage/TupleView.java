@@ -0,0 +1,137 @@
+package simpledb.storage;
+
+import simpledb.common.Type;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * TupleView is a Tuple that reads its fields straight out of a page (or
+ * batch) byte buffer instead of holding a Field object per column. A view is
+ * only a buffer reference plus the offset of the row; the position of each
+ * field comes from {@link TupleDesc#getFieldOffset}, and fields are decoded
+ * when they are asked for.
+ * <p>
+ * A view is valid as long as nobody writes into its buffer. HeapPage never
+ * does (modified slots are kept as ordinary Tuples), so views can be passed
+ * up through the operators without copying. Calling {@link #setField} turns
+ * the view into an ordinary tuple, and {@link #materialize()} returns a copy
+ * that does not reference the buffer at all.
+ * <p>
+ * A view may also be given the offset of each of its fields, to show only
+ * some of the fields of the row it is over.
+ */
+public class TupleView extends Tuple {
+
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] data;
+
+    private final int base;
+
+    /** the offset of each field from base, or null to take them from the TupleDesc */
+    private final int[] offsets;
+
+    /**
+     * Create a view over a serialized tuple.
+     *
+     * @param td   the schema of the tuple
+     * @param data the buffer holding the tuple
+     * @param base the offset of the first byte of the tuple in data
+     * @param rid  the RecordId of the tuple, may be null
+     */
+    public TupleView(TupleDesc td, byte[] data, int base, RecordId rid) {
+        this(td, data, base, null, rid);
+    }
+
+    /**
+     * Create a view over some of the fields of a serialized row.
+     *
+     * @param td      the schema of the view
+     * @param offsets the offset of each field of td from base in data
+     */
+    public TupleView(TupleDesc td, byte[] data, int base, int[] offsets, RecordId rid) {
+        super(td, null);
+        this.data = data;
+        this.base = base;
+        this.offsets = offsets;
+        setRecordId(rid);
+    }
+
+    private int offset(int i) {
+        return base + (offsets != null ? offsets[i] : getTupleDesc().getFieldOffset(i));
+    }
+
+    /**
+     * Decode every field into a Field array; after this the view behaves
+     * like a plain Tuple.
+     */
+    private Field[] decodeAll() {
+        TupleDesc td = getTupleDesc();
+        Field[] fs = new Field[td.numFields()];
+        for (int i = 0; i < fs.length; i++) {
+            fs[i] = td.getFieldType(i).parse(data, offset(i));
+        }
+        return fs;
+    }
+
+    @Override
+    public void setField(int i, Field f) {
+        if (fields == null) {
+            fields = decodeAll();
+        }
+        fields[i] = f;
+    }
+
+    @Override
+    public Field getField(int i) {
+        if (fields != null) {
+            return fields[i];
+        }
+        return getTupleDesc().getFieldType(i).parse(data, offset(i));
+    }
+
+    @Override
+    public int getInt(int i) {
+        if (fields != null) {
+            return ((IntField) fields[i]).getValue();
+        }
+        return Type.readInt(data, offset(i));
+    }
+
+    @Override
+    public Tuple materialize() {
+        Tuple t = new Tuple(getTupleDesc(), fields != null ? fields.clone() : decodeAll());
+        t.setRecordId(getRecordId());
+        return t;
+    }
+
+    @Override
+    public Iterator<Field> fields() {
+        final int n = getTupleDesc().numFields();
+        return new Iterator<Field>() {
+            int i = 0;
+
+            public boolean hasNext() {
+                return i < n;
+            }
+
+            public Field next() {
+                if (i >= n)
+                    throw new NoSuchElementException();
+                return getField(i++);
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder res = new StringBuilder();
+        int n = getTupleDesc().numFields();
+        for (int i = 0; i < n; i++) {
+            res.append(getField(i).toString());
+            res.append("\t");
+        }
+        return res.substring(0, res.length() - 1);
+    }
+}
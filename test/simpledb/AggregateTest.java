@@ -12,9 +12,17 @@ import simpledb.common.Type;
 import simpledb.common.Utility;
 import simpledb.execution.Aggregate;
 import simpledb.execution.Aggregator;
+import simpledb.execution.Gather;
 import simpledb.execution.OpIterator;
+import simpledb.execution.OrderBy;
+import simpledb.optimizer.JoinOptimizer;
+import simpledb.storage.Tuple;
 import simpledb.storage.TupleDesc;
+import simpledb.storage.TupleIterator;
 import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.util.*;
 
 public class AggregateTest extends SimpleDbTestBase {
 
@@ -191,6 +199,144 @@ public class AggregateTest extends SimpleDbTestBase {
     TestUtil.matchAllTuples(min, op);
   }
 
+  private static List<Tuple> randomList(int rows, int keys, long seed) {
+    Random r = new Random(seed);
+    List<Tuple> tuples = new ArrayList<>();
+    for (int i = 0; i < rows; i++)
+      tuples.add(Utility.getHeapTuple(new int[] { r.nextInt(keys), r.nextInt(100) }));
+    return tuples;
+  }
+
+  private static OpIterator randomTuples(int rows, int keys) {
+    return new TupleIterator(Utility.getTupleDesc(2, "c"), randomList(rows, keys, 1));
+  }
+
+  private static List<String> contents(OpIterator it) throws Exception {
+    List<String> res = new ArrayList<>();
+    while (it.hasNext())
+      res.add(SystemTestUtil.tupleToList(it.next()).toString());
+    Collections.sort(res);
+    return res;
+  }
+
+  /**
+   * Unit test for Aggregate with more groups than fit in its memory budget:
+   * the groups that do not fit are spilled and aggregated partition by
+   * partition, over several levels
+   */
+  @Test public void spilledGroups() throws Exception {
+    for (Aggregator.Op aop : new Aggregator.Op[] { Aggregator.Op.SUM, Aggregator.Op.AVG, Aggregator.Op.MIN }) {
+      Aggregate expected = new Aggregate(randomTuples(5000, 1000), 1, 0, aop);
+      Aggregate actual = new Aggregate(randomTuples(5000, 1000), 1, 0, aop, 7);
+      expected.open();
+      actual.open();
+      List<String> want = contents(expected);
+      assertTrue(want.size() > 900);
+      assertEquals(want, contents(actual));
+
+      // rewinding aggregates the spilled groups again
+      actual.rewind();
+      assertEquals(want, contents(actual));
+      actual.close();
+    }
+  }
+
+  /**
+   * Unit test for Aggregate in sorted mode, over input ordered on the group
+   * field, against the hashing mode
+   */
+  @Test public void sortedInput() throws Exception {
+    for (Aggregator.Op aop : new Aggregator.Op[] { Aggregator.Op.COUNT, Aggregator.Op.AVG, Aggregator.Op.MAX }) {
+      Aggregate expected = new Aggregate(randomTuples(2000, 300), 1, 0, aop);
+      Aggregate actual = new Aggregate(new OrderBy(0, true, randomTuples(2000, 300)), 1, 0, aop, true);
+      assertTrue(actual.isSortedInput());
+      assertTrue(JoinOptimizer.isSortedOn(actual, actual.getTupleDesc().getFieldName(0)));
+      expected.open();
+      actual.open();
+      List<String> want = contents(expected);
+      assertEquals(want, contents(actual));
+      actual.rewind();
+      assertEquals(want, contents(actual));
+      actual.close();
+    }
+
+    // the count of no tuples is one row of 0, even in sorted mode
+    Aggregate count = new Aggregate(randomTuples(0, 1), 1, Aggregator.NO_GROUPING, Aggregator.Op.COUNT, true);
+    count.open();
+    assertEquals(Collections.singletonList("[0]"), contents(count));
+  }
+
+  /**
+   * Unit test for two-phase aggregation: partial aggregates over parts of
+   * the input, run by the threads of a Gather, merged into the same result
+   * and TupleDesc as a single Aggregate over the whole input
+   */
+  @Test public void partialAndMerge() throws Exception {
+    TupleDesc td = Utility.getTupleDesc(2, "c");
+    List<List<Tuple>> parts = new ArrayList<>();
+    List<Tuple> all = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      // keys are shared by the parts, and the last part is empty
+      parts.add(randomList(i < 2 ? 3000 : 0, 200, i));
+      all.addAll(parts.get(i));
+    }
+    for (Aggregator.Op aop : new Aggregator.Op[] { Aggregator.Op.MIN, Aggregator.Op.MAX,
+        Aggregator.Op.SUM, Aggregator.Op.AVG, Aggregator.Op.COUNT }) {
+      for (int gfield : new int[] { 0, Aggregator.NO_GROUPING }) {
+        Aggregate whole = new Aggregate(new TupleIterator(td, all), 1, gfield, aop);
+        OpIterator[] partials = new OpIterator[parts.size()];
+        for (int i = 0; i < partials.length; i++)
+          partials[i] = whole.partial(new TupleIterator(td, parts.get(i)));
+        Aggregate merged = whole.merge(new Gather(partials));
+        assertEquals(whole.getTupleDesc(), merged.getTupleDesc());
+        assertEquals(whole.getTupleDesc().getFieldName(gfield + 1),
+            merged.getTupleDesc().getFieldName(gfield + 1));
+        whole.open();
+        merged.open();
+        assertEquals(aop + " " + gfield, contents(whole), contents(merged));
+        merged.close();
+      }
+    }
+
+    // partial sums of values near the int limit are not truncated, so the
+    // merged average is the serial one
+    List<List<Tuple>> big = new ArrayList<>();
+    List<Tuple> allBig = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      List<Tuple> part = new ArrayList<>();
+      for (int k = 0; k < 100; k++)
+        part.add(Utility.getHeapTuple(new int[] { k % 2, Integer.MAX_VALUE - i * 1000 - k }));
+      big.add(part);
+      allBig.addAll(part);
+    }
+    for (int gfield : new int[] { 0, Aggregator.NO_GROUPING }) {
+      Aggregate whole = new Aggregate(new TupleIterator(td, allBig), 1, gfield, Aggregator.Op.AVG);
+      OpIterator[] partials = new OpIterator[big.size()];
+      for (int i = 0; i < partials.length; i++)
+        partials[i] = whole.partial(new TupleIterator(td, big.get(i)));
+      Aggregate merged = whole.merge(new Gather(partials));
+      whole.open();
+      merged.open();
+      List<String> want = contents(whole);
+      if (gfield == Aggregator.NO_GROUPING)
+        assertEquals(Collections.singletonList("[" + (Integer.MAX_VALUE - 1050) + "]"), want);
+      assertEquals(want, contents(merged));
+      merged.close();
+    }
+
+    // an average over nothing has no rows, a count over nothing is 0
+    List<Tuple> none = Collections.emptyList();
+    for (Aggregator.Op aop : new Aggregator.Op[] { Aggregator.Op.AVG, Aggregator.Op.COUNT }) {
+      Aggregate whole = new Aggregate(new TupleIterator(td, none), 1, Aggregator.NO_GROUPING, aop);
+      Aggregate merged = whole.merge(new Gather(whole.partial(new TupleIterator(td, none)),
+          whole.partial(new TupleIterator(td, none))));
+      merged.open();
+      assertEquals(aop == Aggregator.Op.COUNT ? Collections.singletonList("[0]") : Collections.emptyList(),
+          contents(merged));
+      merged.close();
+    }
+  }
+
   /**
    * JUnit suite target
    */
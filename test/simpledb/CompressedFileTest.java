@@ -0,0 +1,200 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.common.Utility;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Operator;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.util.*;
+
+public class CompressedFileTest extends SimpleDbTestBase {
+
+    private static final TupleDesc TD = new TupleDesc(new Type[]{Type.INT_TYPE, Type.INT_TYPE, Type.STRING_TYPE},
+            new String[]{"id", "v", "name"});
+
+    private static Tuple tuple(int id, int v, String name) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(id));
+        t.setField(1, new IntField(v));
+        t.setField(2, new StringField(name, Type.STRING_LEN));
+        return t;
+    }
+
+    private static CompressedFile write(List<Tuple> tuples, TupleDesc td) throws Exception {
+        File dat = File.createTempFile("compressed", ".dat");
+        dat.deleteOnExit();
+        CompressedFileEncoder.write(tuples.iterator(), td, dat);
+        CompressedFile cf = new CompressedFile(dat, td);
+        Database.getCatalog().addTable(cf, SystemTestUtil.getUUID());
+        return cf;
+    }
+
+    private static List<Tuple> scan(DbFileIterator it) throws Exception {
+        List<Tuple> res = new ArrayList<>();
+        it.open();
+        while (it.hasNext())
+            res.add(it.next());
+        it.close();
+        return res;
+    }
+
+    /**
+     * Sorted ids, small values and a few distinct strings round-trip and
+     * take a fraction of the pages a HeapFile would
+     */
+    @Test public void roundTripAndSize() throws Exception {
+        List<Tuple> tuples = new ArrayList<>();
+        Random r = new Random(1);
+        String[] names = {"alice", "bob", "carol", "dave"};
+        for (int i = 0; i < 5000; i++)
+            tuples.add(tuple(i / 10, r.nextInt(1000) - 500, names[r.nextInt(names.length)]));
+        CompressedFile cf = write(tuples, TD);
+
+        int heapPages = (tuples.size() + 29) / 30; // 30 rows of this schema per HeapPage
+        assertTrue(cf.numPages() * 5 <= heapPages);
+
+        TransactionId tid = new TransactionId();
+        List<Tuple> read = scan(cf.iterator(tid));
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(tuples.size(), read.size());
+        for (int i = 0; i < tuples.size(); i++)
+            assertTrue(TestUtil.compareTuples(tuples.get(i), read.get(i)));
+    }
+
+    /**
+     * Unit test for evaluating predicates on compressed pages
+     */
+    @Test public void predicates() throws Exception {
+        List<Tuple> tuples = new ArrayList<>();
+        for (int i = 0; i < 2000; i++)
+            tuples.add(tuple(i / 100, -i, i % 3 == 0 ? "x" : "y" + (i % 7)));
+        CompressedFile cf = write(tuples, TD);
+
+        Predicate[] ps = {
+                new Predicate(0, Predicate.Op.EQUALS, new IntField(7)),
+                new Predicate(1, Predicate.Op.LESS_THAN_OR_EQ, new IntField(-1500)),
+                new Predicate(2, Predicate.Op.EQUALS, new StringField("x", Type.STRING_LEN)),
+                new Predicate(2, Predicate.Op.LIKE, new StringField("y", Type.STRING_LEN)),
+        };
+        TransactionId tid = new TransactionId();
+        for (Predicate p : ps) {
+            int expected = 0;
+            for (Tuple t : tuples)
+                if (p.filter(t))
+                    expected++;
+            List<Tuple> read = scan(cf.iterator(tid, p));
+            assertEquals(expected, read.size());
+            for (Tuple t : read)
+                assertTrue(p.filter(t));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * The planner pushes the filters of a compressed table into its scan,
+     * which evaluates them on the compressed pages
+     */
+    @Test public void pushedPredicates() throws Exception {
+        List<Tuple> tuples = new ArrayList<>();
+        for (int i = 0; i < 2000; i++)
+            tuples.add(tuple(i / 100, i, "y" + (i % 7)));
+        CompressedFile cf = write(tuples, TD);
+        String name = "compressed_pushdown";
+        Database.getCatalog().addTable(cf, name);
+        Map<String, TableStats> stats = new HashMap<>();
+        stats.put(name, new TableStats(cf.getId(), 1000));
+
+        TransactionId tid = new TransactionId();
+        OpIterator plan = new Parser().generateLogicalPlan(tid,
+                "SELECT * FROM " + name + " c WHERE c.id = 7 AND c.v < 750;").physicalPlan(tid, stats, false);
+        OpIterator leaf = plan;
+        while (!(leaf instanceof SeqScan))
+            leaf = ((Operator) leaf).getChildren()[0];
+        assertEquals(2, ((SeqScan) leaf).getPredicates().length);
+        plan.open();
+        int rows = 0;
+        while (plan.hasNext()) {
+            Tuple t = plan.next();
+            assertEquals(7, t.getInt(0));
+            assertTrue(t.getInt(1) < 750);
+            rows++;
+        }
+        plan.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(50, rows);
+    }
+
+    /**
+     * An empty table is one empty page, on which predicates on any column
+     * select nothing
+     */
+    @Test public void emptyTable() throws Exception {
+        CompressedFile cf = write(new ArrayList<>(), TD);
+        String name = "compressed_empty";
+        Database.getCatalog().addTable(cf, name);
+        Map<String, TableStats> stats = new HashMap<>();
+        stats.put(name, new TableStats(cf.getId(), 1000));
+
+        TransactionId tid = new TransactionId();
+        assertEquals(0, scan(cf.iterator(tid, new Predicate(2, Predicate.Op.EQUALS,
+                new StringField("x", Type.STRING_LEN)))).size());
+        OpIterator plan = new Parser().generateLogicalPlan(tid,
+                "SELECT * FROM " + name + " c WHERE c.name = 'x';").physicalPlan(tid, stats, false);
+        plan.open();
+        assertFalse(plan.hasNext());
+        plan.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Unit test for CompressedFileEncoder.convert() on wide-range ints
+     */
+    @Test public void migrateHeapFile() throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(3, 3000, Integer.MAX_VALUE, null, tuples);
+        tuples.add(Arrays.asList(Integer.MIN_VALUE, 0, -1));
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[]{Integer.MIN_VALUE, 0, -1}));
+        Database.getBufferPool().transactionComplete(tid);
+        Database.getBufferPool().flushAllPages();
+
+        File dat = File.createTempFile("compressed", ".dat");
+        dat.deleteOnExit();
+        CompressedFileEncoder.convert(hf, dat);
+        CompressedFile cf = new CompressedFile(dat, hf.getTupleDesc());
+        Database.getCatalog().addTable(cf, SystemTestUtil.getUUID());
+        SystemTestUtil.matchTuples(cf, tuples);
+    }
+
+    /**
+     * Compressed files are read-only
+     */
+    @Test(expected = DbException.class)
+    public void readOnly() throws Exception {
+        CompressedFile cf = write(new ArrayList<>(), TD);
+        assertEquals(1, cf.numPages());
+        cf.insertTuple(new TransactionId(), tuple(1, 2, "z"));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(CompressedFileTest.class);
+    }
+}
@@ -0,0 +1,193 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.execution.*;
+import simpledb.optimizer.LogicalPlan;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.HeapFile;
+import simpledb.storage.Tuple;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.util.*;
+
+public class ExchangeTest extends SimpleDbTestBase {
+
+  private static List<String> tuples(OpIterator it) throws Exception {
+    List<String> res = new ArrayList<>();
+    while (it.hasNext())
+      res.add(it.next().toString());
+    Collections.sort(res);
+    return res;
+  }
+
+  private static List<String> scan(OpIterator it) throws Exception {
+    it.open();
+    List<String> res = tuples(it);
+    it.close();
+    return res;
+  }
+
+  private static boolean has(OpIterator it, Class<?> c) {
+    if (c.isInstance(it))
+      return true;
+    if (!(it instanceof Operator))
+      return false;
+    for (OpIterator child : ((Operator) it).getChildren()) {
+      if (has(child, c))
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Gather returns the tuples of all its children, and can be rewound
+   */
+  @Test public void gather() throws Exception {
+    HeapFile f = SystemTestUtil.createRandomHeapFile(2, 5000, null, null, "c");
+    TransactionId tid = new TransactionId();
+    List<String> one = scan(new SeqScan(tid, f.getId(), "t"));
+    List<String> want = new ArrayList<>();
+    for (int i = 0; i < 3; i++)
+      want.addAll(one);
+    Collections.sort(want);
+
+    Gather g = new Gather(new SeqScan(tid, f.getId(), "t"), new SeqScan(tid, f.getId(), "t"),
+        new SeqScan(tid, f.getId(), "t"));
+    g.open();
+    assertEquals(want, tuples(g));
+    g.rewind();
+    assertEquals(want, tuples(g));
+    g.close();
+
+    // closing before the children are done stops their threads
+    g.open();
+    assertTrue(g.hasNext());
+    g.close();
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Every value of the partitioning field goes to exactly one output, so
+   * counting per output gives each key once with its full count
+   */
+  @Test public void repartition() throws Exception {
+    HeapFile f = SystemTestUtil.createRandomHeapFile(2, 20000, 300, null, null, "c");
+    TransactionId tid = new TransactionId();
+    Map<Integer, Integer> want = new HashMap<>();
+    SeqScan ss = new SeqScan(tid, f.getId(), "t");
+    ss.open();
+    while (ss.hasNext())
+      // each of the two children below contributes every tuple once
+      want.merge(ss.next().getInt(0), 2, Integer::sum);
+    ss.close();
+
+    Repartition[] parts = Repartition.create(0, 4, new SeqScan(tid, f.getId(), "t"),
+        new SeqScan(tid, f.getId(), "t"));
+    OpIterator[] counts = new OpIterator[parts.length];
+    for (int i = 0; i < parts.length; i++)
+      counts[i] = new Aggregate(parts[i], 1, 0, Aggregator.Op.COUNT);
+    Map<Integer, Integer> got = new HashMap<>();
+    Gather g = new Gather(counts);
+    g.open();
+    while (g.hasNext()) {
+      Tuple t = g.next();
+      assertNull(got.put(t.getInt(0), t.getInt(1)));
+    }
+    g.close();
+    assertEquals(want, got);
+
+    try {
+      parts[0].rewind();
+      fail("an output of a repartition cannot be rewound on its own");
+    } catch (DbException expected) {
+    }
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Broadcast sends every tuple to every output
+   */
+  @Test public void broadcast() throws Exception {
+    HeapFile f = SystemTestUtil.createRandomHeapFile(2, 3000, null, null, "c");
+    TransactionId tid = new TransactionId();
+    List<String> one = scan(new SeqScan(tid, f.getId(), "t"));
+    Broadcast[] outputs = Broadcast.create(3, new SeqScan(tid, f.getId(), "t"));
+    for (Broadcast b : outputs)
+      assertEquals(3, b.numOutputs());
+    Map<String, Integer> got = new HashMap<>();
+    Gather g = new Gather(outputs);
+    g.open();
+    while (g.hasNext()) {
+      Tuple t = g.next();
+      got.merge(t.toString(), 1, Integer::sum);
+    }
+    g.close();
+    Map<String, Integer> want = new HashMap<>();
+    for (String s : one)
+      want.merge(s, 3, Integer::sum);
+    assertEquals(want, got);
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * With a parallelism above 1, joins are run as partitioned hash joins and
+   * aggregates by several threads, with the same results as on one thread
+   */
+  @Test public void planned() throws Exception {
+    HeapFile f1 = SystemTestUtil.createRandomHeapFile(2, 4000, 1000, null, null, "c");
+    HeapFile f2 = SystemTestUtil.createRandomHeapFile(2, 4000, 1000, null, null, "c");
+    Database.getCatalog().addTable(f1, "ex_a");
+    Database.getCatalog().addTable(f2, "ex_b");
+    Map<String, TableStats> stats = new HashMap<>();
+    stats.put("ex_a", new TableStats(f1.getId(), 1000));
+    stats.put("ex_b", new TableStats(f2.getId(), 1000));
+    TransactionId tid = new TransactionId();
+    String[] queries = {
+        "SELECT * FROM ex_a a, ex_b b WHERE a.c0 = b.c0;",
+        "SELECT a.c1, SUM(a.c0) FROM ex_a a WHERE a.c0 < 700 GROUP BY a.c1;",
+        "SELECT a.c0, AVG(b.c1) FROM ex_a a, ex_b b WHERE a.c0 = b.c0 GROUP BY a.c0;",
+        "SELECT AVG(a.c1) FROM ex_a a;",
+        "SELECT a.c1, COUNT(c.c0) FROM ex_a a, ex_b b, ex_a c WHERE a.c0 = b.c0 AND b.c1 = c.c1 GROUP BY a.c1;",
+    };
+    for (String q : queries) {
+      LogicalPlan lp = new Parser().generateLogicalPlan(tid, q);
+      List<String> want = scan(lp.physicalPlan(tid, stats, false));
+      assertFalse(want.isEmpty());
+      lp.setParallelism(4);
+      OpIterator plan = lp.physicalPlan(tid, stats, false);
+      assertTrue(has(plan, Gather.class) || has(plan, ParallelHashJoin.class));
+      assertEquals(q, want, scan(plan));
+    }
+
+    // the join of a join is too big to share its build side, and is
+    // repartitioned
+    LogicalPlan lp3 = new Parser().generateLogicalPlan(tid, queries[4]);
+    lp3.setParallelism(4);
+    assertTrue(has(lp3.physicalPlan(tid, stats, false), Repartition.class));
+
+    // the workers of a parallel scan aggregate what they read, and the
+    // partial aggregates are merged
+    LogicalPlan lp = new Parser().generateLogicalPlan(tid, queries[1]);
+    lp.setParallelism(4);
+    Operator agg = (Operator) ((Operator) lp.physicalPlan(tid, stats, false)).getChildren()[0];
+    assertTrue(agg instanceof Aggregate);
+    assertTrue(agg.getChildren()[0] instanceof ParallelSeqScan);
+    assertEquals("sum (a.c0)", agg.getTupleDesc().getFieldName(1));
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ExchangeTest.class);
+  }
+}
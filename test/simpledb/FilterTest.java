@@ -8,14 +8,16 @@ import junit.framework.JUnit4TestAdapter;
 import org.junit.Before;
 import org.junit.Test;
 
+import simpledb.common.Type;
 import simpledb.common.Utility;
 import simpledb.execution.Filter;
 import simpledb.execution.OpIterator;
 import simpledb.execution.Predicate;
-import simpledb.storage.Tuple;
-import simpledb.storage.TupleDesc;
+import simpledb.storage.*;
 import simpledb.systemtest.SimpleDbTestBase;
 
+import java.util.*;
+
 public class FilterTest extends SimpleDbTestBase {
 
   final int testWidth = 3;
@@ -126,6 +128,63 @@ public class FilterTest extends SimpleDbTestBase {
     op.close();
   }
 
+  /**
+   * A Filter over a conjunction returns the tuples that pass every one of
+   * its predicates, a tuple or a batch at a time, including for bounds on
+   * the same field that are folded together and for bounds at the ends of
+   * the int range
+   */
+  @Test public void conjunction() throws Exception {
+    TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.INT_TYPE, Type.STRING_TYPE },
+        new String[] { "a", "b", "s" });
+    Random r = new Random(46);
+    List<Tuple> rows = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      Tuple t = new Tuple(td);
+      t.setField(0, new IntField(r.nextInt(11) - 5));
+      t.setField(1, new IntField(i % 3 == 0 ? Integer.MAX_VALUE : i % 3 == 1 ? Integer.MIN_VALUE : r.nextInt(5)));
+      t.setField(2, new StringField("s" + r.nextInt(6), Type.STRING_LEN));
+      rows.add(t);
+    }
+    int[] ints = { -6, -5, -1, 0, 3, 5, 6, Integer.MIN_VALUE, Integer.MAX_VALUE };
+    for (int q = 0; q < 300; q++) {
+      Predicate[] conj = new Predicate[1 + r.nextInt(4)];
+      for (int i = 0; i < conj.length; i++) {
+        Predicate.Op op = Predicate.Op.values()[r.nextInt(Predicate.Op.values().length)];
+        int f = r.nextInt(3);
+        Field v = f == 2 ? new StringField("s" + r.nextInt(7), Type.STRING_LEN)
+            : new IntField(ints[r.nextInt(ints.length)]);
+        conj[i] = new Predicate(f, op, v);
+      }
+      List<String> want = new ArrayList<>();
+      for (Tuple t : rows) {
+        boolean pass = true;
+        for (Predicate p : conj)
+          pass &= p.filter(t);
+        if (pass)
+          want.add(t.toString());
+      }
+
+      Filter op = new Filter(conj, new TupleIterator(td, rows));
+      List<String> got = new ArrayList<>();
+      op.open();
+      while (op.hasNext())
+        got.add(op.next().toString());
+      op.close();
+      assertEquals(Arrays.toString(conj), want, got);
+
+      op.open();
+      got.clear();
+      TupleBatch b;
+      while ((b = op.nextBatch()) != null) {
+        for (int k = 0; k < b.size(); k++)
+          got.add(b.getTuple(k).toString());
+      }
+      op.close();
+      assertEquals(Arrays.toString(conj), want, got);
+    }
+  }
+
   /**
    * JUnit suite target
    */
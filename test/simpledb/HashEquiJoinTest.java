@@ -0,0 +1,230 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.common.Utility;
+import simpledb.execution.*;
+import simpledb.optimizer.LogicalPlan;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleBatch;
+import simpledb.storage.TupleIterator;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.util.*;
+
+public class HashEquiJoinTest extends SimpleDbTestBase {
+
+  private static OpIterator randomTuples(int rows, int keys, long seed) {
+    Random r = new Random(seed);
+    List<Tuple> tuples = new ArrayList<>();
+    for (int i = 0; i < rows; i++)
+      tuples.add(Utility.getHeapTuple(new int[] { r.nextInt(keys), i }));
+    return new TupleIterator(Utility.getTupleDesc(2), tuples);
+  }
+
+  private static List<String> contents(OpIterator it) throws Exception {
+    List<String> res = new ArrayList<>();
+    while (it.hasNext())
+      res.add(SystemTestUtil.tupleToList(it.next()).toString());
+    Collections.sort(res);
+    return res;
+  }
+
+  private static void checkAgainstJoin(int rows1, int rows2, int keys, int budget) throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    OpIterator expected = new Join(pred, randomTuples(rows1, keys, 1), randomTuples(rows2, keys, 2));
+    OpIterator actual = new HashEquiJoin(pred, randomTuples(rows1, keys, 1), randomTuples(rows2, keys, 2), budget);
+    expected.open();
+    actual.open();
+    List<String> want = contents(expected);
+    assertEquals(want, contents(actual));
+
+    // rewinding redoes the partitioning and gives the same result
+    actual.rewind();
+    assertEquals(want, contents(actual));
+    actual.close();
+    assertTrue(want.size() > 0);
+  }
+
+  /**
+   * The build side fits in memory
+   */
+  @Test public void inMemory() throws Exception {
+    checkAgainstJoin(500, 700, 100, HashEquiJoin.MAP_SIZE);
+  }
+
+  /**
+   * The build side is spilled into partitions
+   */
+  @Test public void spilled() throws Exception {
+    checkAgainstJoin(3000, 2000, 1000, 200);
+  }
+
+  /**
+   * A handful of keys cannot be split into partitions small enough, so the
+   * deepest level joins in chunks
+   */
+  @Test public void skewed() throws Exception {
+    checkAgainstJoin(400, 300, 3, 50);
+  }
+
+  private static int count(OpIterator it) throws Exception {
+    int n = 0;
+    it.rewind();
+    while (it.hasNext()) {
+      it.next();
+      n++;
+    }
+    return n;
+  }
+
+  /**
+   * A Bloom filter contains every key added, whether looked up as an INT,
+   * a String or a serialized STRING field, and few others
+   */
+  @Test public void bloomFilter() throws Exception {
+    BloomFilter f = new BloomFilter(1000);
+    for (int i = 0; i < 1000; i++) {
+      f.add(BloomFilter.hash(i * 7));
+      f.add(BloomFilter.hash("k" + i));
+    }
+    int falsePositives = 0;
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(f.mightContain(BloomFilter.hash(i * 7)));
+      assertTrue(f.mightContain(BloomFilter.hash("k" + i)));
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      new StringField("k" + i, Type.STRING_LEN).serialize(new DataOutputStream(bytes));
+      assertTrue(f.mightContain(BloomFilter.hash(bytes.toByteArray(), 0)));
+      if (f.mightContain(BloomFilter.hash(i * 7 + 1)))
+        falsePositives++;
+    }
+    // the filter holds 2000 keys but was sized for 1000
+    assertTrue(falsePositives < 150);
+  }
+
+  /**
+   * A scan given the filter a join publishes drops most probe rows without
+   * a match, and the join returns the same tuples, spilled or not, a tuple
+   * or a batch at a time; a Filter can test the keys as well
+   */
+  @Test public void runtimeFilter() throws Exception {
+    // 200 build keys out of 1000 probe keys
+    HeapFile dim = SystemTestUtil.createRandomHeapFile(2, 300, 200, null, null, "c");
+    HeapFile fact = SystemTestUtil.createRandomHeapFile(2, 5000, 1000, null, null, "c");
+    TransactionId tid = new TransactionId();
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    OpIterator expected = new Join(pred, new SeqScan(tid, dim.getId(), "d"), new SeqScan(tid, fact.getId(), "f"));
+    expected.open();
+    List<String> want = contents(expected);
+    expected.close();
+    assertFalse(want.isEmpty());
+
+    for (int budget : new int[] { HashEquiJoin.MAP_SIZE, 50 }) {
+      SeqScan probe = new SeqScan(tid, fact.getId(), "f");
+      HashEquiJoin j = new HashEquiJoin(pred, new SeqScan(tid, dim.getId(), "d"), probe, budget);
+      probe.addRuntimeFilter(0, j.publishKeys());
+      j.open();
+      assertEquals(want, contents(j));
+      j.rewind();
+      List<String> got = new ArrayList<>();
+      TupleBatch b;
+      while ((b = j.nextBatch()) != null) {
+        for (int k = 0; k < b.size(); k++)
+          got.add(SystemTestUtil.tupleToList(b.getTuple(k)).toString());
+      }
+      Collections.sort(got);
+      assertEquals(want, got);
+      int passed = count(probe);
+      assertTrue(passed + " probe rows passed", passed < 1500);
+      j.close();
+      // once the join is closed, nothing is filtered
+      probe.open();
+      assertEquals(5000, count(probe));
+      probe.close();
+    }
+
+    Filter filter = new Filter(new Predicate(1, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(0)),
+        new SeqScan(tid, fact.getId(), "f"));
+    HashEquiJoin j = new HashEquiJoin(pred, new SeqScan(tid, dim.getId(), "d"), filter);
+    filter.addRuntimeFilter(0, j.publishKeys());
+    j.open();
+    assertEquals(want, contents(j));
+    assertTrue(count(filter) < 1500);
+    j.close();
+
+    // a filter sized for far fewer keys than the build side has lets more
+    // rows through, but the join still returns every match
+    SeqScan probe = new SeqScan(tid, fact.getId(), "f");
+    j = new HashEquiJoin(pred, new SeqScan(tid, dim.getId(), "d"), probe, 50);
+    probe.addRuntimeFilter(0, j.publishKeys(1));
+    j.open();
+    assertEquals(want, contents(j));
+    j.close();
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * The planner has the probe side of a hash join test the keys of its
+   * build side
+   */
+  @Test public void plannedRuntimeFilter() throws Exception {
+    HeapFile dim = SystemTestUtil.createRandomHeapFile(2, 300, 200, null, null, "c");
+    HeapFile fact = SystemTestUtil.createRandomHeapFile(2, 5000, 1000, null, null, "c");
+    Database.getCatalog().addTable(dim, "rf_dim");
+    Database.getCatalog().addTable(fact, "rf_fact");
+    Map<String, TableStats> stats = new HashMap<>();
+    stats.put("rf_dim", new TableStats(dim.getId(), 1000));
+    stats.put("rf_fact", new TableStats(fact.getId(), 1000));
+    TransactionId tid = new TransactionId();
+    LogicalPlan lp = new Parser().generateLogicalPlan(tid,
+        "SELECT f.c1, d.c1 FROM rf_fact f, rf_dim d WHERE f.c0 = d.c0;");
+    OpIterator plan = lp.physicalPlan(tid, stats, false);
+    OpIterator j = ((Operator) plan).getChildren()[0];
+    assertTrue(j instanceof HashEquiJoin);
+    OpIterator probe = ((Operator) j).getChildren()[1];
+    assertTrue(probe instanceof SeqScan);
+    assertEquals(fact.getId(), ((SeqScan) probe).file.getId());
+
+    OpIterator expected = new Join(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+        new SeqScan(tid, fact.getId(), "f"), new SeqScan(tid, dim.getId(), "d"));
+    expected.open();
+    int want = 0;
+    while (expected.hasNext()) {
+      expected.next();
+      want++;
+    }
+    expected.close();
+    plan.open();
+    int got = 0;
+    while (plan.hasNext()) {
+      plan.next();
+      got++;
+    }
+    assertEquals(want, got);
+    assertTrue(count(probe) < 1500);
+    plan.close();
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(HashEquiJoinTest.class);
+  }
+}
@@ -0,0 +1,91 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.common.Type;
+import simpledb.common.Utility;
+import simpledb.execution.IntHashTable;
+import simpledb.execution.StringHashTable;
+import simpledb.execution.TupleHashTable;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.util.*;
+
+public class HashTableTest extends SimpleDbTestBase {
+
+    /**
+     * Unit test for IntHashTable: ids are dense, in order of insertion, and
+     * survive the table growing
+     */
+    @Test public void intKeys() {
+        IntHashTable table = new IntHashTable(4);
+        Random r = new Random(1);
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 10000; i++) {
+            int key = r.nextInt(5000) * (r.nextBoolean() ? -1 : 1);
+            Integer id = expected.get(key);
+            if (id == null) {
+                id = expected.size();
+                expected.put(key, id);
+            }
+            assertEquals((int) id, table.put(key));
+        }
+        assertEquals(expected.size(), table.size());
+        for (Map.Entry<Integer, Integer> e : expected.entrySet()) {
+            assertEquals((int) e.getValue(), table.get(e.getKey()));
+            assertEquals((int) e.getKey(), table.getKey(e.getValue()));
+            assertEquals(new IntField(e.getKey()), table.getField(e.getValue()));
+        }
+        assertEquals(-1, table.get(5000));
+    }
+
+    /**
+     * Unit test for StringHashTable, including keys with colliding hash codes
+     */
+    @Test public void stringKeys() {
+        StringHashTable table = new StringHashTable();
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        assertEquals(0, table.put("Aa"));
+        assertEquals(1, table.put("BB"));
+        for (int i = 0; i < 1000; i++)
+            assertEquals(i + 2, table.put("s" + i, StringHashTable.hash("s" + i)));
+        assertEquals(1, table.get("BB"));
+        assertEquals(0, table.put("Aa"));
+        assertEquals(502, table.get("s500"));
+        assertEquals("s500", table.getKey(502));
+        assertEquals(-1, table.get("AaBB"));
+        assertEquals(1002, table.size());
+    }
+
+    /**
+     * Unit test for TupleHashTable: every row of a key is found exactly once
+     */
+    @Test public void tupleRows() {
+        TupleHashTable table = new TupleHashTable(Type.INT_TYPE, 1);
+        for (int i = 0; i < 1000; i++)
+            table.add(Utility.getHeapTuple(new int[]{i, i % 7}));
+        assertEquals(1000, table.size());
+
+        Tuple probe = Utility.getHeapTuple(3);
+        Set<Integer> found = new HashSet<>();
+        for (int row = table.first(probe, 0); row != -1; row = table.next(row)) {
+            Tuple t = table.getRow(row);
+            assertEquals(3, t.getInt(1));
+            assertTrue(found.add(t.getInt(0)));
+        }
+        assertEquals(143, found.size());
+        assertEquals(-1, table.first(Utility.getHeapTuple(7), 0));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HashTableTest.class);
+    }
+}
@@ -0,0 +1,127 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.*;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreeUtility;
+import simpledb.optimizer.JoinOptimizer;
+import simpledb.optimizer.LogicalJoinNode;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleIterator;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.util.*;
+
+public class IndexNestedLoopJoinTest extends SimpleDbTestBase {
+
+    private static OpIterator randomTuples(int rows, int keys, long seed) {
+        Random r = new Random(seed);
+        List<Tuple> tuples = new ArrayList<>();
+        for (int i = 0; i < rows; i++)
+            tuples.add(Utility.getHeapTuple(new int[]{r.nextInt(keys), i}));
+        return new TupleIterator(Utility.getTupleDesc(2), tuples);
+    }
+
+    private static List<String> contents(OpIterator it) throws Exception {
+        List<String> res = new ArrayList<>();
+        it.open();
+        while (it.hasNext())
+            res.add(SystemTestUtil.tupleToList(it.next()).toString());
+        it.close();
+        Collections.sort(res);
+        return res;
+    }
+
+    /**
+     * IndexNestedLoopJoin gives the same result as Join for the operators the
+     * index can answer, with and without predicates on the inner table
+     */
+    @Test public void matchesJoin() throws Exception {
+        BTreeFile bf = BTreeUtility.createRandomBTreeFile(2, 3000, 200, null, null, 0);
+        Database.getCatalog().addTable(bf, "inner");
+        TransactionId tid = new TransactionId();
+        Predicate filter = new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(100));
+        for (Predicate.Op op : new Predicate.Op[]{Predicate.Op.EQUALS, Predicate.Op.LESS_THAN,
+                Predicate.Op.GREATER_THAN_OR_EQ}) {
+            JoinPredicate pred = new JoinPredicate(0, op, 0);
+            List<String> want = contents(new Join(pred, randomTuples(40, 220, 1), new SeqScan(tid, bf.getId(), "i")));
+            assertTrue(want.size() > 0);
+            OpIterator j = new IndexNestedLoopJoin(pred, randomTuples(40, 220, 1), tid, bf.getId(), "i");
+            assertEquals(op.toString(), want, contents(j));
+            j.open();
+            j.rewind();
+            j.close();
+
+            want = contents(new Join(pred, randomTuples(40, 220, 1),
+                    new Filter(filter, new SeqScan(tid, bf.getId(), "i"))));
+            j = new IndexNestedLoopJoin(pred, randomTuples(40, 220, 1), tid, bf.getId(), "i",
+                    Collections.singletonList(filter));
+            assertEquals(op.toString(), want, contents(j));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * The inner table must be a B+ tree keyed on the join field
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void notKeyField() throws Exception {
+        BTreeFile bf = BTreeUtility.createRandomBTreeFile(2, 10, null, null, 0);
+        Database.getCatalog().addTable(bf, "inner");
+        new IndexNestedLoopJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 1), randomTuples(1, 1, 1),
+                new TransactionId(), bf.getId(), "i");
+    }
+
+    /**
+     * A small outer table is joined through the index of a large inner one;
+     * without statistics the optimizer keeps the hash join
+     */
+    @Test public void optimizerPicksIndex() throws Exception {
+        HeapFile outer = SystemTestUtil.createRandomHeapFile(2, 5, 20000, null, null);
+        BTreeFile inner = BTreeUtility.createRandomBTreeFile(2, 20000, 20000, null, null, 0);
+        Database.getCatalog().addTable(outer, "outer");
+        Database.getCatalog().addTable(inner, "inner");
+        TransactionId tid = new TransactionId();
+        SeqScan s1 = new SeqScan(tid, outer.getId(), "o");
+        SeqScan s2 = new SeqScan(tid, inner.getId(), "i");
+        LogicalJoinNode lj = new LogicalJoinNode("o", "i", s1.getTupleDesc().getFieldName(0),
+                s2.getTupleDesc().getFieldName(0), Predicate.Op.EQUALS);
+        assertTrue(JoinOptimizer.instantiateJoin(lj, s1, s2) instanceof HashEquiJoin);
+
+        TableStats.setTableStats("outer", new TableStats(outer.getId(), 1000));
+        TableStats.setTableStats("inner", new TableStats(inner.getId(), 1000));
+        OpIterator j = JoinOptimizer.instantiateJoin(lj, s1, s2);
+        assertTrue(j instanceof IndexNestedLoopJoin);
+        assertEquals(contents(new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+                new SeqScan(tid, outer.getId(), "o"), new SeqScan(tid, inner.getId(), "i"))), contents(j));
+
+        // predicates pushed into the inner scan are tested on the index
+        // matches as well
+        Predicate pushed = new Predicate(1, Predicate.Op.LESS_THAN, new IntField(10000));
+        j = JoinOptimizer.instantiateJoin(lj, new SeqScan(tid, outer.getId(), "o"),
+                new SeqScan(tid, inner.getId(), "i", new Predicate[]{pushed}));
+        assertTrue(j instanceof IndexNestedLoopJoin);
+        assertEquals(contents(new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+                new SeqScan(tid, outer.getId(), "o"), new Filter(pushed, new SeqScan(tid, inner.getId(), "i")))),
+                contents(j));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(IndexNestedLoopJoinTest.class);
+    }
+}
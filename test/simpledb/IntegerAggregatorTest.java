@@ -1,7 +1,11 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 import junit.framework.JUnit4TestAdapter;
@@ -10,9 +14,11 @@ import org.junit.Before;
 import org.junit.Test;
 
 import simpledb.common.Type;
+import simpledb.common.Utility;
 import simpledb.execution.Aggregator;
 import simpledb.execution.IntegerAggregator;
 import simpledb.execution.OpIterator;
+import simpledb.storage.Tuple;
 import simpledb.systemtest.SimpleDbTestBase;
 
 public class IntegerAggregatorTest extends SimpleDbTestBase {
@@ -182,6 +188,95 @@ public class IntegerAggregatorTest extends SimpleDbTestBase {
     }
   }
 
+  private static int single(IntegerAggregator agg) throws Exception {
+    OpIterator it = agg.iterator();
+    it.open();
+    int v = it.next().getInt(0);
+    assertFalse(it.hasNext());
+    return v;
+  }
+
+  /**
+   * Ungrouped aggregates keep a single set of accumulators; AVG sums into a
+   * long, so large values do not overflow before being divided
+   */
+  @Test public void ungrouped() throws Exception {
+    int big = Integer.MAX_VALUE - 1;
+    OpIterator scan = TestUtil.createTupleList(1, new int[] { big, big, big, big - 3 });
+    IntegerAggregator avg = new IntegerAggregator(Aggregator.NO_GROUPING, null, 0, Aggregator.Op.AVG);
+    IntegerAggregator min = new IntegerAggregator(Aggregator.NO_GROUPING, null, 0, Aggregator.Op.MIN);
+    scan.open();
+    while (scan.hasNext()) {
+      Tuple t = scan.next();
+      avg.mergeTupleIntoGroup(t);
+      min.mergeTupleIntoGroup(t);
+    }
+    assertEquals(big - 1, single(avg));
+    assertEquals(big - 3, single(min));
+
+    // the count of no tuples is 0, their minimum is not defined
+    IntegerAggregator count = new IntegerAggregator(Aggregator.NO_GROUPING, null, 0, Aggregator.Op.COUNT);
+    assertEquals(0, single(count));
+    OpIterator it = new IntegerAggregator(Aggregator.NO_GROUPING, null, 0, Aggregator.Op.MIN).iterator();
+    it.open();
+    assertFalse(it.hasNext());
+  }
+
+  /**
+   * numGroups counts the groups created so far, hasGroup tells whether a
+   * tuple's group is one of them
+   */
+  @Test public void groups() throws Exception {
+    IntegerAggregator agg = new IntegerAggregator(0, Type.INT_TYPE, 1, Aggregator.Op.SUM);
+    assertEquals(0, agg.numGroups());
+    scan1.open();
+    while (scan1.hasNext())
+      agg.mergeTupleIntoGroup(scan1.next());
+    assertEquals(3, agg.numGroups());
+    assertTrue(agg.hasGroup(Utility.getHeapTuple(new int[] { 1, 0 })));
+    assertFalse(agg.hasGroup(Utility.getHeapTuple(new int[] { 42, 0 })));
+  }
+
+  /**
+   * SUM_COUNT returns a sum, as its high and low words, and a count per
+   * group, and SC_AVG averages such pairs weighted by their counts
+   */
+  @Test public void sumCount() throws Exception {
+    IntegerAggregator sc = new IntegerAggregator(0, Type.INT_TYPE, 1, Aggregator.Op.SUM_COUNT);
+    scan1.open();
+    while (scan1.hasNext())
+      sc.mergeTupleIntoGroup(scan1.next());
+    assertEquals(4, sc.getTupleDesc().numFields());
+    OpIterator it = sc.iterator();
+    it.open();
+    Map<Integer, String> got = new HashMap<>();
+    while (it.hasNext()) {
+      Tuple t = it.next();
+      got.put(t.getInt(0), t.getInt(1) + ":" + t.getInt(2) + "/" + t.getInt(3));
+    }
+    assertEquals("0:12/3", got.get(1));
+    assertEquals("0:7/1", got.get(5));
+
+    // two partial states of group 1: (5, 2) and (10, 3) average to 3; the
+    // sums of group 3, 2^32 + 2 and 2^32 - 2, do not fit in an int
+    OpIterator partials = TestUtil.createTupleList(4, new int[] { 1, 0, 5, 2, 1, 0, 10, 3, 2, 0, 7, 1,
+        3, 1, 2, 4, 3, 0, -2, 4 });
+    IntegerAggregator avg = new IntegerAggregator(0, Type.INT_TYPE, 1, Aggregator.Op.SC_AVG);
+    partials.open();
+    while (partials.hasNext())
+      avg.mergeTupleIntoGroup(partials.next());
+    it = avg.iterator();
+    it.open();
+    got.clear();
+    while (it.hasNext()) {
+      Tuple t = it.next();
+      got.put(t.getInt(0), String.valueOf(t.getInt(1)));
+    }
+    assertEquals("3", got.get(1));
+    assertEquals("7", got.get(2));
+    assertEquals(String.valueOf((1L << 33) / 8), got.get(3));
+  }
+
   /**
    * JUnit suite target
    */
@@ -112,6 +112,24 @@ public class JoinTest extends SimpleDbTestBase {
     TestUtil.matchAllTuples(eqJoin, op);
   }
 
+  /**
+   * Unit test for Join.getNext() with blocks smaller than the outer relation
+   */
+  @Test public void smallBlocks() throws Exception {
+    for (int blockSize : new int[] { 1, 3 }) {
+      createTupleLists();
+      Join op = new Join(new JoinPredicate(0, Predicate.Op.GREATER_THAN, 0), scan1, scan2, blockSize);
+      op.open();
+      gtJoin.open();
+      TestUtil.matchAllTuples(gtJoin, op);
+
+      eqJoin.open();
+      op = new Join(new JoinPredicate(0, Predicate.Op.EQUALS, 0), scan1, scan2, blockSize);
+      op.open();
+      TestUtil.matchAllTuples(eqJoin, op);
+    }
+  }
+
   /**
    * JUnit suite target
    */
@@ -0,0 +1,102 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.common.Utility;
+import simpledb.execution.OpIterator;
+import simpledb.execution.OrderBy;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleIterator;
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.util.*;
+
+public class OrderByTest extends SimpleDbTestBase {
+
+    private static List<int[]> randomRows(int rows, long seed) {
+        Random r = new Random(seed);
+        List<int[]> res = new ArrayList<>();
+        for (int i = 0; i < rows; i++)
+            res.add(new int[]{r.nextInt(20), r.nextInt(1000), i});
+        return res;
+    }
+
+    private static OpIterator scan(List<int[]> rows) {
+        List<Tuple> tuples = new ArrayList<>();
+        for (int[] row : rows)
+            tuples.add(Utility.getHeapTuple(row));
+        return new TupleIterator(Utility.getTupleDesc(3), tuples);
+    }
+
+    private static List<String> read(OpIterator it) throws Exception {
+        List<String> res = new ArrayList<>();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            res.add(t.getInt(0) + "," + t.getInt(1) + "," + t.getInt(2));
+        }
+        return res;
+    }
+
+    /**
+     * Sort on (field 0 ascending, field 1 descending, field 2 ascending)
+     * with the given memory budget, and compare with Collections.sort
+     */
+    private static void checkSort(int rows, int budget) throws Exception {
+        List<int[]> data = randomRows(rows, budget);
+        OpIterator sorted = new OrderBy(new int[]{0, 1, 2}, new boolean[]{true, false, true}, scan(data), budget);
+
+        List<int[]> expected = new ArrayList<>(data);
+        expected.sort((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0])
+                : a[1] != b[1] ? Integer.compare(b[1], a[1]) : Integer.compare(a[2], b[2]));
+        List<String> want = new ArrayList<>();
+        for (int[] row : expected)
+            want.add(row[0] + "," + row[1] + "," + row[2]);
+
+        sorted.open();
+        assertEquals(want, read(sorted));
+        sorted.rewind();
+        assertEquals(want, read(sorted));
+        sorted.close();
+    }
+
+    /**
+     * The input fits in memory
+     */
+    @Test public void inMemory() throws Exception {
+        checkSort(2000, OrderBy.DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * The input is sorted in runs on disk which are merged
+     */
+    @Test public void external() throws Exception {
+        checkSort(5000, 300);
+    }
+
+    /**
+     * There are more runs than can be merged at once
+     */
+    @Test public void multiPassMerge() throws Exception {
+        checkSort(3000, 20);
+    }
+
+    /**
+     * An empty input sorts to nothing
+     */
+    @Test public void empty() throws Exception {
+        OpIterator sorted = new OrderBy(0, true, scan(new ArrayList<>()));
+        sorted.open();
+        assertFalse(sorted.hasNext());
+        sorted.close();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(OrderByTest.class);
+    }
+}
@@ -0,0 +1,133 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.*;
+import simpledb.optimizer.LogicalPlan;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.HeapFile;
+import simpledb.storage.TupleBatch;
+import simpledb.storage.TupleIterator;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.util.*;
+
+public class ParallelHashJoinTest extends SimpleDbTestBase {
+
+  private static List<String> tuples(OpIterator it) throws Exception {
+    List<String> res = new ArrayList<>();
+    while (it.hasNext())
+      res.add(it.next().toString());
+    Collections.sort(res);
+    return res;
+  }
+
+  private static List<String> scan(OpIterator it) throws Exception {
+    it.open();
+    List<String> res = tuples(it);
+    it.close();
+    return res;
+  }
+
+  /**
+   * rows {key, i} with keys drawn from [0, keys), as ints or strings
+   */
+  private static TupleIterator rows(int n, int keys, boolean strings, long seed) {
+    if (n == 0)
+      return new TupleIterator(Utility.getTupleDesc(2), Collections.emptyList());
+    Random r = new Random(seed);
+    Object[] data = new Object[2 * n];
+    for (int i = 0; i < n; i++) {
+      int k = r.nextInt(keys);
+      data[2 * i] = strings ? "k" + k : (Object) k;
+      data[2 * i + 1] = i;
+    }
+    return TestUtil.createTupleList(2, data);
+  }
+
+  /**
+   * The join returns the same tuples as a HashEquiJoin, for duplicate keys
+   * on both sides, int and string keys and any number of threads
+   */
+  @Test public void matchesHashEquiJoin() throws Exception {
+    JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    for (boolean strings : new boolean[] { false, true }) {
+      List<String> want = scan(new HashEquiJoin(p, rows(500, 300, strings, 1), rows(5000, 400, strings, 2)));
+      assertFalse(want.isEmpty());
+      for (int dop : new int[] { 1, 3 }) {
+        ParallelHashJoin j = new ParallelHashJoin(p, rows(500, 300, strings, 1), rows(5000, 400, strings, 2), dop);
+        assertEquals(want, scan(j));
+
+        j.open();
+        List<String> got = new ArrayList<>();
+        TupleBatch b;
+        while ((b = j.nextBatch()) != null) {
+          for (int k = 0; k < b.size(); k++)
+            got.add(b.getTuple(k).toString());
+        }
+        Collections.sort(got);
+        assertEquals(want, got);
+
+        // rewinding builds and probes again
+        j.rewind();
+        assertEquals(want, tuples(j));
+        j.close();
+      }
+    }
+  }
+
+  /**
+   * Closing before the probe is done stops the threads; joining with an
+   * empty side returns nothing
+   */
+  @Test public void earlyCloseAndEmpty() throws Exception {
+    JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    ParallelHashJoin j = new ParallelHashJoin(p, rows(100, 10, false, 1), rows(20000, 10, false, 2), 4);
+    j.open();
+    assertTrue(j.hasNext());
+    j.close();
+
+    assertEquals(Collections.emptyList(), scan(new ParallelHashJoin(p, rows(0, 10, false, 1),
+        rows(1000, 10, false, 2), 4)));
+    assertEquals(Collections.emptyList(), scan(new ParallelHashJoin(p, rows(100, 10, false, 1),
+        rows(0, 10, false, 2), 4)));
+  }
+
+  /**
+   * With a parallelism above 1, a join whose build side is a scan estimated
+   * to fit in memory is planned as a ParallelHashJoin
+   */
+  @Test public void planned() throws Exception {
+    HeapFile dim = SystemTestUtil.createRandomHeapFile(2, 500, 500, null, null, "c");
+    HeapFile fact = SystemTestUtil.createRandomHeapFile(2, 20000, 500, null, null, "c");
+    Database.getCatalog().addTable(dim, "phj_dim");
+    Database.getCatalog().addTable(fact, "phj_fact");
+    Map<String, TableStats> stats = new HashMap<>();
+    stats.put("phj_dim", new TableStats(dim.getId(), 1000));
+    stats.put("phj_fact", new TableStats(fact.getId(), 1000));
+    TransactionId tid = new TransactionId();
+    String q = "SELECT * FROM phj_fact f, phj_dim d WHERE f.c0 = d.c0 AND d.c1 < 250;";
+    LogicalPlan lp = new Parser().generateLogicalPlan(tid, q);
+    List<String> want = scan(lp.physicalPlan(tid, stats, false));
+    assertFalse(want.isEmpty());
+    lp.setParallelism(4);
+    OpIterator plan = lp.physicalPlan(tid, stats, false);
+    assertTrue(((Operator) plan).getChildren()[0] instanceof ParallelHashJoin);
+    assertEquals(want, scan(plan));
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ParallelHashJoinTest.class);
+  }
+}
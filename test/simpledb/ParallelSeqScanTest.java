@@ -0,0 +1,182 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.execution.*;
+import simpledb.optimizer.LogicalPlan;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.IntField;
+import simpledb.storage.Page;
+import simpledb.storage.PageId;
+import simpledb.storage.TupleBatch;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.util.*;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ParallelSeqScanTest extends SimpleDbTestBase {
+
+  private static List<String> tuples(OpIterator it) throws Exception {
+    List<String> res = new ArrayList<>();
+    while (it.hasNext())
+      res.add(it.next().toString());
+    Collections.sort(res);
+    return res;
+  }
+
+  private static List<String> scan(OpIterator it) throws Exception {
+    it.open();
+    List<String> res = tuples(it);
+    it.close();
+    return res;
+  }
+
+  /**
+   * Several workers together return every tuple of a table spanning many
+   * morsels exactly once, through next() and through nextBatch()
+   */
+  @Test public void allTuples() throws Exception {
+    HeapFile f = SystemTestUtil.createRandomHeapFile(3, 30000, null, null, "c");
+    assertTrue(f.numPages() > 4 * ParallelSeqScan.MORSEL_PAGES);
+    TransactionId tid = new TransactionId();
+    List<String> want = scan(new SeqScan(tid, f.getId(), "t"));
+    for (int dop : new int[] { 1, 4 }) {
+      ParallelSeqScan ps = new ParallelSeqScan(tid, f.getId(), "t", dop);
+      assertEquals(want, scan(ps));
+
+      ps.open();
+      List<String> got = new ArrayList<>();
+      TupleBatch b;
+      while ((b = ps.nextBatch()) != null) {
+        for (int k = 0; k < b.size(); k++)
+          got.add(b.getTuple(k).toString());
+      }
+      Collections.sort(got);
+      assertEquals(want, got);
+
+      // rewinding starts new workers over the whole table
+      ps.rewind();
+      assertEquals(want, tuples(ps));
+      ps.close();
+    }
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Each worker runs its own filter; closing early stops the workers
+   */
+  @Test public void pipeline() throws Exception {
+    HeapFile f = SystemTestUtil.createRandomHeapFile(3, 30000, 1000, null, null, "c");
+    TransactionId tid = new TransactionId();
+    Predicate p = new Predicate(1, Predicate.Op.LESS_THAN, new IntField(100));
+    List<String> want = scan(new Filter(p, new SeqScan(tid, f.getId(), "t")));
+    ParallelSeqScan ps = new ParallelSeqScan(tid, f.getId(), "t", 3, scan -> new Filter(p, scan));
+    assertEquals(want, scan(ps));
+
+    ps.open();
+    assertTrue(ps.hasNext());
+    ps.close();
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * SET PARALLELISM makes the planner scan heap tables in parallel, with
+   * the filters of a table run by the workers
+   */
+  @Test public void planned() throws Exception {
+    HeapFile f = SystemTestUtil.createRandomHeapFile(2, 20000, 1000, null, null, "c");
+    Database.getCatalog().addTable(f, "par_t");
+    Map<String, TableStats> stats = new HashMap<>();
+    stats.put("par_t", new TableStats(f.getId(), 1000));
+    TransactionId tid = new TransactionId();
+    Parser parser = new Parser();
+    String q = "SELECT * FROM par_t t WHERE t.c0 < 500;";
+    List<String> want = scan(parser.generateLogicalPlan(tid, q).physicalPlan(tid, stats, false));
+
+    parser.processNextStatement("SET PARALLELISM 4;");
+    assertEquals(4, parser.getParallelism());
+    LogicalPlan lp = parser.generateLogicalPlan(tid, q);
+    assertEquals(4, lp.getParallelism());
+    OpIterator plan = lp.physicalPlan(tid, stats, false);
+    assertTrue(((Operator) plan).getChildren()[0] instanceof ParallelSeqScan);
+    assertEquals(want, scan(plan));
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Page misses of different threads are read from disk at the same time,
+   * and a page that two threads read at once is cached only once
+   */
+  @Test public void concurrentMisses() throws Exception {
+    HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 100, null, null);
+    // a file that takes a while to read a page and counts the reads in progress
+    class SlowFile extends HeapFile {
+      final AtomicInteger reading = new AtomicInteger();
+      final AtomicInteger maxReading = new AtomicInteger();
+
+      SlowFile() {
+        super(hf.getFile(), hf.getTupleDesc());
+      }
+
+      @Override
+      public Page readPage(PageId pid) {
+        maxReading.accumulateAndGet(reading.incrementAndGet(), Math::max);
+        try {
+          Thread.sleep(200);
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        } finally {
+          reading.decrementAndGet();
+        }
+        return super.readPage(pid);
+      }
+    }
+    SlowFile f = new SlowFile();
+    Database.getCatalog().addTable(f, SystemTestUtil.getUUID());
+    Database.resetBufferPool(50);
+
+    TransactionId tid = new TransactionId();
+    PageId pid = new HeapPageId(f.getId(), 0);
+    CyclicBarrier start = new CyclicBarrier(2);
+    Page[] got = new Page[2];
+    Exception[] failed = new Exception[2];
+    Thread[] threads = new Thread[2];
+    for (int i = 0; i < 2; i++) {
+      final int k = i;
+      threads[i] = new Thread(() -> {
+        try {
+          start.await();
+          got[k] = Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+        } catch (Exception e) {
+          failed[k] = e;
+        }
+      });
+      threads[i].start();
+    }
+    for (Thread t : threads)
+      t.join();
+    assertNull(failed[0]);
+    assertNull(failed[1]);
+    assertEquals(2, f.maxReading.get());
+    assertSame(got[0], got[1]);
+    assertSame(got[0], Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY));
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(ParallelSeqScanTest.class);
+  }
+}
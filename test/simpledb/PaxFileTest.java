@@ -0,0 +1,155 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.common.Utility;
+import simpledb.execution.ColumnScan;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Operator;
+import simpledb.execution.SeqScan;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.util.*;
+
+public class PaxFileTest extends SimpleDbTestBase {
+
+    private static PaxFile migrate(HeapFile hf) throws Exception {
+        File dat = File.createTempFile("pax", ".dat");
+        dat.deleteOnExit();
+        PaxFileEncoder.convert(hf, dat);
+        PaxFile pf = new PaxFile(dat, hf.getTupleDesc());
+        Database.getCatalog().addTable(pf, SystemTestUtil.getUUID());
+        return pf;
+    }
+
+    /**
+     * Unit test for PaxPage: the values of a column are stored next to each
+     * other, and the page survives getPageData()
+     */
+    @Test public void pageLayout() throws Exception {
+        HeapFile hf = Utility.createEmptyHeapFile(File.createTempFile("pax", ".dat").getAbsolutePath(), 3);
+        PaxFile pf = migrate(hf);
+        HeapPageId pid = new HeapPageId(pf.getId(), 0);
+        PaxPage page = new PaxPage(pid, PaxPage.createEmptyPageData());
+        int slots = page.getNumEmptySlots();
+        assertEquals(slots, new HeapPage(new HeapPageId(hf.getId(), 0), HeapPage.createEmptyPageData()).getNumEmptySlots());
+        for (int i = 0; i < 10; i++)
+            page.insertTuple(Utility.getHeapTuple(new int[]{i, 100 + i, 200 + i}));
+
+        byte[] data = page.getPageData();
+        int column1 = (slots + 7) / 8 + slots * 4;
+        for (int i = 0; i < 10; i++)
+            assertEquals(100 + i, Type.readInt(data, column1 + 4 * i));
+
+        PaxPage copy = new PaxPage(pid, data);
+        assertEquals(slots - 10, copy.getNumEmptySlots());
+        Iterator<Tuple> it = copy.iterator();
+        for (int i = 0; i < 10; i++) {
+            Tuple t = it.next();
+            assertEquals(i, t.getInt(0));
+            assertEquals(200 + i, t.getInt(2));
+            assertEquals(new RecordId(pid, i), t.getRecordId());
+        }
+        assertFalse(it.hasNext());
+    }
+
+    /**
+     * Unit test for PaxFileEncoder and inserting/deleting through a PaxFile
+     */
+    @Test public void migrateAndModify() throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(4, 3000, null, tuples);
+        PaxFile pf = migrate(hf);
+        assertTrue(pf.numPages() > 1);
+        SystemTestUtil.matchTuples(pf, tuples);
+
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = pf.iterator(tid);
+        it.open();
+        Tuple victim = it.next();
+        it.close();
+        Database.getBufferPool().deleteTuple(tid, victim);
+        Database.getBufferPool().insertTuple(tid, pf.getId(), Utility.getHeapTuple(new int[]{-1, -2, -3, -4}));
+        Database.getBufferPool().transactionComplete(tid);
+
+        tuples.remove(SystemTestUtil.tupleToList(victim));
+        List<Integer> added = new ArrayList<>();
+        for (int v : new int[]{-1, -2, -3, -4})
+            added.add(v);
+        tuples.add(added);
+        SystemTestUtil.matchTuples(pf, tuples);
+    }
+
+    /**
+     * Unit test for ColumnScan over a PaxFile and a HeapFile
+     */
+    @Test public void columnScan() throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(5, 2000, null, tuples);
+        PaxFile pf = migrate(hf);
+
+        List<List<Integer>> expected = new ArrayList<>();
+        for (List<Integer> t : tuples) {
+            List<Integer> row = new ArrayList<>();
+            row.add(t.get(3));
+            row.add(t.get(1));
+            expected.add(row);
+        }
+
+        TransactionId tid = new TransactionId();
+        for (DbFile f : new DbFile[]{pf, hf}) {
+            OpIterator scan = new ColumnScan(tid, f.getId(), "t", new int[]{3, 1});
+            assertEquals(2, scan.getTupleDesc().numFields());
+            assertEquals("t." + f.getTupleDesc().getFieldName(3), scan.getTupleDesc().getFieldName(0));
+            SystemTestUtil.matchTuples(scan, expected);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * The planner narrows a scan of a PaxFile to the fields the query reads,
+     * and the scan decodes only those and the fields its predicates test
+     */
+    @Test public void prunedScan() throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(5, 2000, null, tuples, "c");
+        PaxFile pf = migrate(hf);
+        String name = "pax_pruned";
+        Database.getCatalog().addTable(pf, name);
+        Map<String, TableStats> stats = new HashMap<>();
+        stats.put(name, new TableStats(pf.getId(), 1000));
+
+        List<List<Integer>> expected = new ArrayList<>();
+        for (List<Integer> t : tuples) {
+            if (t.get(1) > 30000)
+                expected.add(Collections.singletonList(t.get(3)));
+        }
+
+        TransactionId tid = new TransactionId();
+        OpIterator plan = new Parser().generateLogicalPlan(tid,
+                "SELECT t.c3 FROM " + name + " t WHERE t.c1 > 30000;").physicalPlan(tid, stats, false);
+        OpIterator leaf = ((Operator) plan).getChildren()[0];
+        assertTrue(leaf instanceof SeqScan);
+        assertArrayEquals(new int[]{3}, ((SeqScan) leaf).getColumns());
+        assertEquals(1, ((SeqScan) leaf).getPredicates().length);
+        SystemTestUtil.matchTuples(plan, expected);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PaxFileTest.class);
+    }
+}
@@ -0,0 +1,263 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.common.Utility;
+import simpledb.execution.*;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreeUtility;
+import simpledb.optimizer.JoinOptimizer;
+import simpledb.optimizer.LogicalPlan;
+import simpledb.optimizer.LogicalSubplanJoinNode;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleBatch;
+import simpledb.storage.TupleIterator;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.util.*;
+
+public class SemiJoinTest extends SimpleDbTestBase {
+
+    private static List<Tuple> randomTuples(int rows, int keys, long seed) {
+        Random r = new Random(seed);
+        List<Tuple> tuples = new ArrayList<>();
+        for (int i = 0; i < rows; i++)
+            tuples.add(Utility.getHeapTuple(new int[]{r.nextInt(keys), i}));
+        return tuples;
+    }
+
+    private static OpIterator iterator(List<Tuple> tuples) {
+        return new TupleIterator(Utility.getTupleDesc(2), tuples);
+    }
+
+    private static List<String> contents(OpIterator it) throws Exception {
+        List<String> res = new ArrayList<>();
+        it.open();
+        while (it.hasNext())
+            res.add(SystemTestUtil.tupleToList(it.next()).toString());
+        it.close();
+        Collections.sort(res);
+        return res;
+    }
+
+    /**
+     * @return the tuples of outer whose first field is (or, if anti, is not)
+     *   the first field of some tuple of inner
+     */
+    private static List<String> expected(List<Tuple> outer, Collection<Integer> inner, boolean anti) {
+        List<String> res = new ArrayList<>();
+        for (Tuple t : outer) {
+            if (inner.contains(((IntField) t.getField(0)).getValue()) != anti)
+                res.add(SystemTestUtil.tupleToList(t).toString());
+        }
+        Collections.sort(res);
+        return res;
+    }
+
+    private static Set<Integer> keys(List<Tuple> tuples) {
+        Set<Integer> res = new HashSet<>();
+        for (Tuple t : tuples)
+            res.add(((IntField) t.getField(0)).getValue());
+        return res;
+    }
+
+    /**
+     * Each outer tuple is returned once, however many inner tuples it
+     * matches, by tuples and by batches, and again after a rewind
+     */
+    @Test public void semiAndAnti() throws Exception {
+        List<Tuple> outer = randomTuples(400, 60, 1);
+        List<Tuple> inner = randomTuples(300, 50, 2);
+        JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        for (boolean anti : new boolean[]{false, true}) {
+            List<String> want = expected(outer, keys(inner), anti);
+            assertTrue(want.size() > 0);
+            SemiJoin j = anti ? new AntiJoin(p, iterator(outer), iterator(inner))
+                    : new SemiJoin(p, iterator(outer), iterator(inner));
+            assertEquals(anti, j.isAnti());
+            assertEquals(2, j.getTupleDesc().numFields());
+            assertEquals(want, contents(j));
+
+            j.open();
+            int n = 0;
+            TupleBatch b;
+            while ((b = j.nextBatch()) != null)
+                n += b.size();
+            assertEquals(want.size(), n);
+            j.rewind();
+            n = 0;
+            while (j.hasNext()) {
+                j.next();
+                n++;
+            }
+            assertEquals(want.size(), n);
+            j.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notEquality() {
+        new SemiJoin(new JoinPredicate(0, Predicate.Op.LESS_THAN, 0),
+                iterator(randomTuples(1, 1, 1)), iterator(randomTuples(1, 1, 1)));
+    }
+
+    /**
+     * IndexSemiJoin and IndexAntiJoin give the same result as the hash
+     * variants, with and without predicates on the inner table
+     */
+    @Test public void indexVariants() throws Exception {
+        BTreeFile bf = BTreeUtility.createRandomBTreeFile(2, 3000, 400, null, null, 0);
+        Database.getCatalog().addTable(bf, "sj_inner");
+        TransactionId tid = new TransactionId();
+        List<Tuple> outer = randomTuples(200, 500, 3);
+        JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        Predicate filter = new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(50000));
+        for (boolean anti : new boolean[]{false, true}) {
+            List<String> want = contents(anti
+                    ? new AntiJoin(p, iterator(outer), new SeqScan(tid, bf.getId(), "i"))
+                    : new SemiJoin(p, iterator(outer), new SeqScan(tid, bf.getId(), "i")));
+            assertTrue(want.size() > 0);
+            IndexSemiJoin j = anti
+                    ? new IndexAntiJoin(p, iterator(outer), tid, bf.getId(), Collections.emptyList())
+                    : new IndexSemiJoin(p, iterator(outer), tid, bf.getId(), Collections.emptyList());
+            assertEquals(anti, j.isAnti());
+            assertEquals("sj_inner", j.getTableName());
+            assertEquals(want, contents(j));
+
+            want = contents(anti
+                    ? new AntiJoin(p, iterator(outer), new Filter(filter, new SeqScan(tid, bf.getId(), "i")))
+                    : new SemiJoin(p, iterator(outer), new Filter(filter, new SeqScan(tid, bf.getId(), "i"))));
+            j = anti
+                    ? new IndexAntiJoin(p, iterator(outer), tid, bf.getId(), Collections.singletonList(filter))
+                    : new IndexSemiJoin(p, iterator(outer), tid, bf.getId(), Collections.singletonList(filter));
+            assertEquals(want, contents(j));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private static boolean contains(OpIterator plan, Class<?> c, boolean anti) {
+        if (c.isInstance(plan))
+            return ((SemiJoin) plan).isAnti() == anti;
+        if (plan instanceof Operator) {
+            for (OpIterator child : ((Operator) plan).getChildren()) {
+                if (contains(child, c, anti))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * IN, NOT IN, EXISTS and NOT EXISTS subqueries are planned as semi and
+     * anti joins
+     */
+    @Test public void plannedSubqueries() throws Exception {
+        List<List<Integer>> a = new ArrayList<>();
+        List<List<Integer>> b = new ArrayList<>();
+        HeapFile fa = SystemTestUtil.createRandomHeapFile(2, 500, 100, null, a, "c");
+        HeapFile fb = SystemTestUtil.createRandomHeapFile(2, 200, 150, null, b, "c");
+        Database.getCatalog().addTable(fa, "sj_a");
+        Database.getCatalog().addTable(fb, "sj_b");
+        TableStats.setTableStats("sj_a", new TableStats(fa.getId(), 1000));
+        TableStats.setTableStats("sj_b", new TableStats(fb.getId(), 1000));
+
+        Set<Integer> inner = new HashSet<>();
+        for (List<Integer> t : b) {
+            if (t.get(1) > 50)
+                inner.add(t.get(0));
+        }
+        List<String> in = new ArrayList<>(), notIn = new ArrayList<>();
+        for (List<Integer> t : a)
+            (inner.contains(t.get(0)) ? in : notIn).add(t.toString());
+        Collections.sort(in);
+        Collections.sort(notIn);
+        assertTrue(in.size() > 0 && notIn.size() > 0);
+
+        String[] queries = {
+            "SELECT a.c0, a.c1 FROM sj_a a WHERE a.c0 IN (SELECT b.c0 FROM sj_b b WHERE b.c1 > 50);",
+            "SELECT a.c0, a.c1 FROM sj_a a WHERE a.c0 NOT IN (SELECT b.c0 FROM sj_b b WHERE b.c1 > 50);",
+            "SELECT a.c0, a.c1 FROM sj_a a WHERE EXISTS (SELECT * FROM sj_b b WHERE b.c0 = a.c0 AND b.c1 > 50);",
+            "SELECT a.c0, a.c1 FROM sj_a a WHERE NOT EXISTS (SELECT * FROM sj_b b WHERE b.c1 > 50 AND a.c0 = b.c0);",
+        };
+        for (int i = 0; i < queries.length; i++) {
+            boolean anti = i % 2 == 1;
+            TransactionId tid = new TransactionId();
+            LogicalPlan lp = new Parser().generateLogicalPlan(tid, queries[i]);
+            OpIterator plan = lp.physicalPlan(tid, TableStats.getStatsMap(), false);
+            assertTrue(queries[i], contains(plan, SemiJoin.class, anti));
+            assertEquals(queries[i], anti ? notIn : in, contents(plan));
+            Database.getBufferPool().transactionComplete(tid);
+        }
+    }
+
+    /**
+     * A subquery selecting the key of a large B+ tree is answered by
+     * searching the tree for each tuple of a small outer table
+     */
+    @Test public void plannedIndex() throws Exception {
+        HeapFile fa = SystemTestUtil.createRandomHeapFile(2, 5, 100000, null, null, "c");
+        BTreeFile bf = BTreeUtility.createRandomBTreeFile(2, 100000, 100000, null, null, 0);
+        bf = new BTreeFile(bf.getFile(), 0, Utility.getTupleDesc(2, "c"));
+        Database.getCatalog().addTable(fa, "sj_small");
+        Database.getCatalog().addTable(bf, "sj_tree");
+        TableStats.setTableStats("sj_small", new TableStats(fa.getId(), 1000));
+        TableStats.setTableStats("sj_tree", new TableStats(bf.getId(), 1000));
+        JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        Predicate filter = new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(50000));
+
+        TransactionId tid = new TransactionId();
+        for (boolean anti : new boolean[]{false, true}) {
+            LogicalPlan lp = new Parser().generateLogicalPlan(tid, "SELECT a.c0, a.c1 FROM sj_small a WHERE a.c0 "
+                    + (anti ? "NOT IN" : "IN") + " (SELECT b.c0 FROM sj_tree b WHERE b.c1 > 50000);");
+            OpIterator plan = lp.physicalPlan(tid, TableStats.getStatsMap(), false);
+            OpIterator j = ((Operator) plan).getChildren()[0];
+            assertTrue(j instanceof IndexSemiJoin);
+            assertEquals(anti, ((IndexSemiJoin) j).isAnti());
+            OpIterator expected = new Filter(filter, new SeqScan(tid, bf.getId(), "b"));
+            expected = anti ? new AntiJoin(p, new SeqScan(tid, fa.getId(), "a"), expected)
+                    : new SemiJoin(p, new SeqScan(tid, fa.getId(), "a"), expected);
+            assertEquals(contents(expected), contents(plan));
+        }
+
+        // a subquery over a scan returning the fields of the tree in another
+        // order is searched by the fields of the tree
+        SeqScan scan = new SeqScan(tid, bf.getId(), "b",
+                new Predicate[]{new Predicate(1, Predicate.Op.LESS_THAN, new IntField(90000))}, new int[]{1, 0});
+        OpIterator sub = new Project(Collections.singletonList(1), Collections.singletonList(Type.INT_TYPE),
+                new Filter(new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(50000)), scan));
+        LogicalSubplanJoinNode lj = new LogicalSubplanJoinNode("a", "c0", sub, Predicate.Op.EQUALS,
+                LogicalSubplanJoinNode.Kind.SEMI);
+        OpIterator j = JoinOptimizer.instantiateJoin(lj, new SeqScan(tid, fa.getId(), "a"), sub);
+        assertTrue(j instanceof IndexSemiJoin);
+        assertEquals(contents(new SemiJoin(p, new SeqScan(tid, fa.getId(), "a"), sub)), contents(j));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * EXISTS subqueries must be correlated by one equality
+     */
+    @Test(expected = ParsingException.class)
+    public void uncorrelatedExists() throws Exception {
+        HeapFile fa = SystemTestUtil.createRandomHeapFile(2, 10, null, null, "c");
+        Database.getCatalog().addTable(fa, "sj_u");
+        new Parser().generateLogicalPlan(new TransactionId(),
+                "SELECT a.c0 FROM sj_u a WHERE EXISTS (SELECT * FROM sj_u b WHERE b.c1 > 5);");
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SemiJoinTest.class);
+    }
+}
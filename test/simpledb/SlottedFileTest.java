@@ -0,0 +1,166 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+public class SlottedFileTest extends SimpleDbTestBase {
+
+    private static final TupleDesc TD = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE});
+
+    private HeapPageId pid;
+
+    private static Tuple tuple(int i, String s) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(i));
+        t.setField(1, new StringField(s, Type.STRING_LEN));
+        return t;
+    }
+
+    private static List<Tuple> contents(Iterator<Tuple> it) {
+        List<Tuple> res = new ArrayList<>();
+        while (it.hasNext())
+            res.add(it.next());
+        return res;
+    }
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void addTable() {
+        this.pid = new HeapPageId(-1, 0);
+        Database.getCatalog().addTable(new SkeletonFile(-1, TD), SystemTestUtil.getUUID());
+    }
+
+    /**
+     * Unit test for SlottedPage.insertTuple(), deleteTuple() and getPageData()
+     */
+    @Test public void pageRoundTrip() throws Exception {
+        SlottedPage page = new SlottedPage(pid, SlottedPage.createEmptyPageData());
+        assertEquals(0, page.getNumTuples());
+        for (int i = 0; i < 10; i++)
+            page.insertTuple(tuple(i, "name" + i));
+        Tuple victim = contents(page.iterator()).get(3);
+        page.deleteTuple(victim);
+
+        SlottedPage copy = new SlottedPage(pid, page.getPageData());
+        List<Tuple> tuples = contents(copy.iterator());
+        assertEquals(9, tuples.size());
+        assertEquals(10, copy.getNumSlots());
+        for (Tuple t : tuples) {
+            int i = t.getInt(0);
+            assertNotEquals(3, i);
+            assertEquals("name" + i, t.getField(1).toString());
+            assertEquals(new RecordId(pid, i), t.getRecordId());
+        }
+
+        // the deleted slot is reused, so no directory entry is added
+        Tuple t = tuple(42, "");
+        copy.insertTuple(t);
+        assertEquals(new RecordId(pid, 3), t.getRecordId());
+        assertEquals(10, copy.getNumSlots());
+    }
+
+    /**
+     * Unit test for SlottedPage.insertTuple() on a full page
+     */
+    @Test(expected = DbException.class)
+    public void pageFull() throws Exception {
+        SlottedPage page = new SlottedPage(pid, SlottedPage.createEmptyPageData());
+        Tuple t = tuple(0, "x");
+        while (page.hasRoomFor(t))
+            page.insertTuple(tuple(0, "x"));
+        assertTrue(page.getFreeSpace() >= 0);
+        page.insertTuple(t);
+    }
+
+    /**
+     * Short strings fit several times more rows on a SlottedPage than on a
+     * HeapPage
+     */
+    @Test public void rowsPerPage() throws Exception {
+        SlottedPage slotted = new SlottedPage(pid, SlottedPage.createEmptyPageData());
+        HeapPage heap = new HeapPage(pid, HeapPage.createEmptyPageData());
+        while (slotted.hasRoomFor(tuple(100000, "bob")))
+            slotted.insertTuple(tuple(100000, "bob"));
+        assertTrue(slotted.getNumTuples() >= 3 * heap.getNumEmptySlots());
+    }
+
+    /**
+     * Unit test for SlottedFileEncoder and scanning/inserting through a SlottedFile
+     */
+    @Test public void encodeAndScan() throws Exception {
+        File txt = File.createTempFile("slotted", ".txt");
+        txt.deleteOnExit();
+        try (FileWriter w = new FileWriter(txt)) {
+            for (int i = 0; i < 2000; i++)
+                w.write(i + "|user" + i + "\n");
+        }
+        File dat = File.createTempFile("slotted", ".dat");
+        dat.deleteOnExit();
+        SlottedFileEncoder.convert(txt, dat, new Type[]{Type.INT_TYPE, Type.STRING_TYPE}, '|');
+
+        SlottedFile sf = new SlottedFile(dat, TD);
+        Database.getCatalog().addTable(sf, SystemTestUtil.getUUID());
+        assertTrue(sf.numPages() > 1);
+
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().insertTuple(tid, sf.getId(), tuple(2000, "user2000"));
+
+        DbFileIterator it = sf.iterator(tid);
+        assertFalse(it.hasNext());
+        it.open();
+        boolean[] seen = new boolean[2001];
+        int count = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertEquals("user" + t.getInt(0), t.getField(1).toString());
+            seen[t.getInt(0)] = true;
+            count++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(2001, count);
+        for (boolean b : seen)
+            assertTrue(b);
+    }
+
+    /**
+     * Unit test for migrating a HeapFile with SlottedFileEncoder
+     */
+    @Test public void migrateHeapFile() throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(3, 1000, null, tuples);
+        File dat = File.createTempFile("slotted", ".dat");
+        dat.deleteOnExit();
+        SlottedFileEncoder.convert(hf, dat);
+
+        SlottedFile sf = new SlottedFile(dat, hf.getTupleDesc());
+        Database.getCatalog().addTable(sf, SystemTestUtil.getUUID());
+        SystemTestUtil.matchTuples(sf, tuples);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedFileTest.class);
+    }
+}
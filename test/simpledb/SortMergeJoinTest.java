@@ -0,0 +1,184 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.*;
+import simpledb.index.BTreeFile;
+import simpledb.index.BTreeUtility;
+import simpledb.optimizer.JoinOptimizer;
+import simpledb.optimizer.LogicalJoinNode;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleIterator;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.util.*;
+
+public class SortMergeJoinTest extends SimpleDbTestBase {
+
+    private static OpIterator randomTuples(int rows, int keys, long seed) {
+        Random r = new Random(seed);
+        List<Tuple> tuples = new ArrayList<>();
+        for (int i = 0; i < rows; i++)
+            tuples.add(Utility.getHeapTuple(new int[]{r.nextInt(keys), i}));
+        return new TupleIterator(Utility.getTupleDesc(2), tuples);
+    }
+
+    private static OpIterator sorted(int rows, int keys, long seed) {
+        return new OrderBy(0, true, randomTuples(rows, keys, seed));
+    }
+
+    private static List<String> contents(OpIterator it) throws Exception {
+        List<String> res = new ArrayList<>();
+        while (it.hasNext())
+            res.add(SystemTestUtil.tupleToList(it.next()).toString());
+        Collections.sort(res);
+        return res;
+    }
+
+    /**
+     * SortMergeJoin gives the same result as Join for every supported
+     * operator, with duplicate keys on both sides and keys missing on
+     * either side, and again after a rewind
+     */
+    @Test public void matchesJoin() throws Exception {
+        for (Predicate.Op op : Predicate.Op.values()) {
+            if (!SortMergeJoin.supports(op))
+                continue;
+            JoinPredicate pred = new JoinPredicate(0, op, 0);
+            OpIterator expected = new Join(pred, randomTuples(300, 60, 1), randomTuples(200, 50, 2));
+            OpIterator actual = new SortMergeJoin(pred, sorted(300, 60, 1), sorted(200, 50, 2));
+            expected.open();
+            actual.open();
+            List<String> want = contents(expected);
+            assertTrue(want.size() > 0);
+            assertEquals(op.toString(), want, contents(actual));
+            actual.rewind();
+            assertEquals(op.toString(), want, contents(actual));
+            actual.close();
+        }
+    }
+
+    /**
+     * Output of an equi-join comes out in key order
+     */
+    @Test public void outputSorted() throws Exception {
+        OpIterator j = new SortMergeJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+                sorted(500, 100, 3), sorted(500, 100, 4));
+        j.open();
+        int last = Integer.MIN_VALUE;
+        while (j.hasNext()) {
+            Tuple t = j.next();
+            assertEquals(t.getInt(0), t.getInt(2));
+            assertTrue(last <= t.getInt(0));
+            last = t.getInt(0);
+        }
+        j.close();
+    }
+
+    /** A sorted input that counts the tuples read from it */
+    private static class CountingInput extends TupleIterator {
+        private static final long serialVersionUID = 1L;
+        int reads;
+
+        CountingInput(int rows, int keys, long seed) {
+            super(Utility.getTupleDesc(2), sortedTuples(rows, keys, seed));
+        }
+
+        private static List<Tuple> sortedTuples(int rows, int keys, long seed) {
+            Random r = new Random(seed);
+            List<Tuple> tuples = new ArrayList<>();
+            for (int i = 0; i < rows; i++)
+                tuples.add(Utility.getHeapTuple(new int[]{r.nextInt(keys), i}));
+            tuples.sort(Comparator.comparingInt(t -> t.getInt(0)));
+            return tuples;
+        }
+
+        @Override
+        public Tuple next() {
+            reads++;
+            return super.next();
+        }
+    }
+
+    /**
+     * Range joins read past each match at most one tuple per driving tuple,
+     * rather than rescanning the inner input for every outer tuple
+     */
+    @Test public void rangeReadsBounded() throws Exception {
+        for (Predicate.Op op : Predicate.Op.values()) {
+            if (!SortMergeJoin.supports(op) || op == Predicate.Op.EQUALS)
+                continue;
+            // few outer keys are below the inner keys, so most tuples join
+            // with nothing for one of the directions
+            CountingInput outer = new CountingInput(400, 1000, 5);
+            CountingInput inner = new CountingInput(400, 100, 6);
+            OpIterator j = new SortMergeJoin(new JoinPredicate(0, op, 0), outer, inner);
+            j.open();
+            int rows = 0;
+            while (j.hasNext()) {
+                j.next();
+                rows++;
+            }
+            j.close();
+            assertTrue(rows > 0);
+            assertTrue(op.toString(), outer.reads + inner.reads <= rows + 2 * (400 + 400) + 1);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notEquals() {
+        new SortMergeJoin(new JoinPredicate(0, Predicate.Op.NOT_EQUALS, 0), sorted(1, 1, 1), sorted(1, 1, 1));
+    }
+
+    /**
+     * The optimizer recognizes scans of B+ trees keyed on the join field as
+     * sorted and instantiates a SortMergeJoin for them
+     */
+    @Test public void optimizerPicksSortMerge() throws Exception {
+        BTreeFile f1 = BTreeUtility.createRandomBTreeFile(2, 2000, null, null, 0);
+        BTreeFile f2 = BTreeUtility.createRandomBTreeFile(2, 2000, null, null, 0);
+        Database.getCatalog().addTable(f1, "t1");
+        Database.getCatalog().addTable(f2, "t2");
+        TransactionId tid = new TransactionId();
+        SeqScan s1 = new SeqScan(tid, f1.getId(), "t1");
+        SeqScan s2 = new SeqScan(tid, f2.getId(), "t2");
+        String key1 = s1.getTupleDesc().getFieldName(0);
+        String key2 = s2.getTupleDesc().getFieldName(0);
+        assertTrue(JoinOptimizer.isSortedOn(s1, key1));
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 100, null, null);
+        SeqScan heapScan = new SeqScan(tid, hf.getId(), "t1");
+        assertFalse(JoinOptimizer.isSortedOn(heapScan, heapScan.getTupleDesc().getFieldName(0)));
+        assertTrue(JoinOptimizer.isSortedOn(new Filter(new Predicate(1, Predicate.Op.GREATER_THAN,
+                new IntField(5)), s1), key1));
+
+        LogicalJoinNode lj = new LogicalJoinNode("t1", "t2", key1, key2, Predicate.Op.EQUALS);
+        OpIterator j = JoinOptimizer.instantiateJoin(lj, s1, s2);
+        assertTrue(j instanceof SortMergeJoin);
+
+        OpIterator expected = new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+                new SeqScan(tid, f1.getId(), "t1"), new SeqScan(tid, f2.getId(), "t2"));
+        expected.open();
+        j.open();
+        assertEquals(contents(expected), contents(j));
+        j.close();
+
+        assertTrue(JoinOptimizer.instantiateJoin(lj, heapScan, s2) instanceof HashEquiJoin);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SortMergeJoinTest.class);
+    }
+}
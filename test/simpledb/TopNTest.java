@@ -0,0 +1,145 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.*;
+import simpledb.optimizer.LogicalPlan;
+import simpledb.optimizer.TableStats;
+import simpledb.storage.HeapFile;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleIterator;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.util.*;
+
+public class TopNTest extends SimpleDbTestBase {
+
+    /**
+     * An iterator over rows {i % 50, i} that counts how many tuples were
+     * read from it
+     */
+    private static class CountingIterator extends TupleIterator {
+        private static final long serialVersionUID = 1L;
+        int read;
+
+        CountingIterator(int rows) {
+            super(Utility.getTupleDesc(2), rows(rows));
+        }
+
+        private static List<Tuple> rows(int rows) {
+            List<Tuple> tuples = new ArrayList<>();
+            for (int i = 0; i < rows; i++)
+                tuples.add(Utility.getHeapTuple(new int[]{(i * 37) % 50, i}));
+            return tuples;
+        }
+
+        @Override
+        public Tuple next() {
+            read++;
+            return super.next();
+        }
+    }
+
+    private static List<String> read(OpIterator it) throws Exception {
+        List<String> res = new ArrayList<>();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            res.add(t.getInt(0) + "," + t.getInt(1));
+        }
+        return res;
+    }
+
+    /**
+     * Limit stops reading its child once it has returned enough tuples
+     */
+    @Test public void limitStopsEarly() throws Exception {
+        CountingIterator child = new CountingIterator(1000);
+        Limit limit = new Limit(10, child);
+        limit.open();
+        assertEquals(10, read(limit).size());
+        assertEquals(10, child.read);
+        limit.rewind();
+        assertEquals(10, read(limit).size());
+        limit.close();
+
+        limit = new Limit(2000, new CountingIterator(1000));
+        limit.open();
+        assertEquals(1000, read(limit).size());
+        limit.close();
+    }
+
+    /**
+     * TopN returns the same tuples as the first n of an OrderBy, also for
+     * limits far beyond the size of its input
+     */
+    @Test public void matchesOrderBy() throws Exception {
+        int[] fields = {0, 1};
+        for (boolean[] asc : new boolean[][]{{true, true}, {false, true}, {true, false}}) {
+            for (int n : new int[]{0, 1, 25, 2000, 2000000000}) {
+                Limit limit = new Limit(n, new OrderBy(fields, asc, new CountingIterator(1000)));
+                limit.open();
+                List<String> want = read(limit);
+                limit.close();
+                TopN top = new TopN(fields, asc, n, new CountingIterator(1000));
+                top.open();
+                assertEquals(want, read(top));
+                top.rewind();
+                assertEquals(want, read(top));
+                top.close();
+            }
+        }
+    }
+
+    /**
+     * The parser accepts a trailing LIMIT, and ORDER BY ... LIMIT is planned
+     * with a TopN
+     */
+    @Test public void parseLimit() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 500, null, null, "c");
+        Database.getCatalog().addTable(hf, "limit_t");
+        Map<String, TableStats> stats = new HashMap<>();
+        stats.put("limit_t", new TableStats(hf.getId(), 1000));
+        TransactionId tid = new TransactionId();
+        Parser p = new Parser();
+
+        LogicalPlan lp = p.generateLogicalPlan(tid, "SELECT * FROM limit_t t ORDER BY t.c0 DESC LIMIT 7;");
+        assertEquals(7, lp.getLimit());
+        OpIterator plan = lp.physicalPlan(tid, stats, false);
+        assertTrue(((Operator) plan).getChildren()[0] instanceof TopN);
+        plan.open();
+        int last = Integer.MAX_VALUE;
+        int n = 0;
+        while (plan.hasNext()) {
+            int v = plan.next().getInt(0);
+            assertTrue(v <= last);
+            last = v;
+            n++;
+        }
+        assertEquals(7, n);
+        plan.close();
+
+        lp = p.generateLogicalPlan(tid, "SELECT * FROM limit_t t WHERE t.c1 > 0 limit 3;");
+        plan = lp.physicalPlan(tid, stats, false);
+        assertTrue(plan instanceof Limit);
+        plan.open();
+        assertEquals(3, read(plan).size());
+        plan.close();
+
+        assertEquals(-1, p.generateLogicalPlan(tid, "SELECT * FROM limit_t t;").getLimit());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(TopNTest.class);
+    }
+}
@@ -0,0 +1,148 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.common.Utility;
+import simpledb.execution.*;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.util.*;
+
+public class TupleBatchTest extends SimpleDbTestBase {
+
+  /** the rows of it, read with next() */
+  private static List<String> tuples(OpIterator it) throws Exception {
+    List<String> res = new ArrayList<>();
+    it.open();
+    while (it.hasNext())
+      res.add(it.next().toString());
+    it.close();
+    Collections.sort(res);
+    return res;
+  }
+
+  /** the rows of it, read with nextBatch() */
+  private static List<String> batches(OpIterator it) throws Exception {
+    List<String> res = new ArrayList<>();
+    it.open();
+    TupleBatch b;
+    while ((b = it.nextBatch()) != null) {
+      assertTrue(b.size() > 0);
+      assertTrue(b.size() <= TupleBatch.DEFAULT_SIZE);
+      for (int k = 0; k < b.size(); k++)
+        res.add(b.getTuple(k).toString());
+    }
+    it.close();
+    Collections.sort(res);
+    return res;
+  }
+
+  /**
+   * A vectorized SeqScan decodes heap pages straight into batches, including
+   * tuples inserted into pages that are in the buffer pool
+   */
+  @Test public void seqScan() throws Exception {
+    HeapFile f = SystemTestUtil.createRandomHeapFile(3, 5000, 1000, null, null, "c");
+    TransactionId tid = new TransactionId();
+    Database.getBufferPool().insertTuple(tid, f.getId(), Utility.getHeapTuple(new int[] { -1, -2, -3 }));
+    List<String> want = tuples(new SeqScan(tid, f.getId(), "t"));
+    assertEquals(5001, want.size());
+    assertEquals(want, batches(new SeqScan(tid, f.getId(), "t")));
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Filter narrows the selection of the batches, Project reuses their columns
+   */
+  @Test public void filterAndProject() throws Exception {
+    HeapFile f = SystemTestUtil.createRandomHeapFile(3, 5000, 1000, null, null, "c");
+    TransactionId tid = new TransactionId();
+    for (Predicate.Op op : new Predicate.Op[] { Predicate.Op.LESS_THAN, Predicate.Op.EQUALS, Predicate.Op.NOT_EQUALS }) {
+      Predicate p = new Predicate(1, op, new IntField(300));
+      OpIterator[] plans = new OpIterator[2];
+      for (int i = 0; i < plans.length; i++)
+        plans[i] = new Project(Arrays.asList(2, 0), new Type[] { Type.INT_TYPE, Type.INT_TYPE },
+            new Filter(p, new SeqScan(tid, f.getId(), "t")));
+      List<String> want = tuples(plans[0]);
+      assertEquals(want, batches(plans[1]));
+    }
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * Operators without a batch path of their own collect batches from
+   * fetchNext(), starting with the tuple a call to hasNext() fetched
+   */
+  @Test public void operatorBatches() throws Exception {
+    HeapFile f = SystemTestUtil.createRandomHeapFile(2, 3000, 1000, null, null, "c");
+    TransactionId tid = new TransactionId();
+    List<String> want = tuples(new OrderBy(0, true, new SeqScan(tid, f.getId(), "t")));
+    assertEquals(want, batches(new OrderBy(0, true, new SeqScan(tid, f.getId(), "t"))));
+
+    OpIterator o = new OrderBy(0, true, new SeqScan(tid, f.getId(), "t"));
+    o.open();
+    assertTrue(o.hasNext());
+    List<String> got = new ArrayList<>();
+    TupleBatch b;
+    while ((b = o.nextBatch()) != null) {
+      for (int k = 0; k < b.size(); k++)
+        got.add(b.getTuple(k).toString());
+    }
+    o.close();
+    Collections.sort(got);
+    assertEquals(want, got);
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * STRING columns go through the default nextBatch and string predicates
+   */
+  @Test public void strings() throws Exception {
+    TupleDesc td = new TupleDesc(new Type[] { Type.STRING_TYPE, Type.INT_TYPE }, new String[] { "s", "i" });
+    List<Tuple> rows = new ArrayList<>();
+    for (int i = 0; i < 3000; i++) {
+      Tuple t = new Tuple(td);
+      t.setField(0, new StringField("s" + (i % 17), Type.STRING_LEN));
+      t.setField(1, new IntField(i));
+      rows.add(t);
+    }
+    Predicate p = new Predicate(0, Predicate.Op.LIKE, new StringField("s1", Type.STRING_LEN));
+    List<String> want = tuples(new Filter(p, new TupleIterator(td, rows)));
+    assertEquals(want, batches(new Filter(p, new TupleIterator(td, rows))));
+    assertEquals(want, tuples(new Unbatch(new Filter(p, new TupleIterator(td, rows)))));
+  }
+
+  /**
+   * A resident HashEquiJoin probes whole batches; a spilled one falls back
+   * to tuples
+   */
+  @Test public void hashJoinProbe() throws Exception {
+    HeapFile f1 = SystemTestUtil.createRandomHeapFile(2, 2000, 500, null, null, "a");
+    HeapFile f2 = SystemTestUtil.createRandomHeapFile(3, 3000, 500, null, null, "b");
+    TransactionId tid = new TransactionId();
+    JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 1);
+    List<String> want = tuples(new Join(p, new SeqScan(tid, f1.getId(), "x"), new SeqScan(tid, f2.getId(), "y")));
+    assertTrue(want.size() > TupleBatch.DEFAULT_SIZE);
+    for (int budget : new int[] { HashEquiJoin.MAP_SIZE, 100 }) {
+      OpIterator j = new HashEquiJoin(p, new SeqScan(tid, f1.getId(), "x"), new SeqScan(tid, f2.getId(), "y"), budget);
+      assertEquals(want, batches(j));
+      assertEquals(want, tuples(new Unbatch(j)));
+    }
+    Database.getBufferPool().transactionComplete(tid);
+  }
+
+  /**
+   * JUnit suite target
+   */
+  public static junit.framework.Test suite() {
+    return new JUnit4TestAdapter(TupleBatchTest.class);
+  }
+}
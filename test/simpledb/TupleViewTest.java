@@ -0,0 +1,104 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.common.Type;
+import simpledb.common.Utility;
+import simpledb.execution.Predicate;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+public class TupleViewTest extends SimpleDbTestBase {
+
+    private static byte[] serialize(Tuple t) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        dos.writeByte(0x7f); // something in front of the tuple
+        for (int i = 0; i < t.getTupleDesc().numFields(); i++)
+            t.getField(i).serialize(dos);
+        dos.flush();
+        return baos.toByteArray();
+    }
+
+    /**
+     * Unit test for TupleDesc.getFieldOffset()
+     */
+    @Test public void fieldOffsets() {
+        TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE});
+        assertEquals(0, td.getFieldOffset(0));
+        assertEquals(4, td.getFieldOffset(1));
+        assertEquals(8 + Type.STRING_LEN, td.getFieldOffset(2));
+    }
+
+    /**
+     * Unit test for TupleView.getField() over serialized bytes
+     */
+    @Test public void decodeOnAccess() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE});
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(-42));
+        t.setField(1, new StringField("hello", Type.STRING_LEN));
+        t.setField(2, new IntField(1 << 20));
+
+        TupleView view = new TupleView(td, serialize(t), 1, null);
+        assertTrue(TestUtil.compareTuples(t, view));
+        assertEquals(t.toString(), view.toString());
+    }
+
+    /**
+     * Unit test for TupleView.setField() and materialize()
+     */
+    @Test public void copyOnWrite() throws Exception {
+        Tuple t = Utility.getHeapTuple(new int[]{1, 2, 3});
+        byte[] data = serialize(t);
+        TupleView view = new TupleView(t.getTupleDesc(), data, 1, null);
+
+        Tuple copy = view.materialize();
+        assertFalse(copy instanceof TupleView);
+        assertTrue(TestUtil.compareTuples(t, copy));
+
+        view.setField(1, new IntField(7));
+        assertEquals(new IntField(1), view.getField(0));
+        assertEquals(new IntField(7), view.getField(1));
+        assertEquals(new IntField(2), copy.getField(1));
+        // the buffer itself is never written
+        assertTrue(TestUtil.compareTuples(t, new TupleView(t.getTupleDesc(), data, 1, null)));
+    }
+
+    /**
+     * Unit test for Tuple.getInt() and the Type-specialized comparators
+     */
+    @Test public void primitiveAccess() throws Exception {
+        Tuple t = Utility.getHeapTuple(new int[]{5, -3});
+        TupleView view = new TupleView(t.getTupleDesc(), serialize(t), 1, null);
+        assertEquals(5, t.getInt(0));
+        assertEquals(-3, view.getInt(1));
+
+        assertTrue(Type.INT_TYPE.compare(Predicate.Op.GREATER_THAN, view, 0, t, 1));
+        assertFalse(Type.INT_TYPE.compare(Predicate.Op.EQUALS, view, 0, t, 1));
+        assertTrue(Type.INT_TYPE.compare(t, 1, view, 0) < 0);
+        assertEquals(0, Type.INT_TYPE.compare(t, 0, view, 0));
+
+        Tuple s1 = new Tuple(new TupleDesc(new Type[]{Type.STRING_TYPE}));
+        s1.setField(0, new StringField("abc", Type.STRING_LEN));
+        TupleView s2 = new TupleView(s1.getTupleDesc(), serialize(s1), 1, null);
+        assertTrue(Type.STRING_TYPE.compare(Predicate.Op.EQUALS, s1, 0, s2, 0));
+        assertEquals(0, Type.STRING_TYPE.compare(s1, 0, s2, 0));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(TupleViewTest.class);
+    }
+}
@@ -0,0 +1,162 @@
+package simpledb.bench;
+
+import simpledb.common.Database;
+import simpledb.execution.*;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleBatch;
+import simpledb.storage.TupleIterator;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures typical WHERE clauses evaluated the way Filter used to, through
+ * Predicate.filter once per predicate, and by the {@link CompiledPredicate}
+ * a Filter now compiles its conjunction into.
+ * <p>
+ * A tuple at a time, the rows are read from memory so only the filter is
+ * measured; a batch at a time, they are read by a SeqScan over a table kept
+ * in the buffer pool, and compared with a SeqScan the predicates are pushed
+ * into, which tests them on the bytes of each page, and with one that also
+ * returns only the first field. Run with <tt>ant runbench -Dbench=FilterBenchmark</tt>;
+ * the number of rows may be given as an argument.
+ */
+public class FilterBenchmark {
+
+    private static final int WARMUP = 3;
+    private static final int RUNS = 10;
+
+    /** keeps the JIT from discarding the work */
+    private static long sink;
+
+    private interface Case {
+        void run() throws Exception;
+    }
+
+    private static void time(String name, Case c, int rows) throws Exception {
+        for (int i = 0; i < WARMUP; i++)
+            c.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++)
+            c.run();
+        long nanos = System.nanoTime() - start;
+        System.out.printf("%-24s %7.2f Mrows/s%n", name, rows * (double) RUNS * 1000 / nanos);
+    }
+
+    private static Predicate pred(int field, Predicate.Op op, int v) {
+        return new Predicate(field, op, new IntField(v));
+    }
+
+    private static void interpretedTuples(List<Tuple> rows, Predicate[] conj) throws Exception {
+        OpIterator it = new TupleIterator(rows.get(0).getTupleDesc(), rows);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            boolean pass = true;
+            for (int i = 0; i < conj.length && pass; i++)
+                pass = conj[i].filter(t);
+            if (pass)
+                sink++;
+        }
+        it.close();
+    }
+
+    private static void compiledTuples(List<Tuple> rows, CompiledPredicate conj) throws Exception {
+        OpIterator it = new TupleIterator(rows.get(0).getTupleDesc(), rows);
+        it.open();
+        while (it.hasNext()) {
+            if (conj.test(it.next()))
+                sink++;
+        }
+        it.close();
+    }
+
+    private static void interpretedBatches(TransactionId tid, HeapFile f, Predicate[] conj) throws Exception {
+        OpIterator it = new SeqScan(tid, f.getId(), "t");
+        it.open();
+        TupleBatch b;
+        while ((b = it.nextBatch()) != null) {
+            for (int i = 0; i < conj.length && b.size() > 0; i++)
+                conj[i].filter(b);
+            sink += b.size();
+        }
+        it.close();
+    }
+
+    private static void compiledBatches(TransactionId tid, HeapFile f, CompiledPredicate conj) throws Exception {
+        OpIterator it = new SeqScan(tid, f.getId(), "t");
+        it.open();
+        TupleBatch b;
+        while ((b = it.nextBatch()) != null)
+            sink += conj.filter(b);
+        it.close();
+    }
+
+    private static void scanned(OpIterator it) throws Exception {
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+            sink++;
+        }
+        it.close();
+    }
+
+    private static void pushedBatches(TransactionId tid, HeapFile f, Predicate[] conj) throws Exception {
+        OpIterator it = new SeqScan(tid, f.getId(), "t", conj);
+        it.open();
+        TupleBatch b;
+        while ((b = it.nextBatch()) != null)
+            sink += b.size();
+        it.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        // every column is drawn from [0, 1000)
+        HeapFile f = SystemTestUtil.createRandomHeapFile(3, rows, 1000, null, null, "c");
+        Database.resetBufferPool(f.numPages() + 16);
+        Database.getCatalog().addTable(f, "t");
+        TransactionId tid = new TransactionId();
+        List<Tuple> tuples = new ArrayList<>();
+        SeqScan scan = new SeqScan(tid, f.getId(), "t");
+        scan.open();
+        while (scan.hasNext())
+            tuples.add(scan.next());
+        scan.close();
+
+        String[] names = {
+                "c0 < 500",
+                "c0 >= 100 AND c0 < 600",
+                "c0 = 42",
+                "c0 > 100 AND c1 < 500 AND c2 <> 3",
+        };
+        Predicate[][] clauses = {
+                { pred(0, Predicate.Op.LESS_THAN, 500) },
+                { pred(0, Predicate.Op.GREATER_THAN_OR_EQ, 100), pred(0, Predicate.Op.LESS_THAN, 600) },
+                { pred(0, Predicate.Op.EQUALS, 42) },
+                { pred(0, Predicate.Op.GREATER_THAN, 100), pred(1, Predicate.Op.LESS_THAN, 500),
+                        pred(2, Predicate.Op.NOT_EQUALS, 3) },
+        };
+        for (int i = 0; i < clauses.length; i++) {
+            Predicate[] conj = clauses[i];
+            CompiledPredicate compiled = CompiledPredicate.compile(f.getTupleDesc(), conj);
+            System.out.println(names[i]);
+            time("  tuples, interpreted", () -> interpretedTuples(tuples, conj), rows);
+            time("  tuples, compiled", () -> compiledTuples(tuples, compiled), rows);
+            time("  batches, interpreted", () -> interpretedBatches(tid, f, conj), rows);
+            time("  batches, compiled", () -> compiledBatches(tid, f, compiled), rows);
+            time("  batches, pushed", () -> pushedBatches(tid, f, conj), rows);
+            time("  scan + Filter", () -> scanned(new Filter(conj, new SeqScan(tid, f.getId(), "t"))), rows);
+            time("  scan, pushed", () -> scanned(new SeqScan(tid, f.getId(), "t", conj)), rows);
+            time("  scan, pushed, c0 only", () -> scanned(new SeqScan(tid, f.getId(), "t", conj, new int[]{0})),
+                    rows);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        if (sink == 42)
+            System.out.println();
+    }
+}
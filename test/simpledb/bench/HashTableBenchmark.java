@@ -0,0 +1,103 @@
+package simpledb.bench;
+
+import simpledb.common.Type;
+import simpledb.execution.TupleHashTable;
+import simpledb.storage.Field;
+import simpledb.storage.IntField;
+import simpledb.storage.StringField;
+import simpledb.storage.Tuple;
+import simpledb.storage.TupleDesc;
+
+import java.util.*;
+
+/**
+ * Compares the build and probe throughput of the TupleHashTable used by
+ * HashEquiJoin with the HashMap&lt;Field, List&lt;Tuple&gt;&gt; it replaced,
+ * for INT and STRING join keys.
+ * <p>
+ * Each case is run a few times to warm up the JIT before it is timed. Run
+ * with <tt>ant runbench -Dbench=HashTableBenchmark</tt>; the number of rows
+ * and of distinct keys may be given as arguments.
+ */
+public class HashTableBenchmark {
+
+    private static final int WARMUP = 5;
+    private static final int RUNS = 10;
+
+    /** keeps the JIT from discarding the work */
+    private static long sink;
+
+    private static List<Tuple> rows(int n, int keys, Type type, long seed) {
+        TupleDesc td = new TupleDesc(new Type[]{type, Type.INT_TYPE});
+        Random r = new Random(seed);
+        List<Tuple> res = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Tuple t = new Tuple(td);
+            int k = r.nextInt(keys);
+            t.setField(0, type == Type.INT_TYPE ? new IntField(k) : new StringField("key" + k, Type.STRING_LEN));
+            t.setField(1, new IntField(i));
+            res.add(t);
+        }
+        return res;
+    }
+
+    private interface Case {
+        /** @return the time taken by the build, in nanoseconds */
+        long run(List<Tuple> build, List<Tuple> probe);
+    }
+
+    private static long hashMap(List<Tuple> build, List<Tuple> probe) {
+        long start = System.nanoTime();
+        Map<Field, List<Tuple>> map = new HashMap<>();
+        for (Tuple t : build)
+            map.computeIfAbsent(t.getField(0), k -> new ArrayList<>()).add(t);
+        long built = System.nanoTime();
+        for (Tuple t : probe) {
+            List<Tuple> l = map.get(t.getField(0));
+            if (l != null) {
+                for (Tuple m : l)
+                    sink += m.getInt(1);
+            }
+        }
+        return built - start;
+    }
+
+    private static long tupleHashTable(List<Tuple> build, List<Tuple> probe) {
+        long start = System.nanoTime();
+        TupleHashTable table = new TupleHashTable(build.get(0).getTupleDesc().getFieldType(0), 0);
+        for (Tuple t : build)
+            table.add(t);
+        long built = System.nanoTime();
+        for (Tuple t : probe) {
+            for (int row = table.first(t, 0); row != -1; row = table.next(row))
+                sink += table.getRow(row).getInt(1);
+        }
+        return built - start;
+    }
+
+    private static void time(String name, Case c, List<Tuple> build, List<Tuple> probe) {
+        for (int i = 0; i < WARMUP; i++)
+            c.run(build, probe);
+        long buildNanos = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++)
+            buildNanos += c.run(build, probe);
+        long probeNanos = System.nanoTime() - start - buildNanos;
+        System.out.printf("%-32s build %7.2f Mrows/s   probe %7.2f Mrows/s%n", name,
+                build.size() * (double) RUNS * 1000 / buildNanos,
+                probe.size() * (double) RUNS * 1000 / probeNanos);
+    }
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        int keys = args.length > 1 ? Integer.parseInt(args[1]) : n / 4;
+        for (Type type : new Type[]{Type.INT_TYPE, Type.STRING_TYPE}) {
+            List<Tuple> build = rows(n, keys, type, 1);
+            List<Tuple> probe = rows(n, keys * 2, type, 2);
+            time(type + " HashMap", HashTableBenchmark::hashMap, build, probe);
+            time(type + " TupleHashTable", HashTableBenchmark::tupleHashTable, build, probe);
+        }
+        if (sink == 42)
+            System.out.println();
+    }
+}
@@ -0,0 +1,63 @@
+package simpledb.bench;
+
+import simpledb.common.Database;
+import simpledb.execution.*;
+import simpledb.storage.HeapFile;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Measures SELECT c0, AVG(c1) FROM t GROUP BY c0 run by one Aggregate over a
+ * SeqScan, and as partial aggregates run by the workers of a
+ * {@link ParallelSeqScan} whose states are merged by a final Aggregate, for
+ * 1, 2, 4, ... workers up to the number of cores.
+ * <p>
+ * The table is kept in the buffer pool so every case measures CPU only. Run
+ * with <tt>ant runbench -Dbench=ParallelAggregateBenchmark</tt>; the number
+ * of rows and of groups may be given as arguments.
+ */
+public class ParallelAggregateBenchmark {
+
+    private static final int WARMUP = 3;
+    private static final int RUNS = 10;
+
+    /** keeps the JIT from discarding the work */
+    private static long sink;
+
+    private static void run(OpIterator it) throws Exception {
+        it.open();
+        while (it.hasNext())
+            sink += it.next().getInt(1);
+        it.close();
+    }
+
+    private static void time(String name, OpIterator plan, int rows) throws Exception {
+        for (int i = 0; i < WARMUP; i++)
+            run(plan);
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++)
+            run(plan);
+        long nanos = System.nanoTime() - start;
+        System.out.printf("%-20s %7.2f Mrows/s%n", name, rows * (double) RUNS * 1000 / nanos);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int groups = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, rows, groups, null, null, "c");
+        Database.resetBufferPool(f.numPages() + 16);
+        Database.getCatalog().addTable(f, "t");
+        TransactionId tid = new TransactionId();
+
+        Aggregate whole = new Aggregate(new SeqScan(tid, f.getId(), "t"), 1, 0, Aggregator.Op.AVG);
+        time("serial", whole, rows);
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int dop = 1; dop <= cores; dop *= 2) {
+            ParallelSeqScan scan = new ParallelSeqScan(tid, f.getId(), "t", dop).andThen(whole::partial);
+            time(dop + " workers", whole.merge(scan), rows);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        if (sink == 42)
+            System.out.println();
+    }
+}
@@ -0,0 +1,65 @@
+package simpledb.bench;
+
+import simpledb.common.Database;
+import simpledb.execution.*;
+import simpledb.storage.HeapFile;
+import simpledb.storage.TupleBatch;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Measures a selective hash join of a large fact table with a small
+ * dimension table, with and without the probe scan testing the Bloom filter
+ * of the build keys the join publishes. Both tables are kept in the buffer
+ * pool. Run with <tt>ant runbench -Dbench=RuntimeFilterBenchmark</tt>; the
+ * number of fact rows may be given as an argument.
+ */
+public class RuntimeFilterBenchmark {
+
+    private static final int WARMUP = 3;
+    private static final int RUNS = 10;
+
+    /** keeps the JIT from discarding the work */
+    private static long sink;
+
+    private static void join(TransactionId tid, HeapFile dim, HeapFile fact, boolean filtered) throws Exception {
+        SeqScan probe = new SeqScan(tid, fact.getId(), "f");
+        HashEquiJoin j = new HashEquiJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0),
+                new SeqScan(tid, dim.getId(), "d"), probe);
+        if (filtered)
+            probe.addRuntimeFilter(0, j.publishKeys());
+        j.open();
+        TupleBatch b;
+        while ((b = j.nextBatch()) != null)
+            sink += b.size();
+        j.close();
+    }
+
+    private static void time(String name, TransactionId tid, HeapFile dim, HeapFile fact, boolean filtered,
+                             int rows) throws Exception {
+        for (int i = 0; i < WARMUP; i++)
+            join(tid, dim, fact, filtered);
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++)
+            join(tid, dim, fact, filtered);
+        long nanos = System.nanoTime() - start;
+        System.out.printf("%-24s %7.2f Mrows/s%n", name, rows * (double) RUNS * 1000 / nanos);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        HeapFile fact = SystemTestUtil.createRandomHeapFile(3, rows, 100000, null, null, "c");
+        for (int keys : new int[] { 1000, 10000, 100000 }) {
+            // the dimension holds about keys of the 100000 fact keys
+            HeapFile dim = SystemTestUtil.createRandomHeapFile(2, keys, 100000, null, null, "c");
+            Database.resetBufferPool(fact.numPages() + dim.numPages() + 16);
+            TransactionId tid = new TransactionId();
+            System.out.println(keys + " build rows");
+            time("  join", tid, dim, fact, false, rows);
+            time("  join, runtime filter", tid, dim, fact, true, rows);
+            Database.getBufferPool().transactionComplete(tid);
+        }
+        if (sink == 42)
+            System.out.println();
+    }
+}
@@ -0,0 +1,87 @@
+package simpledb.bench;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.execution.*;
+import simpledb.storage.HeapFile;
+import simpledb.storage.IntField;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Compares a scan-filter-aggregate query (SELECT c0, SUM(c2) FROM t WHERE
+ * c1 &lt; x GROUP BY c0) run a tuple at a time, the way Aggregate used to
+ * read its child, with the same plan run a batch at a time through
+ * {@link OpIterator#nextBatch()}.
+ * <p>
+ * The table is kept in the buffer pool so both cases measure CPU only. Run
+ * with <tt>ant runbench -Dbench=VectorizedBenchmark</tt>; the number of rows
+ * and of groups may be given as arguments.
+ */
+public class VectorizedBenchmark {
+
+    private static final int WARMUP = 3;
+    private static final int RUNS = 10;
+
+    /** the filter keeps the rows with c1 below this */
+    private static int selectivity;
+
+    /** keeps the JIT from discarding the work */
+    private static long sink;
+
+    private static OpIterator plan(TransactionId tid, HeapFile f) {
+        return new Filter(new Predicate(1, Predicate.Op.LESS_THAN, new IntField(selectivity)),
+                new SeqScan(tid, f.getId(), "t"));
+    }
+
+    private static void tuples(TransactionId tid, HeapFile f) throws Exception {
+        OpIterator child = plan(tid, f);
+        IntegerAggregator agg = new IntegerAggregator(0, Type.INT_TYPE, 2, Aggregator.Op.SUM);
+        child.open();
+        while (child.hasNext())
+            agg.mergeTupleIntoGroup(child.next());
+        child.close();
+        OpIterator it = agg.iterator();
+        it.open();
+        while (it.hasNext())
+            sink += it.next().getInt(1);
+    }
+
+    private static void batches(TransactionId tid, HeapFile f) throws Exception {
+        OpIterator it = new Aggregate(plan(tid, f), 2, 0, Aggregator.Op.SUM);
+        it.open();
+        while (it.hasNext())
+            sink += it.next().getInt(1);
+        it.close();
+    }
+
+    private interface Case {
+        void run(TransactionId tid, HeapFile f) throws Exception;
+    }
+
+    private static void time(String name, Case c, TransactionId tid, HeapFile f, int rows) throws Exception {
+        for (int i = 0; i < WARMUP; i++)
+            c.run(tid, f);
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++)
+            c.run(tid, f);
+        long nanos = System.nanoTime() - start;
+        System.out.printf("%-20s %7.2f Mrows/s%n", name, rows * (double) RUNS * 1000 / nanos);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int groups = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        // every column is drawn from [0, groups), so the filter keeps half the rows
+        HeapFile f = SystemTestUtil.createRandomHeapFile(3, rows, groups, null, null, "c");
+        Database.resetBufferPool(f.numPages() + 16);
+        Database.getCatalog().addTable(f, "t");
+        selectivity = groups / 2;
+        TransactionId tid = new TransactionId();
+        time("tuple at a time", VectorizedBenchmark::tuples, tid, f, rows);
+        time("batch at a time", VectorizedBenchmark::batches, tid, f, rows);
+        Database.getBufferPool().transactionComplete(tid);
+        if (sink == 42)
+            System.out.println();
+    }
+}
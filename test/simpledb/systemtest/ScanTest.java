@@ -2,18 +2,19 @@ package simpledb.systemtest;
 
 import simpledb.common.Database;
 import simpledb.common.DbException;
+import simpledb.common.Type;
 import simpledb.common.Utility;
-import simpledb.execution.SeqScan;
+import simpledb.execution.*;
+import simpledb.optimizer.LogicalPlan;
+import simpledb.optimizer.QueryPlanVisualizer;
+import simpledb.optimizer.TableStats;
 import simpledb.storage.*;
 
 import static org.junit.Assert.*;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.NoSuchElementException;
-import java.util.Random;
+import java.util.*;
 
 import org.junit.Test;
 
@@ -136,6 +137,184 @@ public class ScanTest extends SimpleDbTestBase {
         }
     }
 
+    private static List<String> scan(OpIterator it, boolean batches) throws Exception {
+        List<String> res = new ArrayList<>();
+        it.open();
+        if (batches) {
+            TupleBatch b;
+            while ((b = it.nextBatch()) != null) {
+                for (int k = 0; k < b.size(); k++)
+                    res.add(b.getTuple(k).toString());
+            }
+        } else {
+            while (it.hasNext())
+                res.add(it.next().toString());
+        }
+        it.close();
+        return res;
+    }
+
+    /**
+     * Creates a table named "pushdown..." with the fields (INT a, STRING s,
+     * INT b) and inserts 3000 random tuples into it in tid, which has not
+     * committed them yet.
+     */
+    private static HeapFile pushdownTable(TransactionId tid) throws Exception {
+        TupleDesc td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE },
+                new String[] { "a", "s", "b" });
+        File file = File.createTempFile("pushdown", ".dat");
+        file.deleteOnExit();
+        HeapFile f = new HeapFile(file, td);
+        Database.getCatalog().addTable(f, "pushdown" + SystemTestUtil.getUUID().replace("-", ""));
+        for (int i = 0; i < 3000; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(r.nextInt(1000)));
+            t.setField(1, new StringField("s" + r.nextInt(12), Type.STRING_LEN));
+            t.setField(2, new IntField(i % 10));
+            Database.getBufferPool().insertTuple(tid, f.getId(), t);
+        }
+        return f;
+    }
+
+    /**
+     * A scan given predicates returns the same tuples as a Filter over a
+     * plain scan, whether the tuples were just inserted into their pages or
+     * are tested on the page bytes, and the planner pushes filters on a heap
+     * table into its scan
+     */
+    @Test public void testPushedPredicates() throws Exception {
+        // the inserted pages stay in the pool until they are committed
+        Database.resetBufferPool(500);
+        TransactionId tid = new TransactionId();
+        HeapFile f = pushdownTable(tid);
+        String name = Database.getCatalog().getTableName(f.getId());
+        Predicate[][] queries = {
+                { new Predicate(0, Predicate.Op.LESS_THAN, new IntField(500)) },
+                { new Predicate(1, Predicate.Op.EQUALS, new StringField("s3", Type.STRING_LEN)) },
+                { new Predicate(1, Predicate.Op.LIKE, new StringField("1", Type.STRING_LEN)) },
+                { new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(100)),
+                        new Predicate(0, Predicate.Op.LESS_THAN, new IntField(900)),
+                        new Predicate(1, Predicate.Op.NOT_EQUALS, new StringField("s2", Type.STRING_LEN)),
+                        new Predicate(2, Predicate.Op.NOT_EQUALS, new IntField(4)) },
+                { new Predicate(2, Predicate.Op.GREATER_THAN, new IntField(20)) },
+        };
+        // first over the inserted tuples, then over pages read back from disk
+        for (int pass = 0; pass < 2; pass++) {
+            for (Predicate[] q : queries) {
+                List<String> want = scan(new Filter(q, new SeqScan(tid, f.getId(), "t")), false);
+                assertEquals(want, scan(new SeqScan(tid, f.getId(), "t", q), false));
+                assertEquals(want, scan(new SeqScan(tid, f.getId(), "t", q), true));
+            }
+            Database.getBufferPool().transactionComplete(tid);
+            Database.resetBufferPool(500);
+            tid = new TransactionId();
+        }
+
+        Map<String, TableStats> stats = new HashMap<>();
+        stats.put(name, new TableStats(f.getId(), 1000));
+        LogicalPlan lp = new simpledb.Parser().generateLogicalPlan(tid,
+                "SELECT * FROM " + name + " t WHERE t.a < 500 AND t.b > 3;");
+        OpIterator plan = lp.physicalPlan(tid, stats, false);
+        OpIterator leaf = ((Operator) plan).getChildren()[0];
+        assertTrue(leaf instanceof SeqScan);
+        assertEquals(2, ((SeqScan) leaf).getPredicates().length);
+        Predicate[] both = { new Predicate(0, Predicate.Op.LESS_THAN, new IntField(500)),
+                new Predicate(2, Predicate.Op.GREATER_THAN, new IntField(3)) };
+        List<String> want = scan(new Filter(both, new SeqScan(tid, f.getId(), "t")), false);
+        assertFalse(want.isEmpty());
+        assertEquals(want, scan(plan, false));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * A scan given a list of columns returns only those fields, in that
+     * order, of the tuples that pass its predicates; the planner narrows
+     * each scan to the fields the query reads.
+     */
+    @Test public void testPrunedColumns() throws Exception {
+        Database.resetBufferPool(500);
+        TransactionId tid = new TransactionId();
+        HeapFile f = pushdownTable(tid);
+        String name = Database.getCatalog().getTableName(f.getId());
+        int[][] columns = { { 0 }, { 1 }, { 2, 0 }, { 1, 2 } };
+        Predicate[] pred = { new Predicate(2, Predicate.Op.LESS_THAN, new IntField(5)) };
+        // first over the inserted tuples, then over pages read back from disk
+        for (int pass = 0; pass < 2; pass++) {
+            for (int[] c : columns) {
+                TupleDesc td = new SeqScan(tid, f.getId(), "t", pred, c).getTupleDesc();
+                assertEquals(c.length, td.numFields());
+                assertEquals("t." + f.getTupleDesc().getFieldName(c[0]), td.getFieldName(0));
+                List<Integer> fields = new ArrayList<>();
+                List<Type> types = new ArrayList<>();
+                for (int i : c) {
+                    fields.add(i);
+                    types.add(f.getTupleDesc().getFieldType(i));
+                }
+                List<String> want = scan(new Project(fields, types,
+                        new Filter(pred, new SeqScan(tid, f.getId(), "t"))), false);
+                assertEquals(1500, want.size());
+                assertEquals(want, scan(new SeqScan(tid, f.getId(), "t", pred, c), false));
+                assertEquals(want, scan(new SeqScan(tid, f.getId(), "t", pred, c), true));
+            }
+            Database.getBufferPool().transactionComplete(tid);
+            Database.resetBufferPool(500);
+            tid = new TransactionId();
+        }
+
+        HeapFile g = pushdownTable(tid);
+        String other = Database.getCatalog().getTableName(g.getId());
+        // TableStats reads the tables in a transaction of its own
+        Database.getBufferPool().transactionComplete(tid);
+        tid = new TransactionId();
+        Map<String, TableStats> stats = new HashMap<>();
+        stats.put(name, new TableStats(f.getId(), 1000));
+        stats.put(other, new TableStats(g.getId(), 1000));
+        simpledb.Parser p = new simpledb.Parser();
+        OpIterator plan = p.generateLogicalPlan(tid, "SELECT t.a FROM " + name + " t WHERE t.b > 3;")
+                .physicalPlan(tid, stats, false);
+        OpIterator leaf = ((Operator) plan).getChildren()[0];
+        assertTrue(leaf instanceof SeqScan);
+        assertEquals(1, leaf.getTupleDesc().numFields());
+        assertEquals("t.a", leaf.getTupleDesc().getFieldName(0));
+        List<String> want = scan(new Project(Collections.singletonList(0), Collections.singletonList(Type.INT_TYPE),
+                new Filter(new Predicate(2, Predicate.Op.GREATER_THAN, new IntField(3)),
+                        new SeqScan(tid, f.getId(), "t"))), false);
+        assertEquals(want, scan(plan, false));
+        // the plan names the pushed predicate by its field of the file,
+        // though the scan does not return it
+        String tree = new QueryPlanVisualizer().getQueryPlanTree(plan);
+        assertTrue(tree, tree.contains("t.b>3"));
+
+        // a join reads the join fields besides the selected ones, and gives
+        // the same result as over full scans
+        String q = "SELECT t.a, u.b FROM " + name + " t, " + other + " u WHERE t.s = u.s AND t.a < 50 "
+                + "AND u.b > 6 ORDER BY t.a;";
+        OpIterator joined = p.generateLogicalPlan(tid, q).physicalPlan(tid, stats, false);
+        assertEquals(2, joined.getTupleDesc().numFields());
+        List<String> got = scan(joined, false);
+        assertFalse(got.isEmpty());
+        TupleDesc out = joined.getTupleDesc();
+        List<String> full = new ArrayList<>();
+        OpIterator j = new Join(new JoinPredicate(1, Predicate.Op.EQUALS, 1),
+                new Filter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(50)),
+                        new SeqScan(tid, f.getId(), "t")), new SeqScan(tid, g.getId(), "u"));
+        j.open();
+        while (j.hasNext()) {
+            Tuple t = j.next();
+            if (t.getInt(5) > 6) {
+                Tuple o = new Tuple(out);
+                o.setField(0, t.getField(0));
+                o.setField(1, t.getField(5));
+                full.add(o.toString());
+            }
+        }
+        j.close();
+        Collections.sort(got);
+        Collections.sort(full);
+        assertEquals(full, got);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
     /** Make test compatible with older version of ant. */
     public static junit.framework.Test suite() {
         return new junit.framework.JUnit4TestAdapter(ScanTest.class);